@@ -0,0 +1,406 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+/**
+ * Unpacks a zip archive from the app's assets into a directory, writing a LanguageDataManifest
+ * for each file.
+ *
+ * Zip assets are stored uncompressed in the APK, so the archive is memory-mapped straight from
+ * the APK and its entries are found through the central directory. Each entry is inflated in
+ * BUFFER_SIZE blocks, or copied in them if it is stored, and written through a FileChannel. If
+ * the asset can't be mapped because the APK compressed it, it is read through a ZipInputStream
+ * with the same large blocks instead.
+ *
+ * Each file is written to a temporary name in the directory, checked against the CRC-32 and size
+ * the archive records for it, synced, and renamed into place, so an interrupted install never
+ * leaves a file that looks installed.
+ */
+final class AssetInstaller {
+
+  private static final String TAG = AssetInstaller.class.getSimpleName();
+
+  // Block size for reading and writing. Large blocks keep the number of inflate and write calls
+  // for a language data file in the tens rather than the thousands.
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+  private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+  private static final int CENTRAL_DIRECTORY_ENTRY_SIZE = 46;
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int LOCAL_HEADER_SIZE = 30;
+
+  private final AssetManager assets;
+  private final ProgressListener listener;
+  private final byte[] input = new byte[BUFFER_SIZE];
+  private final byte[] output = new byte[BUFFER_SIZE];
+
+  /**
+   * @param assets The app's assets
+   * @param listener Told the percentage installed as it grows, or null
+   */
+  AssetInstaller(AssetManager assets, ProgressListener listener) {
+    this.assets = assets;
+    this.listener = listener;
+  }
+
+  /**
+   * Unpacks every file in a zip asset into a directory.
+   *
+   * @param assetName The zip archive in the assets
+   * @param directory Where to put its files, by their names in the archive
+   * @throws FileNotFoundException If there is no such asset
+   * @throws IOException If the archive is corrupt, or a file couldn't be written
+   */
+  void installZip(String assetName, File directory) throws IOException {
+    AssetFileDescriptor descriptor;
+    try {
+      descriptor = assets.openFd(assetName);
+    } catch (FileNotFoundException e) {
+      // Missing, or compressed in the APK. open() tells which.
+      installZipStream(assetName, directory);
+      return;
+    }
+    try {
+      FileInputStream apk = descriptor.createInputStream();
+      try {
+        FileChannel channel = apk.getChannel();
+        MappedByteBuffer archive = channel.map(FileChannel.MapMode.READ_ONLY,
+            descriptor.getStartOffset(), descriptor.getLength());
+        installMapped(archive, directory);
+      } finally {
+        apk.close();
+      }
+    } finally {
+      descriptor.close();
+    }
+  }
+
+  /**
+   * Reads the CRC-32 a zip asset records for one of its files, without unpacking it. The checksum
+   * of a mapped archive is read from its central directory. One the APK compressed has its
+   * entries read in turn until the file is found.
+   *
+   * @param assetName The zip archive in the assets
+   * @param entryName The file's name in the archive
+   * @return The file's CRC-32
+   * @throws FileNotFoundException If there is no such asset, or no such file in it
+   * @throws IOException If the archive is corrupt
+   */
+  long getChecksum(String assetName, String entryName) throws IOException {
+    AssetFileDescriptor descriptor;
+    try {
+      descriptor = assets.openFd(assetName);
+    } catch (FileNotFoundException e) {
+      return getChecksumStream(assetName, entryName);
+    }
+    try {
+      FileInputStream apk = descriptor.createInputStream();
+      try {
+        MappedByteBuffer archive = apk.getChannel().map(FileChannel.MapMode.READ_ONLY,
+            descriptor.getStartOffset(), descriptor.getLength());
+        archive.order(ByteOrder.LITTLE_ENDIAN);
+        int end = findEndOfCentralDirectory(archive);
+        int entryCount = archive.getShort(end + 10) & 0xFFFF;
+        for (int i = 0, entry = archive.getInt(end + 16); i < entryCount; i++) {
+          checkSignature(archive, entry, CENTRAL_DIRECTORY_SIGNATURE);
+          int nameLength = archive.getShort(entry + 28) & 0xFFFF;
+          if (readName(archive, entry + CENTRAL_DIRECTORY_ENTRY_SIZE, nameLength)
+              .equals(entryName)) {
+            return archive.getInt(entry + 16) & 0xFFFFFFFFL;
+          }
+          entry += CENTRAL_DIRECTORY_ENTRY_SIZE + nameLength
+              + (archive.getShort(entry + 30) & 0xFFFF) + (archive.getShort(entry + 32) & 0xFFFF);
+        }
+      } finally {
+        apk.close();
+      }
+    } finally {
+      descriptor.close();
+    }
+    throw new FileNotFoundException(entryName + " isn't in " + assetName);
+  }
+
+  // Finds an entry's CRC-32 in an asset the APK compressed. A local header that leaves the
+  // checksum to a data descriptor after the data only has it once the entry has been read.
+  private long getChecksumStream(String assetName, String entryName) throws IOException {
+    ZipInputStream zip = new ZipInputStream(assets.open(assetName));
+    try {
+      for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+        if (!entry.getName().equals(entryName)) {
+          continue;
+        }
+        if (entry.getCrc() == -1) {
+          while (zip.read(output, 0, output.length) != -1) {
+            // Read to the data descriptor
+          }
+        }
+        return entry.getCrc();
+      }
+    } finally {
+      zip.close();
+    }
+    throw new FileNotFoundException(entryName + " isn't in " + assetName);
+  }
+
+  // Installs the entries listed in the central directory of a mapped archive.
+  private void installMapped(ByteBuffer archive, File directory) throws IOException {
+    archive.order(ByteOrder.LITTLE_ENDIAN);
+    int end = findEndOfCentralDirectory(archive);
+    int entryCount = archive.getShort(end + 10) & 0xFFFF;
+    int entry = archive.getInt(end + 16);
+
+    // Sizes come first, for progress over the whole archive
+    long totalSize = 0;
+    for (int i = 0, position = entry; i < entryCount; i++) {
+      checkSignature(archive, position, CENTRAL_DIRECTORY_SIGNATURE);
+      totalSize += archive.getInt(position + 24) & 0xFFFFFFFFL;
+      position += CENTRAL_DIRECTORY_ENTRY_SIZE + (archive.getShort(position + 28) & 0xFFFF)
+          + (archive.getShort(position + 30) & 0xFFFF) + (archive.getShort(position + 32) & 0xFFFF);
+    }
+
+    long installed = 0;
+    for (int i = 0; i < entryCount; i++) {
+      int method = archive.getShort(entry + 10) & 0xFFFF;
+      long crc = archive.getInt(entry + 16) & 0xFFFFFFFFL;
+      long compressedSize = archive.getInt(entry + 20) & 0xFFFFFFFFL;
+      long size = archive.getInt(entry + 24) & 0xFFFFFFFFL;
+      int nameLength = archive.getShort(entry + 28) & 0xFFFF;
+      int localHeader = archive.getInt(entry + 42);
+      String name = readName(archive, entry + CENTRAL_DIRECTORY_ENTRY_SIZE, nameLength);
+      entry += CENTRAL_DIRECTORY_ENTRY_SIZE + nameLength + (archive.getShort(entry + 30) & 0xFFFF)
+          + (archive.getShort(entry + 32) & 0xFFFF);
+
+      File file = resolve(directory, name);
+      if (name.endsWith("/")) {
+        file.mkdirs();
+        continue;
+      }
+      checkSignature(archive, localHeader, LOCAL_HEADER_SIGNATURE);
+      int data = localHeader + LOCAL_HEADER_SIZE + (archive.getShort(localHeader + 26) & 0xFFFF)
+          + (archive.getShort(localHeader + 28) & 0xFFFF);
+
+      File temporary = new File(file.getPath() + ".install");
+      FileOutputStream out = new FileOutputStream(temporary);
+      long checksum;
+      try {
+        FileChannel outChannel = out.getChannel();
+        archive.position(data);
+        if (method == ZipEntry.STORED) {
+          checksum = copy(archive, size, outChannel, installed, totalSize);
+        } else if (method == ZipEntry.DEFLATED) {
+          checksum = inflate(archive, compressedSize, outChannel, installed, totalSize);
+        } else {
+          throw new ZipException("Unsupported compression method " + method + " for " + name);
+        }
+        if (outChannel.size() != size || checksum != crc) {
+          throw new ZipException("Checksum mismatch for " + name);
+        }
+        outChannel.force(false);
+      } catch (IOException e) {
+        out.close();
+        temporary.delete();
+        throw e;
+      }
+      out.close();
+      install(temporary, file, checksum);
+      installed += size;
+    }
+  }
+
+  // Inflates compressedSize bytes from the archive's position into out, and returns their CRC-32.
+  private long inflate(ByteBuffer archive, long compressedSize, FileChannel out, long installed,
+      long totalSize) throws IOException {
+    Inflater inflater = new Inflater(true);
+    CRC32 crc = new CRC32();
+    long remaining = compressedSize;
+    long written = 0;
+    boolean isPadded = false;
+    try {
+      while (!inflater.finished()) {
+        if (inflater.needsInput()) {
+          if (remaining > 0) {
+            int length = (int) Math.min(input.length, remaining);
+            archive.get(input, 0, length);
+            inflater.setInput(input, 0, length);
+            remaining -= length;
+          } else if (!isPadded) {
+            // Raw inflation may need one byte past the end of the data to finish
+            input[0] = 0;
+            inflater.setInput(input, 0, 1);
+            isPadded = true;
+          } else {
+            throw new ZipException("Truncated entry");
+          }
+        }
+        int length = inflater.inflate(output);
+        if (length > 0) {
+          crc.update(output, 0, length);
+          write(out, length);
+          written += length;
+          reportProgress(installed + written, totalSize);
+        }
+      }
+    } catch (DataFormatException e) {
+      ZipException zipException = new ZipException("Corrupt entry");
+      zipException.initCause(e);
+      throw zipException;
+    } finally {
+      inflater.end();
+    }
+    return crc.getValue();
+  }
+
+  // Copies a stored entry from the archive's position into out, and returns its CRC-32.
+  private long copy(ByteBuffer archive, long size, FileChannel out, long installed,
+      long totalSize) throws IOException {
+    CRC32 crc = new CRC32();
+    long copied = 0;
+    while (copied < size) {
+      int length = (int) Math.min(output.length, size - copied);
+      archive.get(output, 0, length);
+      crc.update(output, 0, length);
+      write(out, length);
+      copied += length;
+      reportProgress(installed + copied, totalSize);
+    }
+    return crc.getValue();
+  }
+
+  // Writes the first length bytes of output.
+  private void write(FileChannel out, int length) throws IOException {
+    ByteBuffer wrapped = ByteBuffer.wrap(output, 0, length);
+    while (wrapped.hasRemaining()) {
+      out.write(wrapped);
+    }
+  }
+
+  // Unpacks an asset the APK compressed, which can only be streamed.
+  private void installZipStream(String assetName, File directory) throws IOException {
+    InputStream asset = assets.open(assetName);
+    ZipInputStream zip = new ZipInputStream(asset);
+    try {
+      for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+        File file = resolve(directory, entry.getName());
+        if (entry.isDirectory()) {
+          file.mkdirs();
+          continue;
+        }
+        File temporary = new File(file.getPath() + ".install");
+        FileOutputStream out = new FileOutputStream(temporary);
+        CRC32 crc = new CRC32();
+        try {
+          FileChannel outChannel = out.getChannel();
+          long written = 0;
+          int length;
+          while ((length = zip.read(output, 0, output.length)) != -1) {
+            crc.update(output, 0, length);
+            write(outChannel, length);
+            written += length;
+            reportProgress(written, entry.getSize());
+          }
+          // ZipInputStream has checked the entry's CRC-32 by the time it returns -1
+          outChannel.force(false);
+        } catch (IOException e) {
+          out.close();
+          temporary.delete();
+          throw e;
+        }
+        out.close();
+        install(temporary, file, crc.getValue());
+      }
+    } finally {
+      zip.close();
+    }
+  }
+
+  private static void install(File temporary, File file, long checksum) throws IOException {
+    LanguageDataManifest.delete(file);
+    if (!temporary.renameTo(file)) {
+      temporary.delete();
+      throw new IOException("Couldn't move " + temporary + " to " + file);
+    }
+    LanguageDataManifest.write(file, checksum);
+    Log.i(TAG, "Installed " + file + ", " + file.length() + " bytes");
+  }
+
+  private void reportProgress(long installed, long totalSize) {
+    if (listener != null && totalSize > 0) {
+      listener.onProgress((int) (installed * 100 / totalSize));
+    }
+  }
+
+  // The end of central directory record is the last thing in the archive, before a comment of up
+  // to 64 KB.
+  private static int findEndOfCentralDirectory(ByteBuffer archive) throws ZipException {
+    int last = archive.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+    int first = Math.max(0, last - MAX_COMMENT_LENGTH);
+    for (int position = last; position >= first; position--) {
+      if (archive.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        return position;
+      }
+    }
+    throw new ZipException("Not a zip archive");
+  }
+
+  private static void checkSignature(ByteBuffer archive, int position, int signature)
+      throws ZipException {
+    if (position < 0 || position > archive.limit() - 4 || archive.getInt(position) != signature) {
+      throw new ZipException("Bad zip record at " + position);
+    }
+  }
+
+  private static String readName(ByteBuffer archive, int position, int length) throws IOException {
+    byte[] name = new byte[length];
+    for (int i = 0; i < length; i++) {
+      name[i] = archive.get(position + i);
+    }
+    return new String(name, "UTF-8");
+  }
+
+  // Keeps entries inside the directory, whatever their names.
+  private static File resolve(File directory, String name) throws IOException {
+    File file = new File(directory, name);
+    String path = file.getCanonicalPath();
+    if (!path.startsWith(directory.getCanonicalPath() + File.separator)) {
+      throw new ZipException("Entry outside the directory: " + name);
+    }
+    return file;
+  }
+}
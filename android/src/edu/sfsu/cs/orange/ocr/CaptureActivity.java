@@ -26,6 +26,7 @@ import edu.sfsu.cs.orange.ocr.OcrResult;
 import edu.sfsu.cs.orange.ocr.PreferencesActivity;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.app.AlertDialog;
 import android.app.ProgressDialog;
 import android.content.Intent;
@@ -35,6 +36,7 @@ import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.Gravity;
@@ -70,6 +72,51 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
   public static final String DEFAULT_CHARACTER_BLACKLIST = "";
   public static final String DEFAULT_CHARACTER_WHITELIST = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890!@#$%^&*()-_=+[]?<>.,`\"/;";
   public static final String DEFAULT_PAGE_SEGMENTATION_MODE = "Auto";
+  
+  // Whether to pass 8-bit luminance data to the OCR engine rather than an ARGB Bitmap. Set false to
+  // benchmark against the Bitmap path.
+  public static final boolean DEFAULT_TOGGLE_LUMINANCE_IMAGE_INPUT = true;
+  
+  // Number of OCR engines to run in parallel in continuous mode. "0" sizes the pool from the
+  // device's cores and memory class; other values are used as given, up to MAX_RECOGNITION_WORKERS,
+  // for measuring throughput.
+  public static final String DEFAULT_RECOGNITION_WORKERS = "0";
+  
+  // Whether to split a tall framed region into strips recognized on separate engines at once,
+  // instead of recognizing separate frames on each engine
+  public static final boolean DEFAULT_TOGGLE_STRIP_RECOGNITION = false;
+  
+  // Whether to downscale the framed region when its text is larger than the engine needs. Set
+  // false to compare latency and accuracy at full preview resolution.
+  public static final boolean DEFAULT_TOGGLE_TEXT_SCALING = true;
+  
+  // Whether to draw the performance HUD over the viewfinder
+  public static final boolean DEFAULT_TOGGLE_PERFORMANCE_HUD = false;
+  
+  // Whether to show continuous-mode results voted on across recent frames, rather than each
+  // frame's result as it arrives
+  public static final boolean DEFAULT_TOGGLE_RESULT_CONSENSUS = true;
+  
+  // Whether to look for text before recognition in continuous mode, skipping frames without any
+  // and recognizing only the part of the region around it
+  public static final boolean DEFAULT_TOGGLE_TEXT_LOCALIZATION = true;
+  
+  // Whether to correct low-confidence words to the nearest word in the language's lexicon, when
+  // there is one. Off by default, since no lexicon is bundled yet; see LexiconBuilder.
+  public static final boolean DEFAULT_TOGGLE_LEXICON_CORRECTION = false;
+  
+  // Whether to show the translations of recognized words in place of the words, and the
+  // translator to get them from
+  public static final boolean DEFAULT_TOGGLE_TRANSLATION = false;
+  public static final String DEFAULT_TRANSLATOR = PreferencesActivity.TRANSLATOR_DICTIONARY;
+  
+  // Upper bound on the number of OCR engines, whether chosen automatically or set in preferences.
+  // The camera's pending frame requests and the preview buffer pool are sized for this many.
+  static final int MAX_RECOGNITION_WORKERS = 4;
+  
+  // Memory class, in MB, to allow per OCR engine when choosing the number of engines. Each engine
+  // holds its own copy of the language data.
+  private static final int ENGINE_MEMORY_CLASS_MB = 16;
 
   // Minimum mean confidence score necessary to not reject single-shot OCR result
   public static final int MINIMUM_MEAN_CONFIDENCE = 0; // 0 means don't reject any scored results
@@ -81,6 +128,7 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
   // Context menu
   private static final int SETTINGS_ID = Menu.FIRST;
   private static final int ABOUT_ID = Menu.FIRST + 1;
+  private static final int DUMP_LATENCY_ID = Menu.FIRST + 2;
 
   private CaptureActivityHandler handler;
   private ViewfinderView viewfinderView;
@@ -88,7 +136,8 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
   private SurfaceHolder surfaceHolder;
   private OcrResult lastResult;
   private boolean hasSurface;
-  private TessBaseAPI baseApi; // Java interface for the Tesseract OCR engine
+  private TessBaseAPI[] baseApis; // Java interface for the Tesseract OCR engines, one per worker
+  private int recognitionWorkers;
   private String sourceLanguageCodeOcr; // ISO 639-3 language code
   private String sourceLanguageReadable; // Language name, for example, "English"
   private int pageSegmentationMode = TessBaseAPI.PSM_AUTO;
@@ -96,12 +145,25 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
   private String characterBlacklist;
   private String characterWhitelist = CaptureActivity.DEFAULT_CHARACTER_WHITELIST;
   private boolean isContinuousModeActive; // Whether we are doing OCR in continuous mode
+  private boolean isLuminanceImageInput; // Whether to skip the Bitmap when passing images to OCR
+  private boolean isStripRecognition; // Whether to recognize tall regions as parallel strips
+  private boolean isTextScaling; // Whether to downscale large text before recognition
+  private boolean isResultConsensus; // Whether to vote on continuous-mode results across frames
+  private boolean isTextLocalization; // Whether to find the text before recognizing the region
+  private boolean isLexiconCorrection; // Whether to correct words against the lexicon
+  private volatile Lexicon lexicon; // The OCR language's word list, or null if it has none
+  private boolean isTranslationActive; // Whether to show translations of the recognized words
+  private String targetLanguageCode; // ISO 639-1 language code
+  private String translatorName;
+  private TranslationStage translationStage;
   private SharedPreferences prefs;
   private OnSharedPreferenceChangeListener listener;
   private ProgressDialog dialog; // for initOcr - language download & unzip
   private ProgressDialog indeterminateDialog; // also for initOcr - init OCR engine
   private boolean isEngineReady;
   private boolean isPaused;
+  private long createTime; // When the activity was created, for the time to the first result
+  private boolean isFirstResultShown;
 
   Handler getHandler() {
     return handler;
@@ -110,6 +172,7 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
   @Override
   public void onCreate(Bundle icicle) {
     super.onCreate(icicle);
+    createTime = SystemClock.elapsedRealtime();
     
     Window window = getWindow();
     window.addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
@@ -223,6 +286,7 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     
     resetStatusView();
     retrievePreferences();
+    startTranslation();
     
     // Set up the camera preview surface.
     surfaceView = (SurfaceView) findViewById(R.id.preview_view);
@@ -238,7 +302,7 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     // Comment out the following block to test non-OCR functions without an SD card
     
     // Do OCR engine initialization, if necessary
-    boolean doNewInit = (baseApi == null);
+    boolean doNewInit = (baseApis == null);
     if (doNewInit) {      
       // Initialize the OCR engine
       File storageDirectory = getStorageDirectory();
@@ -263,11 +327,13 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     if (handler != null) {
       handler.resetState();
     }
-    if (baseApi != null) {
-      baseApi.setPageSegMode(pageSegmentationMode);
-      baseApi.setVariable(TessBaseAPI.VAR_ACCURACYVSPEED, accuracyVsSpeedMode.toString());
-      baseApi.setVariable(TessBaseAPI.VAR_CHAR_BLACKLIST, characterBlacklist);
-      baseApi.setVariable(TessBaseAPI.VAR_CHAR_WHITELIST, characterWhitelist);
+    if (baseApis != null) {
+      for (TessBaseAPI baseApi : baseApis) {
+        baseApi.setPageSegMode(pageSegmentationMode);
+        baseApi.setVariable(TessBaseAPI.VAR_ACCURACYVSPEED, accuracyVsSpeedMode.toString());
+        baseApi.setVariable(TessBaseAPI.VAR_CHAR_BLACKLIST, characterBlacklist);
+        baseApi.setVariable(TessBaseAPI.VAR_CHAR_WHITELIST, characterWhitelist);
+      }
     }
 
     if (hasSurface) {
@@ -300,7 +366,7 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
       CameraManager.get().openDriver(surfaceHolder);
       
       // Creating the handler starts the preview, which can also throw a RuntimeException.
-      handler = new CaptureActivityHandler(this, baseApi, isContinuousModeActive);
+      handler = new CaptureActivityHandler(this, baseApis, isContinuousModeActive);
       
     } catch (IOException ioe) {
       showErrorMessage("Error", "Could not initialize camera. Please try restarting device.");
@@ -321,6 +387,93 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     
     // Stop using the camera, to avoid conflicting with other camera-based apps
     CameraManager.get().closeDriver();
+    
+    stopTranslation();
+  }
+
+  boolean isLuminanceImageInput() {
+    return isLuminanceImageInput;
+  }
+
+  boolean isStripRecognition() {
+    return isStripRecognition;
+  }
+
+  boolean isTextScaling() {
+    return isTextScaling;
+  }
+
+  boolean isResultConsensus() {
+    return isResultConsensus;
+  }
+
+  boolean isTextLocalization() {
+    return isTextLocalization;
+  }
+
+  boolean isLexiconCorrection() {
+    return isLexiconCorrection;
+  }
+
+  /**
+   * @return The OCR language's lexicon, or null if it has none. Read by the decode threads.
+   */
+  Lexicon getLexicon() {
+    return lexicon;
+  }
+
+  /**
+   * Sets the lexicon for the OCR language, once it has been mapped along with the engine.
+   */
+  void setLexicon(Lexicon lexicon) {
+    this.lexicon = lexicon;
+  }
+
+  // Starts translating the recognized words, if translation is on. Translations are looked up in
+  // a cache kept per translator and language pair, and the rest are asked for in batches.
+  private void startTranslation() {
+    if (!isTranslationActive) {
+      return;
+    }
+    String sourceLanguageCode = prefs.getString(PreferencesActivity.KEY_SOURCE_LANGUAGE_PREFERENCE,
+        CaptureActivity.DEFAULT_SOURCE_LANGUAGE_CODE);
+    Translator translator = newTranslator();
+    File cacheFile = new File(getCacheDir(), "translations-" + translator.getName() + "-"
+        + sourceLanguageCode + "-" + targetLanguageCode + ".txt");
+    translationStage = new TranslationStage(translator, new TranslationCache(cacheFile),
+        sourceLanguageCode, targetLanguageCode, new TranslationCallback() {
+          public void onTranslationsReady() {
+            Handler handler = getHandler();
+            if (handler != null) {
+              handler.sendEmptyMessage(R.id.translation_ready);
+            }
+          }
+        });
+    viewfinderView.setTranslations(translationStage);
+  }
+
+  private Translator newTranslator() {
+    // The dictionary file is the only translator so far
+    if (!PreferencesActivity.TRANSLATOR_DICTIONARY.equals(translatorName)) {
+      Log.w(TAG, "Unknown translator " + translatorName + ", using the dictionary file");
+    }
+    File storageDirectory = getStorageDirectory();
+    return new DictionaryTranslator(storageDirectory != null ? storageDirectory : getFilesDir());
+  }
+
+  private void stopTranslation() {
+    if (translationStage != null) {
+      viewfinderView.setTranslations(null);
+      translationStage.shutdown();
+      translationStage = null;
+    }
+  }
+
+  /**
+   * Shows translations that have arrived for the words of the current result.
+   */
+  void handleTranslations() {
+    viewfinderView.showTranslations();
   }
 
   void stopHandler() {
@@ -332,8 +485,10 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
   @Override
   protected void onDestroy() {
     //    inactivityTimer.shutdown();
-    if (baseApi != null) {
-      baseApi.end();
+    if (baseApis != null) {
+      for (TessBaseAPI baseApi : baseApis) {
+        baseApi.end();
+      }
     }
     super.onDestroy();
   }
@@ -381,6 +536,7 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     //    inflater.inflate(R.menu.options_menu, menu);
     super.onCreateOptionsMenu(menu);
     menu.add(0, ABOUT_ID, 0, "About").setIcon(android.R.drawable.ic_menu_info_details);
+    menu.add(0, DUMP_LATENCY_ID, 0, "Save timings").setIcon(android.R.drawable.ic_menu_save);
     return true;
   }
 
@@ -399,10 +555,30 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
       startActivity(intent);
       break;
     }
+    case DUMP_LATENCY_ID: {
+      dumpPipelineLatency();
+      break;
+    }
     }
     return super.onOptionsItemSelected(item);
   }
 
+  // Writes the pipeline latency histograms to a file in the storage directory.
+  private void dumpPipelineLatency() {
+    File storageDirectory = getStorageDirectory();
+    if (storageDirectory == null) {
+      return;
+    }
+    File file = new File(storageDirectory, "latency-" + System.currentTimeMillis() + ".txt");
+    try {
+      PipelineLatency.dump(file);
+      Toast.makeText(this, "Timings saved to " + file, Toast.LENGTH_LONG).show();
+    } catch (IOException e) {
+      Log.e(TAG, "Couldn't save timings", e);
+      Toast.makeText(this, "Couldn't save timings", Toast.LENGTH_SHORT).show();
+    }
+  }
+
   public void surfaceDestroyed(SurfaceHolder holder) {
     hasSurface = false;
   }
@@ -443,6 +619,39 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
       characterBlacklist = prefs.getString(PreferencesActivity.KEY_CHARACTER_BLACKLIST, CaptureActivity.DEFAULT_CHARACTER_BLACKLIST);
       characterWhitelist = prefs.getString(PreferencesActivity.KEY_CHARACTER_WHITELIST, CaptureActivity.DEFAULT_CHARACTER_WHITELIST);
       
+      // Retrieve from preferences, and set in this Activity, the image input path for the OCR engine
+      isLuminanceImageInput = prefs.getBoolean(PreferencesActivity.KEY_LUMINANCE_IMAGE_INPUT, CaptureActivity.DEFAULT_TOGGLE_LUMINANCE_IMAGE_INPUT);
+      
+      // Retrieve from preferences whether to recognize tall regions as strips on all engines at once
+      isStripRecognition = prefs.getBoolean(PreferencesActivity.KEY_STRIP_RECOGNITION, CaptureActivity.DEFAULT_TOGGLE_STRIP_RECOGNITION);
+      
+      // Retrieve from preferences whether to downscale large text before recognition
+      isTextScaling = prefs.getBoolean(PreferencesActivity.KEY_TEXT_SCALING, CaptureActivity.DEFAULT_TOGGLE_TEXT_SCALING);
+      
+      // Retrieve from preferences whether to vote on results across frames
+      isResultConsensus = prefs.getBoolean(PreferencesActivity.KEY_RESULT_CONSENSUS, CaptureActivity.DEFAULT_TOGGLE_RESULT_CONSENSUS);
+      
+      // Retrieve from preferences whether to find the text before recognition
+      isTextLocalization = prefs.getBoolean(PreferencesActivity.KEY_TEXT_LOCALIZATION, CaptureActivity.DEFAULT_TOGGLE_TEXT_LOCALIZATION);
+      
+      // Retrieve from preferences whether to correct words against the lexicon
+      isLexiconCorrection = prefs.getBoolean(PreferencesActivity.KEY_LEXICON_CORRECTION, CaptureActivity.DEFAULT_TOGGLE_LEXICON_CORRECTION);
+      
+      // Retrieve from preferences whether to translate, to which language, and with which translator
+      isTranslationActive = prefs.getBoolean(PreferencesActivity.KEY_TOGGLE_TRANSLATION, CaptureActivity.DEFAULT_TOGGLE_TRANSLATION);
+      targetLanguageCode = prefs.getString(PreferencesActivity.KEY_TARGET_LANGUAGE_PREFERENCE, CaptureActivity.DEFAULT_TARGET_LANGUAGE_CODE);
+      translatorName = prefs.getString(PreferencesActivity.KEY_TRANSLATOR, CaptureActivity.DEFAULT_TRANSLATOR);
+      
+      // Retrieve from preferences whether to show the performance HUD
+      viewfinderView.setPerformanceHudEnabled(prefs.getBoolean(PreferencesActivity.KEY_PERFORMANCE_HUD, CaptureActivity.DEFAULT_TOGGLE_PERFORMANCE_HUD));
+      
+      // Retrieve from preferences the number of OCR engines to run in continuous mode
+      try {
+        recognitionWorkers = Integer.parseInt(prefs.getString(PreferencesActivity.KEY_RECOGNITION_WORKERS, CaptureActivity.DEFAULT_RECOGNITION_WORKERS));
+      } catch (NumberFormatException e) {
+        recognitionWorkers = 0;
+      }
+      
       prefs.registerOnSharedPreferenceChangeListener(listener);    
   }
 
@@ -500,21 +709,64 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     }
   
     // Start AsyncTask to install language data and init OCR
-    baseApi = new TessBaseAPI();
-    new OcrInitAsyncTask(this, baseApi, dialog, indeterminateDialog, languageCode, languageName)
+    baseApis = new TessBaseAPI[getRecognitionWorkerCount()];
+    for (int i = 0; i < baseApis.length; i++) {
+      baseApis[i] = new TessBaseAPI();
+    }
+    new OcrInitAsyncTask(this, baseApis, dialog, indeterminateDialog, languageCode, languageName)
       .execute(storageRoot.toString());
   }
   
+  /**
+   * Chooses how many OCR engines to run: one per core, limited by MAX_RECOGNITION_WORKERS and by
+   * the device's memory class, unless the number was set in preferences, which is limited by
+   * MAX_RECOGNITION_WORKERS too.
+   */
+  private int getRecognitionWorkerCount() {
+    if (recognitionWorkers > 0) {
+      return Math.min(recognitionWorkers, MAX_RECOGNITION_WORKERS);
+    }
+    int cores = Runtime.getRuntime().availableProcessors();
+    int memoryClass = ((ActivityManager) getSystemService(ACTIVITY_SERVICE)).getMemoryClass();
+    int workers = Math.min(Math.min(cores, MAX_RECOGNITION_WORKERS),
+        memoryClass / ENGINE_MEMORY_CLASS_MB);
+    Log.i(TAG, "Using " + Math.max(1, workers) + " recognition workers for " + cores
+        + " cores and memory class " + memoryClass);
+    return Math.max(1, workers);
+  }
+  
   void handleOcrContinuousDecode(OcrResult ocrResult) {
    
     lastResult = ocrResult;
+    if (!isFirstResultShown) {
+      isFirstResultShown = true;
+      Log.i(TAG, "First result " + (SystemClock.elapsedRealtime() - createTime)
+          + " ms after start");
+    }
     
-    // Send an OcrResultText object to the ViewfinderView for text rendering
-    viewfinderView.addResultText(new OcrResultText(ocrResult.getText(), 
-                                                   ocrResult.getWordConfidences(),
-                                                   ocrResult.getMeanConfidence(),
-                                                   ocrResult.getCharacterBoundingBoxes(),
-                                                   ocrResult.getWordBoundingBoxes()));
+    // The result is immutable, so the ViewfinderView draws from it directly
+    viewfinderView.addResultText(ocrResult, ocrResult.getCaptureTime());
+  }
+  
+  /**
+   * Moves the overlay with the text, which the tracker has seen move since the last frame.
+   */
+  void handleFrameMotion(MotionTracker motionTracker) {
+    viewfinderView.followMotion(motionTracker);
+  }
+  
+  /**
+   * Reissues the last result with a fresh timestamp, for a frame found to be unchanged since
+   * that result was recognized.
+   * 
+   * @return False if there is no last result to reissue
+   */
+  boolean reissueLastResult() {
+    if (lastResult == null) {
+      return false;
+    }
+    handleOcrContinuousDecode(lastResult.reissue());
+    return true;
   }
   
   /**
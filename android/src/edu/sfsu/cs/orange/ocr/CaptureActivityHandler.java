@@ -16,6 +16,7 @@
  */
 package edu.sfsu.cs.orange.ocr;
 
+import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
@@ -26,18 +27,39 @@ import com.googlecode.tesseract.android.TessBaseAPI;
 import com.robtheis.reverser.R;
 
 import edu.sfsu.cs.orange.ocr.camera.CameraManager;
+import edu.sfsu.cs.orange.ocr.camera.PreviewBufferPool;
 
 /**
  * This class handles all the messaging which comprises the state machine for capture.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
-final class CaptureActivityHandler extends Handler {
+final class CaptureActivityHandler extends Handler implements RecognitionCallback {
 
   private static final String TAG = CaptureActivityHandler.class.getSimpleName();
   
+  // Continuous-mode recognition throughput is logged this often, along with the worker count
+  private static final long THROUGHPUT_LOG_INTERVAL_MS = 10000L;
+  
+  // Once the result consensus has settled, each worker waits this long between recognitions
+  private static final long STABLE_DECODE_INTERVAL_MS = 500L;
+  
   private final CaptureActivity activity;
-  private final DecodeThread decodeThread;
+  private final DecodeThread[] decodeThreads;
+  private final RecognitionExecutor executor;
+  private final FrameChangeDetector changeDetector;
+  private final StripRecognizer stripRecognizer;
+  // Fixed for the handler's lifetime, since it decides how many workers are started
+  private final boolean isStripRecognition;
+  private final MotionTracker motionTracker = new MotionTracker();
+  private final ResultConsensus consensus = new ResultConsensus();
+  // The framing rectangle in preview coordinates that the consensus's word boxes are relative to
+  private final Rect consensusFrame = new Rect();
+  // Workers waiting out STABLE_DECODE_INTERVAL_MS before their next recognition
+  private final boolean[] isWorkerResting;
+  private long lastDisplayedFrameSequence = -1;
+  private long throughputIntervalStart;
+  private int throughputRecognitions;
   private static State state;
   private static boolean isAutofocusLoopStarted = false;
 
@@ -52,17 +74,34 @@ final class CaptureActivityHandler extends Handler {
     DONE
   }
 
-  CaptureActivityHandler(CaptureActivity activity, TessBaseAPI baseApi, 
+  /**
+   * @param baseApis One initialized engine per recognition worker. Single-shot mode only uses
+   *                 the first, except to recognize strips of a tall region.
+   */
+  CaptureActivityHandler(CaptureActivity activity, TessBaseAPI[] baseApis, 
       boolean isContinuousModeActive) {
     this.activity = activity;
 
     // Start ourselves capturing previews (and decoding if using continuous recognition mode).
     CameraManager.get().startPreview();
     
-    decodeThread = new DecodeThread(activity, 
-        //new ViewfinderResultPointCallback(activity.getViewfinderView()), 
-        baseApi);
-    decodeThread.start();
+    changeDetector = new FrameChangeDetector(baseApis.length);
+    
+    // In strip recognition mode, only the first worker takes frames, and it recognizes each one
+    // as strips on all of the engines. The other workers stay idle, so that their engines are
+    // free for its strips.
+    executor = new RecognitionExecutor(baseApis, this);
+    isStripRecognition = activity.isStripRecognition() && baseApis.length > 1;
+    stripRecognizer = isStripRecognition ? new StripRecognizer(executor, baseApis.length) : null;
+    decodeThreads = new DecodeThread[baseApis.length];
+    isWorkerResting = new boolean[baseApis.length];
+    for (int i = 0; i < baseApis.length; i++) {
+      decodeThreads[i] = new DecodeThread(activity, 
+          //new ViewfinderResultPointCallback(activity.getViewfinderView()), 
+          executor, i, changeDetector, motionTracker, i == 0 ? stripRecognizer : null);
+      decodeThreads[i].start();
+    }
+    Log.d(TAG, "Started " + baseApis.length + " recognition workers");
     
     if (isContinuousModeActive) {
       state = State.CONTINUOUS;
@@ -115,21 +154,97 @@ final class CaptureActivityHandler extends Handler {
         restartOcrPreview();
         break;
       case R.id.ocr_continuous_decode_failed:
-        DecodeHandler.resetDecodeState();        
+        // Continuous-mode messages from the workers carry the worker index in arg1.
+        PipelineLatency.record(PipelineLatency.Stage.RESULT_POST,
+            ((RecognitionJob) message.obj).getResultReadyTime());
+        changeDetector.reset();
+        recordRecognition();
         if (state == State.CONTINUOUS || state == State.CONTINUOUS_FOCUSING) {
           try {
-            activity.handleOcrContinuousDecode((OcrResultFailure) message.obj);
+            showFailure(((RecognitionJob) message.obj).getFailure());
           } catch (NullPointerException e) {
             Log.w(TAG, "got bad OcrResultFailure", e);
           }
-          restartOcrPreviewAndDecode();
+          restartOcrPreviewAndDecode(message.arg1);
+        }
+        break;
+      case R.id.ocr_continuous_decode_skipped:
+        // The frame was rejected before recognition, so request the next one right away.
+        if (state == State.CONTINUOUS || state == State.CONTINUOUS_FOCUSING) {
+          requestContinuousDecode(message.arg1);
+        }
+        break;
+      case R.id.ocr_continuous_decode_no_text:
+        // No text was found in the frame, so it wasn't recognized. It counts as an empty result.
+        if (state == State.CONTINUOUS || state == State.CONTINUOUS_FOCUSING) {
+          showFailure((OcrResultFailure) message.obj);
+          restartOcrPreviewAndDecode(message.arg1);
+        }
+        break;
+      case R.id.translation_ready:
+        // Translations have arrived for words that were shown untranslated.
+        activity.handleTranslations();
+        break;
+      case R.id.ocr_continuous_decode_resume:
+        // The wait after a settled consensus is over.
+        isWorkerResting[message.arg1] = false;
+        if (state == State.CONTINUOUS || state == State.CONTINUOUS_FOCUSING) {
+          requestContinuousDecode(message.arg1);
+        }
+        break;
+      case R.id.ocr_continuous_frame_motion:
+        // The text has moved since the last frame, so move the overlay with it.
+        if (state == State.CONTINUOUS || state == State.CONTINUOUS_FOCUSING) {
+          activity.handleFrameMotion(motionTracker);
+        }
+        break;
+      case R.id.ocr_continuous_frame_motion_lost:
+        // The motion was too large or too confused to follow, so the overlay can't be kept on the
+        // text. Get new results as soon as possible.
+        if (state == State.CONTINUOUS || state == State.CONTINUOUS_FOCUSING) {
+          activity.handleFrameMotion(motionTracker);
+          consensus.reset();
+          wakeRestingWorkers();
+        }
+        break;
+      case R.id.ocr_continuous_decode_unchanged:
+        // The framed region hasn't changed, so the last result is reissued without recognition.
+        if (state == State.CONTINUOUS || state == State.CONTINUOUS_FOCUSING) {
+          if (!activity.reissueLastResult()) {
+            changeDetector.reset();
+          }
+          restartOcrPreviewAndDecode(message.arg1);
         }
         break;
       case R.id.ocr_continuous_decode_succeeded:
-        DecodeHandler.resetDecodeState();
+        PipelineLatency.record(PipelineLatency.Stage.RESULT_POST,
+            ((RecognitionJob) message.obj).getResultReadyTime());
+        recordRecognition();
+        OcrResult ocrResult = ((RecognitionJob) message.obj).getResult();
+        
+        // Workers finish out of order. Drop a result for a frame older than the one on screen, so
+        // that the overlay never goes backwards in time.
+        boolean isStale = ocrResult.getFrameSequence() < lastDisplayedFrameSequence;
+        if (!isStale) {
+          lastDisplayedFrameSequence = ocrResult.getFrameSequence();
+          changeDetector.commitPending(ocrResult.getFrameSequence(),
+              ocrResult.getRecognitionTimeRequired());
+        }
         if (state == State.CONTINUOUS || state == State.CONTINUOUS_FOCUSING) {
-          restartOcrPreviewAndDecode();
-          activity.handleOcrContinuousDecode((OcrResult) message.obj);
+          // With the consensus on, only a change in the consensus is shown. It's updated before
+          // the worker restarts, since whether it has settled decides how soon that is.
+          OcrResult shownResult = null;
+          if (!isStale) {
+            if (!activity.isResultConsensus()) {
+              shownResult = ocrResult;
+            } else if (addToConsensus(ocrResult, null)) {
+              shownResult = consensus.getResult();
+            }
+          }
+          restartOcrPreviewAndDecode(message.arg1);
+          if (shownResult != null) {
+            activity.handleOcrContinuousDecode(shownResult);
+          }
         }
         break;
       case R.id.ocr_decode_succeeded:
@@ -154,7 +269,22 @@ final class CaptureActivityHandler extends Handler {
     removeMessages(R.id.ocr_continuous_decode);
     removeMessages(R.id.ocr_decode);
     removeMessages(R.id.ocr_continuous_decode_failed);
+    removeMessages(R.id.ocr_continuous_decode_skipped);
+    removeMessages(R.id.ocr_continuous_decode_no_text);
+    removeMessages(R.id.ocr_continuous_decode_resume);
+    removeMessages(R.id.ocr_continuous_frame_motion);
+    removeMessages(R.id.ocr_continuous_frame_motion_lost);
+    removeMessages(R.id.ocr_continuous_decode_unchanged);
     removeMessages(R.id.ocr_continuous_decode_succeeded); // TODO are these removeMessages() calls doing anything?
+    for (int i = 0; i < isWorkerResting.length; i++) {
+      isWorkerResting[i] = false;
+    }
+    
+    // Stop the frames coming to the workers, and drop the ones waiting for an engine.
+    for (DecodeThread decodeThread : decodeThreads) {
+      CameraManager.get().cancelOcrDecode(decodeThread.getHandler());
+      decodeThread.getHandler().cancelDecode();
+    }
     
     // Freeze the view displayed to the user.
 //    CameraManager.get().stopPreview();
@@ -165,6 +295,8 @@ final class CaptureActivityHandler extends Handler {
     if (state == State.CONTINUOUS_PAUSED) {
       Log.d(TAG, "Setting state to CONTINUOUS");
       state = State.CONTINUOUS;
+      consensus.reset();
+      motionTracker.reset();
       restartOcrPreviewAndDecode();
     }
   }
@@ -174,9 +306,14 @@ final class CaptureActivityHandler extends Handler {
     CameraManager.get().stopPreview();
 
     try {
-      Message quit = Message.obtain(decodeThread.getHandler(), R.id.quit);
-      quit.sendToTarget();
-      decodeThread.join();
+      for (DecodeThread decodeThread : decodeThreads) {
+        Message quit = Message.obtain(decodeThread.getHandler(), R.id.quit);
+        quit.sendToTarget();
+      }
+      for (DecodeThread decodeThread : decodeThreads) {
+        decodeThread.join();
+      }
+      executor.shutdown();
     } catch (InterruptedException e) {
       Log.w(TAG, "Caught InterruptedException in quitSyncronously()", e);
       // continue
@@ -188,7 +325,54 @@ final class CaptureActivityHandler extends Handler {
     removeMessages(R.id.auto_focus);
     removeMessages(R.id.ocr_continuous_decode);
     removeMessages(R.id.ocr_decode);
+    removeMessages(R.id.ocr_continuous_decode_resume);
+    removeMessages(R.id.ocr_continuous_decode_skipped);
+    removeMessages(R.id.ocr_continuous_decode_no_text);
+    removeMessages(R.id.ocr_continuous_decode_unchanged);
+    removeMessages(R.id.ocr_continuous_frame_motion);
+    removeMessages(R.id.ocr_continuous_frame_motion_lost);
+    removeMessages(R.id.translation_ready);
+
+  }
+
+  /**
+   * Passes a finished job to the UI thread. Called on the job's engine thread.
+   */
+  public void onRecognitionFinished(RecognitionJob job) {
+    int what;
+    if (job.isContinuous()) {
+      what = job.isSucceeded() ? R.id.ocr_continuous_decode_succeeded
+          : R.id.ocr_continuous_decode_failed;
+    } else {
+      what = job.isSucceeded() ? R.id.ocr_decode_succeeded : R.id.ocr_decode_failed;
+    }
+    obtainMessage(what, job.getWorkerIndex(), 0, job).sendToTarget();
+  }
 
+  /**
+   * A continuous-mode job is only refused while the worker's previous job is still on the engine,
+   * and that job's result asks the worker for the next frame. A dropped single-shot job is
+   * reported as a failure so the user can try again.
+   */
+  public void onRecognitionDropped(RecognitionJob job) {
+    if (!job.isContinuous() && state != State.DONE) {
+      obtainMessage(R.id.ocr_decode_failed, job.getWorkerIndex(), 0, job).sendToTarget();
+    }
+  }
+
+  // Shows that nothing was recognized in a continuous-mode frame. A failure on a frame older than
+  // the displayed result says nothing about the scene, so it's ignored. One that isn't becomes the
+  // displayed frame, like a result, so that a result for an older frame can't replace it.
+  private void showFailure(OcrResultFailure failure) {
+    if (failure.getFrameSequence() <= lastDisplayedFrameSequence) {
+      return;
+    }
+    lastDisplayedFrameSequence = failure.getFrameSequence();
+    if (!activity.isResultConsensus()) {
+      activity.handleOcrContinuousDecode(failure);
+    } else if (addToConsensus(null, failure)) {
+      activity.handleOcrContinuousDecode(consensus.getResult());
+    }
   }
 
   // Start the preview, but don't try to OCR anything until the user presses the shutter button.
@@ -207,19 +391,91 @@ final class CaptureActivityHandler extends Handler {
     }
   }
   
-  // Send a decode request for continuous OCR mode
+  // Send a decode request to every worker for continuous OCR mode
   private void restartOcrPreviewAndDecode() {
+    int workers = isStripRecognition ? 1 : decodeThreads.length;
+    for (int i = 0; i < workers; i++) {
+      restartOcrPreviewAndDecode(i);
+    }
+  }
+  
+  // Send a decode request for continuous OCR mode to the given worker
+  private void restartOcrPreviewAndDecode(int workerIndex) {
     // Continue capturing camera frames
     CameraManager.get().startPreview();
     
-    // Continue requesting decode of images
-    CameraManager.get().requestOcrDecode(decodeThread.getHandler(), R.id.ocr_continuous_decode);
+    // Continue requesting decode of images, after a pause if the consensus has settled. Frames
+    // keep arriving meanwhile, for the motion tracker to move the overlay with, and the worker
+    // starts again on the freshest.
+    if (activity.isResultConsensus() && consensus.isStable()) {
+      isWorkerResting[workerIndex] = true;
+      sendMessageDelayed(obtainMessage(R.id.ocr_continuous_decode_resume, workerIndex, 0),
+          STABLE_DECODE_INTERVAL_MS);
+    } else {
+      requestContinuousDecode(workerIndex);
+    }
     activity.drawViewfinder();    
   }
+  
+  // Makes sure the camera is sending frames to the worker, and has it decode the freshest one.
+  private void requestContinuousDecode(int workerIndex) {
+    DecodeHandler decodeHandler = decodeThreads[workerIndex].getHandler();
+    CameraManager.get().requestContinuousOcrDecode(decodeHandler, R.id.ocr_continuous_decode);
+    decodeHandler.requestNextDecode();
+  }
+
+  // Ends the pause of any worker resting after a settled consensus.
+  private void wakeRestingWorkers() {
+    removeMessages(R.id.ocr_continuous_decode_resume);
+    for (int i = 0; i < isWorkerResting.length; i++) {
+      if (isWorkerResting[i]) {
+        isWorkerResting[i] = false;
+        requestContinuousDecode(i);
+      }
+    }
+  }
+
+  // Adds a frame's result or failure to the consensus, starting the consensus over if the framing
+  // rectangle has changed since its last frame. Returns true if the consensus changed.
+  private boolean addToConsensus(OcrResult result, OcrResultFailure failure) {
+    Rect previewFrame = CameraManager.get().getFramingRectInPreview();
+    if (previewFrame != null && !previewFrame.equals(consensusFrame)) {
+      consensus.reset();
+      consensusFrame.set(previewFrame);
+    }
+    return result != null ? consensus.add(result) : consensus.add(failure);
+  }
+
+  // Counts a finished engine call, and periodically logs the recognition rate across all workers,
+  // along with the preview buffer pool's counts and the engine time saved by reusing results.
+  // Misses that stop growing once recognition is under way show that frames are no longer being
+  // allocated.
+  private void recordRecognition() {
+    long now = System.currentTimeMillis();
+    if (throughputIntervalStart == 0) {
+      throughputIntervalStart = now;
+    }
+    throughputRecognitions++;
+    long elapsed = now - throughputIntervalStart;
+    if (elapsed >= THROUGHPUT_LOG_INTERVAL_MS) {
+      Log.i(TAG, "Throughput with " + decodeThreads.length + " workers: "
+          + (throughputRecognitions * 1000f / elapsed) + " recognitions/s");
+      PreviewBufferPool bufferPool = CameraManager.get().getPreviewBufferPool();
+      Log.i(TAG, "Preview buffers: " + bufferPool.getHitCount() + " reused, "
+          + bufferPool.getMissCount() + " allocated");
+      Log.i(TAG, "Unchanged frames: " + changeDetector.getFramesUnchanged() + " of "
+          + changeDetector.getFramesCompared() + " ("
+          + Math.round(changeDetector.getUnchangedRate() * 100)
+          + "%) reused the last result, saving " + changeDetector.getRecognitionTimeSaved()
+          + " ms of recognition");
+      throughputIntervalStart = now;
+      throughputRecognitions = 0;
+    }
+  }
 
   private void ocrDecode() {
     state = State.PREVIEW_PAUSED;
-    CameraManager.get().requestOcrDecode(decodeThread.getHandler(), R.id.ocr_decode);
+    CameraManager.get().requestOcrDecode(decodeThreads[0].getHandler(), R.id.ocr_decode);
   }
 
   void hardwareShutterButtonClick() {
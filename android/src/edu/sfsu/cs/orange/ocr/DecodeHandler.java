@@ -22,60 +22,150 @@ package edu.sfsu.cs.orange.ocr;
 //import com.google.zxing.ReaderException;
 //import com.google.zxing.Result;
 import android.app.ProgressDialog;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.util.Log;
 
-import com.googlecode.tesseract.android.TessBaseAPI;
 import com.robtheis.reverser.R;
 
 import edu.sfsu.cs.orange.ocr.camera.CameraManager;
+import edu.sfsu.cs.orange.ocr.camera.FrameMailbox;
+import edu.sfsu.cs.orange.ocr.camera.PreviewFrame;
 
 final class DecodeHandler extends Handler {
 
+  private static final String TAG = DecodeHandler.class.getSimpleName();
+
+  // In continuous mode each worker logs its sharpness gate's state and its text scale this often,
+  // for tuning them
+  private static final long STATS_LOG_INTERVAL_MS = 10000L;
+
   private final CaptureActivity activity;
   private boolean running = true;
-  private final TessBaseAPI baseApi;
+  private final RecognitionExecutor executor;
+  private final int workerIndex;
+  private final FrameSharpnessGate sharpnessGate;
+  private final FrameChangeDetector changeDetector;
+  private final FrameChangeDetector.Signature signature;
+  private final MotionTracker motionTracker;
+  private final MotionTracker.Profile motionProfile;
+  private final StripRecognizer stripRecognizer;
+  private final StripSplitter stripSplitter;
+  private final TextScaler textScaler;
+  private final TextLocator textLocator;
+  private final int[] textBounds = new int[4];
+  private final Rect textRect = new Rect();
+  private LexiconCorrector corrector;
+  
+  // Reused for every greyscale render and downscale. Nothing is rendered while this worker's
+  // engine has a job queued or running, so a job's pixels are never rewritten under it.
+  private byte[] greyscaleBuffer;
+  private byte[] scaledBuffer;
+  
+  // In continuous mode the camera keeps sending frames, and only the freshest one not yet
+  // recognized is kept here until this worker's engine is free.
+  private final FrameMailbox mailbox;
   
-  private static boolean isDecodePending;
+  // Set when CaptureActivityHandler has asked for the next decode and no frame was waiting for
+  // it, so the next frame to arrive is decoded right away. Only used on this thread.
+  private boolean isWaitingForFrame;
+  
+  private long statsLogTime;
 
-  DecodeHandler(CaptureActivity activity, TessBaseAPI baseApi) {
+  /**
+   * @param executor Runs recognition jobs, this worker's on the engine with the same index
+   * @param stripRecognizer Recognizes tall regions as strips on all engines, or null if this
+   *                        worker doesn't use strip recognition
+   */
+  DecodeHandler(CaptureActivity activity, RecognitionExecutor executor, int workerIndex,
+      FrameChangeDetector changeDetector, MotionTracker motionTracker,
+      StripRecognizer stripRecognizer) {
     this.activity = activity;
-    this.baseApi = baseApi;
+    this.executor = executor;
+    this.workerIndex = workerIndex;
+    this.changeDetector = changeDetector;
+    sharpnessGate = new FrameSharpnessGate();
+    signature = new FrameChangeDetector.Signature();
+    this.motionTracker = motionTracker;
+    motionProfile = new MotionTracker.Profile();
+    this.stripRecognizer = stripRecognizer;
+    stripSplitter = new StripSplitter();
+    textScaler = new TextScaler();
+    textLocator = new TextLocator();
+    mailbox = new FrameMailbox();
   }
 
   @Override
   public void handleMessage(Message message) {
     if (!running) {
+      // Frames may still arrive after quit, so their buffers must still go back to the pool.
+      if (message.obj instanceof PreviewFrame) {
+        ((PreviewFrame) message.obj).release();
+      }
       return;
     }
     switch (message.what) {        
       case R.id.ocr_continuous_decode:
-        // Only request a decode if a request is not already pending.
-        if (!isDecodePending) {
-          isDecodePending = true;
-          ocrContinuousDecode((byte[]) message.obj, message.arg1, message.arg2);
+        // A new frame replaces any older one still waiting for the engine.
+        PerformanceCounters.framesDelivered.incrementAndGet();
+        trackMotion((PreviewFrame) message.obj);
+        if (mailbox.offer((PreviewFrame) message.obj)) {
+          PerformanceCounters.framesDropped.incrementAndGet();
+        }
+        if (isWaitingForFrame) {
+          decodeNextFrame();
         }
         break;
+      case R.id.ocr_continuous_decode_next:
+        decodeNextFrame();
+        break;
+      case R.id.ocr_continuous_decode_cancel:
+        isWaitingForFrame = false;
+        mailbox.clear();
+        break;
       case R.id.ocr_decode:
-        ocrDecode((byte[]) message.obj, message.arg1, message.arg2);
+        ocrDecode((PreviewFrame) message.obj);
         break;
       case R.id.quit:
         running = false;
+        mailbox.clear();
         Looper.myLooper().quit();
         break;
     }
   }
   
-  static void resetDecodeState() {
-    isDecodePending = false;
+  /**
+   * Asks this worker to decode the freshest frame it has, or the next one to arrive. Called by
+   * CaptureActivityHandler in continuous mode whenever the worker's engine is free.
+   */
+  void requestNextDecode() {
+    sendEmptyMessage(R.id.ocr_continuous_decode_next);
+  }
+  
+  /**
+   * Cancels a requested decode that hasn't started, and drops any frame waiting for the engine.
+   */
+  void cancelDecode() {
+    sendEmptyMessage(R.id.ocr_continuous_decode_cancel);
   }
   
   // Perform an OCR decode for single-shot mode.
-  private void ocrDecode(byte[] data, int width, int height) {
+  private void ocrDecode(PreviewFrame frame) {
     //Log.d(TAG, "ocrDecode: Got R.id.ocr_decode message.");
     //Log.d(TAG, "width: " + width + ", height: " + height);
     
+    // If the engine is still busy, tell the user rather than queueing the shutter press behind it.
+    // The press is dropped, just as a job refused by the executor is, so it's counted the same.
+    if (executor.isBusy(workerIndex)) {
+      frame.release();
+      PerformanceCounters.jobsOverflowed.incrementAndGet();
+      sendToCaptureHandler(R.id.ocr_decode_failed);
+      return;
+    }
+    
     ProgressDialog indeterminateDialog = new ProgressDialog(activity);
     indeterminateDialog.setTitle("Please wait");
     indeterminateDialog.setMessage("Performing OCR...");
@@ -83,25 +173,199 @@ final class DecodeHandler extends Handler {
     indeterminateDialog.show();
     
     // Asyncrhonously launch the OCR process
-    PlanarYUVLuminanceSource source = CameraManager.get().buildLuminanceSource(data, width, height);
-    new OcrRecognizeAsyncTask(activity, baseApi, indeterminateDialog, source.renderCroppedGreyscaleBitmap()).execute();
+    try {
+      long stageStart = PipelineLatency.record(PipelineLatency.Stage.FRAME_DELIVERY,
+          frame.getTimestamp());
+      PlanarYUVLuminanceSource source = CameraManager.get().buildLuminanceSource(frame);
+      PipelineLatency.record(PipelineLatency.Stage.SOURCE_BUILD, stageStart);
+      executor.submit(workerIndex, newRecognitionJob(source, indeterminateDialog, frame));
+    } finally {
+      frame.release();
+    }
+  }
+  
+  private void decodeNextFrame() {
+    // A job still on the engine asks for the next decode when it finishes, and the frame waits
+    // for it in the mailbox. Nothing is dropped, so it isn't counted as an overflow.
+    if (executor.isBusy(workerIndex)) {
+      isWaitingForFrame = false;
+      return;
+    }
+    PreviewFrame frame = mailbox.take();
+    isWaitingForFrame = frame == null;
+    if (frame != null) {
+      ocrContinuousDecode(frame);
+    }
+  }
+  
+  // Follows the text's motion on every frame, so that the overlay can move with it between results.
+  private void trackMotion(PreviewFrame frame) {
+    Rect previewFrame = CameraManager.get().getFramingRectInPreview();
+    motionProfile.compute(CameraManager.get().buildLuminanceSource(frame), previewFrame);
+    int motion = motionTracker.add(motionProfile, frame.getSequence());
+    if (motion == MotionTracker.MOVED) {
+      sendToCaptureHandler(R.id.ocr_continuous_frame_motion);
+    } else if (motion == MotionTracker.LOST) {
+      sendToCaptureHandler(R.id.ocr_continuous_frame_motion_lost);
+    }
   }
   
   // Perform an OCR decode for continuous recognition mode.
-  private void ocrContinuousDecode(byte[] data, int width, int height) {
+  private void ocrContinuousDecode(PreviewFrame frame) {
     // Asyncrhonously launch the OCR process
-    PlanarYUVLuminanceSource source = CameraManager.get().buildLuminanceSource(data, width, height);
-    new OcrRecognizeAsyncTask(activity, baseApi, source.renderCroppedGreyscaleBitmap()).execute();
+    try {
+      long stageStart = PipelineLatency.record(PipelineLatency.Stage.FRAME_DELIVERY,
+          frame.getTimestamp());
+      PlanarYUVLuminanceSource source = CameraManager.get().buildLuminanceSource(frame);
+      PipelineLatency.record(PipelineLatency.Stage.SOURCE_BUILD, stageStart);
+      logStats();
+      
+      // If the framed region looks the same as it did for the last accepted result, reuse that
+      // result instead of recognizing the frame again.
+      signature.compute(source);
+      if (changeDetector.isUnchanged(signature)) {
+        PerformanceCounters.framesUnchanged.incrementAndGet();
+        sendToCaptureHandler(R.id.ocr_continuous_decode_unchanged);
+        return;
+      }
+      
+      // Don't spend engine time on a frame that is too blurry to read. Ask for the next one instead.
+      if (!sharpnessGate.accept(source)) {
+        PerformanceCounters.framesSkipped.incrementAndGet();
+        sendToCaptureHandler(R.id.ocr_continuous_decode_skipped);
+        return;
+      }
+      
+      // Don't spend engine time on a frame with no text in it, and only recognize the part of the
+      // region around the text.
+      int originX = 0;
+      int originY = 0;
+      if (activity.isTextLocalization()) {
+        if (!textLocator.locate(source, textBounds)) {
+          PerformanceCounters.framesWithoutText.incrementAndGet();
+          sendToCaptureHandler(R.id.ocr_continuous_decode_no_text,
+              new OcrResultFailure(0, frame.getSequence()));
+          return;
+        }
+        textRect.set(textBounds[0], textBounds[1], textBounds[2], textBounds[3]);
+        PerformanceCounters.pixelsLocated.addAndGet(source.getWidth() * source.getHeight());
+        PerformanceCounters.pixelsRecognized.addAndGet(textRect.width() * textRect.height());
+        if (textRect.width() < source.getWidth() || textRect.height() < source.getHeight()) {
+          source = source.crop(textRect.left, textRect.top, textRect.width(), textRect.height());
+          originX = textRect.left;
+          originY = textRect.top;
+        }
+      }
+      
+      changeDetector.markPending(signature, frame.getSequence());
+      RecognitionJob job = newRecognitionJob(source, null, frame);
+      job.setOrigin(originX, originY);
+      executor.submit(workerIndex, job);
+    } finally {
+      // The frame has been copied out, so give the buffer back to the camera.
+      frame.release();
+    }
   }
-}
-
-
-
-
-
-
-
-
-
+  
+  // Logs the sharpness gate's state and the last downscaling factor every STATS_LOG_INTERVAL_MS.
+  // Both are only touched on this thread, so they're read here rather than by
+  // CaptureActivityHandler.
+  private void logStats() {
+    long now = System.currentTimeMillis();
+    if (statsLogTime == 0) {
+      statsLogTime = now;
+    }
+    if (now - statsLogTime < STATS_LOG_INTERVAL_MS) {
+      return;
+    }
+    statsLogTime = now;
+    Log.i(TAG, "Worker " + workerIndex + " sharpness: last score " + sharpnessGate.getLastScore()
+        + ", threshold " + sharpnessGate.getThreshold() + ", skipped "
+        + sharpnessGate.getFramesSkipped() + " of " + sharpnessGate.getFramesChecked() + " frames ("
+        + Math.round(sharpnessGate.getSkipRate() * 100) + "%)");
+    if (activity.isTextScaling()) {
+      Log.i(TAG, "Worker " + workerIndex + " text scale: line height "
+          + textScaler.getLastLineHeight() + " px, downscaled by " + textScaler.getLastScale());
+    }
+  }
+  
+  /**
+   * Prepares the framed region for the engine and builds the job to recognize it. The region is
+   * downscaled if its text is large, and split into strips in strip recognition mode. Either one
+   * needs the greyscale image, so the Bitmap is only used when neither applies.
+   *
+   * @param source The framed region
+   * @param indeterminateDialog The progress dialog for single-shot mode, or null in continuous mode
+   * @param frame The frame the region came from
+   */
+  private RecognitionJob newRecognitionJob(PlanarYUVLuminanceSource source,
+      ProgressDialog indeterminateDialog, PreviewFrame frame) {
+    long renderStart = System.nanoTime();
+    long frameSequence = frame.getSequence();
+    boolean isContinuous = indeterminateDialog == null;
+    int scale = activity.isTextScaling() ? textScaler.chooseScale(source) : 1;
+    boolean isStripRecognition = stripRecognizer != null;
+    if (!activity.isLuminanceImageInput() && scale == 1 && !isStripRecognition) {
+      Bitmap bitmap = source.renderCroppedGreyscaleBitmap();
+      PipelineLatency.record(PipelineLatency.Stage.IMAGE_RENDER, renderStart);
+      RecognitionJob job = isContinuous
+          ? new RecognitionJob(activity, bitmap, workerIndex, frameSequence)
+          : new RecognitionJob(activity, indeterminateDialog, bitmap);
+      job.setCaptureTime(frame.getTimestamp());
+      job.setCorrector(getCorrector());
+      return job;
+    }
 
+    greyscaleBuffer = source.renderCroppedGreyscale(greyscaleBuffer);
+    byte[] greyscale = greyscaleBuffer;
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (scale > 1) {
+      scaledBuffer = textScaler.downscale(greyscaleBuffer, width, height, scale, scaledBuffer);
+      greyscale = scaledBuffer;
+      width /= scale;
+      height /= scale;
+    }
+    PipelineLatency.record(PipelineLatency.Stage.IMAGE_RENDER, renderStart);
 
+    RecognitionJob job = isContinuous
+        ? new RecognitionJob(activity, greyscale, width, height, workerIndex, frameSequence)
+        : new RecognitionJob(activity, indeterminateDialog, greyscale, width, height);
+    job.setScale(scale);
+    job.setCaptureTime(frame.getTimestamp());
+    job.setCorrector(getCorrector());
+    if (isStripRecognition) {
+      StripSplitter.Strip[] strips = stripSplitter.split(
+          new PlanarYUVLuminanceSource(greyscale, width, height, 0, 0, width, height, false),
+          stripRecognizer.getMaxStrips());
+      if (strips.length > 1) {
+        job.setStrips(stripRecognizer, strips);
+      }
+    }
+    return job;
+  }
+  
+  // Returns this worker's lexicon corrector, or null if correction is off or there is no lexicon
+  // for the language. A new corrector is made when the lexicon changes with the language.
+  private LexiconCorrector getCorrector() {
+    Lexicon lexicon = activity.isLexiconCorrection() ? activity.getLexicon() : null;
+    if (lexicon == null) {
+      return null;
+    }
+    if (corrector == null || corrector.getLexicon() != lexicon) {
+      corrector = new LexiconCorrector(lexicon);
+    }
+    return corrector;
+  }
+  
+  private void sendToCaptureHandler(int what) {
+    sendToCaptureHandler(what, null);
+  }
+  
+  private void sendToCaptureHandler(int what, Object obj) {
+    Handler captureHandler = activity.getHandler();
+    if (captureHandler != null) {
+      Message.obtain(captureHandler, what, workerIndex, 0, obj).sendToTarget();
+    }
+  }
+}
@@ -18,10 +18,8 @@
 package edu.sfsu.cs.orange.ocr;
 
 //import com.google.zxing.ResultPointCallback;
-import com.googlecode.tesseract.android.TessBaseAPI;
 
 import edu.sfsu.cs.orange.ocr.CaptureActivity;
-import android.os.Handler;
 import android.os.Looper;
 import java.util.concurrent.CountDownLatch;
 
@@ -37,19 +35,29 @@ final class DecodeThread extends Thread {
 
   private final CaptureActivity activity;
 //  private final Hashtable<DecodeHintType, Object> hints;
-  private Handler handler;
+  private DecodeHandler handler;
   private final CountDownLatch handlerInitLatch;
-  private final TessBaseAPI baseApi;
+  private final RecognitionExecutor executor;
+  private final int workerIndex;
+  private final FrameChangeDetector changeDetector;
+  private final MotionTracker motionTracker;
+  private final StripRecognizer stripRecognizer;
 
   DecodeThread(CaptureActivity activity, //ResultPointCallback resultPointCallback,
-               TessBaseAPI baseApi) {
+               RecognitionExecutor executor, int workerIndex, FrameChangeDetector changeDetector,
+               MotionTracker motionTracker, StripRecognizer stripRecognizer) {
+    super("DecodeThread-" + workerIndex);
     this.activity = activity;
-    this.baseApi = baseApi;
+    this.executor = executor;
+    this.workerIndex = workerIndex;
+    this.changeDetector = changeDetector;
+    this.motionTracker = motionTracker;
+    this.stripRecognizer = stripRecognizer;
     handlerInitLatch = new CountDownLatch(1);
 //    hints = new Hashtable<DecodeHintType, Object>(3);
   }
 
-  Handler getHandler() {
+  DecodeHandler getHandler() {
     try {
       handlerInitLatch.await();
     } catch (InterruptedException ie) {
@@ -62,7 +70,7 @@ final class DecodeThread extends Thread {
   public void run() {
     Looper.prepare();
     handler = new DecodeHandler(activity, //hints, 
-        baseApi);
+        executor, workerIndex, changeDetector, motionTracker, stripRecognizer);
     handlerInitLatch.countDown();
     Looper.loop();
   }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * A Translator that looks words up in a dictionary file, for using and testing translation
+ * without a network translation service.
+ *
+ * The dictionary for a pair of languages is the file translation/[source]-[target].txt in the
+ * storage directory, for example translation/eng-es.txt, with one entry per line: the word, a tab,
+ * and its translation. Words are matched exactly, and then in lower case. A missing file is
+ * an error, like an unreachable service, so that the words are asked for again once it has been
+ * installed.
+ */
+final class DictionaryTranslator implements Translator {
+
+  private static final String TAG = DictionaryTranslator.class.getSimpleName();
+
+  private final File directory;
+
+  // The dictionary last loaded, and the language pair it is for
+  private Map<String, String> dictionary;
+  private String dictionaryLanguages;
+
+  /**
+   * @param storageRoot The directory holding the translation directory
+   */
+  DictionaryTranslator(File storageRoot) {
+    directory = new File(storageRoot, "translation");
+  }
+
+  public String getName() {
+    return "dictionary";
+  }
+
+  public Map<String, String> translate(List<String> words, String sourceLanguageCode,
+      String targetLanguageCode) throws IOException {
+    String languages = sourceLanguageCode + "-" + targetLanguageCode;
+    if (!languages.equals(dictionaryLanguages)) {
+      dictionary = load(new File(directory, languages + ".txt"));
+      dictionaryLanguages = languages;
+    }
+    Map<String, String> translations = new HashMap<String, String>();
+    for (String word : words) {
+      String translation = dictionary.get(word);
+      if (translation == null) {
+        translation = dictionary.get(word.toLowerCase());
+      }
+      if (translation != null) {
+        translations.put(word, translation);
+      }
+    }
+    return translations;
+  }
+
+  private static Map<String, String> load(File file) throws IOException {
+    if (!file.exists()) {
+      throw new FileNotFoundException("No dictionary at " + file);
+    }
+    Map<String, String> dictionary = new HashMap<String, String>();
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int tab = line.indexOf('\t');
+        if (tab > 0 && tab < line.length() - 1) {
+          dictionary.put(line.substring(0, tab), line.substring(tab + 1));
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    Log.i(TAG, "Loaded " + dictionary.size() + " entries from " + file);
+    return dictionary;
+  }
+}
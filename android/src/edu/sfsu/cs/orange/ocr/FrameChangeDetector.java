@@ -0,0 +1,220 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+/**
+ * Detects when the framed region has not changed since the frame behind the last accepted OCR
+ * result, so that the previous result can be reissued instead of running the engine again.
+ *
+ * Each frame is reduced to a Signature of mean luminance over a coarse grid of cells. Two
+ * signatures match if, after removing the difference in overall brightness (so that auto exposure
+ * drift doesn't count as a change), both the mean and the largest per-cell difference are within
+ * tolerance.
+ *
+ * Each decode worker computes signatures with its own Signature object. The detector itself is
+ * shared: the signature of every frame sent to the engine is held as pending under its frame
+ * sequence number, and becomes the reference when that frame's result is accepted on the UI
+ * thread. Those methods are synchronized.
+ */
+final class FrameChangeDetector {
+
+  private static final int GRID_COLUMNS = 32;
+  private static final int GRID_ROWS = 8;
+  private static final int CELLS = GRID_COLUMNS * GRID_ROWS;
+
+  // Only every SAMPLE_STEP-th pixel of every SAMPLE_STEP-th row contributes to a cell
+  private static final int SAMPLE_STEP = 2;
+
+  // Largest mean per-cell luminance difference for two frames to be considered the same
+  private static final int MEAN_TOLERANCE = 4;
+
+  // Largest difference in any single cell, so that one changed word is still noticed
+  private static final int CELL_TOLERANCE = 24;
+
+  /**
+   * The coarse luminance signature of one frame, with the scratch space to compute it. Not
+   * thread-safe: each decode worker keeps its own.
+   */
+  static final class Signature {
+    private final int[] cellSums = new int[CELLS];
+    private final int[] cellCounts = new int[CELLS];
+    private final int[] cells = new int[CELLS];
+    private int width;
+    private int height;
+    private byte[] row;
+
+    // Averages the luminance of each grid cell.
+    void compute(LuminanceSource source) {
+      int width = source.getWidth();
+      int height = source.getHeight();
+      for (int i = 0; i < CELLS; i++) {
+        cellSums[i] = 0;
+        cellCounts[i] = 0;
+      }
+      for (int y = 0; y < height; y += SAMPLE_STEP) {
+        row = source.getRow(y, row);
+        int cellRowStart = (y * GRID_ROWS / height) * GRID_COLUMNS;
+        for (int x = 0; x < width; x += SAMPLE_STEP) {
+          int cell = cellRowStart + x * GRID_COLUMNS / width;
+          cellSums[cell] += row[x] & 0xff;
+          cellCounts[cell]++;
+        }
+      }
+      for (int i = 0; i < CELLS; i++) {
+        cells[i] = cellCounts[i] == 0 ? 0 : cellSums[i] / cellCounts[i];
+      }
+      this.width = width;
+      this.height = height;
+    }
+
+    void copyFrom(Signature other) {
+      System.arraycopy(other.cells, 0, cells, 0, CELLS);
+      width = other.width;
+      height = other.height;
+    }
+  }
+
+  private final Signature[] pending;
+  private final long[] pendingSequences;
+  private int nextPendingSlot;
+
+  private final Signature reference = new Signature();
+  private boolean hasReference;
+  private long referenceRecognitionTime;
+
+  private long framesCompared;
+  private long framesUnchanged;
+  private long recognitionTimeSaved;
+
+  /**
+   * @param maxFramesInFlight The number of frames that may be with the engines at once
+   */
+  FrameChangeDetector(int maxFramesInFlight) {
+    pending = new Signature[maxFramesInFlight];
+    pendingSequences = new long[maxFramesInFlight];
+    for (int i = 0; i < maxFramesInFlight; i++) {
+      pending[i] = new Signature();
+      pendingSequences[i] = -1;
+    }
+  }
+
+  /**
+   * Compares a frame's signature with the frame behind the last accepted result.
+   *
+   * @param signature The signature of the framed region, already computed
+   * @return True if the last accepted result still describes this frame
+   */
+  synchronized boolean isUnchanged(Signature signature) {
+    framesCompared++;
+    if (!hasReference || signature.width != reference.width
+        || signature.height != reference.height) {
+      return false;
+    }
+    int[] current = signature.cells;
+    int[] previous = reference.cells;
+    int currentMean = mean(current);
+    int previousMean = mean(previous);
+    int totalDifference = 0;
+    for (int i = 0; i < CELLS; i++) {
+      int difference = Math.abs((current[i] - currentMean) - (previous[i] - previousMean));
+      if (difference > CELL_TOLERANCE) {
+        return false;
+      }
+      totalDifference += difference;
+    }
+    if (totalDifference > MEAN_TOLERANCE * CELLS) {
+      return false;
+    }
+    framesUnchanged++;
+    recognitionTimeSaved += referenceRecognitionTime;
+    return true;
+  }
+
+  /**
+   * Remembers the signature of a frame just passed to the OCR engine, so that it can become the
+   * reference if its result is accepted.
+   *
+   * @param signature The frame's signature
+   * @param frameSequence The frame's sequence number
+   */
+  synchronized void markPending(Signature signature, long frameSequence) {
+    pending[nextPendingSlot].copyFrom(signature);
+    pendingSequences[nextPendingSlot] = frameSequence;
+    nextPendingSlot = (nextPendingSlot + 1) % pending.length;
+  }
+
+  /**
+   * Makes a pending frame the reference, after its OCR result was accepted.
+   *
+   * @param frameSequence The sequence number of the frame behind the accepted result
+   * @param recognitionTime The time the engine took for the accepted result, in milliseconds
+   */
+  synchronized void commitPending(long frameSequence, long recognitionTime) {
+    for (int i = 0; i < pending.length; i++) {
+      if (pendingSequences[i] == frameSequence) {
+        reference.copyFrom(pending[i]);
+        referenceRecognitionTime = recognitionTime;
+        hasReference = true;
+        pendingSequences[i] = -1;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Forgets the reference frame, so that the next frame is always recognized.
+   */
+  synchronized void reset() {
+    hasReference = false;
+  }
+
+  synchronized long getFramesCompared() {
+    return framesCompared;
+  }
+
+  synchronized long getFramesUnchanged() {
+    return framesUnchanged;
+  }
+
+  /**
+   * @return The fraction of compared frames that reused the previous result, from 0 to 1.
+   */
+  synchronized float getUnchangedRate() {
+    return framesCompared == 0 ? 0f : framesUnchanged / (float) framesCompared;
+  }
+
+  /**
+   * @return The engine time avoided by reusing results, estimated from the recognition time of
+   *         each reused result, in milliseconds.
+   */
+  synchronized long getRecognitionTimeSaved() {
+    return recognitionTimeSaved;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "unchanged=" + framesUnchanged + "/" + framesCompared + " saved="
+        + recognitionTimeSaved + "ms";
+  }
+
+  private static int mean(int[] signature) {
+    int sum = 0;
+    for (int i = 0; i < CELLS; i++) {
+      sum += signature[i];
+    }
+    return sum / CELLS;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+/**
+ * Rejects blurry preview frames before they are sent to the OCR engine. Frames captured while the
+ * lens is still focusing or the hand is moving come back from Tesseract empty or with low
+ * confidence, after hundreds of milliseconds of work.
+ *
+ * Sharpness is scored as the mean squared luminance gradient over a sparse grid of pixels. A frame
+ * passes if its score reaches a fixed fraction of the sharpest recent frame. The reference score
+ * decays on every frame, so the threshold follows changes in the scene's contrast, and a run of
+ * rejected frames always ends eventually.
+ *
+ * Only LuminanceSource is used, so the gate can be run on recorded frames off the device.
+ */
+final class FrameSharpnessGate {
+
+  // Only every SAMPLE_STEP-th pixel of every SAMPLE_STEP-th row is measured
+  private static final int SAMPLE_STEP = 2;
+
+  // A frame must score at least this fraction of the recent sharpest score to be recognized
+  private static final float RELATIVE_THRESHOLD = 0.5f;
+
+  // The recent sharpest score is multiplied by this on every frame checked
+  private static final float PEAK_DECAY = 0.95f;
+
+  // Frames scoring below this are featureless, whatever the recent scores were
+  private static final float MINIMUM_SCORE = 10f;
+
+  private byte[] row;
+  private byte[] nextRow;
+  private float peakScore;
+  private float lastScore;
+  private long framesChecked;
+  private long framesSkipped;
+
+  /**
+   * Scores the frame and decides whether it is sharp enough to be worth recognizing.
+   *
+   * @param source The luminance data for the framed region
+   * @return True if the frame should be passed to the OCR engine
+   */
+  boolean accept(LuminanceSource source) {
+    float score = measure(source);
+    peakScore = Math.max(score, peakScore * PEAK_DECAY);
+    lastScore = score;
+    framesChecked++;
+    if (score < MINIMUM_SCORE || score < peakScore * RELATIVE_THRESHOLD) {
+      framesSkipped++;
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Computes the mean squared horizontal plus vertical luminance gradient of the source, sampled
+   * every SAMPLE_STEP pixels in each direction.
+   *
+   * @param source The luminance data to score
+   * @return The sharpness score. Higher is sharper.
+   */
+  float measure(LuminanceSource source) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    long energy = 0;
+    int count = 0;
+    for (int y = 0; y + 1 < height; y += SAMPLE_STEP) {
+      row = source.getRow(y, row);
+      nextRow = source.getRow(y + 1, nextRow);
+      for (int x = 0; x + 1 < width; x += SAMPLE_STEP) {
+        int luminance = row[x] & 0xff;
+        int dx = (row[x + 1] & 0xff) - luminance;
+        int dy = (nextRow[x] & 0xff) - luminance;
+        energy += dx * dx + dy * dy;
+        count++;
+      }
+    }
+    return count == 0 ? 0f : (float) energy / count;
+  }
+
+  /**
+   * @return The score of the most recently checked frame.
+   */
+  float getLastScore() {
+    return lastScore;
+  }
+
+  /**
+   * @return The score the next frame needs to reach to be accepted, before decay.
+   */
+  float getThreshold() {
+    return Math.max(MINIMUM_SCORE, peakScore * RELATIVE_THRESHOLD);
+  }
+
+  long getFramesChecked() {
+    return framesChecked;
+  }
+
+  long getFramesSkipped() {
+    return framesSkipped;
+  }
+
+  /**
+   * @return The fraction of checked frames that were rejected, from 0 to 1.
+   */
+  float getSkipRate() {
+    return framesChecked == 0 ? 0f : framesSkipped / (float) framesChecked;
+  }
+
+  @Override
+  public String toString() {
+    return "score=" + lastScore + " threshold=" + getThreshold() + " skipped=" + framesSkipped
+        + "/" + framesChecked;
+  }
+}
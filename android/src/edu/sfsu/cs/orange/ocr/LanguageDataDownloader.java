@@ -0,0 +1,721 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+import android.util.Log;
+
+/**
+ * Downloads gzipped language data and installs it uncompressed, resuming where an earlier attempt
+ * stopped.
+ *
+ * When the server supports range requests, the compressed file is fetched in up to MAX_CHUNKS
+ * parts at once, each written at its own offset in a partial file, with their progress saved to a
+ * state file beside it. A dropped or stalled connection is retried from where its part stopped,
+ * and a download interrupted by the app closing carries on from there on the next start, as long
+ * as the server's ETag or Last-Modified date still matches. A server without range support, or
+ * one that answers a range request with the whole file, is read in one stream, and starts over
+ * when it drops.
+ *
+ * The calling thread decompresses the file while it downloads, reading the partial file as far as
+ * it has arrived without gaps, so the data is never read back for a second pass. The gzip
+ * trailer's CRC-32 and length are checked as the stream ends, and the compressed bytes are checked
+ * against the SHA-256 published beside the file as name.gz.sha256, when there is one. The data is
+ * decompressed into a temporary file in the destination directory and renamed into place once
+ * verified, so the destination file is never seen incomplete, and its LanguageDataManifest
+ * written.
+ */
+final class LanguageDataDownloader {
+
+  private static final String TAG = LanguageDataDownloader.class.getSimpleName();
+
+  // Most parts fetched at once, and the smallest part worth a connection of its own
+  private static final int MAX_CHUNKS = 4;
+  private static final long MIN_CHUNK_SIZE = 256 * 1024;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // Attempts at a part without progress, and the delay before the first retry, doubled for each
+  // one after it
+  private static final int MAX_ATTEMPTS = 6;
+  private static final long RETRY_DELAY_MS = 500L;
+
+  // A connection that sends nothing for this long is dropped and retried
+  private static final int CONNECT_TIMEOUT_MS = 15000;
+  private static final int READ_TIMEOUT_MS = 20000;
+
+  // Progress is saved to the state file after at least this many new bytes
+  private static final long STATE_SAVE_INTERVAL = 256 * 1024;
+
+  // A part of the compressed file, from start for length bytes, of which the first downloaded
+  // have arrived. A length of -1 is a single stream of unknown length.
+  private static final class Chunk {
+    final long start;
+    final long length;
+    long downloaded;
+    boolean isComplete;
+
+    Chunk(long start, long length) {
+      this.start = start;
+      this.length = length;
+    }
+  }
+
+  private final URL url;
+  private final File destinationFile;
+  private final File partialFile;
+  private final File stateFile;
+  private final File inflatedFile;
+  private final ProgressListener listener;
+
+  // Set by the probe at the start of each attempt
+  private boolean isRanged;
+  // Set once the server has answered a range request with the whole file, after which ranges are
+  // no longer asked for
+  private volatile boolean isRangeIgnored;
+  private long totalLength;
+  private String validator;
+
+  // Guarded by this
+  private Chunk[] chunks;
+  private long downloadedBytes;
+  private long unsavedBytes;
+  private int percentCompleteLast;
+  private IOException failure;
+  private final List<HttpURLConnection> openConnections = new ArrayList<HttpURLConnection>();
+
+  /**
+   * @param url The gzipped file
+   * @param destinationFile Where to install the file uncompressed
+   * @param listener Receives progress
+   */
+  LanguageDataDownloader(URL url, File destinationFile, ProgressListener listener) {
+    this.url = url;
+    this.destinationFile = destinationFile;
+    this.partialFile = new File(destinationFile.getPath() + ".gz.part");
+    this.stateFile = new File(destinationFile.getPath() + ".gz.part.state");
+    this.inflatedFile = new File(destinationFile.getPath() + ".download");
+    this.listener = listener;
+  }
+
+  /**
+   * Downloads, verifies and installs the file.
+   *
+   * @return False if the server doesn't have the file
+   * @throws IOException If the download kept failing, or the data didn't verify
+   */
+  boolean download() throws IOException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return attemptDownload();
+      } catch (VerificationException e) {
+        throw e;
+      } catch (IOException e) {
+        if (isRanged && isRangeIgnored) {
+          Log.w(TAG, url + " ignored a range request, downloading it in one stream");
+          discard();
+          continue;
+        }
+        // Parts of a ranged download have been retried already, and the rest is kept for next
+        // time. A single stream starts over.
+        if (isRanged || attempt >= MAX_ATTEMPTS) {
+          throw e;
+        }
+        Log.w(TAG, "Download of " + url + " dropped, starting over", e);
+        sleep(RETRY_DELAY_MS << (attempt - 1));
+      }
+    }
+  }
+
+  private boolean attemptDownload() throws IOException {
+    if (!probe()) {
+      return false;
+    }
+    String expectedDigest = fetchExpectedDigest();
+    synchronized (this) {
+      failure = null;
+      percentCompleteLast = -1;
+      if (!isRanged || !loadState()) {
+        planChunks();
+        partialFile.delete();
+      }
+    }
+    Log.i(TAG, "Downloading " + url + ": " + totalLength + " bytes in " + chunks.length
+        + " parts, " + downloadedBytes + " already here");
+
+    MessageDigest digest = newDigest();
+    CRC32 crc = new CRC32();
+    RandomAccessFile partial = new RandomAccessFile(partialFile, "rw");
+    FileChannel channel = partial.getChannel();
+    ExecutorService executor = Executors.newFixedThreadPool(chunks.length);
+    try {
+      List<Future<Void>> fetches = new ArrayList<Future<Void>>();
+      for (Chunk chunk : chunks) {
+        if (!chunk.isComplete) {
+          fetches.add(executor.submit(new ChunkFetcher(chunk, channel)));
+        }
+      }
+      try {
+        inflate(channel, digest, crc);
+      } catch (ZipException e) {
+        discard();
+        throw new VerificationException("Corrupt data from " + url, e);
+      } catch (EOFException e) {
+        // The whole file arrived, but the gzip stream in it was cut short
+        discard();
+        throw new VerificationException("Truncated data from " + url, e);
+      }
+      for (Future<Void> fetch : fetches) {
+        await(fetch);
+      }
+    } catch (IOException e) {
+      fail(e);
+      throw e;
+    } finally {
+      stopFetches(executor);
+      synchronized (this) {
+        if (isRanged && partialFile.exists()) {
+          saveState();
+        }
+      }
+      partial.close();
+    }
+
+    String actualDigest = toHex(digest.digest());
+    if (expectedDigest != null && !expectedDigest.equalsIgnoreCase(actualDigest)) {
+      discard();
+      throw new VerificationException("Checksum mismatch for " + url + ": expected "
+          + expectedDigest + ", got " + actualDigest, null);
+    }
+    LanguageDataManifest.delete(destinationFile);
+    if (!inflatedFile.renameTo(destinationFile)) {
+      throw new IOException("Couldn't move " + inflatedFile + " to " + destinationFile);
+    }
+    LanguageDataManifest.write(destinationFile, crc.getValue());
+    partialFile.delete();
+    stateFile.delete();
+    Log.i(TAG, "Installed " + destinationFile
+        + (expectedDigest != null ? ", SHA-256 verified" : ", no SHA-256 published"));
+    return true;
+  }
+
+  // Asks for the file's headers, which tell whether the server supports ranges, and the file's
+  // length and validator. Returns false if the server doesn't have the file.
+  private boolean probe() throws IOException {
+    HttpURLConnection connection = openConnection(url, null);
+    connection.setRequestMethod("HEAD");
+    try {
+      int responseCode = connection.getResponseCode();
+      if (responseCode != HttpURLConnection.HTTP_OK) {
+        Log.e(TAG, "Got HTTP " + responseCode + " for " + url);
+        return false;
+      }
+      totalLength = parseLength(connection.getHeaderField("Content-Length"));
+      isRanged = !isRangeIgnored && totalLength > 0
+          && "bytes".equals(connection.getHeaderField("Accept-Ranges"));
+      String etag = connection.getHeaderField("ETag");
+      validator = etag != null ? etag : connection.getHeaderField("Last-Modified");
+      return true;
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  // Reads the SHA-256 published beside the file, or returns null if there isn't one.
+  private String fetchExpectedDigest() {
+    HttpURLConnection connection = null;
+    try {
+      connection = openConnection(new URL(url + ".sha256"), null);
+      if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+        return null;
+      }
+      // As written by sha256sum: the digest in hex, then the file name
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(connection.getInputStream(), "US-ASCII"));
+      try {
+        String line = reader.readLine();
+        String digest = line != null ? line.trim().split("\\s+")[0] : "";
+        return digest.matches("[0-9a-fA-F]{64}") ? digest : null;
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't fetch checksum for " + url, e);
+      return null;
+    } finally {
+      if (connection != null) {
+        connection.disconnect();
+      }
+    }
+  }
+
+  private static HttpURLConnection openConnection(URL url, String range) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setAllowUserInteraction(false);
+    connection.setInstanceFollowRedirects(true);
+    connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+    connection.setReadTimeout(READ_TIMEOUT_MS);
+    // Ranges and lengths are of the file as stored, not of a compressed transfer of it
+    connection.setRequestProperty("Accept-Encoding", "identity");
+    if (range != null) {
+      connection.setRequestProperty("Range", range);
+    }
+    return connection;
+  }
+
+  // Splits the file into parts, one per connection, or one part for a single stream.
+  private void planChunks() {
+    int count = 1;
+    if (isRanged) {
+      count = (int) Math.max(1, Math.min(MAX_CHUNKS, totalLength / MIN_CHUNK_SIZE));
+    }
+    chunks = new Chunk[count];
+    if (!isRanged) {
+      chunks[0] = new Chunk(0, totalLength > 0 ? totalLength : -1);
+    } else {
+      long chunkLength = (totalLength + count - 1) / count;
+      for (int i = 0; i < count; i++) {
+        long start = i * chunkLength;
+        chunks[i] = new Chunk(start, Math.min(chunkLength, totalLength - start));
+      }
+    }
+    downloadedBytes = 0;
+    unsavedBytes = 0;
+  }
+
+  // Decompresses the partial file as it arrives, from its start, into the temporary file, and
+  // takes the CRC-32 of what it writes for the manifest.
+  private void inflate(FileChannel channel, MessageDigest digest, CRC32 crc) throws IOException {
+    InputStream compressed = new PartialFileInputStream(channel, digest);
+    FileOutputStream output = new FileOutputStream(inflatedFile);
+    try {
+      GZIPInputStream input = new GZIPInputStream(compressed, BUFFER_SIZE);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int length;
+      while ((length = input.read(buffer)) != -1) {
+        crc.update(buffer, 0, length);
+        output.write(buffer, 0, length);
+      }
+      // Anything after the gzip trailer still counts toward the checksum
+      while (compressed.read(buffer) != -1) {
+        // Digested as read
+      }
+      output.getFD().sync();
+    } finally {
+      output.close();
+    }
+  }
+
+  // Reads the partial file from its start, waiting for each byte to be downloaded, and digests
+  // what it reads.
+  private final class PartialFileInputStream extends InputStream {
+    private final FileChannel channel;
+    private final MessageDigest digest;
+    private final byte[] single = new byte[1];
+    private long position;
+
+    PartialFileInputStream(FileChannel channel, MessageDigest digest) {
+      this.channel = channel;
+      this.digest = digest;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      long available = awaitAvailable(position);
+      if (available < 0) {
+        return -1;
+      }
+      int wanted = (int) Math.min(length, available - position);
+      int read = channel.read(ByteBuffer.wrap(buffer, offset, wanted), position);
+      if (read <= 0) {
+        throw new EOFException("Partial file ended at " + position);
+      }
+      digest.update(buffer, offset, read);
+      position += read;
+      return read;
+    }
+  }
+
+  // Fetches one part, retrying from where it stopped while it keeps making progress.
+  private final class ChunkFetcher implements Callable<Void> {
+    private final Chunk chunk;
+    private final FileChannel channel;
+
+    ChunkFetcher(Chunk chunk, FileChannel channel) {
+      this.chunk = chunk;
+      this.channel = channel;
+    }
+
+    public Void call() throws IOException {
+      try {
+        fetchWithRetries();
+      } catch (RuntimeException e) {
+        // Don't leave the decompressing thread waiting for this part
+        IOException failed = new IOException("Part at " + chunk.start + " failed");
+        failed.initCause(e);
+        fail(failed);
+        throw e;
+      }
+      return null;
+    }
+
+    private void fetchWithRetries() throws IOException {
+      int attempts = 0;
+      while (!isComplete(chunk) && !isFailed()) {
+        long before = getDownloaded(chunk);
+        try {
+          fetch(chunk, channel);
+        } catch (IOException e) {
+          if (getDownloaded(chunk) > before) {
+            attempts = 0;
+          }
+          attempts++;
+          if (!isRanged || attempts >= MAX_ATTEMPTS || isFailed()) {
+            fail(e);
+            throw e;
+          }
+          Log.w(TAG, "Part at " + chunk.start + " dropped at " + getDownloaded(chunk)
+              + ", retrying", e);
+          sleep(RETRY_DELAY_MS << (attempts - 1));
+        }
+      }
+    }
+  }
+
+  private void fetch(Chunk chunk, FileChannel channel) throws IOException {
+    long position = chunk.start + getDownloaded(chunk);
+    long end = chunk.length < 0 ? Long.MAX_VALUE : chunk.start + chunk.length;
+    String range = isRanged ? "bytes=" + position + "-" + (end - 1) : null;
+    HttpURLConnection connection = openConnection(url, range);
+    synchronized (this) {
+      if (failure != null) {
+        throw new IOException("Download of " + url + " stopped");
+      }
+      openConnections.add(connection);
+    }
+    try {
+      int expectedCode = isRanged ? HttpURLConnection.HTTP_PARTIAL : HttpURLConnection.HTTP_OK;
+      int responseCode = connection.getResponseCode();
+      if (isRanged && responseCode == HttpURLConnection.HTTP_OK) {
+        // Retrying won't help, and the other parts stop too
+        isRangeIgnored = true;
+        IOException e = new IOException("Got the whole of " + url + " for " + range);
+        fail(e);
+        throw e;
+      }
+      if (responseCode != expectedCode) {
+        throw new IOException("Got HTTP " + responseCode + " for " + range + " of " + url);
+      }
+      InputStream input = connection.getInputStream();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+      while (position < end && !isFailed()) {
+        int length = input.read(buffer, 0, (int) Math.min(BUFFER_SIZE, end - position));
+        if (length < 0) {
+          if (chunk.length < 0) {
+            // A stream of unknown length ends when the server closes it
+            advance(chunk, 0, true);
+            return;
+          }
+          throw new EOFException("Connection closed at " + position + " of " + url);
+        }
+        wrapped.clear();
+        wrapped.limit(length);
+        while (wrapped.hasRemaining()) {
+          position += channel.write(wrapped, position);
+        }
+        advance(chunk, length, false);
+      }
+    } finally {
+      synchronized (this) {
+        openConnections.remove(connection);
+      }
+      connection.disconnect();
+    }
+  }
+
+  // Stops the fetches of this attempt and waits for them to end, so that none of them is left to
+  // act on the next attempt's state. Each stops at its next buffer once failed, and one still
+  // waiting for its response is disconnected.
+  private void stopFetches(ExecutorService executor) {
+    synchronized (this) {
+      fail(new IOException("Download of " + url + " stopped"));
+      for (HttpURLConnection connection : openConnections) {
+        connection.disconnect();
+      }
+    }
+    // Interrupts the fetches waiting to retry
+    executor.shutdownNow();
+    try {
+      if (!executor.awaitTermination(CONNECT_TIMEOUT_MS + READ_TIMEOUT_MS,
+          TimeUnit.MILLISECONDS)) {
+        Log.w(TAG, "Parts of " + url + " are still downloading");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private synchronized void advance(Chunk chunk, int length, boolean isEnd) {
+    chunk.downloaded += length;
+    chunk.isComplete = isEnd || (chunk.length >= 0 && chunk.downloaded >= chunk.length);
+    downloadedBytes += length;
+    unsavedBytes += length;
+    if (isRanged && unsavedBytes >= STATE_SAVE_INTERVAL) {
+      saveState();
+    }
+    if (totalLength > 0) {
+      int percentComplete = (int) (downloadedBytes * 100 / totalLength);
+      if (percentComplete > percentCompleteLast) {
+        percentCompleteLast = percentComplete;
+        listener.onProgress(percentComplete);
+      }
+    }
+    notifyAll();
+  }
+
+  // Waits until the byte at the given position has been downloaded, along with every byte before
+  // it. Returns the end of what has arrived without gaps, or -1 if the whole file is before the
+  // position.
+  private synchronized long awaitAvailable(long position) throws IOException {
+    while (true) {
+      if (failure != null) {
+        IOException e = new IOException("Download of " + url + " failed");
+        e.initCause(failure);
+        throw e;
+      }
+      long end = 0;
+      boolean isAllComplete = true;
+      for (Chunk chunk : chunks) {
+        end = chunk.start + chunk.downloaded;
+        if (!chunk.isComplete) {
+          isAllComplete = false;
+          break;
+        }
+      }
+      if (end > position) {
+        return end;
+      }
+      if (isAllComplete) {
+        return -1;
+      }
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for " + url);
+      }
+    }
+  }
+
+  private synchronized boolean isComplete(Chunk chunk) {
+    return chunk.isComplete;
+  }
+
+  private synchronized long getDownloaded(Chunk chunk) {
+    return chunk.downloaded;
+  }
+
+  private synchronized boolean isFailed() {
+    return failure != null;
+  }
+
+  private synchronized void fail(IOException e) {
+    if (failure == null) {
+      failure = e;
+    }
+    notifyAll();
+  }
+
+  // Reads the state of an earlier download of the same file. Returns false if there is none, or
+  // the file has changed on the server since.
+  private boolean loadState() {
+    if (validator == null || !stateFile.exists() || !partialFile.exists()) {
+      return false;
+    }
+    try {
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(new FileInputStream(stateFile), "UTF-8"));
+      try {
+        if (!validator.equals(reader.readLine())
+            || totalLength != Long.parseLong(reader.readLine())) {
+          Log.i(TAG, url + " has changed since the last download, starting over");
+          return false;
+        }
+        List<Chunk> loaded = new ArrayList<Chunk>();
+        long downloaded = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] fields = line.split(" ");
+          Chunk chunk = new Chunk(Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+          chunk.downloaded = Math.min(Long.parseLong(fields[2]), chunk.length);
+          chunk.isComplete = chunk.downloaded == chunk.length;
+          downloaded += chunk.downloaded;
+          loaded.add(chunk);
+        }
+        if (loaded.isEmpty()) {
+          return false;
+        }
+        chunks = loaded.toArray(new Chunk[loaded.size()]);
+        downloadedBytes = downloaded;
+        unsavedBytes = 0;
+        return true;
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't read download state " + stateFile, e);
+      return false;
+    } catch (RuntimeException e) {
+      Log.w(TAG, "Bad download state " + stateFile, e);
+      return false;
+    }
+  }
+
+  // Writes the validator, the file's length, and each part's start, length and progress. Written
+  // to a temporary file that then replaces it, so an interrupted save leaves the previous one.
+  private void saveState() {
+    unsavedBytes = 0;
+    if (validator == null) {
+      return;
+    }
+    File temporary = new File(stateFile.getPath() + ".tmp");
+    try {
+      BufferedWriter writer = new BufferedWriter(
+          new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8"));
+      try {
+        writer.write(validator);
+        writer.write('\n');
+        writer.write(Long.toString(totalLength));
+        writer.write('\n');
+        for (Chunk chunk : chunks) {
+          writer.write(chunk.start + " " + chunk.length + " " + chunk.downloaded + "\n");
+        }
+      } finally {
+        writer.close();
+      }
+      if (!temporary.renameTo(stateFile)) {
+        throw new IOException("Couldn't replace " + stateFile);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't save download state " + stateFile, e);
+      temporary.delete();
+    }
+  }
+
+  // Deletes everything downloaded, so that the next attempt starts over.
+  private synchronized void discard() {
+    partialFile.delete();
+    stateFile.delete();
+    inflatedFile.delete();
+  }
+
+  private static void await(Future<Void> fetch) throws IOException {
+    try {
+      fetch.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted downloading");
+    }
+  }
+
+  private static void sleep(long delay) throws InterruptedIOException {
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting to retry");
+    }
+  }
+
+  private static long parseLength(String length) {
+    try {
+      return length != null ? Long.parseLong(length.trim()) : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("No SHA-256", e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(2 * bytes.length);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  // The downloaded data was corrupt, or didn't match its checksum, and has been deleted.
+  private static final class VerificationException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    VerificationException(String message, Throwable cause) {
+      super(message);
+      if (cause != null) {
+        initCause(cause);
+      }
+    }
+  }
+}
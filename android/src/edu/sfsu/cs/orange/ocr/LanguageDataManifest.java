@@ -0,0 +1,188 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import android.util.Log;
+
+/**
+ * Records what an installed language data file should look like, so that later starts can tell
+ * it is intact without reading it.
+ *
+ * The manifest sits beside the file as name.manifest, and holds one line: the file's size, its
+ * modification time, and the CRC-32 of its content in hex. CRC-32 is what zip and gzip record for
+ * their entries, so installers check what they wrote against the archive's own checksum as they
+ * write it, and the manifest costs no extra pass. A file whose size and modification time still
+ * match its manifest is trusted without being read. One whose time has changed, as when the
+ * storage is copied, is read once to check its content, and its manifest updated.
+ *
+ * A file installed before manifests were kept has nothing of its own to be checked against, and
+ * may have been left truncated by an interrupted install. It is checked against the checksum of
+ * the copy it was installed from, when that is known, before its manifest is first written.
+ */
+final class LanguageDataManifest {
+
+  private static final String TAG = LanguageDataManifest.class.getSimpleName();
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  private LanguageDataManifest() {
+  }
+
+  /**
+   * Checks an installed file against its manifest.
+   *
+   * @param file The installed file
+   * @param sourceChecksum The CRC-32 of the copy a file with no manifest was installed from, such
+   *        as the one its archive in the assets records, or -1 if it isn't known
+   * @return True if the file is there and intact. A file with no manifest is trusted if it matches
+   *         sourceChecksum, or if that isn't known, and its manifest written.
+   */
+  static boolean verify(File file, long sourceChecksum) {
+    if (!file.exists()) {
+      return false;
+    }
+    long[] manifest = read(file);
+    long size = file.length();
+    long modified = file.lastModified();
+    if (manifest != null && manifest[0] == size && manifest[1] == modified) {
+      return true;
+    }
+    if (manifest != null && manifest[0] != size) {
+      Log.w(TAG, file + " is " + size + " bytes, but was installed with " + manifest[0]);
+      return false;
+    }
+    try {
+      long checksum = checksum(file);
+      if (manifest != null && manifest[2] != checksum) {
+        Log.w(TAG, file + " has changed since it was installed");
+        return false;
+      }
+      if (manifest == null && sourceChecksum != -1 && sourceChecksum != checksum) {
+        Log.w(TAG, file + " doesn't match the copy it was installed from");
+        return false;
+      }
+      write(file, checksum);
+      return true;
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't read " + file, e);
+      return false;
+    }
+  }
+
+  /**
+   * Records a file that has just been installed and checked.
+   *
+   * @param file The installed file
+   * @param checksum The CRC-32 of its content
+   */
+  static void write(File file, long checksum) {
+    File manifest = getManifestFile(file);
+    File temporary = new File(manifest.getPath() + ".tmp");
+    try {
+      BufferedWriter writer = new BufferedWriter(
+          new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8"));
+      try {
+        writer.write(file.length() + " " + file.lastModified() + " "
+            + Long.toHexString(checksum) + "\n");
+      } finally {
+        writer.close();
+      }
+      if (!temporary.renameTo(manifest)) {
+        throw new IOException("Couldn't replace " + manifest);
+      }
+    } catch (IOException e) {
+      // The file will be checked again on the next start
+      Log.w(TAG, "Couldn't write manifest " + manifest, e);
+      temporary.delete();
+    }
+  }
+
+  /**
+   * @return Whether a file has a manifest, even one that no longer matches it
+   */
+  static boolean exists(File file) {
+    return getManifestFile(file).exists();
+  }
+
+  /**
+   * Forgets a file, before it is deleted or replaced.
+   */
+  static void delete(File file) {
+    getManifestFile(file).delete();
+  }
+
+  /**
+   * @return The CRC-32 of a file's content
+   */
+  static long checksum(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[BUFFER_SIZE];
+    ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+    FileInputStream input = new FileInputStream(file);
+    try {
+      FileChannel channel = input.getChannel();
+      int length;
+      while ((length = channel.read(wrapped)) != -1) {
+        crc.update(buffer, 0, length);
+        wrapped.clear();
+      }
+    } finally {
+      input.close();
+    }
+    return crc.getValue();
+  }
+
+  private static File getManifestFile(File file) {
+    return new File(file.getPath() + ".manifest");
+  }
+
+  // Returns the size, modification time and checksum in a manifest, or null if there is none.
+  private static long[] read(File file) {
+    File manifest = getManifestFile(file);
+    if (!manifest.exists()) {
+      return null;
+    }
+    try {
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+      try {
+        String[] fields = reader.readLine().trim().split(" ");
+        return new long[] { Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+            Long.parseLong(fields[2], 16) };
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't read manifest " + manifest, e);
+    } catch (RuntimeException e) {
+      Log.w(TAG, "Bad manifest " + manifest, e);
+    }
+    // A manifest that can't be read can't vouch for the file either
+    return new long[] { -1, -1, -1 };
+  }
+}
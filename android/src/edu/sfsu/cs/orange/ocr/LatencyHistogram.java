@@ -0,0 +1,148 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size histogram of durations in nanoseconds that any number of threads can record into
+ * without locking.
+ *
+ * Buckets are log-linear: each power of two is divided into SUB_BUCKETS equal buckets, each at
+ * most about 3% of its values wide, from 1 ns to about 18 minutes. A percentile is reported as the
+ * middle of its bucket, so within about 1.6% of the exact value.
+ * Recording is a bucket index computation and two atomic increments, plus a compare-and-set when
+ * a new maximum is seen.
+ */
+final class LatencyHistogram {
+
+  // Each power of two is split into 2^SUB_BUCKET_BITS buckets
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  // Values up to 2^MAX_VALUE_BITS ns can be told apart. Larger values go in the last bucket.
+  private static final int MAX_VALUE_BITS = 40;
+
+  private static final int BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records one duration. Negative durations are counted as zero.
+   *
+   * @param nanos The duration in nanoseconds
+   */
+  void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts.incrementAndGet(bucketOf(nanos));
+    total.addAndGet(nanos);
+    long currentMax = max.get();
+    while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+      currentMax = max.get();
+    }
+  }
+
+  /**
+   * @return The number of durations recorded.
+   */
+  long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * @return The longest duration recorded, in nanoseconds.
+   */
+  long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @return The mean duration, in nanoseconds, or 0 if nothing was recorded.
+   */
+  long getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : total.get() / count;
+  }
+
+  /**
+   * Finds the duration at or below which the given fraction of recorded durations fall. Recording
+   * may continue during the call, in which case the result reflects some of the new values.
+   *
+   * @param fraction The percentile as a fraction, for example 0.99
+   * @return The duration in nanoseconds, to within half a bucket, or 0 if nothing was recorded
+   */
+  long getPercentile(double fraction) {
+    long[] snapshot = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(middleValueIn(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Clears all recorded durations. Values recorded during the call may or may not be kept.
+   */
+  void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    total.set(0);
+    max.set(0);
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int highestBit = 63 - Long.numberOfLeadingZeros(value);
+    if (highestBit >= MAX_VALUE_BITS) {
+      return BUCKETS - 1;
+    }
+    int shift = highestBit - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >> shift) & (SUB_BUCKETS - 1));
+  }
+
+  static long middleValueIn(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + ((1L << shift) - 1) / 2;
+  }
+}
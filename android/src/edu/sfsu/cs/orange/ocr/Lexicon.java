@@ -0,0 +1,257 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import android.util.Log;
+
+/**
+ * A word list stored as a DAWG, a trie whose identical subtrees are shared, in a file that is
+ * memory-mapped rather than read onto the heap. The pages of the file are loaded by the kernel
+ * as lookups touch them, and can be dropped again under memory pressure, so a list of a hundred
+ * thousand words costs the heap nothing.
+ *
+ * The file is a header of three big-endian ints, the magic number, the word count and the offset
+ * of the root node, followed by the nodes. Each node is an int holding its edge count, with the
+ * top bit set if a word ends at the node, followed by its edges sorted by label: a UTF-16 char
+ * and the int offset of the node it leads to. Children are written before their parents.
+ *
+ * Nodes are named by their offsets in the file. Lookups read the buffer with absolute gets only,
+ * so one Lexicon can be shared by every recognition thread.
+ */
+final class Lexicon {
+
+  private static final String TAG = Lexicon.class.getSimpleName();
+
+  private static final int MAGIC = 0x4C584431; // "LXD1"
+  private static final int HEADER_SIZE = 12;
+  private static final int FINAL_FLAG = 0x80000000;
+  private static final int EDGE_SIZE = 6;
+
+  private final ByteBuffer buffer;
+  private final int wordCount;
+  private final int root;
+
+  private Lexicon(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a lexicon file");
+    }
+    wordCount = buffer.getInt(4);
+    root = buffer.getInt(8);
+    if (root < HEADER_SIZE || root > buffer.capacity() - 4) {
+      throw new IOException("Bad root node offset " + root);
+    }
+  }
+
+  /**
+   * Maps a lexicon file.
+   *
+   * @param file The file, as written by write()
+   * @return The lexicon, or null if there is no such file or it isn't a lexicon
+   */
+  static Lexicon open(File file) {
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      Lexicon lexicon = map(file);
+      Log.i(TAG, "Mapped " + lexicon.wordCount + " words, " + file.length() + " bytes, from "
+          + file);
+      return lexicon;
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't map lexicon " + file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Maps a lexicon file, without logging, so that tools can use it off the device.
+   *
+   * @throws IOException If the file couldn't be mapped, or isn't a lexicon
+   */
+  static Lexicon map(File file) throws IOException {
+    FileInputStream input = new FileInputStream(file);
+    try {
+      FileChannel channel = input.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new Lexicon(buffer);
+    } finally {
+      // The mapping stays valid after the file is closed
+      input.close();
+    }
+  }
+
+  int getWordCount() {
+    return wordCount;
+  }
+
+  int getRoot() {
+    return root;
+  }
+
+  boolean isFinal(int node) {
+    return (buffer.getInt(node) & FINAL_FLAG) != 0;
+  }
+
+  int getEdgeCount(int node) {
+    return buffer.getInt(node) & ~FINAL_FLAG;
+  }
+
+  char getEdgeLabel(int node, int edge) {
+    return buffer.getChar(node + 4 + edge * EDGE_SIZE);
+  }
+
+  int getEdgeTarget(int node, int edge) {
+    return buffer.getInt(node + 4 + edge * EDGE_SIZE + 2);
+  }
+
+  /**
+   * @return The node reached from the given one by the label, or -1 if there is no such edge
+   */
+  int getChild(int node, char label) {
+    int low = 0;
+    int high = getEdgeCount(node) - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      char middleLabel = getEdgeLabel(node, middle);
+      if (middleLabel < label) {
+        low = middle + 1;
+      } else if (middleLabel > label) {
+        high = middle - 1;
+      } else {
+        return getEdgeTarget(node, middle);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return Whether the word is in the list, matched exactly
+   */
+  boolean contains(char[] word, int offset, int length) {
+    int node = root;
+    for (int i = offset; i < offset + length && node >= 0; i++) {
+      node = getChild(node, word[i]);
+    }
+    return node >= 0 && isFinal(node);
+  }
+
+  /**
+   * Builds a lexicon file from a word list. Used by LexiconBuilder to prepare the file, not on
+   * the device. Lookups are in lower case, so the words should be too.
+   *
+   * @param words The words. Duplicates are ignored, and so are words containing whitespace,
+   *              which OCR words never do.
+   * @param out Where to write the file
+   */
+  static void write(Collection<String> words, OutputStream out) throws IOException {
+    BuildNode trieRoot = new BuildNode();
+    int count = 0;
+    for (String word : new TreeSet<String>(words)) {
+      if (word.length() == 0 || hasWhitespace(word)) {
+        continue;
+      }
+      BuildNode node = trieRoot;
+      for (int i = 0; i < word.length(); i++) {
+        BuildNode child = node.children.get(word.charAt(i));
+        if (child == null) {
+          child = new BuildNode();
+          node.children.put(word.charAt(i), child);
+        }
+        node = child;
+      }
+      node.isFinal = true;
+      count++;
+    }
+
+    // Share identical subtrees, and lay out each distinct node after its children
+    List<BuildNode> order = new ArrayList<BuildNode>();
+    BuildNode root = minimize(trieRoot, new HashMap<String, BuildNode>(), order);
+    int offset = HEADER_SIZE;
+    for (BuildNode node : order) {
+      node.offset = offset;
+      offset += 4 + node.children.size() * EDGE_SIZE;
+    }
+
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeInt(count);
+    data.writeInt(root.offset);
+    for (BuildNode node : order) {
+      data.writeInt(node.children.size() | (node.isFinal ? FINAL_FLAG : 0));
+      for (Map.Entry<Character, BuildNode> edge : node.children.entrySet()) {
+        data.writeChar(edge.getKey());
+        data.writeInt(edge.getValue().offset);
+      }
+    }
+    data.flush();
+  }
+
+  // A trie node while building. Children are kept sorted by label.
+  private static final class BuildNode {
+    final TreeMap<Character, BuildNode> children = new TreeMap<Character, BuildNode>();
+    boolean isFinal;
+    int id = -1;
+    int offset;
+  }
+
+  // Replaces each child by the node already seen with the same signature, after minimizing the
+  // child's own children, and returns the node to use for this one.
+  private static BuildNode minimize(BuildNode node, Map<String, BuildNode> register,
+      List<BuildNode> order) {
+    StringBuilder signature = new StringBuilder();
+    signature.append(node.isFinal ? '1' : '0');
+    for (Map.Entry<Character, BuildNode> edge : node.children.entrySet()) {
+      BuildNode child = minimize(edge.getValue(), register, order);
+      edge.setValue(child);
+      signature.append(edge.getKey()).append(child.id).append(',');
+    }
+    String key = signature.toString();
+    BuildNode existing = register.get(key);
+    if (existing != null) {
+      return existing;
+    }
+    node.id = order.size();
+    order.add(node);
+    register.put(key, node);
+    return node;
+  }
+
+  private static boolean hasWhitespace(String word) {
+    for (int i = 0; i < word.length(); i++) {
+      if (Character.isWhitespace(word.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+/**
+ * Corrects low-confidence words of a result to the nearest word in a Lexicon, so that a misread
+ * like "rnodern" or "0pen" is shown as "modern" or "open" instead of waiting for a cleaner frame.
+ *
+ * A word is compared with the lexicon by a weighted edit distance, computed one row per trie
+ * level while walking the lexicon's DAWG, so that whole subtrees too far from the word are never
+ * visited. Inserting, deleting or substituting a character costs EDIT_COST. Substituting one of
+ * the engine's usual confusions costs CONFUSION_COST instead, whether one character for another,
+ * like 0 for o, or two for one, like rn for m. Words of up to SHORT_WORD_LENGTH characters may
+ * be up to one edit away, and longer words up to two. Case is ignored in matching, and the
+ * correction takes the word's capitalization.
+ *
+ * Lookups allocate nothing. Only a result with corrections in it is copied. Not thread-safe: each
+ * recognition worker keeps its own corrector, sharing one Lexicon.
+ */
+final class LexiconCorrector {
+
+  // Words at or above this confidence are left alone
+  private static final int MAX_CORRECTION_CONFIDENCE = 75;
+
+  // A corrected word is shown with at least this confidence, so that a word the engine was unsure
+  // of, but that the lexicon confirms, isn't hidden by the overlay
+  private static final int CORRECTED_CONFIDENCE = 50;
+
+  // Words are looked up only between these lengths
+  private static final int MIN_WORD_LENGTH = 2;
+  private static final int MAX_WORD_LENGTH = 32;
+
+  // Words up to this long are corrected by at most one edit, longer ones by two
+  private static final int SHORT_WORD_LENGTH = 4;
+
+  // The longest lexicon word a word can match: two insertions longer
+  private static final int MAX_DEPTH = MAX_WORD_LENGTH + 2;
+
+  private static final int EDIT_COST = 10;
+  private static final int CONFUSION_COST = 3;
+
+  // The lexicon is searched up to each of these costs in turn, until a word is found
+  private static final int[] SEARCH_BOUNDS = { 2 * CONFUSION_COST, EDIT_COST, 2 * EDIT_COST };
+
+  // Characters the engine mistakes for one another, in pairs
+  private static final String CONFUSED_CHARACTERS = "0o1l1il|5s8b2zceuv";
+
+  // Character pairs the engine reads as one character, and the character: rn for m, and so on
+  private static final String[] CONFUSED_PAIRS = { "rnm", "cld", "vvw", "iiu", "rin", "inm" };
+
+  private final Lexicon lexicon;
+
+  // The word being looked up, in lower case
+  private final char[] query = new char[MAX_WORD_LENGTH];
+  private int queryLength;
+  // The character each pair of the word's characters ending before an index is confused with
+  private final char[] querySingles = new char[MAX_WORD_LENGTH + 1];
+  private final char[] labelConfusions = new char[CONFUSED_CHARACTERS.length() / 2];
+
+  // Edit distance rows, one per trie depth, and the characters on the path to each depth
+  private final int[][] rows = new int[MAX_DEPTH + 1][MAX_WORD_LENGTH + 1];
+  private final char[] path = new char[MAX_DEPTH];
+
+  // The best match found so far
+  private final char[] best = new char[MAX_DEPTH];
+  private int bestLength;
+  private int bestCost;
+
+  LexiconCorrector(Lexicon lexicon) {
+    this.lexicon = lexicon;
+  }
+
+  Lexicon getLexicon() {
+    return lexicon;
+  }
+
+  /**
+   * Corrects the result's low-confidence words that aren't in the lexicon but are close to a
+   * word that is.
+   *
+   * @param result The result
+   * @return The corrected result, or the same result if nothing was corrected
+   */
+  OcrResult correct(OcrResult result) {
+    String text = result.getText();
+    StringBuilder corrected = null;
+    byte[] confidences = null;
+    int copied = 0;
+    for (int i = 0; i < result.getWordCount(); i++) {
+      if (result.getWordConfidence(i) >= MAX_CORRECTION_CONFIDENCE) {
+        continue;
+      }
+      // Leave punctuation around the word where it is
+      int start = result.getWordStart(i);
+      int end = result.getWordEnd(i);
+      while (start < end && !Character.isLetterOrDigit(text.charAt(start))) {
+        start++;
+      }
+      while (end > start && !Character.isLetterOrDigit(text.charAt(end - 1))) {
+        end--;
+      }
+      if (!find(text, start, end)) {
+        continue;
+      }
+
+      if (corrected == null) {
+        corrected = new StringBuilder(text.length() + 8);
+        confidences = new byte[result.getWordCount()];
+        for (int j = 0; j < confidences.length; j++) {
+          confidences[j] = (byte) result.getWordConfidence(j);
+        }
+      }
+      corrected.append(text, copied, start);
+      appendInCase(corrected, text, start, end);
+      copied = end;
+      confidences[i] = (byte) Math.max(confidences[i], CORRECTED_CONFIDENCE);
+      PerformanceCounters.wordsCorrected.incrementAndGet();
+    }
+    if (corrected == null) {
+      return result;
+    }
+    corrected.append(text, copied, text.length());
+    return result.withCorrections(corrected.toString(), confidences);
+  }
+
+  /**
+   * Looks for the closest lexicon word to a word that isn't in the lexicon itself.
+   *
+   * @return True if one was found, in which case it is left in best
+   */
+  boolean find(CharSequence text, int start, int end) {
+    int length = end - start;
+    if (length < MIN_WORD_LENGTH || length > MAX_WORD_LENGTH) {
+      return false;
+    }
+    boolean hasLetter = false;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(start + i);
+      hasLetter |= Character.isLetter(c);
+      query[i] = Character.toLowerCase(c);
+    }
+    queryLength = length;
+    if (!hasLetter || lexicon.contains(query, 0, queryLength)) {
+      return false;
+    }
+
+    // The word's own two-for-one confusions, found once rather than in every row
+    for (int i = 2; i <= queryLength; i++) {
+      querySingles[i] = singleFor(query[i - 2], query[i - 1]);
+    }
+    int[] first = rows[0];
+    for (int i = 0; i <= queryLength; i++) {
+      first[i] = i * EDIT_COST;
+    }
+
+    // Search with a tight bound first, which prunes most of the lexicon. Most misreads are a
+    // confusion or two, and are found without a wider search.
+    int maxCost = length <= SHORT_WORD_LENGTH ? EDIT_COST : 2 * EDIT_COST;
+    bestLength = -1;
+    for (int bound : SEARCH_BOUNDS) {
+      if (bound > maxCost) {
+        break;
+      }
+      bestCost = bound + 1;
+      search(lexicon.getRoot(), 0, 0);
+      if (bestLength >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Visits the children of a node at the given depth, keeping any word cheaper than bestCost.
+   *
+   * @param parentMin The smallest cost in the node's row, rows[depth]
+   */
+  private void search(int node, int depth, int parentMin) {
+    if (depth >= MAX_DEPTH) {
+      return;
+    }
+    int edges = lexicon.getEdgeCount(node);
+    for (int edge = 0; edge < edges; edge++) {
+      char label = lexicon.getEdgeLabel(node, edge);
+      int child = lexicon.getEdgeTarget(node, edge);
+      path[depth] = label;
+      int rowMin = fillRow(depth + 1);
+      int cost = rows[depth + 1][queryLength];
+      if (cost < bestCost && lexicon.isFinal(child)) {
+        bestCost = cost;
+        bestLength = depth + 1;
+        System.arraycopy(path, 0, best, 0, bestLength);
+      }
+      // Costs along a path never fall, except that a two-for-one confusion starting with this
+      // label reaches past this row from the node's own
+      if (rowMin < bestCost
+          || (isSingleStart(label) && parentMin + CONFUSION_COST < bestCost)) {
+        search(child, depth + 1, rowMin);
+      }
+    }
+  }
+
+  // Fills rows[depth] for the path ending in path[depth - 1], and returns its smallest cost.
+  private int fillRow(int depth) {
+    int[] row = rows[depth];
+    int[] above = rows[depth - 1];
+    int[] twoAbove = depth >= 2 ? rows[depth - 2] : null;
+    char label = path[depth - 1];
+    int confusionCount = findConfusions(label, labelConfusions);
+    // The single character the path's last two are confused with, like m for rn
+    char pathSingle = twoAbove != null ? singleFor(path[depth - 2], label) : 0;
+
+    row[0] = depth * EDIT_COST;
+    int rowMin = row[0];
+    for (int i = 1; i <= queryLength; i++) {
+      char c = query[i - 1];
+      int substitution = EDIT_COST;
+      if (c == label) {
+        substitution = 0;
+      } else {
+        for (int j = 0; j < confusionCount; j++) {
+          if (labelConfusions[j] == c) {
+            substitution = CONFUSION_COST;
+            break;
+          }
+        }
+      }
+      int cost = Math.min(Math.min(above[i], row[i - 1]) + EDIT_COST, above[i - 1] + substitution);
+      // Two characters of the word read for one of the lexicon's
+      if (i >= 2 && querySingles[i] == label) {
+        cost = Math.min(cost, above[i - 2] + CONFUSION_COST);
+      }
+      // One character of the word read for two of the lexicon's
+      if (pathSingle != 0 && pathSingle == c) {
+        cost = Math.min(cost, twoAbove[i - 1] + CONFUSION_COST);
+      }
+      row[i] = cost;
+      rowMin = Math.min(rowMin, cost);
+    }
+    return rowMin;
+  }
+
+  // Writes the characters the given one is confused with to confusions, and returns how many.
+  private static int findConfusions(char c, char[] confusions) {
+    int count = 0;
+    for (int i = 0; i < CONFUSED_CHARACTERS.length(); i += 2) {
+      if (CONFUSED_CHARACTERS.charAt(i) == c) {
+        confusions[count++] = CONFUSED_CHARACTERS.charAt(i + 1);
+      } else if (CONFUSED_CHARACTERS.charAt(i + 1) == c) {
+        confusions[count++] = CONFUSED_CHARACTERS.charAt(i);
+      }
+    }
+    return count;
+  }
+
+  // Returns the character a pair is confused with, or 0 if none.
+  private static char singleFor(char first, char second) {
+    for (String pair : CONFUSED_PAIRS) {
+      if (pair.charAt(0) == first && pair.charAt(1) == second) {
+        return pair.charAt(2);
+      }
+    }
+    return 0;
+  }
+
+  private static boolean isSingleStart(char c) {
+    for (String pair : CONFUSED_PAIRS) {
+      if (pair.charAt(0) == c) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Appends the correction in the case of the word it replaces: all capitals, capitalized, or
+  // lower case.
+  private void appendInCase(StringBuilder out, String text, int start, int end) {
+    boolean isUpper = true;
+    for (int i = start; i < end; i++) {
+      if (Character.isLowerCase(text.charAt(i))) {
+        isUpper = false;
+        break;
+      }
+    }
+    boolean isCapitalized = Character.isUpperCase(text.charAt(start));
+    for (int i = 0; i < bestLength; i++) {
+      char c = best[i];
+      out.append(isUpper || (i == 0 && isCapitalized) ? Character.toUpperCase(c) : c);
+    }
+  }
+}
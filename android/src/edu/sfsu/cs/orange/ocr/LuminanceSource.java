@@ -19,9 +19,9 @@ package edu.sfsu.cs.orange.ocr;
 /**
  * The purpose of this class hierarchy is to abstract different bitmap implementations across
  * platforms into a standard interface for requesting greyscale luminance values. The interface
- * only provides immutable methods; therefore crop and rotation create copies. This is to ensure
- * that one Reader does not modify the original luminance source and leave it in an unknown state
- * for other Readers in the chain.
+ * only provides immutable methods; therefore crop and rotation create new objects, which may be
+ * views sharing the original data. This is to ensure that one Reader does not modify the original
+ * luminance source and leave it in an unknown state for other Readers in the chain.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
@@ -80,19 +80,19 @@ public abstract class LuminanceSource {
     return false;
   }
 
-//  /**
-//   * Returns a new object with cropped image data. Implementations may keep a reference to the
-//   * original data rather than a copy. Only callable if isCropSupported() is true.
-//   *
-//   * @param left The left coordinate, 0 <= left < getWidth().
-//   * @param top The top coordinate, 0 <= top <= getHeight().
-//   * @param width The width of the rectangle to crop.
-//   * @param height The height of the rectangle to crop.
-//   * @return A cropped version of this object.
-//   */
-//  public LuminanceSource crop(int left, int top, int width, int height) {
-//    throw new RuntimeException("This luminance source does not support cropping.");
-//  }
+  /**
+   * Returns a new object with cropped image data. Implementations may keep a reference to the
+   * original data rather than a copy. Only callable if isCropSupported() is true.
+   *
+   * @param left The left coordinate, 0 <= left < getWidth().
+   * @param top The top coordinate, 0 <= top <= getHeight().
+   * @param width The width of the rectangle to crop.
+   * @param height The height of the rectangle to crop.
+   * @return A cropped version of this object.
+   */
+  public LuminanceSource crop(int left, int top, int width, int height) {
+    throw new RuntimeException("This luminance source does not support cropping.");
+  }
 
   /**
    * @return Whether this subclass supports counter-clockwise rotation.
@@ -103,8 +103,9 @@ public abstract class LuminanceSource {
 
   /**
    * Returns a new object with rotated image data. Only callable if isRotateSupported() is true.
+   * Rotations of 180 and 270 degrees are made by calling this repeatedly.
    *
-   * @return A rotated version of this object.
+   * @return A version of this object rotated 90 degrees counter-clockwise.
    */
   public LuminanceSource rotateCounterClockwise() {
     throw new RuntimeException("This luminance source does not support rotation.");
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import android.graphics.Rect;
+
+/**
+ * Follows the global translation of the framed region from one preview frame to the next, so that
+ * the overlay can be moved with the text between OCR results, which arrive far less often than
+ * frames.
+ *
+ * Each frame is reduced to a Profile: the mean luminance of every column and every row of the
+ * framed region, each taken over every second pixel across it. The shift between two frames is
+ * the offset that best lines up their column profiles, and separately their row profiles, after
+ * removing the difference in overall brightness. Lines of text give both profiles strong
+ * structure, so this is enough to follow a hand-held camera at a fraction of the cost of matching
+ * blocks in two dimensions.
+ *
+ * The tracker keeps the position of the content, accumulated over frames, for each of the most
+ * recent frames, so the motion since the frame behind any recent result can be looked up.
+ *
+ * Each decode worker computes profiles with its own Profile object. The tracker itself is shared,
+ * and takes profiles in frame order, ignoring any that arrive after a newer one. Those methods are
+ * synchronized.
+ */
+final class MotionTracker {
+
+  // Results of add()
+  static final int STILL = 0;
+  static final int MOVED = 1;
+  static final int LOST = 2;
+
+  // Spacing in pixels of the samples that make up each column and row mean
+  private static final int STEP = 2;
+
+  // Largest shift searched, in pixels. A shift this large is taken as losing track.
+  private static final int MAX_SHIFT = 48;
+
+  // Profiles are mean luminance times this, to keep precision in integer arithmetic
+  private static final int PROFILE_SCALE = 16;
+
+  // Least mean deviation of a profile, in luminance times PROFILE_SCALE, for it to have enough
+  // structure to line up. Below this the shift along that axis is taken as zero.
+  private static final int MIN_CONTRAST = 2 * PROFILE_SCALE;
+
+  // Largest mean difference of the best match, as a fraction of the profile's contrast, before
+  // the match is taken as losing track
+  private static final float MAX_MATCH_ERROR = 0.6f;
+
+  // Number of recent frames whose positions are kept
+  private static final int HISTORY = 256;
+
+  /**
+   * The column and row profiles of one frame's framed region, with the scratch space to compute
+   * them. Not thread-safe: each decode worker keeps its own.
+   */
+  static final class Profile {
+    private int[] columns = new int[0];
+    private int[] rows = new int[0];
+    private int columnCount;
+    private int rowCount;
+    private final Rect region = new Rect();
+    private byte[] row;
+
+    /**
+     * @param source The framed region
+     * @param previewFrame Where the region is in the preview frame. Profiles of different regions
+     *                     aren't compared.
+     */
+    void compute(LuminanceSource source, Rect previewFrame) {
+      columnCount = source.getWidth();
+      rowCount = source.getHeight();
+      if (columns.length < columnCount) {
+        columns = new int[columnCount];
+      }
+      if (rows.length < rowCount) {
+        rows = new int[rowCount];
+      }
+      for (int c = 0; c < columnCount; c++) {
+        columns[c] = 0;
+      }
+      int samplesPerRow = (columnCount + STEP - 1) / STEP;
+      int samplesPerColumn = (rowCount + STEP - 1) / STEP;
+      for (int r = 0; r < rowCount; r++) {
+        row = source.getRow(r, row);
+        int sum = 0;
+        for (int c = 0; c < columnCount; c += STEP) {
+          sum += row[c] & 0xff;
+        }
+        rows[r] = sum * PROFILE_SCALE / samplesPerRow;
+        if (r % STEP == 0) {
+          for (int c = 0; c < columnCount; c++) {
+            columns[c] += row[c] & 0xff;
+          }
+        }
+      }
+      for (int c = 0; c < columnCount; c++) {
+        columns[c] = columns[c] * PROFILE_SCALE / samplesPerColumn;
+      }
+      region.set(previewFrame);
+    }
+
+    private void copyFrom(Profile profile) {
+      if (columns.length < profile.columnCount) {
+        columns = new int[profile.columnCount];
+      }
+      if (rows.length < profile.rowCount) {
+        rows = new int[profile.rowCount];
+      }
+      System.arraycopy(profile.columns, 0, columns, 0, profile.columnCount);
+      System.arraycopy(profile.rows, 0, rows, 0, profile.rowCount);
+      columnCount = profile.columnCount;
+      rowCount = profile.rowCount;
+      region.set(profile.region);
+    }
+
+    private boolean isSameRegion(Profile profile) {
+      return columnCount == profile.columnCount && rowCount == profile.rowCount
+          && region.equals(profile.region);
+    }
+  }
+
+  private final Profile previous = new Profile();
+  private boolean hasPrevious;
+  private long lastSequence = -1;
+
+  // Accumulated position of the content, in preview pixels, since tracking last started
+  private int positionX;
+  private int positionY;
+
+  // Positions of recent frames, by frame sequence number modulo HISTORY. A sequence of -1 marks an
+  // empty entry.
+  private final long[] historySequences = new long[HISTORY];
+  private final int[] historyX = new int[HISTORY];
+  private final int[] historyY = new int[HISTORY];
+
+  // Result of the last estimate along one axis
+  private int shift;
+
+  MotionTracker() {
+    reset();
+  }
+
+  /**
+   * Adds the next frame, and estimates how far its content has moved since the previous one.
+   *
+   * @param profile The frame's profile
+   * @param sequence The frame's sequence number
+   * @return MOVED if the content moved, STILL if it didn't or the frame was ignored, or LOST if
+   *         the motion couldn't be followed, in which case tracking starts over from this frame
+   */
+  synchronized int add(Profile profile, long sequence) {
+    if (sequence <= lastSequence) {
+      return STILL;
+    }
+    lastSequence = sequence;
+    if (!hasPrevious || !profile.isSameRegion(previous)) {
+      clearHistory();
+      previous.copyFrom(profile);
+      hasPrevious = true;
+      record(sequence);
+      return STILL;
+    }
+
+    boolean isTracked = estimate(previous.columns, profile.columns, profile.columnCount);
+    int shiftX = shift;
+    isTracked &= estimate(previous.rows, profile.rows, profile.rowCount);
+    int shiftY = shift;
+    previous.copyFrom(profile);
+    if (!isTracked) {
+      clearHistory();
+      record(sequence);
+      return LOST;
+    }
+    positionX += shiftX;
+    positionY += shiftY;
+    record(sequence);
+    return shiftX != 0 || shiftY != 0 ? MOVED : STILL;
+  }
+
+  /**
+   * Finds how far the content has moved since a recent frame.
+   *
+   * @param sequence The frame's sequence number
+   * @param offset Set to the x and y movement in preview pixels
+   * @return False if the frame is too old, or from before tracking last started over
+   */
+  synchronized boolean getOffset(long sequence, int[] offset) {
+    // Frames skipped because they arrived late have no entry of their own, so the nearest earlier
+    // frame stands in for them.
+    int best = -1;
+    for (int i = 0; i < HISTORY; i++) {
+      long entry = historySequences[i];
+      if (entry >= 0 && entry <= sequence
+          && (best < 0 || entry > historySequences[best])) {
+        best = i;
+      }
+    }
+    if (best < 0 || sequence - historySequences[best] >= HISTORY) {
+      return false;
+    }
+    offset[0] = positionX - historyX[best];
+    offset[1] = positionY - historyY[best];
+    return true;
+  }
+
+  /**
+   * Forgets every frame, for when the preview restarts.
+   */
+  synchronized void reset() {
+    hasPrevious = false;
+    lastSequence = -1;
+    clearHistory();
+  }
+
+  private void clearHistory() {
+    for (int i = 0; i < HISTORY; i++) {
+      historySequences[i] = -1;
+    }
+    positionX = 0;
+    positionY = 0;
+  }
+
+  private void record(long sequence) {
+    int i = (int) (sequence % HISTORY);
+    historySequences[i] = sequence;
+    historyX[i] = positionX;
+    historyY[i] = positionY;
+  }
+
+  // Finds the shift that best lines up the current profile with the previous one, so that
+  // current[i] matches previous[i - shift], and sets shift. Returns false if the best match is at
+  // the edge of the search or doesn't match well enough to trust.
+  private boolean estimate(int[] previous, int[] current, int length) {
+    shift = 0;
+    int contrast = meanDeviation(current, length);
+    if (contrast < MIN_CONTRAST) {
+      return true;
+    }
+    int maxShift = Math.min(MAX_SHIFT, length / 2);
+    long bestError = Long.MAX_VALUE;
+    for (int s = -maxShift; s <= maxShift; s++) {
+      int start = Math.max(0, s);
+      int end = Math.min(length, length + s);
+      int count = end - start;
+      long previousSum = 0;
+      long currentSum = 0;
+      for (int i = start; i < end; i++) {
+        previousSum += previous[i - s];
+        currentSum += current[i];
+      }
+      // Remove the difference in brightness over the overlap, so exposure changes don't count
+      int brightness = (int) ((currentSum - previousSum) / count);
+      long error = 0;
+      for (int i = start; i < end; i++) {
+        error += Math.abs(current[i] - previous[i - s] - brightness);
+      }
+      // Compared per sample, since the overlap shrinks with the shift
+      error = error * length / count;
+      if (error < bestError) {
+        bestError = error;
+        shift = s;
+      }
+    }
+    return Math.abs(shift) < maxShift && bestError / length <= contrast * MAX_MATCH_ERROR;
+  }
+
+  private static int meanDeviation(int[] profile, int length) {
+    if (length == 0) {
+      return 0;
+    }
+    long sum = 0;
+    for (int i = 0; i < length; i++) {
+      sum += profile[i];
+    }
+    int mean = (int) (sum / length);
+    long deviation = 0;
+    for (int i = 0; i < length; i++) {
+      deviation += Math.abs(profile[i] - mean);
+    }
+    return (int) (deviation / length);
+  }
+}
@@ -15,27 +15,17 @@
  */
 package edu.sfsu.cs.orange.ocr;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.RandomAccessFile;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 import com.googlecode.tesseract.android.TessBaseAPI;
 
 import android.app.ProgressDialog;
 import android.content.Context;
 import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.util.Log;
 
 /**
@@ -49,25 +39,26 @@ final class OcrInitAsyncTask extends AsyncTask<String, String, Boolean> {
 
   private CaptureActivity activity;
   private Context context;
-  private TessBaseAPI baseApi;
+  private TessBaseAPI[] baseApis;
   private ProgressDialog dialog;
   private ProgressDialog indeterminateDialog;
   private final String languageCode;
   private final String languageName;
+  private Lexicon lexicon;
 
   /**
    * 
    * @param context
-   * @param baseApi 
+   * @param baseApis the engines to initialize, all with the same language data
    * @param dialog
    * @param indeterminateDialog 
    * @param languageName
    */
-  OcrInitAsyncTask(CaptureActivity activity, TessBaseAPI baseApi, ProgressDialog dialog, 
+  OcrInitAsyncTask(CaptureActivity activity, TessBaseAPI[] baseApis, ProgressDialog dialog, 
       ProgressDialog indeterminateDialog, String languageCode, String languageName) {
     this.activity = activity;
     this.context = activity.getBaseContext();
-    this.baseApi = baseApi;
+    this.baseApis = baseApis;
     this.dialog = dialog;
     this.indeterminateDialog = indeterminateDialog;
     this.languageCode = "eng"; // Hard-code to English
@@ -84,6 +75,7 @@ final class OcrInitAsyncTask extends AsyncTask<String, String, Boolean> {
     File languageData;
     String destinationDirBase = params[0];
     String destinationFilename = languageCode + ".traineddata";
+    long start = System.currentTimeMillis();
 
     // Check for, and create if necessary, folder to hold model data
     File modelRoot = new File(destinationDirBase + File.separator + "tessdata");
@@ -95,8 +87,10 @@ final class OcrInitAsyncTask extends AsyncTask<String, String, Boolean> {
     // Create file to hold model data
     languageData = new File(modelRoot, destinationFilename);
     
-    // Check if an incomplete download is present. If a *.download.gz file is there, delete it and
-    // any half-unzipped language data file that may be there.
+    // Check for an incomplete download left by an earlier version, which uncompressed straight into
+    // the language data file. If a *.download.gz file is there, delete it and any half-unzipped
+    // language data file that may be there. Downloads now resume, and only rename the language
+    // data into place once it is complete.
     File tempFile = new File(modelRoot, destinationFilename + ".download.gz");
     if (tempFile.exists()) {
       tempFile.delete();
@@ -105,9 +99,19 @@ final class OcrInitAsyncTask extends AsyncTask<String, String, Boolean> {
       }
     }
     
-    // Check whether model data already exists in the folder
-
-    if (!languageData.exists()) {
+    // Check whether intact model data is already in the folder. The manifest written when it was
+    // installed vouches for it without reading it. Data installed before manifests were kept is
+    // checked against the copy in the assets instead.
+    long sourceChecksum = -1;
+    if (languageData.exists() && !LanguageDataManifest.exists(languageData)) {
+      sourceChecksum = getAssetChecksum(destinationFilename + ".zip", destinationFilename);
+    }
+    if (!LanguageDataManifest.verify(languageData, sourceChecksum)) {
+      if (languageData.exists()) {
+        Log.w(TAG, "Language data for " + languageCode + " in " + modelRoot + " is damaged");
+        LanguageDataManifest.delete(languageData);
+        languageData.delete();
+      }
       Log.i(TAG, "Language data for " + languageCode + " not found in " + modelRoot.toString());
 
       // Check assets for language data to install. If not present, download from Internet
@@ -140,145 +144,40 @@ final class OcrInitAsyncTask extends AsyncTask<String, String, Boolean> {
       installSuccess = true;
     }
     
+    Log.i(TAG, "Language data ready in " + (System.currentTimeMillis() - start) + " ms");
+    
     // Dismiss the progress dialog box, revealing the indeterminate dialog box behind it
     dialog.dismiss();
     
-    // Initialize the Tesseract OCR engine
-    if (baseApi.init(destinationDirBase + File.separator, languageCode)) {
-      return installSuccess;
+    // Initialize the Tesseract OCR engines
+    start = System.currentTimeMillis();
+    for (TessBaseAPI baseApi : baseApis) {
+      if (!baseApi.init(destinationDirBase + File.separator, languageCode)) {
+        return false;
+      }
     }
-    return false;
+    Log.i(TAG, "Initialized " + baseApis.length + " engines in "
+        + (System.currentTimeMillis() - start) + " ms");
+    
+    // Map the language's word list for correcting OCR words, installing it first if one is
+    // bundled with the app
+    File lexiconFile = new File(modelRoot, languageCode + ".lexicon");
+    if (!lexiconFile.exists()) {
+      installLexiconFromAssets(languageCode + ".lexicon.zip", modelRoot);
+    }
+    lexicon = Lexicon.open(lexiconFile);
+    return installSuccess;
   }  
 
   private boolean downloadFile(String sourceFilename, File modelRoot, File destinationFile) throws IOException {
-    try {
-      return downloadGzippedFileHttp(new URL(DOWNLOAD_BASE + sourceFilename + ".gz"), destinationFile);
-    } catch (MalformedURLException e) {
-      throw new IllegalArgumentException("Bad URL string.");
-    }
-  }
-
-  private boolean downloadGzippedFileHttp(URL url, File destinationFile) throws IOException {
-    Log.d(TAG, "downloadGzippedFileHttp(): url: " + url);
-    Log.d(TAG, "downloadGzippedFileHttp(): destinationFilename: " + destinationFile.toString());
-
-    // Send an HTTP GET request for the file
-    Log.d(TAG, "downloadGzippedFileHttp(): Sending GET request...");
-    publishProgress("Downloading language data for " + languageName + "...", "0");
-    HttpURLConnection urlConnection = null;
-    urlConnection = (HttpURLConnection) url.openConnection();
-    urlConnection.setAllowUserInteraction(false);
-    urlConnection.setInstanceFollowRedirects(true);
-    urlConnection.setRequestMethod("GET");
-    urlConnection.setDoOutput(true);
-    urlConnection.connect();
-    if (urlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-      Log.e(TAG, "Did not get HTTP_OK response.");
-      return false;
-    }
-    int fileSize = urlConnection.getContentLength();
-    InputStream inputStream = urlConnection.getInputStream();
-    File tempFile = new File(destinationFile.toString() + ".download.gz");
-
-    // Stream the file contents to a local file temporarily
-    Log.d(TAG, "downloadGzippedFileHttp(): Streaming download to a local file...");
-    final int BUFFER = 8192;
-    FileOutputStream fileOutputStream = null;
-    Integer percentComplete;
-    int percentCompleteLast = 0;
-    try {
-      fileOutputStream = new FileOutputStream(tempFile);
-    } catch (FileNotFoundException e) {
-      Log.e(TAG, "Exception received when opening FileOutputStream.", e);
-    }
-    int downloaded = 0;
-    byte[] buffer = new byte[BUFFER];
-    int bufferLength = 0;
-    while ((bufferLength = inputStream.read(buffer, 0, BUFFER)) > 0) {
-      fileOutputStream.write(buffer, 0, bufferLength);
-      downloaded += bufferLength;
-      percentComplete = (int) ((downloaded / (float) fileSize) * 100);
-      if (percentComplete > percentCompleteLast) {    
-        publishProgress("Downloading language data for " + languageName + "...", percentComplete.toString());
-        percentCompleteLast = percentComplete;
-      }
-    }
-    fileOutputStream.close();
-    urlConnection.disconnect();
-
-    // Uncompress the downloaded temporary file into place, and remove the temporary file
-    try {
-      return gunzip(tempFile, tempFile.toString().replace(".download.gz", ""));
-    } catch (FileNotFoundException e) {
-      Log.e(TAG, "File not available for unzipping.");
-    } catch (IOException e) {
-      Log.e(TAG, "Problem unzipping file.");
-    }
-    return false;
+    String message = "Downloading language data for " + languageName + "...";
+    publishProgress(message, "0");
+    LanguageDataDownloader downloader = new LanguageDataDownloader(
+        new URL(DOWNLOAD_BASE + sourceFilename + ".gz"), destinationFile,
+        new ThrottledProgress(message));
+    return downloader.download();
   }
 
-  /**
-   * Unzips the given Gzipped file to the given destination, and deletes the gzipped file.
-   * 
-   * @param zippedFile
-   *          the gzipped file to be uncompressed
-   * @param outFilePath
-   *          full pathname to where the unzipped file should be saved
-   * @return
-   * @throws FileNotFoundException
-   * @throws IOException
-   */
-  private boolean gunzip(File zippedFile, String outFilePath) throws FileNotFoundException, IOException {    
-    publishProgress("Uncompressing language data for " + languageName + "...", "0");
-    int uncompressedFileSize = getGzipSizeUncompressed(zippedFile);
-    Integer percentComplete;
-    int percentCompleteLast = 0;
-    GZIPInputStream gzipInputStream = new GZIPInputStream(new FileInputStream(zippedFile));
-    OutputStream outputStream = new FileOutputStream(outFilePath);
-
-    int unzippedBytes = 0;
-    final int BUFFER = 8192;
-    byte[] data = new byte[BUFFER];
-    int len;
-    percentCompleteLast = 0;
-    while ((len = gzipInputStream.read(data, 0, BUFFER)) > 0) {
-      outputStream.write(data, 0, len);
-      unzippedBytes += len;
-      percentComplete = (int) ((unzippedBytes / (float) uncompressedFileSize) * 100);
-      if (percentComplete > percentCompleteLast) {      
-        publishProgress("Uncompressing language data for " + languageName + "...", percentComplete.toString());
-        percentCompleteLast = percentComplete;
-      }
-    }
-    gzipInputStream.close();
-    outputStream.close();
-    Log.d(TAG, "downloadGzippedFileHttp(): Downloading and unzipping complete. Removing zipped file...");
-    if (zippedFile.exists()) {
-      zippedFile.delete();
-    }    
-    return true;
-  }
-  
-  /**
-   * Returns the uncompressed size for a Gzipped file. Works for file sizes < 4GB.
-   * 
-   * @param file
-   *          a Gzipped file
-   * @return file 
-   *          size when uncompressed, in bytes
-   * @throws IOException
-   */
-  private int getGzipSizeUncompressed(File file) throws IOException {
-    RandomAccessFile raf = new RandomAccessFile(file, "r");
-    raf.seek(raf.length() - 4);
-    int b4 = raf.read();
-    int b3 = raf.read();
-    int b2 = raf.read();
-    int b1 = raf.read();
-    raf.close();
-    return (b1 << 24) | (b2 << 16) + (b3 << 8) + b4;
-  }
-  
   /**
    * Calls the appropriate unzipping method depending on the file's extension.
    * 
@@ -295,7 +194,11 @@ final class OcrInitAsyncTask extends AsyncTask<String, String, Boolean> {
     String extension = sourceFilename.substring(sourceFilename.lastIndexOf('.'), sourceFilename.length());
     try {
       if (extension.equals(".zip")) {
-        return installZipFromAssets(sourceFilename, modelRoot, destinationFile);
+        String message = "Uncompressing language data for " + languageName + "...";
+        publishProgress(message, "0");
+        new AssetInstaller(context.getAssets(), new ThrottledProgress(message))
+            .installZip(sourceFilename, modelRoot);
+        return destinationFile.exists();
       }
     } catch (FileNotFoundException e) {
       Log.i(TAG, "File not found in assets. Filename: " + sourceFilename);
@@ -303,49 +206,65 @@ final class OcrInitAsyncTask extends AsyncTask<String, String, Boolean> {
     return false;
   }
 
-  private boolean installZipFromAssets(String sourceFilename, File modelRoot, File destinationFile)
-        throws IOException, FileNotFoundException {
-    // Attempt to open the zip archive
-    publishProgress("Uncompressing language data for " + languageName + "...", "0");
-    ZipInputStream inputStream = new ZipInputStream(context.getAssets().open(sourceFilename));
+  /**
+   * Reads the CRC-32 of a file in a zip archive in the assets, from the archive's directory.
+   *
+   * @param sourceFilename The zip archive in the assets
+   * @param entryName The file in the archive
+   * @return The file's CRC-32, or -1 if there is no such file in the assets
+   */
+  private long getAssetChecksum(String sourceFilename, String entryName) {
+    try {
+      return new AssetInstaller(context.getAssets(), null).getChecksum(sourceFilename, entryName);
+    } catch (FileNotFoundException e) {
+      Log.i(TAG, "No " + entryName + " in assets to check against");
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't read " + sourceFilename + " from assets", e);
+    }
+    return -1;
+  }
 
-    // Loop through all the files and folders in the zip archive (but there should just be one)
-    for (ZipEntry entry = inputStream.getNextEntry(); entry != null; entry = inputStream.getNextEntry()) {
-      destinationFile = new File(modelRoot, entry.getName());
+  /**
+   * Unpacks a lexicon built by LexiconBuilder from the assets, if there is one. A language without
+   * a lexicon is recognized without correction, so a missing or broken one isn't an error.
+   *
+   * @param sourceFilename The zip archive holding the lexicon, in the assets
+   * @param modelRoot The tessdata directory to install it to
+   */
+  private void installLexiconFromAssets(String sourceFilename, File modelRoot) {
+    try {
+      new AssetInstaller(context.getAssets(), null).installZip(sourceFilename, modelRoot);
+    } catch (FileNotFoundException e) {
+      Log.i(TAG, "No lexicon in assets. Filename: " + sourceFilename);
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't install lexicon " + sourceFilename, e);
+    }
+  }
 
-      if (entry.isDirectory()) {
-        destinationFile.mkdirs();
-      } else {
-        long zippedFileSize = entry.getSize(); // Note getSize() returns -1 when the zipfile does not have the size set
+  /**
+   * Publishes install progress no more often than once a frame, and only when the percentage
+   * changes, so that a fast install doesn't flood the UI thread with dialog updates.
+   */
+  private final class ThrottledProgress implements ProgressListener {
+    private static final long MIN_INTERVAL_MS = 16L;
 
-        // Create a file output stream
-        FileOutputStream outputStream = new FileOutputStream(destinationFile);
-        final int BUFFER = 8192;
+    private final String message;
+    private int percentCompleteLast;
+    private long lastPublishTime;
 
-        // Buffer the output to the file
-        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream, BUFFER);
-        int unzippedSize = 0;
+    ThrottledProgress(String message) {
+      this.message = message;
+    }
 
-        // Write the contents
-        int count = 0;
-        Integer percentComplete = 0;
-        Integer percentCompleteLast = 0;
-        byte[] data = new byte[BUFFER];
-        while ((count = inputStream.read(data, 0, BUFFER)) != -1) {
-          bufferedOutputStream.write(data, 0, count);
-          unzippedSize += count;
-          percentComplete = (int) ((unzippedSize / (long) zippedFileSize) * 100);
-          if (percentComplete > percentCompleteLast) {
-            publishProgress("Uncompressing language data for " + languageName + "...", percentComplete.toString(), "0");
-            percentCompleteLast = percentComplete;
-          }
-        }
-        bufferedOutputStream.close();
+    public void onProgress(int percentComplete) {
+      long now = SystemClock.uptimeMillis();
+      if (percentComplete > percentCompleteLast
+          && (now - lastPublishTime >= MIN_INTERVAL_MS || percentComplete == 100)) {
+        percentCompleteLast = percentComplete;
+        lastPublishTime = now;
+        publishProgress(message, Integer.toString(percentComplete));
       }
-      inputStream.closeEntry();
     }
-    inputStream.close();
-    return true;
   }
 
   @Override
@@ -385,6 +304,7 @@ final class OcrInitAsyncTask extends AsyncTask<String, String, Boolean> {
     
     if (result) {
       // Restart recognition
+      activity.setLexicon(lexicon);
       activity.resumeOCR();
     } else {
       activity.showErrorMessage("Error", "Network is unreachable - cannot download language data. "
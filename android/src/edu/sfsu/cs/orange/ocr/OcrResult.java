@@ -15,45 +15,93 @@
  */
 package edu.sfsu.cs.orange.ocr;
 
-import java.util.List;
-
 import android.graphics.Rect;
 
+/**
+ * The text recognized in one image, with its words' boxes and confidences stored in columns:
+ * boxes packed as left, top, right, bottom in one int[], confidences in one byte[], and each word
+ * as the offset and length of its characters in the text. A dense frame is then a handful of
+ * arrays instead of thousands of Rect objects, and the words and their boxes can't get out of
+ * step, since both are indexed by the same word number.
+ *
+ * A result is immutable once built, so the UI draws from the same object the engine thread built,
+ * without copying it.
+ */
 public final class OcrResult {
   private final String text;
-  
-  private final int[] wordConfidences;
   private final int meanConfidence;
   
-  private final List<Rect> wordBoundingBoxes;
-  private final List<Rect> characterBoundingBoxes;
+  private final int wordCount;
+  // Offset and length in the text of each word, two ints per word
+  private final int[] wordSpans;
+  // Left, top, right, bottom of each word, four ints per word
+  private final int[] wordBoxes;
+  private final byte[] wordConfidences;
+  
+  private final int characterCount;
+  // Left, top, right, bottom of each character, four ints per character
+  private final int[] characterBoxes;
   
   private final long timestamp;
   private final long recognitionTimeRequired;
+  private final long frameSequence;
+  private final long captureTime;
   
-  public OcrResult(String text,
-                   int[] wordConfidences,
-                   int meanConfidence,
-                   List<Rect> characterBoundingBoxes,
-                   List<Rect> wordBoundingBoxes,
-                   long recognitionTimeRequired) {
+  /**
+   * @param text The recognized text. Words are its runs of non-whitespace characters.
+   * @param meanConfidence The mean confidence for the text
+   * @param wordBoxes The packed word boxes, in the order of the words in the text
+   * @param wordConfidences The word confidences, in the same order
+   * @param characterBoxes The packed character boxes, or an empty array if they weren't kept
+   * @param recognitionTimeRequired The time recognition took, in milliseconds
+   * @param frameSequence The capture order of the frame, or -1
+   * @param captureTime The System.nanoTime() at which the frame was captured, or 0
+   */
+  OcrResult(String text,
+            int meanConfidence,
+            int[] wordBoxes,
+            byte[] wordConfidences,
+            int[] characterBoxes,
+            long recognitionTimeRequired,
+            long frameSequence,
+            long captureTime) {
     this.text = text;
-    this.wordConfidences = wordConfidences;
     this.meanConfidence = meanConfidence;
-    this.characterBoundingBoxes = characterBoundingBoxes;
-    this.wordBoundingBoxes = wordBoundingBoxes;
+    this.wordSpans = findWordSpans(text);
+    // A word needs its text, its box, and its confidence to be drawn, so extra entries in any one
+    // column are ignored.
+    this.wordCount = Math.min(wordSpans.length / 2,
+        Math.min(wordBoxes.length / 4, wordConfidences.length));
+    this.wordBoxes = wordBoxes;
+    this.wordConfidences = wordConfidences;
+    this.characterCount = characterBoxes.length / 4;
+    this.characterBoxes = characterBoxes;
     this.recognitionTimeRequired = recognitionTimeRequired;
+    this.frameSequence = frameSequence;
+    this.captureTime = captureTime;
     this.timestamp = System.currentTimeMillis();
   }
   
+  // Shares the columns of another result, which is safe because they're never modified.
+  private OcrResult(OcrResult result, long captureTime) {
+    text = result.text;
+    meanConfidence = result.meanConfidence;
+    wordCount = result.wordCount;
+    wordSpans = result.wordSpans;
+    wordBoxes = result.wordBoxes;
+    wordConfidences = result.wordConfidences;
+    characterCount = result.characterCount;
+    characterBoxes = result.characterBoxes;
+    recognitionTimeRequired = result.recognitionTimeRequired;
+    frameSequence = result.frameSequence;
+    this.captureTime = captureTime;
+    timestamp = System.currentTimeMillis();
+  }
+  
   public String getText() {
     return text;
   }
 
-  public int[] getWordConfidences() {
-    return wordConfidences;
-  }
-
   public int getMeanConfidence() {
     return meanConfidence;
   }
@@ -62,18 +110,120 @@ public final class OcrResult {
     return recognitionTimeRequired;
   }
   
-  public List<Rect> getCharacterBoundingBoxes() {
-    return characterBoundingBoxes;
+  /**
+   * @return The number of words that have a box and a confidence.
+   */
+  public int getWordCount() {
+    return wordCount;
+  }
+  
+  /**
+   * @return The offset in the text of the word's first character.
+   */
+  public int getWordStart(int word) {
+    return wordSpans[2 * word];
+  }
+  
+  /**
+   * @return The offset in the text just past the word's last character.
+   */
+  public int getWordEnd(int word) {
+    return wordSpans[2 * word] + wordSpans[2 * word + 1];
+  }
+  
+  public int getWordConfidence(int word) {
+    return wordConfidences[word];
   }
   
-  public List<Rect> getWordBoundingBoxes() {
-    return wordBoundingBoxes;
+  /**
+   * Copies a word's box into the given Rect, so that callers can reuse one Rect for every word.
+   */
+  public void getWordBox(int word, Rect box) {
+    getBox(wordBoxes, word, box);
+  }
+  
+  /**
+   * @return The number of character boxes, which is 0 if the recognition mode didn't keep them.
+   */
+  public int getCharacterCount() {
+    return characterCount;
+  }
+  
+  public void getCharacterBox(int character, Rect box) {
+    getBox(characterBoxes, character, box);
   }
   
   public long getTimestamp() {
     return timestamp;
   }
   
+  /**
+   * @return The capture order of the preview frame this result was recognized from, or -1 if
+   *         it didn't come from a numbered frame.
+   */
+  public long getFrameSequence() {
+    return frameSequence;
+  }
+  
+  /**
+   * @return The System.nanoTime() at which the source frame was captured, or 0 if unknown.
+   */
+  public long getCaptureTime() {
+    return captureTime;
+  }
+  
+  /**
+   * Returns a copy of this result with a fresh timestamp. Used when the framed region hasn't
+   * changed since this result was recognized, so the engine call is skipped. The copy has no
+   * capture time, so it isn't counted in the pipeline latency.
+   */
+  OcrResult reissue() {
+    return new OcrResult(this, 0);
+  }
+
+  /**
+   * Returns a copy of this result with corrected words, sharing its boxes.
+   *
+   * @param correctedText The text with words replaced, but none added, removed or split
+   * @param correctedConfidences The word confidences, in the same order
+   */
+  OcrResult withCorrections(String correctedText, byte[] correctedConfidences) {
+    return new OcrResult(correctedText, meanConfidence, wordBoxes, correctedConfidences,
+        characterBoxes, recognitionTimeRequired, frameSequence, captureTime);
+  }
+
+  private static void getBox(int[] boxes, int index, Rect box) {
+    int offset = 4 * index;
+    box.set(boxes[offset], boxes[offset + 1], boxes[offset + 2], boxes[offset + 3]);
+  }
+  
+  // Finds the runs of non-whitespace characters, which Tesseract's word boxes are listed for.
+  private static int[] findWordSpans(String text) {
+    int count = 0;
+    int length = text.length();
+    for (int i = 0; i < length; i++) {
+      if (!Character.isWhitespace(text.charAt(i))
+          && (i == 0 || Character.isWhitespace(text.charAt(i - 1)))) {
+        count++;
+      }
+    }
+    int[] spans = new int[2 * count];
+    int word = 0;
+    int start = -1;
+    for (int i = 0; i <= length; i++) {
+      boolean isWordChar = i < length && !Character.isWhitespace(text.charAt(i));
+      if (isWordChar && start < 0) {
+        start = i;
+      } else if (!isWordChar && start >= 0) {
+        spans[2 * word] = start;
+        spans[2 * word + 1] = i - start;
+        word++;
+        start = -1;
+      }
+    }
+    return spans;
+  }
+  
   @Override
   public String toString() {
     return text + " " + meanConfidence + " " + recognitionTimeRequired + " " + timestamp;
@@ -18,9 +18,11 @@ package edu.sfsu.cs.orange.ocr;
 public final class OcrResultFailure {
   private final long timeRequired;
   private final long timestamp;
+  private final long frameSequence;
   
-  OcrResultFailure(long timeRequired) {
+  OcrResultFailure(long timeRequired, long frameSequence) {
     this.timeRequired = timeRequired;
+    this.frameSequence = frameSequence;
     this.timestamp = System.currentTimeMillis();
   }
   
@@ -32,6 +34,10 @@ public final class OcrResultFailure {
     return timestamp;
   }
   
+  public long getFrameSequence() {
+    return frameSequence;
+  }
+  
   @Override
   public String toString() {
     return timeRequired + " " + timestamp;
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters for the continuous recognition pipeline, shown by the performance HUD. They are updated
+ * with atomic operations from the decode threads and recognition tasks, and read on the UI thread
+ * without locking or allocating.
+ */
+final class PerformanceCounters {
+
+  // Number of recent recognition times averaged for the rolling recognition time
+  private static final int RECENT_RECOGNITIONS = 16;
+
+  // Frames delivered by the camera to the decode threads
+  static final AtomicLong framesDelivered = new AtomicLong();
+
+  // Frames replaced by a newer frame while waiting for a busy engine
+  static final AtomicLong framesDropped = new AtomicLong();
+
+  // Recognition jobs, and single-shot presses, dropped because their engine already had a job.
+  // A continuous decode that waits for its busy engine isn't counted.
+  static final AtomicLong jobsOverflowed = new AtomicLong();
+
+  // Frames rejected as blurry before recognition
+  static final AtomicLong framesSkipped = new AtomicLong();
+
+  // Frames found unchanged since the last result, which was reissued instead
+  static final AtomicLong framesUnchanged = new AtomicLong();
+
+  // Frames in which no text was found, which were never sent to the engine
+  static final AtomicLong framesWithoutText = new AtomicLong();
+
+  // Pixels of the framed regions in which text was found, and of the parts of them around the
+  // text that were sent to the engine
+  static final AtomicLong pixelsLocated = new AtomicLong();
+  static final AtomicLong pixelsRecognized = new AtomicLong();
+
+  // Batches of words sent to the translator, and the words in them
+  static final AtomicLong translationBatches = new AtomicLong();
+  static final AtomicLong wordsTranslated = new AtomicLong();
+
+  // Low-confidence words replaced by the nearest lexicon word
+  static final AtomicLong wordsCorrected = new AtomicLong();
+
+  // Engine calls finished, whether they produced text or not
+  static final AtomicLong recognitionsCompleted = new AtomicLong();
+
+  // Recognition tasks started but not yet finished
+  static final AtomicInteger decodesInFlight = new AtomicInteger();
+
+  private static final AtomicLongArray recentRecognitionTimes =
+      new AtomicLongArray(RECENT_RECOGNITIONS);
+  private static final AtomicLong recognitionTimeIndex = new AtomicLong();
+
+  private PerformanceCounters() {
+  }
+
+  /**
+   * Counts a finished engine call and adds its duration to the rolling recognition time.
+   *
+   * @param recognitionTime The time the engine call took, in milliseconds
+   */
+  static void recordRecognition(long recognitionTime) {
+    recognitionsCompleted.incrementAndGet();
+    int slot = (int) (recognitionTimeIndex.getAndIncrement() % RECENT_RECOGNITIONS);
+    recentRecognitionTimes.set(slot, recognitionTime);
+  }
+
+  /**
+   * @return The mean of the last RECENT_RECOGNITIONS recognition times, in milliseconds, or 0 if
+   *         there have been none.
+   */
+  static long getRollingRecognitionTime() {
+    int count = (int) Math.min(recognitionTimeIndex.get(), RECENT_RECOGNITIONS);
+    if (count == 0) {
+      return 0;
+    }
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += recentRecognitionTimes.get(i);
+    }
+    return sum / count;
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Paint.Style;
+import android.os.Debug;
+
+/**
+ * A debug overlay, drawn by ViewfinderView, showing the numbers that tell slow recognition,
+ * dropped frames, and slow drawing apart: decode rate, frames delivered, dropped, skipped and
+ * unchanged, decodes in flight, rolling recognition time, draw time, garbage collections since
+ * the last result, jobs refused by a busy engine, frames without text, the share of the framed
+ * region sent to the engine, words corrected against the lexicon, and the words and batches sent
+ * to the translator.
+ *
+ * Text is formatted into a reused char[] so that drawing the HUD doesn't allocate, and doesn't
+ * add garbage collections of its own to the count it shows.
+ */
+final class PerformanceHud {
+
+  // How often the HUD is redrawn when no results are arriving
+  static final long REFRESH_INTERVAL_MS = 250L;
+
+  // The decode rate is computed over at least this long
+  private static final long RATE_INTERVAL_NS = 1000000000L;
+
+  private static final float TEXT_SIZE = 18f;
+  private static final float LINE_HEIGHT = 22f;
+  private static final int LINES = 6;
+
+  // Size of the area the HUD draws in
+  static final int WIDTH = 360;
+  static final int HEIGHT = (int) (LINES * LINE_HEIGHT) + 8;
+
+  private final Paint backgroundPaint;
+  private final Paint textPaint;
+  private final char[] line = new char[80];
+
+  private long rateSampleTime;
+  private long rateSampleCount;
+  private long decodeRateTenths;
+  private long lastDrawTime;
+  private long lastResultCount = -1;
+  private int gcCountAtLastResult;
+
+  PerformanceHud() {
+    backgroundPaint = new Paint();
+    backgroundPaint.setColor(Color.BLACK);
+    backgroundPaint.setAlpha(0xA0);
+    backgroundPaint.setStyle(Style.FILL);
+    textPaint = new Paint();
+    textPaint.setColor(Color.GREEN);
+    textPaint.setAntiAlias(true);
+    textPaint.setTextSize(TEXT_SIZE);
+  }
+
+  /**
+   * Starts the VM's allocation counting, which the garbage collection count depends on.
+   */
+  void start() {
+    Debug.startAllocCounting();
+    gcCountAtLastResult = Debug.getGlobalGcInvocationCount();
+    rateSampleTime = System.nanoTime();
+    rateSampleCount = PerformanceCounters.recognitionsCompleted.get();
+  }
+
+  void stop() {
+    Debug.stopAllocCounting();
+  }
+
+  /**
+   * @param drawTime The time the last ViewfinderView.onDraw() took, in nanoseconds
+   */
+  void setLastDrawTime(long drawTime) {
+    lastDrawTime = drawTime;
+  }
+
+  /**
+   * Draws the HUD with its top left corner at the given point.
+   */
+  void draw(Canvas canvas, float left, float top) {
+    updateRates();
+
+    canvas.drawRect(left, top, left + WIDTH, top + HEIGHT, backgroundPaint);
+    float y = top + LINE_HEIGHT;
+
+    int length = append(line, 0, "decode ");
+    length = appendTenths(line, length, decodeRateTenths);
+    length = append(line, length, "/s  in flight ");
+    length = appendNumber(line, length, PerformanceCounters.decodesInFlight.get());
+    canvas.drawText(line, 0, length, left + 6, y, textPaint);
+    y += LINE_HEIGHT;
+
+    length = append(line, 0, "in ");
+    length = appendNumber(line, length, PerformanceCounters.framesDelivered.get());
+    length = append(line, length, "  drop ");
+    length = appendNumber(line, length, PerformanceCounters.framesDropped.get());
+    length = append(line, length, "  blur ");
+    length = appendNumber(line, length, PerformanceCounters.framesSkipped.get());
+    length = append(line, length, "  same ");
+    length = appendNumber(line, length, PerformanceCounters.framesUnchanged.get());
+    canvas.drawText(line, 0, length, left + 6, y, textPaint);
+    y += LINE_HEIGHT;
+
+    length = append(line, 0, "ocr ");
+    length = appendNumber(line, length, PerformanceCounters.getRollingRecognitionTime());
+    length = append(line, length, " ms  draw ");
+    length = appendTenths(line, length, lastDrawTime / 100000L);
+    length = append(line, length, " ms");
+    canvas.drawText(line, 0, length, left + 6, y, textPaint);
+    y += LINE_HEIGHT;
+
+    length = append(line, 0, "gc since result ");
+    length = appendNumber(line, length,
+        Debug.getGlobalGcInvocationCount() - gcCountAtLastResult);
+    length = append(line, length, "  overflow ");
+    length = appendNumber(line, length, PerformanceCounters.jobsOverflowed.get());
+    canvas.drawText(line, 0, length, left + 6, y, textPaint);
+    y += LINE_HEIGHT;
+
+    length = append(line, 0, "no text ");
+    length = appendNumber(line, length, PerformanceCounters.framesWithoutText.get());
+    length = append(line, length, "  crop ");
+    long located = PerformanceCounters.pixelsLocated.get();
+    length = appendNumber(line, length,
+        located == 0 ? 100 : PerformanceCounters.pixelsRecognized.get() * 100 / located);
+    length = append(line, length, "%  fixed ");
+    length = appendNumber(line, length, PerformanceCounters.wordsCorrected.get());
+    canvas.drawText(line, 0, length, left + 6, y, textPaint);
+    y += LINE_HEIGHT;
+
+    length = append(line, 0, "translated ");
+    length = appendNumber(line, length, PerformanceCounters.wordsTranslated.get());
+    length = append(line, length, " words in ");
+    length = appendNumber(line, length, PerformanceCounters.translationBatches.get());
+    length = append(line, length, " batches");
+    canvas.drawText(line, 0, length, left + 6, y, textPaint);
+  }
+
+  // Updates the decode rate once per RATE_INTERVAL_NS, and notes the GC count at each new result.
+  private void updateRates() {
+    long now = System.nanoTime();
+    long count = PerformanceCounters.recognitionsCompleted.get();
+    if (count != lastResultCount) {
+      lastResultCount = count;
+      gcCountAtLastResult = Debug.getGlobalGcInvocationCount();
+    }
+    long elapsed = now - rateSampleTime;
+    if (elapsed >= RATE_INTERVAL_NS) {
+      decodeRateTenths = (count - rateSampleCount) * 10L * 1000000000L / elapsed;
+      rateSampleTime = now;
+      rateSampleCount = count;
+    }
+  }
+
+  private static int append(char[] buffer, int position, String text) {
+    int length = Math.min(text.length(), buffer.length - position);
+    text.getChars(0, length, buffer, position);
+    return position + length;
+  }
+
+  // Writes a non-negative number in decimal without allocating.
+  static int appendNumber(char[] buffer, int position, long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    int digits = 1;
+    for (long rest = value / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+    if (position + digits > buffer.length) {
+      return position;
+    }
+    for (int i = position + digits - 1; i >= position; i--) {
+      buffer[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+    return position + digits;
+  }
+
+  // Writes a number of tenths as a decimal with one place, for example 25 as "2.5".
+  static int appendTenths(char[] buffer, int position, long tenths) {
+    position = appendNumber(buffer, position, tenths / 10);
+    if (position + 2 > buffer.length) {
+      return position;
+    }
+    buffer[position++] = '.';
+    buffer[position++] = (char) ('0' + Math.max(0, tenths % 10));
+    return position;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Latency histograms for each stage of the path from a preview frame to the overlay drawn for it,
+ * and for the whole path end to end. Stages record System.nanoTime() differences from whichever
+ * thread they run on.
+ */
+final class PipelineLatency {
+
+  enum Stage {
+    // Preview callback until the decode thread picks the frame up
+    FRAME_DELIVERY,
+    // Building the luminance source for the framed region
+    SOURCE_BUILD,
+    // Rendering the region to greyscale or a Bitmap, including any downscaling
+    IMAGE_RENDER,
+    // Submission to the recognition executor until an engine thread starts the job
+    DISPATCH,
+    // TessBaseAPI.setImage()
+    SET_IMAGE,
+    // TessBaseAPI.getUTF8Text(), which is where recognition happens
+    RECOGNIZE,
+    // Pulling word confidences or word or character boxes out of the engine, each one counted
+    // separately and only for the results that ask for it
+    EXTRACTION,
+    // End of recognition until CaptureActivityHandler receives the result on the UI thread
+    RESULT_POST,
+    // Result handed to ViewfinderView until the end of the first onDraw() that shows it
+    OVERLAY_DRAW,
+    // Preview callback until the end of the first onDraw() that shows the result
+    END_TO_END
+  }
+
+  private static final LatencyHistogram[] histograms =
+      new LatencyHistogram[Stage.values().length];
+  static {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    }
+  }
+
+  private PipelineLatency() {
+  }
+
+  /**
+   * Records one pass through a stage.
+   *
+   * @param stage The stage
+   * @param startNanos The System.nanoTime() at which the stage started
+   * @return The current System.nanoTime(), for use as the start of the next stage
+   */
+  static long record(Stage stage, long startNanos) {
+    long now = System.nanoTime();
+    histograms[stage.ordinal()].record(now - startNanos);
+    return now;
+  }
+
+  static LatencyHistogram get(Stage stage) {
+    return histograms[stage.ordinal()];
+  }
+
+  static void reset() {
+    for (LatencyHistogram histogram : histograms) {
+      histogram.reset();
+    }
+  }
+
+  /**
+   * Writes a table of count, p50, p90, p99, max, and mean for every stage, in milliseconds.
+   *
+   * @param file The file to write, replacing any existing file
+   * @throws IOException if the file could not be written
+   */
+  static void dump(File file) throws IOException {
+    PrintWriter writer = new PrintWriter(new FileWriter(file));
+    try {
+      writer.println("# Pipeline latency, " + new Date() + ", all times in ms");
+      writer.println(String.format(Locale.US, "%-16s %8s %9s %9s %9s %9s %9s",
+          "stage", "count", "p50", "p90", "p99", "max", "mean"));
+      for (Stage stage : Stage.values()) {
+        LatencyHistogram histogram = get(stage);
+        writer.println(String.format(Locale.US, "%-16s %8d %9.2f %9.2f %9.2f %9.2f %9.2f",
+            stage.name(),
+            histogram.getCount(),
+            toMillis(histogram.getPercentile(0.50)),
+            toMillis(histogram.getPercentile(0.90)),
+            toMillis(histogram.getPercentile(0.99)),
+            toMillis(histogram.getMax()),
+            toMillis(histogram.getMean())));
+      }
+    } finally {
+      writer.close();
+    }
+    if (writer.checkError()) {
+      throw new IOException("Couldn't write " + file);
+    }
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1e6;
+  }
+}
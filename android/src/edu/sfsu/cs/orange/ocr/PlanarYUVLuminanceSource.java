@@ -26,6 +26,11 @@ import android.graphics.Bitmap;
  * It works for any pixel format where the Y channel is planar and appears first, including
  * YCbCr_420_SP and YCbCr_422_SP.
  *
+ * Mirroring, cropping and rotation are all done as views: the underlying yuvData is never
+ * modified or copied. Each view maps its pixel (x, y) to yuvData[offset + x * xStep + y * yStep],
+ * so views compose in O(1), and pixels are remapped only as they are written into the caller's
+ * arrays. getMatrix() materializes a contiguous copy at most once per view.
+ *
  * @author dswitkin@google.com (Daniel Switkin)
  */
 public final class PlanarYUVLuminanceSource extends LuminanceSource {
@@ -33,8 +38,10 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
   private final byte[] yuvData;
   private final int dataWidth;
   private final int dataHeight;
-  private final int left;
-  private final int top;
+  private final int offset;
+  private final int xStep;
+  private final int yStep;
+  private byte[] matrix;
 
   public PlanarYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int left, int top,
       int width, int height, boolean reverseHorizontal) {
@@ -47,11 +54,27 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     this.yuvData = yuvData;
     this.dataWidth = dataWidth;
     this.dataHeight = dataHeight;
-    this.left = left;
-    this.top = top;
     if (reverseHorizontal) {
-      reverseHorizontal(width, height);
+      // Read each row from its right end
+      this.offset = top * dataWidth + left + width - 1;
+      this.xStep = -1;
+    } else {
+      this.offset = top * dataWidth + left;
+      this.xStep = 1;
     }
+    this.yStep = dataWidth;
+  }
+
+  // Creates a view over the same data with a different mapping.
+  private PlanarYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int offset,
+      int xStep, int yStep, int width, int height) {
+    super(width, height);
+    this.yuvData = yuvData;
+    this.dataWidth = dataWidth;
+    this.dataHeight = dataHeight;
+    this.offset = offset;
+    this.xStep = xStep;
+    this.yStep = yStep;
   }
 
   @Override
@@ -63,8 +86,7 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     if (row == null || row.length < width) {
       row = new byte[width];
     }
-    int offset = (y + top) * dataWidth + left;
-    System.arraycopy(yuvData, offset, row, 0, width);
+    copyRow(offset + y * yStep, row, 0, width);
     return row;
   }
 
@@ -75,35 +97,76 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
 
     // If the caller asks for the entire underlying image, save the copy and give them the
     // original data. The docs specifically warn that result.length must be ignored.
-    if (width == dataWidth && height == dataHeight) {
+    if (width == dataWidth && height == dataHeight && offset == 0 && xStep == 1
+        && yStep == dataWidth) {
       return yuvData;
     }
 
-    int area = width * height;
-    byte[] matrix = new byte[area];
-    int inputOffset = top * dataWidth + left;
-
-    // If the width matches the full width of the underlying data, perform a single copy.
-    if (width == dataWidth) {
-      System.arraycopy(yuvData, inputOffset, matrix, 0, area);
-      return matrix;
-    }
-
-    // Otherwise copy one cropped row at a time.
-    byte[] yuv = yuvData;
-    for (int y = 0; y < height; y++) {
-      int outputOffset = y * width;
-      System.arraycopy(yuv, inputOffset, matrix, outputOffset, width);
-      inputOffset += dataWidth;
+    // Materialize the view only once, no matter how many times it is asked for.
+    if (matrix == null) {
+      matrix = copyMatrix(new byte[width * height]);
     }
     return matrix;
   }
 
   @Override
   public boolean isCropSupported() {
-    //return true;
-    
-    return false;
+    return true;
+  }
+
+  @Override
+  public PlanarYUVLuminanceSource crop(int left, int top, int width, int height) {
+    if (left < 0 || top < 0 || width <= 0 || height <= 0 || left + width > getWidth()
+        || top + height > getHeight()) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+    return new PlanarYUVLuminanceSource(yuvData, dataWidth, dataHeight,
+        offset + left * xStep + top * yStep, xStep, yStep, width, height);
+  }
+
+  @Override
+  public boolean isRotateSupported() {
+    return true;
+  }
+
+  /**
+   * Returns a view of this source rotated 90 degrees counter-clockwise. The top row of the result
+   * is the rightmost column of this source, read from top to bottom.
+   */
+  @Override
+  public PlanarYUVLuminanceSource rotateCounterClockwise() {
+    int width = getWidth();
+    int height = getHeight();
+    return new PlanarYUVLuminanceSource(yuvData, dataWidth, dataHeight,
+        offset + (width - 1) * xStep, yStep, -xStep, height, width);
+  }
+
+  /**
+   * @return Whether this source presents its pixels mirrored left to right.
+   */
+  public boolean isReverseHorizontal() {
+    return xStep < 0;
+  }
+
+  /**
+   * Copies the cropped luminance data into an 8-bit greyscale buffer with one byte per pixel and
+   * a stride of getWidth(). The OCR engine accepts this format directly, so there's no need to
+   * expand the data to ARGB pixels and build a Bitmap.
+   *
+   * @param greyscale An optional preallocated array. If null or too small, it will be ignored.
+   *                  Always use the returned object.
+   * @return An array containing the cropped greyscale pixels.
+   */
+  public byte[] renderCroppedGreyscale(byte[] greyscale) {
+    int area = getWidth() * getHeight();
+    if (greyscale == null || greyscale.length < area) {
+      greyscale = new byte[area];
+    }
+    if (matrix != null) {
+      System.arraycopy(matrix, 0, greyscale, 0, area);
+      return greyscale;
+    }
+    return copyMatrix(greyscale);
   }
 
   public Bitmap renderCroppedGreyscaleBitmap() {
@@ -111,15 +174,15 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     int height = getHeight();
     int[] pixels = new int[width * height];
     byte[] yuv = yuvData;
-    int inputOffset = top * dataWidth + left;
+    int inputOffset = offset;
 
     for (int y = 0; y < height; y++) {
       int outputOffset = y * width;
-      for (int x = 0; x < width; x++) {
-        int grey = yuv[inputOffset + x] & 0xff;
+      for (int x = 0, index = inputOffset; x < width; x++, index += xStep) {
+        int grey = yuv[index] & 0xff;
         pixels[outputOffset + x] = 0xFF000000 | (grey * 0x00010101);
       }
-      inputOffset += dataWidth;
+      inputOffset += yStep;
     }
 
     Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
@@ -127,15 +190,36 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     return bitmap;
   }
 
-  private void reverseHorizontal(int width, int height) {
-    byte[] yuvData = this.yuvData;
-    for (int y = 0, rowStart = top * dataWidth + left; y < height; y++, rowStart += dataWidth) {
-      int middle = rowStart + width / 2;
-      for (int x1 = rowStart, x2 = rowStart + width - 1; x1 < middle; x1++, x2--) {
-        byte temp = yuvData[x1];
-        yuvData[x1] = yuvData[x2];
-        yuvData[x2] = temp;
-      }
+  // Copies the view into matrix as a row-major array with a stride of getWidth().
+  private byte[] copyMatrix(byte[] matrix) {
+    int width = getWidth();
+    int height = getHeight();
+    int inputOffset = offset;
+
+    // If the view covers whole, unmirrored rows of the underlying data, perform a single copy.
+    if (xStep == 1 && yStep == dataWidth && width == dataWidth) {
+      System.arraycopy(yuvData, inputOffset, matrix, 0, width * height);
+      return matrix;
+    }
+
+    // Otherwise copy one row at a time.
+    for (int y = 0, outputOffset = 0; y < height; y++, outputOffset += width) {
+      copyRow(inputOffset, matrix, outputOffset, width);
+      inputOffset += yStep;
+    }
+    return matrix;
+  }
+
+  // Copies one row of the view starting at yuvData[inputOffset], without touching yuvData.
+  private void copyRow(int inputOffset, byte[] output, int outputOffset, int width) {
+    if (xStep == 1) {
+      System.arraycopy(yuvData, inputOffset, output, outputOffset, width);
+      return;
+    }
+    byte[] yuv = yuvData;
+    int step = xStep;
+    for (int x = inputOffset, end = outputOffset + width; outputOffset < end; x += step) {
+      output[outputOffset++] = yuv[x];
     }
   }
 
@@ -47,6 +47,14 @@ public class PreferencesActivity extends PreferenceActivity implements
   public static final String KEY_CHARACTER_WHITELIST = "preference_character_whitelist";
   public static final String KEY_TOGGLE_LIGHT = "preference_toggle_light";
   public static final String KEY_TRANSLATOR = "preference_translator";
+  public static final String KEY_LUMINANCE_IMAGE_INPUT = "preference_luminance_image_input";
+  public static final String KEY_RECOGNITION_WORKERS = "preference_recognition_workers";
+  public static final String KEY_STRIP_RECOGNITION = "preference_strip_recognition";
+  public static final String KEY_TEXT_SCALING = "preference_text_scaling";
+  public static final String KEY_PERFORMANCE_HUD = "preference_performance_hud";
+  public static final String KEY_RESULT_CONSENSUS = "preference_result_consensus";
+  public static final String KEY_TEXT_LOCALIZATION = "preference_text_localization";
+  public static final String KEY_LEXICON_CORRECTION = "preference_lexicon_correction";
   
   // Preference keys carried over from ZXing project
   public static final String KEY_HELP_VERSION_SHOWN = "preferences_help_version_shown";
@@ -62,6 +70,8 @@ public class PreferencesActivity extends PreferenceActivity implements
   public static final String CAPTURE_MODE_CONTINUOUS = "Continuous";
   public static final String CAPTURE_MODE_SINGLE_SHOT = "Single shot";
 
+  public static final String TRANSLATOR_DICTIONARY = "Dictionary file";
+
   private ListPreference listPreferencePageSegmentationMode;
   private ListPreference listPreferenceAccuracyVsSpeed;
   private EditTextPreference editTextPreferenceCharacterBlacklist;
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+/**
+ * Told how far along installing language data is, whether downloaded by LanguageDataDownloader
+ * or unpacked by AssetInstaller. Called on their worker threads.
+ */
+interface ProgressListener {
+
+  /**
+   * @param percentComplete How much of the data has been installed, from 0 to 100
+   */
+  void onProgress(int percentComplete);
+}
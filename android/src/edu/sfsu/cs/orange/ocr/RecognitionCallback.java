@@ -0,0 +1,35 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+/**
+ * Receives the outcome of every job submitted to a RecognitionExecutor. Both methods are called
+ * on the executor's engine threads, or on the submitting thread for a refused job, so they must
+ * only hand the job on and return.
+ */
+interface RecognitionCallback {
+
+  /**
+   * Called when the engine has finished with a job, whether or not it recognized any text.
+   */
+  void onRecognitionFinished(RecognitionJob job);
+
+  /**
+   * Called instead of onRecognitionFinished() for a job that never reached the engine: refused
+   * because the engine already had a job, or discarded at shutdown.
+   */
+  void onRecognitionDropped(RecognitionJob job);
+}
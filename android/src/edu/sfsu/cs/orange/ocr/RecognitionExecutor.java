@@ -0,0 +1,233 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.util.Log;
+
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+/**
+ * Runs recognition jobs on long-lived threads, one per engine. Each engine is only ever used from
+ * its own thread, which takes jobs from a one-place queue, so a job costs one queue handoff
+ * instead of an AsyncTask, and its outcome goes straight to the RecognitionCallback from the
+ * engine thread instead of through an extra message to the UI thread.
+ *
+ * An engine takes one job at a time. A job submitted while the engine is running one, or has one
+ * queued, is refused and passed to RecognitionCallback.onRecognitionDropped(), so the shutter
+ * press isn't left waiting behind a busy engine, and a worker's job never shares its image buffers
+ * with another of its jobs still outstanding.
+ *
+ * A job that needs more than its own engine, like one recognized as strips, hands EngineTasks to
+ * the other engines' threads through execute(), under the same one-at-a-time rule.
+ */
+final class RecognitionExecutor {
+
+  private static final String TAG = RecognitionExecutor.class.getSimpleName();
+
+  /**
+   * Work for an engine's own thread besides a recognition job, such as one strip of a job's
+   * region. Tasks have no callback, and aren't counted in flight.
+   */
+  interface EngineTask {
+
+    /**
+     * Runs the task on the engine's thread.
+     */
+    void run(TessBaseAPI baseApi);
+
+    /**
+     * Called instead of run() if the executor shuts down before the task reaches the engine.
+     */
+    void cancel();
+  }
+
+  private final EngineThread[] engineThreads;
+  private final RecognitionCallback callback;
+  // Stops the engine threads even if a job swallows the interrupt
+  private volatile boolean isShutdown;
+
+  /**
+   * Starts one thread for each engine.
+   *
+   * @param baseApis The initialized engines. Must not be used by anything else until shutdown().
+   * @param callback Receives every job once it is finished or dropped
+   */
+  RecognitionExecutor(TessBaseAPI[] baseApis, RecognitionCallback callback) {
+    this.callback = callback;
+    engineThreads = new EngineThread[baseApis.length];
+    for (int i = 0; i < baseApis.length; i++) {
+      engineThreads[i] = new EngineThread(i, baseApis[i]);
+      engineThreads[i].start();
+    }
+  }
+
+  /**
+   * Queues a job for one engine, unless the engine already has one.
+   *
+   * @param engineIndex The engine to run the job on
+   * @param job The job
+   * @return True if the job was queued, false if it was refused because the engine is busy
+   */
+  boolean submit(int engineIndex, RecognitionJob job) {
+    EngineThread engineThread = engineThreads[engineIndex];
+    if (!engineThread.isBusy.compareAndSet(false, true)) {
+      PerformanceCounters.jobsOverflowed.incrementAndGet();
+      drop(job);
+      return false;
+    }
+    job.setSubmitTime(System.nanoTime());
+    PerformanceCounters.decodesInFlight.incrementAndGet();
+    engineThread.queue.offer(job);
+    return true;
+  }
+
+  /**
+   * Queues a task for one engine, unless the engine already has a job or task.
+   *
+   * @param engineIndex The engine to run the task on
+   * @param task The task
+   * @return True if the task was queued, false if the engine is busy, in which case the task is
+   *         left to the caller
+   */
+  boolean execute(int engineIndex, EngineTask task) {
+    EngineThread engineThread = engineThreads[engineIndex];
+    if (!engineThread.isBusy.compareAndSet(false, true)) {
+      return false;
+    }
+    engineThread.queue.offer(task);
+    return true;
+  }
+
+  /**
+   * @return Whether the engine has a job or task queued or running, so that a job submitted now
+   *         would be refused. Only its worker submits jobs to an engine, and tasks only go to the
+   *         engines of workers left idle in strip recognition mode, so the engine stays free
+   *         until the worker submits.
+   */
+  boolean isBusy(int engineIndex) {
+    return engineThreads[engineIndex].isBusy.get();
+  }
+
+  /**
+   * Stops the engine threads, dropping any jobs and cancelling any tasks still queued, and waits
+   * for those already on an engine to finish. The engines are left for their owner to end.
+   */
+  void shutdown() {
+    isShutdown = true;
+    for (EngineThread engineThread : engineThreads) {
+      engineThread.interrupt();
+    }
+    for (EngineThread engineThread : engineThreads) {
+      try {
+        engineThread.join();
+      } catch (InterruptedException e) {
+        Log.w(TAG, "Interrupted waiting for " + engineThread.getName(), e);
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  // Gives up on a job. Only jobs refused by a busy engine are counted as overflows, not those
+  // discarded at shutdown.
+  private void drop(RecognitionJob job) {
+    job.dismissDialog();
+    callback.onRecognitionDropped(job);
+  }
+
+  private final class EngineThread extends Thread {
+
+    // Holds a RecognitionJob or an EngineTask
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(1);
+    // Set from submission until the job or task has run, so that a second one is refused. Left
+    // set once the thread has stopped.
+    private final AtomicBoolean isBusy = new AtomicBoolean();
+    private final TessBaseAPI baseApi;
+
+    EngineThread(int engineIndex, TessBaseAPI baseApi) {
+      super("RecognitionThread-" + engineIndex);
+      this.baseApi = baseApi;
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!isShutdown) {
+          Object work;
+          try {
+            work = queue.take();
+          } catch (InterruptedException e) {
+            break;
+          }
+          if (work instanceof RecognitionJob) {
+            runJob((RecognitionJob) work);
+          } else {
+            try {
+              ((EngineTask) work).run(baseApi);
+            } finally {
+              isBusy.set(false);
+            }
+          }
+        }
+      } finally {
+        close();
+      }
+    }
+
+    private void runJob(RecognitionJob job) {
+      PipelineLatency.record(PipelineLatency.Stage.DISPATCH, job.getSubmitTime());
+      try {
+        job.run(baseApi);
+      } finally {
+        PerformanceCounters.decodesInFlight.decrementAndGet();
+        // Free before the callback, which may lead straight to the next submission
+        isBusy.set(false);
+      }
+      callback.onRecognitionFinished(job);
+    }
+
+    // Refuses anything more, and gives up on what was submitted but not run. A job or task
+    // submitted just before may still be on its way into the queue, so it is waited for. Another
+    // engine's job may be waiting on a task here, so one is never left in the queue.
+    private void close() {
+      if (isBusy.compareAndSet(false, true)) {
+        return;
+      }
+      boolean isInterrupted = false;
+      Object work = null;
+      while (work == null) {
+        try {
+          work = queue.take();
+        } catch (InterruptedException e) {
+          isInterrupted = true;
+        }
+      }
+      if (work instanceof RecognitionJob) {
+        PerformanceCounters.decodesInFlight.decrementAndGet();
+        drop((RecognitionJob) work);
+      } else {
+        ((EngineTask) work).cancel();
+      }
+      if (isInterrupted) {
+        interrupt();
+      }
+    }
+  }
+}
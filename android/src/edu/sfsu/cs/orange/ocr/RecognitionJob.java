@@ -0,0 +1,284 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Set;
+
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+import android.app.ProgressDialog;
+import android.graphics.Bitmap;
+
+/**
+ * One image to recognize, with the result once it has been recognized. Jobs are run by a
+ * RecognitionExecutor on the thread that owns the engine, and handed to its RecognitionCallback.
+ */
+final class RecognitionJob {
+
+  private CaptureActivity activity;
+  private Bitmap bitmap;
+  private byte[] greyscale;
+  private int width;
+  private int height;
+  private OcrResult ocrResult;
+  private OcrResultFailure ocrResultFailure;
+  private boolean isContinuous;
+  private int workerIndex;
+  private long frameSequence = -1;
+  private StripRecognizer stripRecognizer;
+  private StripSplitter.Strip[] strips;
+  private LexiconCorrector corrector;
+  private int scale = 1;
+  private int originX;
+  private int originY;
+  private long captureTime;
+  private long submitTime;
+  private long resultReadyTime;
+  private boolean succeeded;
+  private ProgressDialog indeterminateDialog;
+  private long start;
+  private long end;
+  
+  // Constructor for single-shot mode
+  RecognitionJob(CaptureActivity activity, ProgressDialog indeterminateDialog, Bitmap bitmap) {
+    this.activity = activity;
+    this.indeterminateDialog = indeterminateDialog;
+    this.bitmap = bitmap;
+    isContinuous = false;
+  }
+
+  // Constructor for single-shot mode, passing 8-bit greyscale pixels straight to the engine
+  RecognitionJob(CaptureActivity activity, ProgressDialog indeterminateDialog, byte[] greyscale,
+      int width, int height) {
+    this.activity = activity;
+    this.indeterminateDialog = indeterminateDialog;
+    this.greyscale = greyscale;
+    this.width = width;
+    this.height = height;
+    isContinuous = false;
+  }
+
+  // Constructor for continuous recognition mode. The worker index and frame sequence number are
+  // passed back with the result.
+  RecognitionJob(CaptureActivity activity, Bitmap bitmap, int workerIndex, long frameSequence) {
+    this.activity = activity;
+    this.bitmap = bitmap;
+    this.workerIndex = workerIndex;
+    this.frameSequence = frameSequence;
+    isContinuous = true;
+  }
+
+  // Constructor for continuous recognition mode, passing 8-bit greyscale pixels straight to the engine
+  RecognitionJob(CaptureActivity activity, byte[] greyscale, int width, int height,
+      int workerIndex, long frameSequence) {
+    this.activity = activity;
+    this.greyscale = greyscale;
+    this.width = width;
+    this.height = height;
+    this.workerIndex = workerIndex;
+    this.frameSequence = frameSequence;
+    isContinuous = true;
+  }
+
+  /**
+   * Sets the System.nanoTime() at which the source frame was captured, for the pipeline latency.
+   */
+  void setCaptureTime(long captureTime) {
+    this.captureTime = captureTime;
+  }
+
+  /**
+   * Sets the factor the image was downscaled by, so that boxes can be scaled back to preview
+   * coordinates.
+   */
+  void setScale(int scale) {
+    this.scale = scale;
+  }
+
+  /**
+   * Sets where the image's top left corner is in the framed region, for when only the part of the
+   * region around its text is recognized, so that boxes can be moved back to framed region
+   * coordinates.
+   */
+  void setOrigin(int originX, int originY) {
+    this.originX = originX;
+    this.originY = originY;
+  }
+
+  /**
+   * Recognizes the greyscale image as separate strips on several engines at once, one of them the
+   * engine that runs this job. Only for jobs constructed with greyscale pixels.
+   */
+  void setStrips(StripRecognizer stripRecognizer, StripSplitter.Strip[] strips) {
+    this.stripRecognizer = stripRecognizer;
+    this.strips = strips;
+  }
+
+  /**
+   * Corrects the result's low-confidence words against a lexicon. The corrector belongs to the
+   * worker that runs this job.
+   */
+  void setCorrector(LexiconCorrector corrector) {
+    this.corrector = corrector;
+  }
+
+  void setSubmitTime(long submitTime) {
+    this.submitTime = submitTime;
+  }
+
+  /**
+   * @return The System.nanoTime() at which the job was submitted to the executor.
+   */
+  long getSubmitTime() {
+    return submitTime;
+  }
+
+  /**
+   * @return The System.nanoTime() at which the job finished on its engine.
+   */
+  long getResultReadyTime() {
+    return resultReadyTime;
+  }
+
+  boolean isContinuous() {
+    return isContinuous;
+  }
+
+  int getWorkerIndex() {
+    return workerIndex;
+  }
+
+  long getFrameSequence() {
+    return frameSequence;
+  }
+
+  /**
+   * @return True if text was recognized with at least the minimum mean confidence.
+   */
+  boolean isSucceeded() {
+    return succeeded;
+  }
+
+  /**
+   * @return The recognized text, which may be below the minimum confidence, or null if none was
+   *         recognized.
+   */
+  OcrResult getResult() {
+    return ocrResult;
+  }
+
+  /**
+   * @return The failure for a continuous-mode job that recognized no text, or null.
+   */
+  OcrResultFailure getFailure() {
+    return ocrResultFailure;
+  }
+
+  /**
+   * Recognizes the image. Called on the engine's own thread.
+   *
+   * @param baseApi The engine to recognize with
+   */
+  void run(TessBaseAPI baseApi) {
+    succeeded = recognize(baseApi);
+    resultReadyTime = System.nanoTime();
+    PerformanceCounters.recordRecognition(end - start);
+    if (isContinuous) {
+      baseApi.clear();
+    }
+    dismissDialog();
+  }
+
+  /**
+   * Dismisses the single-shot progress dialog, if there is one. Safe to call from any thread.
+   */
+  void dismissDialog() {
+    if (indeterminateDialog != null) {
+      indeterminateDialog.dismiss();
+    }
+  }
+
+  private boolean recognize(TessBaseAPI baseApi) {
+    String textResult = null;   
+    int overallConf = -1;
+    start = System.currentTimeMillis();
+    end = start;
+    
+    if (stripRecognizer != null) {
+      return recognizeStrips(baseApi);
+    }
+    
+    long stageStart = System.nanoTime();
+    try {
+      if (bitmap != null) {
+        baseApi.setImage(bitmap);
+      } else {
+        // One byte per pixel, with a stride of one row
+        baseApi.setImage(greyscale, width, height, 1, width);
+      }
+      stageStart = PipelineLatency.record(PipelineLatency.Stage.SET_IMAGE, stageStart);
+      textResult = baseApi.getUTF8Text();
+      PipelineLatency.record(PipelineLatency.Stage.RECOGNIZE, stageStart);
+      overallConf = baseApi.meanConfidence();
+      end = System.currentTimeMillis();
+    } catch (RuntimeException e) {;
+      try {
+        baseApi.clear();
+        activity.stopHandler();
+      } catch (NullPointerException e1) {
+        // Continue
+      }
+      return false;
+    }
+
+    if (textResult == null || textResult.equals("")) {
+      ocrResultFailure = new OcrResultFailure(end - start, frameSequence);
+      return false;
+    } else {  
+      // Pull the confidences and boxes this mode uses before the engine moves on. Anything else
+      // is left in the engine.
+      ocrResult = correct(ResultExtractor.extract(baseApi, getExtractionPolicy(), textResult,
+          overallConf, scale, originX, originY, end - start, frameSequence, captureTime));
+    }
+
+    if (overallConf < CaptureActivity.MINIMUM_MEAN_CONFIDENCE) {
+      return false;
+    }
+
+    return true;
+  }
+
+  // Runs on the worker's own engine, which has the same index as the worker
+  private boolean recognizeStrips(TessBaseAPI baseApi) {
+    ocrResult = stripRecognizer.recognize(baseApi, workerIndex, greyscale, width, strips, scale,
+        originX, originY, getExtractionPolicy(), start, frameSequence, captureTime);
+    end = System.currentTimeMillis();
+    if (ocrResult == null) {
+      ocrResultFailure = new OcrResultFailure(end - start, frameSequence);
+      return false;
+    }
+    ocrResult = correct(ocrResult);
+    return ocrResult.getMeanConfidence() >= CaptureActivity.MINIMUM_MEAN_CONFIDENCE;
+  }
+
+  private OcrResult correct(OcrResult result) {
+    return corrector == null ? result : corrector.correct(result);
+  }
+
+  private Set<ResultExtractor.Artifact> getExtractionPolicy() {
+    return isContinuous ? ResultExtractor.CONTINUOUS_POLICY : ResultExtractor.SINGLE_SHOT_POLICY;
+  }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import android.graphics.Rect;
+
+/**
+ * Stabilizes continuous-mode results by voting across the last few frames, so that one misread
+ * frame doesn't flicker the overlay and one empty frame doesn't wipe it.
+ *
+ * Each word of a new result is matched to a word slot by box overlap with the slot's last box,
+ * or starts a new slot. A slot is in the consensus while it was seen in more than half of the
+ * frames in the window, and its text is the reading with the highest total word confidence over
+ * those frames. A new consensus result is built only when a slot appears, disappears, changes its
+ * text, or moves noticeably.
+ *
+ * Word boxes are in the coordinates of the framed region, so the window must be reset when the
+ * framing rectangle changes. Not thread-safe: used on the UI thread only.
+ */
+final class ResultConsensus {
+
+  // Number of recent frames that vote
+  private static final int WINDOW = 5;
+
+  // Most word slots tracked at once
+  private static final int MAX_SLOTS = 100;
+
+  // Least intersection over union for a word to be matched to a slot
+  private static final float MIN_MATCH_OVERLAP = 0.5f;
+
+  // A slot's shown box is only replaced when its overlap with the voted box drops below this, so
+  // that jitter of a pixel or two doesn't count as a change
+  private static final float MIN_STILL_OVERLAP = 0.8f;
+
+  // Consecutive frames without a change in the consensus for it to count as stable
+  private static final int STABLE_FRAMES = 4;
+
+  // The frames of one word position across the window, and what was last shown for it
+  private static final class Slot {
+    final String[] texts = new String[WINDOW];
+    final int[] confidences = new int[WINDOW];
+    final int[] boxes = new int[4 * WINDOW];
+    // The most recent box, which the next frame's words are matched against
+    final int[] lastBox = new int[4];
+    boolean isMatched;
+
+    boolean isShown;
+    String shownText;
+    int shownConfidence;
+    final int[] shownBox = new int[4];
+
+    boolean isEmpty() {
+      for (int i = 0; i < WINDOW; i++) {
+        if (texts[i] != null) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private final Slot[] slots = new Slot[MAX_SLOTS];
+  private int slotCount;
+
+  // Mean confidence of each frame in the window, or -1 for an empty frame
+  private final int[] meanConfidences = new int[WINDOW];
+  private long frameCount;
+
+  private OcrResult result;
+  private int unchangedFrames;
+
+  // Scratch space for matching, voting and building results
+  private final Rect wordBox = new Rect();
+  private final int[] box = new int[4];
+  private final int[] votedBox = new int[4];
+  private final int[] order = new int[MAX_SLOTS];
+
+  /**
+   * Adds a frame's result to the window.
+   *
+   * @param frame The result
+   * @return True if the consensus changed, in which case getResult() returns the new one
+   */
+  boolean add(OcrResult frame) {
+    int position = startFrame(frame.getMeanConfidence());
+    String text = frame.getText();
+    for (int i = 0; i < frame.getWordCount(); i++) {
+      frame.getWordBox(i, wordBox);
+      box[0] = wordBox.left;
+      box[1] = wordBox.top;
+      box[2] = wordBox.right;
+      box[3] = wordBox.bottom;
+      Slot slot = findSlot(box);
+      if (slot == null) {
+        continue;
+      }
+      slot.isMatched = true;
+      slot.texts[position] = text.substring(frame.getWordStart(i), frame.getWordEnd(i));
+      slot.confidences[position] = frame.getWordConfidence(i);
+      System.arraycopy(box, 0, slot.boxes, 4 * position, 4);
+      System.arraycopy(box, 0, slot.lastBox, 0, 4);
+    }
+    return finishFrame(frame.getRecognitionTimeRequired(), frame.getFrameSequence(),
+        frame.getCaptureTime());
+  }
+
+  /**
+   * Adds a frame in which nothing was recognized.
+   *
+   * @param frame The failure
+   * @return True if the consensus changed, in which case getResult() returns the new one
+   */
+  boolean add(OcrResultFailure frame) {
+    startFrame(-1);
+    return finishFrame(frame.getTimeRequired(), frame.getFrameSequence(), 0);
+  }
+
+  /**
+   * @return The current consensus, which has no words if none are agreed on, or null if nothing
+   *         has changed since the last reset
+   */
+  OcrResult getResult() {
+    return result;
+  }
+
+  /**
+   * @return Whether the consensus has gone unchanged for the last few frames, so that frames can
+   *         be recognized less often
+   */
+  boolean isStable() {
+    return unchangedFrames >= STABLE_FRAMES;
+  }
+
+  /**
+   * Forgets every frame, for when the framing rectangle changes or recognition restarts.
+   */
+  void reset() {
+    for (int i = 0; i < slotCount; i++) {
+      slots[i] = null;
+    }
+    slotCount = 0;
+    frameCount = 0;
+    result = null;
+    unchangedFrames = 0;
+  }
+
+  // Clears the window position the new frame takes over, and returns it.
+  private int startFrame(int meanConfidence) {
+    int position = (int) (frameCount % WINDOW);
+    frameCount++;
+    meanConfidences[position] = meanConfidence;
+    for (int i = 0; i < slotCount; i++) {
+      slots[i].texts[position] = null;
+      slots[i].isMatched = false;
+    }
+    return position;
+  }
+
+  // Finds the unmatched slot that best overlaps the box, or starts a new one.
+  private Slot findSlot(int[] box) {
+    Slot best = null;
+    float bestOverlap = MIN_MATCH_OVERLAP;
+    for (int i = 0; i < slotCount; i++) {
+      Slot slot = slots[i];
+      if (slot.isMatched) {
+        continue;
+      }
+      float overlap = overlap(box, slot.lastBox);
+      if (overlap >= bestOverlap) {
+        best = slot;
+        bestOverlap = overlap;
+      }
+    }
+    if (best == null && slotCount < MAX_SLOTS) {
+      best = new Slot();
+      slots[slotCount++] = best;
+    }
+    return best;
+  }
+
+  // Drops slots that have left the window, votes on the rest, and rebuilds the result if anything
+  // shown has changed.
+  private boolean finishFrame(long recognitionTime, long frameSequence, long captureTime) {
+    int frames = (int) Math.min(frameCount, WINDOW);
+    boolean isChanged = false;
+    int kept = 0;
+    for (int i = 0; i < slotCount; i++) {
+      Slot slot = slots[i];
+      if (slot.isEmpty()) {
+        isChanged |= slot.isShown;
+        continue;
+      }
+      slots[kept++] = slot;
+      isChanged |= vote(slot, frames);
+    }
+    for (int i = kept; i < slotCount; i++) {
+      slots[i] = null;
+    }
+    slotCount = kept;
+
+    if (!isChanged) {
+      unchangedFrames++;
+      return false;
+    }
+    unchangedFrames = 0;
+    result = buildResult(frames, recognitionTime, frameSequence, captureTime);
+    return true;
+  }
+
+  // Works out whether the slot is shown, and with which text and box. Returns true if any of those
+  // changed.
+  private boolean vote(Slot slot, int frames) {
+    int seen = 0;
+    String bestText = null;
+    int bestWeight = -1;
+    for (int i = 0; i < WINDOW; i++) {
+      if (slot.texts[i] == null) {
+        continue;
+      }
+      seen++;
+      // Every reading counts for at least 1, so that a zero confidence still votes
+      int weight = 0;
+      for (int j = 0; j < WINDOW; j++) {
+        if (slot.texts[i].equals(slot.texts[j])) {
+          weight += slot.confidences[j] + 1;
+        }
+      }
+      if (weight > bestWeight) {
+        bestWeight = weight;
+        bestText = slot.texts[i];
+      }
+    }
+
+    boolean isShown = 2 * seen > frames;
+    if (!isShown) {
+      boolean wasShown = slot.isShown;
+      slot.isShown = false;
+      return wasShown;
+    }
+
+    // The shown box and confidence are the means over the frames that read the winning text
+    int count = 0;
+    int confidence = 0;
+    votedBox[0] = votedBox[1] = votedBox[2] = votedBox[3] = 0;
+    for (int i = 0; i < WINDOW; i++) {
+      if (bestText.equals(slot.texts[i])) {
+        count++;
+        confidence += slot.confidences[i];
+        for (int k = 0; k < 4; k++) {
+          votedBox[k] += slot.boxes[4 * i + k];
+        }
+      }
+    }
+    for (int k = 0; k < 4; k++) {
+      votedBox[k] /= count;
+    }
+    confidence /= count;
+
+    boolean isChanged = !slot.isShown || !bestText.equals(slot.shownText)
+        || overlap(votedBox, slot.shownBox) < MIN_STILL_OVERLAP;
+    if (isChanged) {
+      System.arraycopy(votedBox, 0, slot.shownBox, 0, 4);
+      slot.shownText = bestText;
+      slot.shownConfidence = confidence;
+      slot.isShown = true;
+    }
+    return isChanged;
+  }
+
+  // Builds a result from the shown slots, in reading order: lines from top to bottom, and words
+  // from left to right within a line.
+  private OcrResult buildResult(int frames, long recognitionTime, long frameSequence,
+      long captureTime) {
+    int words = 0;
+    for (int i = 0; i < slotCount; i++) {
+      if (slots[i].isShown) {
+        order[words++] = i;
+      }
+    }
+
+    // Sort by vertical center, then split into lines, then sort each line by left edge
+    for (int i = 1; i < words; i++) {
+      int slot = order[i];
+      int j = i;
+      while (j > 0 && centerY(order[j - 1]) > centerY(slot)) {
+        order[j] = order[j - 1];
+        j--;
+      }
+      order[j] = slot;
+    }
+    int lineStart = 0;
+    boolean[] lineBreaks = new boolean[words];
+    for (int i = 1; i <= words; i++) {
+      Slot first = slots[order[lineStart]];
+      if (i < words && centerY(order[i]) <= first.shownBox[3]) {
+        continue;
+      }
+      for (int a = lineStart + 1; a < i; a++) {
+        int slot = order[a];
+        int b = a;
+        while (b > lineStart && slots[order[b - 1]].shownBox[0] > slots[slot].shownBox[0]) {
+          order[b] = order[b - 1];
+          b--;
+        }
+        order[b] = slot;
+      }
+      if (i < words) {
+        lineBreaks[i] = true;
+      }
+      lineStart = i;
+    }
+
+    StringBuilder text = new StringBuilder();
+    int[] wordBoxes = new int[4 * words];
+    byte[] wordConfidences = new byte[words];
+    for (int i = 0; i < words; i++) {
+      Slot slot = slots[order[i]];
+      if (i > 0) {
+        text.append(lineBreaks[i] ? '\n' : ' ');
+      }
+      text.append(slot.shownText);
+      System.arraycopy(slot.shownBox, 0, wordBoxes, 4 * i, 4);
+      wordConfidences[i] = (byte) slot.shownConfidence;
+    }
+
+    int meanConfidence = 0;
+    int recognized = 0;
+    for (int i = 0; i < frames; i++) {
+      if (meanConfidences[i] >= 0) {
+        meanConfidence += meanConfidences[i];
+        recognized++;
+      }
+    }
+    meanConfidence = recognized == 0 ? 0 : meanConfidence / recognized;
+
+    return new OcrResult(text.toString(), meanConfidence, wordBoxes, wordConfidences, new int[0],
+        recognitionTime, frameSequence, captureTime);
+  }
+
+  private int centerY(int slot) {
+    return (slots[slot].shownBox[1] + slots[slot].shownBox[3]) / 2;
+  }
+
+  // Intersection over union of two boxes, each packed as left, top, right, bottom.
+  private static float overlap(int[] a, int[] b) {
+    int width = Math.min(a[2], b[2]) - Math.max(a[0], b[0]);
+    int height = Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+    if (width <= 0 || height <= 0) {
+      return 0;
+    }
+    long intersection = (long) width * height;
+    long union = (long) (a[2] - a[0]) * (a[3] - a[1]) + (long) (b[2] - b[0]) * (b[3] - b[1])
+        - intersection;
+    return union <= 0 ? 0 : intersection / (float) union;
+  }
+}
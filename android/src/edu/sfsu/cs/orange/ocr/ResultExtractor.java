@@ -0,0 +1,140 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.googlecode.leptonica.android.Pixa;
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+/**
+ * Pulls the parts of a recognition result that a mode needs out of the engine, and packs them into
+ * the columns of an OcrResult. Building box lists means building a Pixa in native code, so each
+ * mode's policy names the artifacts it draws, and the rest are never pulled. Boxes are read out
+ * of the Pixa one at a time into packed int arrays, without a Rect per box, and the Pixa is
+ * recycled.
+ *
+ * The text and mean confidence are always pulled: getting the text is what runs recognition, and
+ * the mean confidence decides whether the result is used at all.
+ */
+final class ResultExtractor {
+
+  enum Artifact {
+    WORD_CONFIDENCES,
+    WORD_BOXES,
+    CHARACTER_BOXES
+  }
+
+  // Continuous mode draws each word over its box, shaded by its confidence
+  static final Set<Artifact> CONTINUOUS_POLICY = Collections.unmodifiableSet(
+      EnumSet.of(Artifact.WORD_CONFIDENCES, Artifact.WORD_BOXES));
+
+  // Single-shot results are kept whole
+  static final Set<Artifact> SINGLE_SHOT_POLICY = Collections.unmodifiableSet(
+      EnumSet.allOf(Artifact.class));
+
+  private static final int[] NO_BOXES = new int[0];
+  private static final byte[] NO_CONFIDENCES = new byte[0];
+
+  private ResultExtractor() {
+  }
+
+  /**
+   * Builds the result for the image the engine just recognized, pulling only the artifacts the
+   * policy names. Must be called on the engine's thread before the engine is given another image.
+   *
+   * @param baseApi The engine holding the recognized image
+   * @param policy The artifacts to pull. The others are left empty in the result.
+   * @param text The text the engine recognized
+   * @param meanConfidence The engine's mean confidence for the text
+   * @param scale The factor the image was downscaled by, to scale boxes back up by
+   * @param originX Where the image's left edge is in the framed region, after scaling
+   * @param originY Where the image's top edge is in the framed region, after scaling
+   * @param recognitionTime The time recognition took, in milliseconds
+   * @param frameSequence The capture order of the frame, or -1
+   * @param captureTime The System.nanoTime() at which the frame was captured, or 0
+   * @return The result
+   */
+  static OcrResult extract(TessBaseAPI baseApi, Set<Artifact> policy, String text,
+      int meanConfidence, int scale, int originX, int originY, long recognitionTime,
+      long frameSequence, long captureTime) {
+    long start = System.nanoTime();
+    byte[] wordConfidences = policy.contains(Artifact.WORD_CONFIDENCES)
+        ? packConfidences(baseApi.wordConfidences()) : NO_CONFIDENCES;
+    int[] wordBoxes = policy.contains(Artifact.WORD_BOXES)
+        ? packBoxes(baseApi.getWords(), scale, originX, originY) : NO_BOXES;
+    int[] characterBoxes = policy.contains(Artifact.CHARACTER_BOXES)
+        ? packBoxes(baseApi.getCharacters(), scale, originX, originY) : NO_BOXES;
+    PipelineLatency.record(PipelineLatency.Stage.EXTRACTION, start);
+    return new OcrResult(text, meanConfidence, wordBoxes, wordConfidences, characterBoxes,
+        recognitionTime, frameSequence, captureTime);
+  }
+
+  /**
+   * Reads a Pixa's boxes into one array of left, top, right, bottom, and recycles the Pixa.
+   *
+   * @param pixa The boxes from the engine, or null
+   * @param scale The factor to multiply the coordinates by
+   * @param originX Added to the x coordinates after scaling
+   * @param originY Added to the y coordinates after scaling
+   * @return The packed boxes
+   */
+  static int[] packBoxes(Pixa pixa, int scale, int originX, int originY) {
+    if (pixa == null) {
+      return NO_BOXES;
+    }
+    try {
+      int count = pixa.size();
+      int[] boxes = new int[4 * count];
+      // x, y, width, height
+      int[] geometry = new int[4];
+      int packed = 0;
+      for (int i = 0; i < count; i++) {
+        if (pixa.getBoxGeometry(i, geometry)) {
+          boxes[packed++] = geometry[0] * scale + originX;
+          boxes[packed++] = geometry[1] * scale + originY;
+          boxes[packed++] = (geometry[0] + geometry[2]) * scale + originX;
+          boxes[packed++] = (geometry[1] + geometry[3]) * scale + originY;
+        }
+      }
+      if (packed < boxes.length) {
+        int[] trimmed = new int[packed];
+        System.arraycopy(boxes, 0, trimmed, 0, packed);
+        boxes = trimmed;
+      }
+      return boxes;
+    } finally {
+      pixa.recycle();
+    }
+  }
+
+  /**
+   * @param confidences Confidences from 0 to 100, or null
+   * @return The confidences as bytes
+   */
+  static byte[] packConfidences(int[] confidences) {
+    if (confidences == null) {
+      return NO_CONFIDENCES;
+    }
+    byte[] packed = new byte[confidences.length];
+    for (int i = 0; i < confidences.length; i++) {
+      packed[i] = (byte) Math.max(0, Math.min(100, confidences[i]));
+    }
+    return packed;
+  }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Paint.Align;
+import android.graphics.Paint.Style;
+import android.graphics.Rect;
+
+/**
+ * The overlay drawn by ViewfinderView for one result: a white box behind each word, shaded by the
+ * word's confidence, with the word reversed and stretched to fill the box. Words are reversed by
+ * WordReverser. When translation is on, each word is replaced by its translation if the
+ * TranslationStage has it cached, and shown as recognized until then.
+ *
+ * Fitting a word to its box takes two text measurements, so the reversed characters, text size,
+ * X scale and baseline of every word are worked out once, when the result is set. The screen
+ * positions of the boxes are worked out again only when the framing rectangle moves or changes
+ * size. Drawing then allocates nothing and measures nothing.
+ */
+final class ResultLayout {
+
+  // Most words to draw for one result
+  private static final int MAX_WORDS = 100;
+
+  // Words below this confidence get a box but no text
+  private static final int MIN_TEXT_CONFIDENCE = 35;
+
+  // Text size to measure at, before scaling to the box
+  private static final float MEASURE_TEXT_SIZE = 100f;
+
+  // Antialiasing can touch pixels just outside a box, so changed areas are widened by this much
+  private static final int DIRTY_MARGIN = 2;
+
+  private final WordReverser reverser;
+  private final Paint boxPaint;
+  private final Paint textPaint;
+  private final Rect bounds = new Rect();
+  private final Rect wordBox = new Rect();
+
+  private OcrResult result;
+  private int wordCount;
+  private TranslationStage translations;
+
+  // The translation of each word, or null where there is none yet
+  private final String[] translatedWords = new String[MAX_WORDS];
+
+  // The reversed characters of all the words, one after another
+  private char[] chars = new char[256];
+  private int[] charOffsets = new int[MAX_WORDS];
+  private int[] charLengths = new int[MAX_WORDS];
+  private int[] boxAlphas = new int[MAX_WORDS];
+  private boolean[] hasText = new boolean[MAX_WORDS];
+  private float[] textSizes = new float[MAX_WORDS];
+  private float[] textScales = new float[MAX_WORDS];
+  private int[] baselines = new int[MAX_WORDS];
+
+  // Screen positions: left, top, right, bottom of each box, and x, y of each word's text
+  private float[] boxes = new float[4 * MAX_WORDS];
+  private float[] textOrigins = new float[2 * MAX_WORDS];
+
+  // The framing rectangles the screen positions were worked out for
+  private final Rect positionedFrame = new Rect();
+  private final Rect positionedPreviewFrame = new Rect();
+  private boolean isPositioned;
+
+  /**
+   * @param reverser Reverses the words, shared by the layouts of one view so that they share its
+   *                 scratch array
+   */
+  ResultLayout(WordReverser reverser) {
+    this.reverser = reverser;
+    boxPaint = new Paint();
+    boxPaint.setColor(Color.WHITE);
+    boxPaint.setStyle(Style.FILL);
+    textPaint = new Paint();
+    textPaint.setColor(Color.BLACK);
+    textPaint.setAntiAlias(true);
+    textPaint.setTextAlign(Align.LEFT);
+  }
+
+  /**
+   * @param translations Where to look up the words' translations, or null to show the words as
+   *                     recognized. Takes effect from the next result.
+   */
+  void setTranslations(TranslationStage translations) {
+    this.translations = translations;
+  }
+
+  /**
+   * Lays out a result's words. Called on the UI thread whenever a new result is shown, and when
+   * translations arrive for the result shown.
+   *
+   * @param result The result, or null to clear the layout
+   */
+  void setResult(OcrResult result) {
+    this.result = result;
+    isPositioned = false;
+    wordCount = result == null ? 0 : Math.min(result.getWordCount(), MAX_WORDS);
+    if (result == null) {
+      return;
+    }
+
+    String text = result.getText();
+    int totalLength = 0;
+    for (int i = 0; i < wordCount; i++) {
+      int start = result.getWordStart(i);
+      int end = result.getWordEnd(i);
+      translatedWords[i] = translations == null ? null
+          : translations.lookup(text.substring(start, end));
+      totalLength += translatedWords[i] != null ? translatedWords[i].length() : end - start;
+    }
+    if (chars.length < totalLength) {
+      chars = new char[Math.max(totalLength, 2 * chars.length)];
+    }
+
+    int offset = 0;
+    for (int i = 0; i < wordCount; i++) {
+      String translation = translatedWords[i];
+      int length;
+      if (translation != null) {
+        length = translation.length();
+        translation.getChars(0, length, chars, offset);
+        translatedWords[i] = null;
+      } else {
+        int start = result.getWordStart(i);
+        length = result.getWordEnd(i) - start;
+        text.getChars(start, start + length, chars, offset);
+      }
+      charOffsets[i] = offset;
+      charLengths[i] = length;
+      offset += length;
+
+      // Higher confidence = more opaque, less transparent background
+      int confidence = result.getWordConfidence(i);
+      boxAlphas[i] = confidence * 255 / 100;
+      hasText[i] = confidence > MIN_TEXT_CONFIDENCE && fitText(i);
+      reverser.reverse(chars, charOffsets[i], length);
+    }
+  }
+
+  /**
+   * Works out the screen positions of the boxes and text, unless they were already worked out for
+   * the same framing rectangles.
+   *
+   * @param frame The framing rectangle on screen
+   * @param previewFrame The framing rectangle in preview frame coordinates, which the result's
+   *                     boxes are in
+   */
+  void position(Rect frame, Rect previewFrame) {
+    if (isPositioned && frame.equals(positionedFrame)
+        && previewFrame.equals(positionedPreviewFrame)) {
+      return;
+    }
+    float scaleX = frame.width() / (float) previewFrame.width();
+    float scaleY = frame.height() / (float) previewFrame.height();
+    for (int i = 0; i < wordCount; i++) {
+      result.getWordBox(i, wordBox);
+      boxes[4 * i] = frame.left + wordBox.left * scaleX;
+      boxes[4 * i + 1] = frame.top + wordBox.top * scaleY;
+      boxes[4 * i + 2] = frame.left + wordBox.right * scaleX;
+      boxes[4 * i + 3] = frame.top + wordBox.bottom * scaleY;
+      textOrigins[2 * i] = boxes[4 * i];
+      textOrigins[2 * i + 1] = boxes[4 * i + 3] - baselines[i];
+    }
+    positionedFrame.set(frame);
+    positionedPreviewFrame.set(previewFrame);
+    isPositioned = true;
+  }
+
+  boolean isPositionedFor(Rect frame, Rect previewFrame) {
+    return isPositioned && frame.equals(positionedFrame)
+        && previewFrame.equals(positionedPreviewFrame);
+  }
+
+  /**
+   * Draws the positioned words.
+   */
+  void draw(Canvas canvas) {
+    draw(canvas, null);
+  }
+
+  /**
+   * Draws the positioned words that overlap an area, skipping the rest.
+   *
+   * @param canvas The canvas, in screen coordinates
+   * @param area The area to draw, in screen coordinates, or null to draw every word
+   */
+  void draw(Canvas canvas, Rect area) {
+    if (!isPositioned) {
+      return;
+    }
+    for (int i = 0; i < wordCount; i++) {
+      if (area != null && (boxes[4 * i + 2] + DIRTY_MARGIN < area.left
+          || boxes[4 * i] - DIRTY_MARGIN > area.right
+          || boxes[4 * i + 3] + DIRTY_MARGIN < area.top
+          || boxes[4 * i + 1] - DIRTY_MARGIN > area.bottom)) {
+        continue;
+      }
+      boxPaint.setAlpha(boxAlphas[i]);
+      canvas.drawRect(boxes[4 * i], boxes[4 * i + 1], boxes[4 * i + 2], boxes[4 * i + 3],
+          boxPaint);
+      if (hasText[i]) {
+        textPaint.setTextSize(textSizes[i]);
+        textPaint.setTextScaleX(textScales[i]);
+        canvas.drawText(chars, charOffsets[i], charLengths[i], textOrigins[2 * i],
+            textOrigins[2 * i + 1], textPaint);
+      }
+    }
+  }
+
+  /**
+   * Grows an area to cover every word of this layout that the other layout doesn't draw the same
+   * way, in the same place. Both layouts must be positioned for the same framing rectangles.
+   * Calling this both ways round covers every pixel that differs between the two.
+   *
+   * @param other The layout to compare against
+   * @param dirty The area to grow, in screen coordinates
+   */
+  void addChangedWords(ResultLayout other, Rect dirty) {
+    for (int i = 0; i < wordCount; i++) {
+      // Words that didn't change are usually at the same index, or close to it
+      if (i < other.wordCount && isSameWord(i, other, i)) {
+        continue;
+      }
+      boolean found = false;
+      for (int j = 0; j < other.wordCount && !found; j++) {
+        found = j != i && isSameWord(i, other, j);
+      }
+      if (!found) {
+        dirty.union(
+            (int) Math.floor(boxes[4 * i]) - DIRTY_MARGIN,
+            (int) Math.floor(boxes[4 * i + 1]) - DIRTY_MARGIN,
+            (int) Math.ceil(boxes[4 * i + 2]) + DIRTY_MARGIN,
+            (int) Math.ceil(boxes[4 * i + 3]) + DIRTY_MARGIN);
+      }
+    }
+  }
+
+  OcrResult getResult() {
+    return result;
+  }
+
+  // Whether word i of this layout and word j of the other draw exactly the same pixels.
+  private boolean isSameWord(int i, ResultLayout other, int j) {
+    for (int k = 0; k < 4; k++) {
+      if (boxes[4 * i + k] != other.boxes[4 * j + k]) {
+        return false;
+      }
+    }
+    if (boxAlphas[i] != other.boxAlphas[j] || hasText[i] != other.hasText[j]) {
+      return false;
+    }
+    if (!hasText[i]) {
+      return true;
+    }
+    if (charLengths[i] != other.charLengths[j] || textSizes[i] != other.textSizes[j]
+        || textScales[i] != other.textScales[j] || baselines[i] != other.baselines[j]) {
+      return false;
+    }
+    for (int k = 0; k < charLengths[i]; k++) {
+      if (chars[charOffsets[i] + k] != other.chars[other.charOffsets[j] + k]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Finds the text size and X scale that make the word fill its box, and the baseline that keeps
+  // its descenders inside it. Measured before the word is reversed.
+  private boolean fitText(int word) {
+    result.getWordBox(word, wordBox);
+    int offset = charOffsets[word];
+    int length = charLengths[word];
+
+    // Adjust text size to fill rect
+    textPaint.setTextSize(MEASURE_TEXT_SIZE);
+    textPaint.setTextScaleX(1.0f);
+    textPaint.getTextBounds(chars, offset, length, bounds);
+    int h = bounds.bottom - bounds.top;
+    if (h <= 0) {
+      return false;
+    }
+    // figure out what textSize setting would create that height of text
+    float size = wordBox.height() / (float) h * MEASURE_TEXT_SIZE;
+    textPaint.setTextSize(size);
+    textPaint.getTextBounds(chars, offset, length, bounds);
+    int w = bounds.right - bounds.left;
+    if (w <= 0) {
+      return false;
+    }
+    // calculate the baseline to use so that the entire text is visible including the descenders
+    int textHeight = bounds.bottom - bounds.top;
+    baselines[word] = bounds.bottom + (wordBox.height() - textHeight) / 2;
+    textSizes[word] = size;
+    // determine how much to scale the width to fit the view
+    textScales[word] = wordBox.width() / (float) w;
+    return true;
+  }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import android.util.Log;
+
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+/**
+ * Recognizes the strips of a framed region at the same time, one strip per engine, and merges the
+ * strip results back into one OcrResult in region coordinates.
+ *
+ * The job's own engine recognizes the first strip on its thread, and the other strips go to the
+ * other engines' threads through the RecognitionExecutor, so that each engine is still only used
+ * from its own thread. A strip whose engine is busy is recognized on the job's engine after the
+ * first.
+ *
+ * Words and characters recognized in the overlap between two strips are kept only from the strip
+ * whose own band contains the center of their box. A strip's text is split into words on
+ * whitespace, and the n-th word goes with the strip's n-th word box and confidence.
+ */
+final class StripRecognizer {
+
+  private static final String TAG = StripRecognizer.class.getSimpleName();
+
+  private final RecognitionExecutor executor;
+  // The image given to each engine, reused for every strip that engine recognizes
+  private final byte[][] stripBuffers;
+
+  // The recognized text, packed boxes, and confidences of one strip, in strip coordinates.
+  static final class StripText {
+    String text;
+    byte[] wordConfidences;
+    int[] wordBoxes;
+    int[] characterBoxes;
+  }
+
+  // One strip to recognize, on the engine whose buffer it uses.
+  private final class StripTask implements RecognitionExecutor.EngineTask {
+    private final byte[] greyscale;
+    private final int width;
+    private final StripSplitter.Strip strip;
+    private final boolean includeCharacters;
+    private final CountDownLatch done;
+    private int engineIndex;
+    private StripText result;
+    private RuntimeException failure;
+    private boolean isCancelled;
+
+    StripTask(int engineIndex, byte[] greyscale, int width, StripSplitter.Strip strip,
+        boolean includeCharacters, CountDownLatch done) {
+      this.engineIndex = engineIndex;
+      this.greyscale = greyscale;
+      this.width = width;
+      this.strip = strip;
+      this.includeCharacters = includeCharacters;
+      this.done = done;
+    }
+
+    public void run(TessBaseAPI baseApi) {
+      try {
+        result = recognizeStrip(baseApi, engineIndex, greyscale, width, strip, includeCharacters);
+      } catch (RuntimeException e) {
+        failure = e;
+      } finally {
+        done.countDown();
+      }
+    }
+
+    public void cancel() {
+      isCancelled = true;
+      done.countDown();
+    }
+  }
+
+  /**
+   * @param executor Runs the strips on the engines' own threads
+   * @param engineCount The number of engines, and so the most strips a region is split into
+   */
+  StripRecognizer(RecognitionExecutor executor, int engineCount) {
+    this.executor = executor;
+    stripBuffers = new byte[engineCount][];
+  }
+
+  int getMaxStrips() {
+    return stripBuffers.length;
+  }
+
+  /**
+   * Recognizes each strip on its own engine, and waits for all of them. It waits for every strip
+   * even if interrupted or if one fails, so that no engine is still in use when it returns.
+   *
+   * @param baseApi The engine of the job being recognized, which this is called on the thread of
+   * @param engineIndex The index of that engine in the executor
+   * @param greyscale The region, as 8-bit luminance with a stride of width
+   * @param width The width of the region
+   * @param strips The strips to recognize, from StripSplitter. At most one per engine.
+   * @param scale The factor the region was downscaled by, to scale boxes back up by
+   * @param originX Where the region's left edge is in the framed region, after scaling
+   * @param originY Where the region's top edge is in the framed region, after scaling
+   * @param policy The artifacts to pull from the engines besides the text, which always
+   *               includes the word boxes and confidences that the strips are merged by
+   * @param recognitionStart The time recognition of this region started, in milliseconds
+   * @param frameSequence The sequence number of the frame the region came from
+   * @param captureTime The System.nanoTime() at which the frame was captured
+   * @return The merged result, or null if no strip produced any text
+   */
+  OcrResult recognize(TessBaseAPI baseApi, int engineIndex, byte[] greyscale, int width,
+      StripSplitter.Strip[] strips, int scale, int originX, int originY,
+      Set<ResultExtractor.Artifact> policy, long recognitionStart, long frameSequence,
+      long captureTime) {
+    boolean includeCharacters = policy.contains(ResultExtractor.Artifact.CHARACTER_BOXES);
+    CountDownLatch done = new CountDownLatch(strips.length);
+    StripTask[] tasks = new StripTask[strips.length];
+    tasks[0] = new StripTask(engineIndex, greyscale, width, strips[0], includeCharacters, done);
+    boolean[] isInline = new boolean[strips.length];
+    for (int i = 1, engine = 0; i < strips.length; i++, engine++) {
+      if (engine == engineIndex) {
+        engine++;
+      }
+      tasks[i] = new StripTask(engine, greyscale, width, strips[i], includeCharacters, done);
+      if (!executor.execute(engine, tasks[i])) {
+        tasks[i].engineIndex = engineIndex;
+        isInline[i] = true;
+      }
+    }
+    tasks[0].run(baseApi);
+    for (int i = 1; i < strips.length; i++) {
+      if (isInline[i]) {
+        tasks[i].run(baseApi);
+      }
+    }
+
+    boolean isInterrupted = false;
+    while (true) {
+      try {
+        done.await();
+        break;
+      } catch (InterruptedException e) {
+        isInterrupted = true;
+      }
+    }
+    if (isInterrupted) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    StripText[] results = new StripText[strips.length];
+    for (int i = 0; i < strips.length; i++) {
+      if (tasks[i].isCancelled) {
+        return null;
+      }
+      if (tasks[i].failure != null) {
+        Log.w(TAG, "Strip recognition failed", tasks[i].failure);
+        return null;
+      }
+      results[i] = tasks[i].result;
+    }
+    return merge(strips, results, scale, originX, originY,
+        System.currentTimeMillis() - recognitionStart, frameSequence, captureTime);
+  }
+
+  // Only called on an engine's own thread, so each engine's buffer is only touched by the thread
+  // recognizing on that engine.
+  private StripText recognizeStrip(TessBaseAPI baseApi, int engineIndex, byte[] greyscale,
+      int width, StripSplitter.Strip strip, boolean includeCharacters) {
+    // The strip's rows are contiguous in the region, so one copy gives the engine its own image
+    // with coordinates relative to the strip.
+    int length = width * strip.getHeight();
+    byte[] pixels = stripBuffers[engineIndex];
+    if (pixels == null || pixels.length < length) {
+      pixels = new byte[length];
+      stripBuffers[engineIndex] = pixels;
+    }
+    System.arraycopy(greyscale, strip.top * width, pixels, 0, length);
+
+    StripText stripText = new StripText();
+    try {
+      long stageStart = System.nanoTime();
+      baseApi.setImage(pixels, width, strip.getHeight(), 1, width);
+      stageStart = PipelineLatency.record(PipelineLatency.Stage.SET_IMAGE, stageStart);
+      stripText.text = baseApi.getUTF8Text();
+      stageStart = PipelineLatency.record(PipelineLatency.Stage.RECOGNIZE, stageStart);
+      stripText.wordConfidences = ResultExtractor.packConfidences(baseApi.wordConfidences());
+      stripText.wordBoxes = ResultExtractor.packBoxes(baseApi.getWords(), 1, 0, 0);
+      stripText.characterBoxes = ResultExtractor.packBoxes(
+          includeCharacters ? baseApi.getCharacters() : null, 1, 0, 0);
+      PipelineLatency.record(PipelineLatency.Stage.EXTRACTION, stageStart);
+    } finally {
+      baseApi.clear();
+    }
+    return stripText;
+  }
+
+  // Builds one result from the strip results, keeping each word and character only from the
+  // strip that owns it.
+  static OcrResult merge(StripSplitter.Strip[] strips, StripText[] results, int scale,
+      int originX, int originY, long recognitionTime, long frameSequence, long captureTime) {
+    int maxWords = 0;
+    int maxCharacters = 0;
+    for (StripText result : results) {
+      if (result != null && result.text != null) {
+        maxWords += result.wordBoxes.length / 4;
+        maxCharacters += result.characterBoxes.length / 4;
+      }
+    }
+    StringBuilder text = new StringBuilder();
+    int[] wordBoxes = new int[4 * maxWords];
+    byte[] wordConfidences = new byte[maxWords];
+    int[] characterBoxes = new int[4 * maxCharacters];
+    int wordCount = 0;
+    int characterCount = 0;
+    int confidenceSum = 0;
+
+    for (int i = 0; i < strips.length; i++) {
+      StripSplitter.Strip strip = strips[i];
+      StripText result = results[i];
+      if (result == null || result.text == null) {
+        continue;
+      }
+
+      int wordIndex = 0;
+      int stripWords = result.wordBoxes.length / 4;
+      for (String line : result.text.split("\n")) {
+        StringBuilder lineText = new StringBuilder();
+        for (String word : line.trim().split("\\s+")) {
+          if (word.length() == 0 || wordIndex >= stripWords) {
+            continue;
+          }
+          if (copyIfOwned(result.wordBoxes, wordIndex, strip, scale, originX, originY, wordBoxes,
+              wordCount)) {
+            int confidence = wordIndex < result.wordConfidences.length
+                ? result.wordConfidences[wordIndex] : 0;
+            wordConfidences[wordCount++] = (byte) confidence;
+            confidenceSum += confidence;
+            if (lineText.length() > 0) {
+              lineText.append(' ');
+            }
+            lineText.append(word);
+          }
+          wordIndex++;
+        }
+        if (lineText.length() > 0) {
+          if (text.length() > 0) {
+            text.append('\n');
+          }
+          text.append(lineText);
+        }
+      }
+
+      int stripCharacters = result.characterBoxes.length / 4;
+      for (int c = 0; c < stripCharacters; c++) {
+        if (copyIfOwned(result.characterBoxes, c, strip, scale, originX, originY, characterBoxes,
+            characterCount)) {
+          characterCount++;
+        }
+      }
+    }
+
+    if (text.length() == 0) {
+      return null;
+    }
+    int meanConfidence = wordCount == 0 ? 0 : confidenceSum / wordCount;
+    return new OcrResult(text.toString(), meanConfidence, trim(wordBoxes, 4 * wordCount),
+        trim(wordConfidences, wordCount), trim(characterBoxes, 4 * characterCount),
+        recognitionTime, frameSequence, captureTime);
+  }
+
+  // Moves a packed box from strip to region coordinates, and copies it to the given slot in the
+  // merged boxes, scaled up and offset by the origin, if the strip owns it.
+  private static boolean copyIfOwned(int[] stripBoxes, int index, StripSplitter.Strip strip,
+      int scale, int originX, int originY, int[] boxes, int slot) {
+    int offset = 4 * index;
+    int top = stripBoxes[offset + 1] + strip.top;
+    int bottom = stripBoxes[offset + 3] + strip.top;
+    if (!strip.owns(top, bottom)) {
+      return false;
+    }
+    int packed = 4 * slot;
+    boxes[packed] = stripBoxes[offset] * scale + originX;
+    boxes[packed + 1] = top * scale + originY;
+    boxes[packed + 2] = stripBoxes[offset + 2] * scale + originX;
+    boxes[packed + 3] = bottom * scale + originY;
+    return true;
+  }
+
+  private static int[] trim(int[] array, int length) {
+    if (array.length == length) {
+      return array;
+    }
+    int[] trimmed = new int[length];
+    System.arraycopy(array, 0, trimmed, 0, length);
+    return trimmed;
+  }
+
+  private static byte[] trim(byte[] array, int length) {
+    if (array.length == length) {
+      return array;
+    }
+    byte[] trimmed = new byte[length];
+    System.arraycopy(array, 0, trimmed, 0, length);
+    return trimmed;
+  }
+}
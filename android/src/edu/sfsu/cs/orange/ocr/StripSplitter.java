@@ -0,0 +1,157 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+/**
+ * Splits a tall framed region into horizontal strips that can be recognized on separate engines
+ * at the same time.
+ *
+ * Each row is scored by its horizontal luminance gradient, which is high across a line of text and
+ * low in the gap between two lines. The region is cut near the evenly spaced positions that would
+ * give strips of equal height, at the row with the lowest score within a search window, so cuts
+ * fall between lines where there is a gap to find. Each strip is extended into its neighbours by
+ * an overlap, so a line the cut went through is still whole in one of the strips. Every row of the
+ * region belongs to exactly one strip, its own band, which is used to decide which strip a word
+ * recognized twice in an overlap is kept from.
+ */
+final class StripSplitter {
+
+  // Strips are never made shorter than this, in pixels, so a line of text fits in one
+  static final int MIN_STRIP_HEIGHT = 64;
+
+  // Rows extended into each neighbouring strip, as a fraction of the strip height
+  private static final float OVERLAP_FRACTION = 0.25f;
+
+  // Only every SAMPLE_STEP-th pixel of a row is scored
+  private static final int SAMPLE_STEP = 2;
+
+  /**
+   * One strip of the region. Rows are in region coordinates, with bottoms exclusive.
+   */
+  static final class Strip {
+    final int top;
+    final int bottom;
+    final int ownTop;
+    final int ownBottom;
+
+    Strip(int top, int bottom, int ownTop, int ownBottom) {
+      this.top = top;
+      this.bottom = bottom;
+      this.ownTop = ownTop;
+      this.ownBottom = ownBottom;
+    }
+
+    int getHeight() {
+      return bottom - top;
+    }
+
+    /**
+     * @return True if a box with these vertical bounds, in region coordinates, belongs to this
+     *         strip rather than to a neighbour that also recognized it.
+     */
+    boolean owns(int boxTop, int boxBottom) {
+      int center = (boxTop + boxBottom) / 2;
+      return center >= ownTop && center < ownBottom;
+    }
+
+    @Override
+    public String toString() {
+      return top + "-" + bottom + " (own " + ownTop + "-" + ownBottom + ")";
+    }
+  }
+
+  private int[] rowScores;
+  private byte[] row;
+
+  /**
+   * Splits the region into at most maxStrips strips.
+   *
+   * @param source The luminance data for the framed region
+   * @param maxStrips The number of engines available
+   * @return The strips, top to bottom. A single strip covering the whole region if the region is
+   *         too short to split.
+   */
+  Strip[] split(LuminanceSource source, int maxStrips) {
+    int height = source.getHeight();
+    int count = Math.max(1, Math.min(maxStrips, height / MIN_STRIP_HEIGHT));
+    if (count == 1) {
+      return new Strip[] { new Strip(0, height, 0, height) };
+    }
+
+    scoreRows(source);
+
+    // Find a cut near each evenly spaced position, searching half a strip either way but never
+    // past the previous cut.
+    int[] cuts = new int[count + 1];
+    cuts[0] = 0;
+    cuts[count] = height;
+    int window = height / count / 2;
+    for (int i = 1; i < count; i++) {
+      int ideal = i * height / count;
+      int from = Math.max(cuts[i - 1] + MIN_STRIP_HEIGHT / 2, ideal - window);
+      int to = Math.min(height - MIN_STRIP_HEIGHT / 2, ideal + window);
+      cuts[i] = quietestRow(from, to, ideal);
+    }
+
+    int overlap = (int) (height / count * OVERLAP_FRACTION);
+    Strip[] strips = new Strip[count];
+    for (int i = 0; i < count; i++) {
+      strips[i] = new Strip(Math.max(0, cuts[i] - overlap), Math.min(height, cuts[i + 1] + overlap),
+          cuts[i], cuts[i + 1]);
+    }
+    return strips;
+  }
+
+  private void scoreRows(LuminanceSource source) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (rowScores == null || rowScores.length < height) {
+      rowScores = new int[height];
+    }
+    for (int y = 0; y < height; y++) {
+      row = source.getRow(y, row);
+      rowScores[y] = scoreRow(row, width);
+    }
+  }
+
+  /**
+   * Scores a row by the sum of absolute horizontal luminance differences along it, sampled every
+   * SAMPLE_STEP pixels. Rows through text score high, and rows between lines score low.
+   */
+  static int scoreRow(byte[] row, int width) {
+    int score = 0;
+    for (int x = 0; x + 1 < width; x += SAMPLE_STEP) {
+      score += Math.abs((row[x + 1] & 0xff) - (row[x] & 0xff));
+    }
+    return score;
+  }
+
+  // Returns the row in [from, to) with the lowest score, preferring the row closest to ideal on
+  // ties, or ideal if the range is empty.
+  private int quietestRow(int from, int to, int ideal) {
+    if (from >= to) {
+      return ideal;
+    }
+    int best = from;
+    for (int y = from + 1; y < to; y++) {
+      if (rowScores[y] < rowScores[best]
+          || (rowScores[y] == rowScores[best] && Math.abs(y - ideal) < Math.abs(best - ideal))) {
+        best = y;
+      }
+    }
+    return best;
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+/**
+ * Finds where in the framed region there is text, before recognition, so that frames without any
+ * are never sent to the engine, and frames with some send only the part around it.
+ *
+ * The region is divided into CELL x CELL cells. A cell is a text candidate if it has many strong
+ * horizontal luminance steps, as the strokes of characters make, and enough contrast between its
+ * darkest and lightest pixels. Candidate cells are joined into connected components, bridging
+ * small gaps along rows the way the letters of a word are spaced. Components too small to be a
+ * word, or much taller than they are wide, are discarded as noise or edges, unless they sit beside
+ * text on its rows, as a word's first or last letter can. The text rectangle is the union of the
+ * rest, widened by a margin so that the engine still sees the background around the characters.
+ *
+ * Only LuminanceSource is used, so the locator can be run on recorded frames off the device.
+ */
+final class TextLocator {
+
+  // Size in pixels of the square cells that are classified
+  static final int CELL = 8;
+
+  // Only every SAMPLE_STEP-th row of a cell is measured
+  private static final int SAMPLE_STEP = 2;
+
+  // Least luminance difference between pixels two apart for a step to count as a stroke edge
+  private static final int EDGE_THRESHOLD = 40;
+
+  // Least number of stroke edges among a cell's sampled pixels for it to be a candidate
+  private static final int MIN_CELL_EDGES = 6;
+
+  // Least difference between a cell's darkest and lightest sampled pixels
+  private static final int MIN_CELL_CONTRAST = 60;
+
+  // Candidate cells this many columns apart or closer on the same row are joined, so that letters
+  // whose middles have no stroke edges, such as T and L, stay part of their word
+  private static final int MAX_GAP_CELLS = 2;
+
+  // Least number of cells in a component for it to count as text
+  private static final int MIN_COMPONENT_CELLS = 3;
+
+  // Components taller than this many times their width are edges of objects, not text
+  private static final int MAX_COMPONENT_ASPECT = 3;
+
+  // Margin in pixels kept around the text
+  static final int MARGIN = 16;
+
+  // The crop is skipped when it would keep more than this fraction of the region's area
+  private static final float MAX_CROP_FRACTION = 0.9f;
+
+  private boolean[] candidates;
+  private int[] componentStack;
+  // Left, top, right and bottom cell of each component, inclusive
+  private int[] componentBounds;
+  private boolean[] isComponentKept;
+  private byte[] row;
+  private byte[] cellMin;
+  private byte[] cellMax;
+  private int[] cellEdges;
+
+  // For toString(), when debugging the locator
+  private int lastCandidateCells;
+  private int lastComponents;
+
+  /**
+   * Looks for text in the region.
+   *
+   * @param source The luminance data for the framed region
+   * @param textBounds Set to the left, top, right and bottom of the part of the region to
+   *                   recognize, in region coordinates, with right and bottom exclusive. This is
+   *                   the whole region if cropping it wouldn't save much.
+   * @return False if no text was found, in which case the frame needn't be recognized
+   */
+  boolean locate(LuminanceSource source, int[] textBounds) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int columns = width / CELL;
+    int rows = height / CELL;
+    int cells = columns * rows;
+    if (candidates == null || candidates.length < cells) {
+      candidates = new boolean[cells];
+      componentStack = new int[cells];
+      componentBounds = new int[cells * 4];
+      isComponentKept = new boolean[cells];
+    }
+    classifyCells(source, columns, rows);
+
+    int componentCount = 0;
+    for (int start = 0; start < cells; start++) {
+      if (!candidates[start]) {
+        continue;
+      }
+      // Flood fill one component, clearing its cells as they're pushed
+      int componentLeft = columns;
+      int componentTop = rows;
+      int componentRight = -1;
+      int componentBottom = -1;
+      int size = 0;
+      int stackSize = 0;
+      componentStack[stackSize++] = start;
+      candidates[start] = false;
+      while (stackSize > 0) {
+        int cell = componentStack[--stackSize];
+        int x = cell % columns;
+        int y = cell / columns;
+        size++;
+        componentLeft = Math.min(componentLeft, x);
+        componentTop = Math.min(componentTop, y);
+        componentRight = Math.max(componentRight, x);
+        componentBottom = Math.max(componentBottom, y);
+        for (int gap = 1; gap <= MAX_GAP_CELLS; gap++) {
+          if (x - gap >= 0 && candidates[cell - gap]) {
+            candidates[cell - gap] = false;
+            componentStack[stackSize++] = cell - gap;
+          }
+          if (x + gap < columns && candidates[cell + gap]) {
+            candidates[cell + gap] = false;
+            componentStack[stackSize++] = cell + gap;
+          }
+        }
+        if (y > 0 && candidates[cell - columns]) {
+          candidates[cell - columns] = false;
+          componentStack[stackSize++] = cell - columns;
+        }
+        if (y < rows - 1 && candidates[cell + columns]) {
+          candidates[cell + columns] = false;
+          componentStack[stackSize++] = cell + columns;
+        }
+      }
+      int componentWidth = componentRight - componentLeft + 1;
+      int componentHeight = componentBottom - componentTop + 1;
+      int offset = componentCount * 4;
+      componentBounds[offset] = componentLeft;
+      componentBounds[offset + 1] = componentTop;
+      componentBounds[offset + 2] = componentRight;
+      componentBounds[offset + 3] = componentBottom;
+      isComponentKept[componentCount] = size >= MIN_COMPONENT_CELLS
+          && componentHeight <= MAX_COMPONENT_ASPECT * componentWidth;
+      componentCount++;
+    }
+    keepComponentsBesideText(componentCount);
+
+    // The margin is kept around each component. A letter's bar can reach past its last stem,
+    // which is all the cells see of it, by nearly the letter's width, about 3/5 of the height of
+    // the text, so the margin at the sides is at least that.
+    int left = Integer.MAX_VALUE;
+    int top = Integer.MAX_VALUE;
+    int right = -1;
+    int bottom = -1;
+    lastComponents = 0;
+    for (int i = 0; i < componentCount; i++) {
+      if (!isComponentKept[i]) {
+        continue;
+      }
+      lastComponents++;
+      int componentTop = componentBounds[i * 4 + 1];
+      int componentBottom = componentBounds[i * 4 + 3];
+      int sideMargin = Math.max(MARGIN, (componentBottom - componentTop + 1) * CELL * 3 / 5);
+      left = Math.min(left, componentBounds[i * 4] * CELL - sideMargin);
+      top = Math.min(top, componentTop * CELL - MARGIN);
+      right = Math.max(right, (componentBounds[i * 4 + 2] + 1) * CELL + sideMargin);
+      bottom = Math.max(bottom, (componentBottom + 1) * CELL + MARGIN);
+    }
+    if (lastComponents == 0) {
+      return false;
+    }
+
+    textBounds[0] = Math.max(0, left);
+    textBounds[1] = Math.max(0, top);
+    textBounds[2] = Math.min(width, right);
+    textBounds[3] = Math.min(height, bottom);
+    if ((textBounds[2] - textBounds[0]) * (long) (textBounds[3] - textBounds[1])
+        > MAX_CROP_FRACTION * width * height) {
+      textBounds[0] = 0;
+      textBounds[1] = 0;
+      textBounds[2] = width;
+      textBounds[3] = height;
+    }
+    return true;
+  }
+
+  // A word that starts or ends with a single stem, as in l or 1, or with the end of a bar, leaves
+  // that letter a component of its own, too narrow or too small to be kept alone. Components on
+  // the rows of a kept one and within a letter of it are kept as part of its text, and so on
+  // outward along the line. A letter and the space after it are taken to be no wider than the
+  // text is tall, and never less than the gap bridged between letters and the margin. A component
+  // more than twice as tall as the text, such as the border of a sign that its first letter has
+  // joined, is kept only on the text's rows, so that the edge of a door beside a word doesn't
+  // stretch the crop to the door's height.
+  private void keepComponentsBesideText(int componentCount) {
+    boolean isGrowing = true;
+    while (isGrowing) {
+      isGrowing = false;
+      for (int i = 0; i < componentCount; i++) {
+        if (isComponentKept[i]) {
+          continue;
+        }
+        int left = componentBounds[i * 4];
+        int top = componentBounds[i * 4 + 1];
+        int right = componentBounds[i * 4 + 2];
+        int bottom = componentBounds[i * 4 + 3];
+        for (int j = 0; j < componentCount; j++) {
+          if (!isComponentKept[j]) {
+            continue;
+          }
+          int keptLeft = componentBounds[j * 4];
+          int keptTop = componentBounds[j * 4 + 1];
+          int keptRight = componentBounds[j * 4 + 2];
+          int keptBottom = componentBounds[j * 4 + 3];
+          int keptHeight = keptBottom - keptTop + 1;
+          int maxDistance = Math.max(MAX_GAP_CELLS + MARGIN / CELL, keptHeight + 1);
+          if (top <= keptBottom && bottom >= keptTop && left - keptRight <= maxDistance
+              && keptLeft - right <= maxDistance) {
+            if (bottom - top + 1 > 2 * keptHeight) {
+              componentBounds[i * 4 + 1] = Math.max(top, keptTop);
+              componentBounds[i * 4 + 3] = Math.min(bottom, keptBottom);
+            }
+            isComponentKept[i] = true;
+            isGrowing = true;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  // Counts the stroke edges and the luminance range of every cell, a row of cells at a time, and
+  // marks the cells that look like text.
+  private void classifyCells(LuminanceSource source, int columns, int rows) {
+    if (cellEdges == null || cellEdges.length < columns) {
+      cellEdges = new int[columns];
+      cellMin = new byte[columns];
+      cellMax = new byte[columns];
+    }
+    lastCandidateCells = 0;
+    int usedWidth = columns * CELL;
+    for (int cellY = 0; cellY < rows; cellY++) {
+      for (int x = 0; x < columns; x++) {
+        cellEdges[x] = 0;
+        cellMin[x] = (byte) 255;
+        cellMax[x] = 0;
+      }
+      for (int y = cellY * CELL; y < (cellY + 1) * CELL; y += SAMPLE_STEP) {
+        row = source.getRow(y, row);
+        for (int x = 0; x < usedWidth; x++) {
+          int value = row[x] & 0xff;
+          int cell = x / CELL;
+          if (value < (cellMin[cell] & 0xff)) {
+            cellMin[cell] = (byte) value;
+          }
+          if (value > (cellMax[cell] & 0xff)) {
+            cellMax[cell] = (byte) value;
+          }
+          if (x + 2 < usedWidth && Math.abs(value - (row[x + 2] & 0xff)) >= EDGE_THRESHOLD) {
+            cellEdges[cell]++;
+          }
+        }
+      }
+      int offset = cellY * columns;
+      for (int x = 0; x < columns; x++) {
+        boolean isCandidate = cellEdges[x] >= MIN_CELL_EDGES
+            && (cellMax[x] & 0xff) - (cellMin[x] & 0xff) >= MIN_CELL_CONTRAST;
+        candidates[offset + x] = isCandidate;
+        if (isCandidate) {
+          lastCandidateCells++;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "candidateCells=" + lastCandidateCells + " components=" + lastComponents;
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Arrays;
+
+/**
+ * Downscales the framed region before recognition when its text is larger than the engine needs.
+ * The preview size is chosen to match the screen, not the text, so large text held close to the
+ * camera is otherwise recognized at several times the resolution that would read just as well.
+ *
+ * The dominant line height is estimated from the row profile: rows through text have a high
+ * horizontal gradient, so runs of such rows are lines, and the median run length is taken as the
+ * line height. Rows are compared above the quietest row's score, which is what sensor noise gives
+ * every row, so that large text with few letters to a row still stands out from the gaps. Only
+ * the rows every letter has ink in score that high, so for lower-case text the height found is the
+ * x-height: ascenders and descenders are too sparse to count. The region is then reduced by the
+ * whole factor that brings lines closest to, but not below, TARGET_LINE_HEIGHT, by averaging
+ * square blocks of pixels.
+ *
+ * Boxes recognized on the downscaled image are multiplied by the same factor to get back to
+ * preview coordinates.
+ */
+final class TextScaler {
+
+  // Line height, as estimated, to scale text down to. An x-height of about 20 pixels is read by
+  // Tesseract as well as anything larger.
+  static final int TARGET_LINE_HEIGHT = 20;
+
+  // Largest factor to downscale by
+  private static final int MAX_SCALE = 4;
+
+  // Rows scoring at least this fraction of the way from the lowest row score to the highest are
+  // counted as text
+  private static final float TEXT_ROW_FRACTION = 0.25f;
+
+  // Runs of text rows shorter than this are noise, not lines
+  private static final int MIN_LINE_HEIGHT = 4;
+
+  private int[] rowScores;
+  private int[] lineHeights;
+  private int[] blockSums;
+  private byte[] row;
+  private int lastLineHeight;
+  private int lastScale = 1;
+
+  /**
+   * Chooses the factor to downscale the region by.
+   *
+   * @param source The luminance data for the framed region
+   * @return The factor, from 1 (keep full resolution) to MAX_SCALE
+   */
+  int chooseScale(LuminanceSource source) {
+    lastLineHeight = estimateLineHeight(source);
+    int scale = Math.min(MAX_SCALE, lastLineHeight / TARGET_LINE_HEIGHT);
+    // Keep at least one full line's worth of pixels in each direction, ascenders and descenders
+    // included, which is about twice the x-height
+    while (scale > 1 && (source.getWidth() / scale < 2 * TARGET_LINE_HEIGHT
+        || source.getHeight() / scale < 2 * TARGET_LINE_HEIGHT)) {
+      scale--;
+    }
+    lastScale = Math.max(1, scale);
+    return lastScale;
+  }
+
+  /**
+   * Estimates the height of the most common text line in the region.
+   *
+   * @param source The luminance data for the framed region
+   * @return The median height of the runs of text rows, in pixels, or 0 if there are none
+   */
+  int estimateLineHeight(LuminanceSource source) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (rowScores == null || rowScores.length < height) {
+      rowScores = new int[height];
+      lineHeights = new int[height / MIN_LINE_HEIGHT + 1];
+    }
+    int minScore = Integer.MAX_VALUE;
+    int maxScore = 0;
+    for (int y = 0; y < height; y++) {
+      row = source.getRow(y, row);
+      rowScores[y] = StripSplitter.scoreRow(row, width);
+      minScore = Math.min(minScore, rowScores[y]);
+      maxScore = Math.max(maxScore, rowScores[y]);
+    }
+    if (maxScore <= minScore) {
+      return 0;
+    }
+
+    int threshold = minScore + (int) ((maxScore - minScore) * TEXT_ROW_FRACTION);
+    int lineCount = 0;
+    int runStart = -1;
+    for (int y = 0; y <= height; y++) {
+      boolean isText = y < height && rowScores[y] >= threshold;
+      if (isText && runStart < 0) {
+        runStart = y;
+      } else if (!isText && runStart >= 0) {
+        if (y - runStart >= MIN_LINE_HEIGHT) {
+          lineHeights[lineCount++] = y - runStart;
+        }
+        runStart = -1;
+      }
+    }
+    if (lineCount == 0) {
+      return 0;
+    }
+    Arrays.sort(lineHeights, 0, lineCount);
+    return lineHeights[lineCount / 2];
+  }
+
+  /**
+   * Reduces a greyscale image by an integer factor, averaging each scale x scale block into one
+   * pixel. Rows and columns past the last whole block are dropped.
+   *
+   * @param greyscale The image, one byte per pixel with a stride of width
+   * @param width The width of the image
+   * @param height The height of the image
+   * @param scale The factor to reduce by
+   * @param scaled A buffer to reuse for the result, or null
+   * @return The reduced image, with a stride of width / scale. The buffer may be longer than the
+   *         image.
+   */
+  byte[] downscale(byte[] greyscale, int width, int height, int scale, byte[] scaled) {
+    int scaledWidth = width / scale;
+    int scaledHeight = height / scale;
+    if (scaled == null || scaled.length < scaledWidth * scaledHeight) {
+      scaled = new byte[scaledWidth * scaledHeight];
+    }
+    if (blockSums == null || blockSums.length < scaledWidth) {
+      blockSums = new int[scaledWidth];
+    }
+    int area = scale * scale;
+    for (int y = 0; y < scaledHeight; y++) {
+      Arrays.fill(blockSums, 0, scaledWidth, 0);
+      for (int dy = 0; dy < scale; dy++) {
+        int offset = (y * scale + dy) * width;
+        for (int x = 0; x < scaledWidth; x++) {
+          int sum = 0;
+          for (int dx = 0; dx < scale; dx++) {
+            sum += greyscale[offset++] & 0xff;
+          }
+          blockSums[x] += sum;
+        }
+      }
+      int outputOffset = y * scaledWidth;
+      for (int x = 0; x < scaledWidth; x++) {
+        scaled[outputOffset + x] = (byte) (blockSums[x] / area);
+      }
+    }
+    return scaled;
+  }
+
+  /**
+   * @return The line height estimated for the most recent region, in pixels.
+   */
+  int getLastLineHeight() {
+    return lastLineHeight;
+  }
+
+  /**
+   * @return The factor chosen for the most recent region.
+   */
+  int getLastScale() {
+    return lastScale;
+  }
+
+  @Override
+  public String toString() {
+    return "lineHeight=" + lastLineHeight + " scale=" + lastScale;
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * The translations of recognized words, kept across sessions in a file so that words seen before
+ * are never sent to the translator again.
+ *
+ * The cache holds at most MAX_ENTRIES words, dropping the least recently used, and the file is
+ * written from the cache, so both stay bounded. The file has one entry per line, least recently
+ * used first: the word, a tab, and its translation. It is written to a temporary file, synced to
+ * disk, that then replaces it, so an interrupted save or a crash leaves the previous one. Words the
+ * translator had nothing for are kept apart from words it translated, even as themselves, and
+ * aren't saved, so that they are asked for again in a later session, when the translator may know
+ * them.
+ *
+ * get() and put() are called on the UI thread and the translation thread, and are synchronized.
+ * load() and save() do file I/O, and are only called on the translation thread.
+ */
+final class TranslationCache {
+
+  private static final String TAG = TranslationCache.class.getSimpleName();
+
+  // Most words kept
+  static final int MAX_ENTRIES = 4096;
+
+  private final File file;
+  // A word the translator had nothing for maps to null
+  private final Map<String, String> entries =
+      new LinkedHashMap<String, String>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+  private boolean isChanged;
+
+  /**
+   * @param file The file the cache is kept in. One file per translator and language pair.
+   */
+  TranslationCache(File file) {
+    this.file = file;
+  }
+
+  /**
+   * @return The word's translation, the word itself if the translator had nothing for it this
+   *         session, or null if it isn't cached
+   */
+  synchronized String get(String word) {
+    String translation = entries.get(word);
+    if (translation == null && entries.containsKey(word)) {
+      return word;
+    }
+    return translation;
+  }
+
+  synchronized void put(String word, String translation) {
+    entries.put(word, translation);
+    isChanged = true;
+  }
+
+  /**
+   * Records that the translator had nothing for the word, so it isn't asked for again this
+   * session. Not saved.
+   */
+  synchronized void putUntranslated(String word) {
+    entries.put(word, null);
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Reads the file, if there is one, keeping any entries already added.
+   */
+  void load() {
+    if (!file.exists()) {
+      return;
+    }
+    List<String[]> loaded = new ArrayList<String[]>();
+    try {
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          int tab = line.indexOf('\t');
+          if (tab > 0) {
+            loaded.add(new String[] { line.substring(0, tab), line.substring(tab + 1) });
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't read translation cache " + file, e);
+      return;
+    }
+    synchronized (this) {
+      for (String[] entry : loaded) {
+        if (!entries.containsKey(entry[0])) {
+          entries.put(entry[0], entry[1]);
+        }
+      }
+    }
+    Log.i(TAG, "Loaded " + loaded.size() + " translations from " + file);
+  }
+
+  /**
+   * Writes the cache to the file, if it has changed since it was loaded or last saved.
+   */
+  void save() {
+    List<String[]> snapshot;
+    synchronized (this) {
+      if (!isChanged) {
+        return;
+      }
+      snapshot = new ArrayList<String[]>(entries.size());
+      for (Map.Entry<String, String> entry : entries.entrySet()) {
+        if (entry.getValue() != null) {
+          snapshot.add(new String[] { entry.getKey(), entry.getValue() });
+        }
+      }
+      isChanged = false;
+    }
+    File temporary = new File(file.getPath() + ".tmp");
+    try {
+      File directory = file.getParentFile();
+      if (directory != null && !directory.exists()) {
+        directory.mkdirs();
+      }
+      FileOutputStream output = new FileOutputStream(temporary);
+      BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, "UTF-8"));
+      try {
+        for (String[] entry : snapshot) {
+          writer.write(entry[0]);
+          writer.write('\t');
+          writer.write(entry[1].replace('\t', ' ').replace('\n', ' '));
+          writer.write('\n');
+        }
+        writer.flush();
+        // On disk before it replaces the file, so that a crash can't leave a truncated cache
+        output.getFD().sync();
+      } finally {
+        writer.close();
+      }
+      if (!temporary.renameTo(file)) {
+        throw new IOException("Couldn't replace " + file);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't save translation cache " + file, e);
+      temporary.delete();
+    }
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+/**
+ * Told when a batch of translations has arrived from a TranslationStage. Called on the stage's
+ * thread, so it must only hand the news on and return.
+ */
+interface TranslationCallback {
+
+  /**
+   * Called when new translations are in the cache, so results shown with words still
+   * untranslated can be laid out again.
+   */
+  void onTranslationsReady();
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+/**
+ * Translates recognized words off the UI thread, so that the overlay can show translations
+ * without every word of every frame going to the translator.
+ *
+ * The overlay asks for each word's translation as it lays out a result. A cached translation is
+ * returned at once. A word that isn't cached is queued, and the overlay shows it untranslated for
+ * now. Queued words are collected for BATCH_WINDOW_MS after the first, without duplicates and
+ * leaving out words already being translated, and then sent to the Translator as one batch. Once
+ * the batch is cached, the TranslationCallback is told, so the overlay can lay out the current
+ * result again with the new translations.
+ *
+ * The translator, and the cache's file I/O, run on the stage's own thread.
+ */
+final class TranslationStage {
+
+  private static final String TAG = TranslationStage.class.getSimpleName();
+
+  // How long words are collected before a batch is sent
+  static final long BATCH_WINDOW_MS = 250L;
+
+  // Most words sent in one batch. Any more wait for the next one.
+  static final int MAX_BATCH_WORDS = 64;
+
+  private final Translator translator;
+  private final TranslationCache cache;
+  private final String sourceLanguageCode;
+  private final String targetLanguageCode;
+  private final TranslationCallback callback;
+  private final ScheduledExecutorService executor;
+
+  // Words waiting for the next batch, and words in the batch being translated. Guarded by this.
+  private final Set<String> queued = new LinkedHashSet<String>();
+  private final Set<String> translating = new HashSet<String>();
+  private boolean isBatchScheduled;
+  private boolean isShutdown;
+
+  private final Runnable translateBatch = new Runnable() {
+    public void run() {
+      translateBatch();
+    }
+  };
+
+  /**
+   * Starts the stage's thread, and loads the cache on it.
+   */
+  TranslationStage(Translator translator, final TranslationCache cache,
+      String sourceLanguageCode, String targetLanguageCode, TranslationCallback callback) {
+    this.translator = translator;
+    this.cache = cache;
+    this.sourceLanguageCode = sourceLanguageCode;
+    this.targetLanguageCode = targetLanguageCode;
+    this.callback = callback;
+    executor = Executors.newSingleThreadScheduledExecutor();
+    executor.execute(new Runnable() {
+      public void run() {
+        cache.load();
+      }
+    });
+  }
+
+  /**
+   * Looks up a word's translation, queueing the word for the next batch if it isn't cached.
+   *
+   * @param word The word as recognized
+   * @return The translation, or null if it isn't known yet
+   */
+  String lookup(String word) {
+    String translation = cache.get(word);
+    if (translation != null) {
+      return translation;
+    }
+    synchronized (this) {
+      if (!isShutdown && !translating.contains(word) && queued.add(word) && !isBatchScheduled) {
+        isBatchScheduled = true;
+        executor.schedule(translateBatch, BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Drops the queued words, saves the cache, and stops the stage's thread. A batch already with
+   * the translator is finished and cached first.
+   */
+  void shutdown() {
+    synchronized (this) {
+      isShutdown = true;
+      queued.clear();
+    }
+    executor.execute(new Runnable() {
+      public void run() {
+        cache.save();
+      }
+    });
+    executor.shutdown();
+  }
+
+  private void translateBatch() {
+    List<String> batch;
+    synchronized (this) {
+      batch = new ArrayList<String>(Math.min(queued.size(), MAX_BATCH_WORDS));
+      Iterator<String> words = queued.iterator();
+      while (words.hasNext() && batch.size() < MAX_BATCH_WORDS) {
+        String word = words.next();
+        words.remove();
+        // Loading the cache may have found it since it was queued
+        if (cache.get(word) == null) {
+          batch.add(word);
+          translating.add(word);
+        }
+      }
+      isBatchScheduled = !queued.isEmpty();
+      if (isBatchScheduled) {
+        executor.execute(translateBatch);
+      }
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    try {
+      Map<String, String> translations =
+          translator.translate(batch, sourceLanguageCode, targetLanguageCode);
+      for (String word : batch) {
+        // A word without a translation isn't asked for again this session
+        String translation = translations.get(word);
+        if (translation != null) {
+          cache.put(word, translation);
+        } else {
+          cache.putUntranslated(word);
+        }
+      }
+      PerformanceCounters.translationBatches.incrementAndGet();
+      PerformanceCounters.wordsTranslated.addAndGet(batch.size());
+      callback.onTranslationsReady();
+    } catch (IOException e) {
+      Log.w(TAG, "Couldn't translate " + batch.size() + " words", e);
+    } catch (RuntimeException e) {
+      Log.w(TAG, "Translator failed on " + batch.size() + " words", e);
+    } finally {
+      synchronized (this) {
+        translating.removeAll(batch);
+      }
+    }
+  }
+}
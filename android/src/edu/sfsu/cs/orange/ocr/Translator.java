@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates recognized words for TranslationStage, a batch at a time. Called on the stage's own
+ * thread, so an implementation may block on files or the network.
+ */
+interface Translator {
+
+  /**
+   * @return A short name for the translator, without spaces, that the cache of its translations
+   *         is kept under
+   */
+  String getName();
+
+  /**
+   * @param words The words to translate, without duplicates
+   * @param sourceLanguageCode The language the words were recognized in, as an ISO 639-3 code
+   * @param targetLanguageCode The language to translate to, as an ISO 639-1 code
+   * @return The translation of each word that could be translated. Words left out are shown as
+   *         they are, and not asked for again until the next session.
+   * @throws IOException If the translator couldn't be reached. The words are asked for again the
+   *                     next time they are recognized.
+   */
+  Map<String, String> translate(List<String> words, String sourceLanguageCode,
+      String targetLanguageCode) throws IOException;
+}
@@ -16,15 +16,14 @@
  */
 package edu.sfsu.cs.orange.ocr;
 
-import java.util.List;
-
 import android.content.Context;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Paint.Align;
 import android.graphics.Paint.Style;
+import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.util.AttributeSet;
 import android.view.View;
@@ -35,14 +34,51 @@ import edu.sfsu.cs.orange.ocr.camera.CameraManager;
 
 public final class ViewfinderView extends View {
 
+  // Where the performance HUD is drawn
+  private static final int HUD_LEFT = 8;
+  private static final int HUD_TOP = 8;
+
   private final Paint paint;
   private final int maskColor;
   private final int frameColor;
   private final int cornerColor;
-  private OcrResultText resultText;
-  List<Rect> wordBoundingBoxes;
-  List<Rect> characterBoundingBoxes;
   Rect bounds;
+  
+  // The words of the current result, fitted to their boxes, and of the result shown before it
+  private final WordReverser wordReverser = new WordReverser();
+  private ResultLayout resultLayout = new ResultLayout(wordReverser);
+  private ResultLayout previousLayout = new ResultLayout(wordReverser);
+  
+  // The overlay is kept in two retained layers, so that a draw is two bitmap copies. The chrome
+  // layer holds the mask, border and corners, and is drawn again only when the framing rectangle
+  // or the view size changes. The result layer holds the words, covers the framing rectangle, and
+  // is drawn again only where the words change.
+  private Bitmap chromeLayer;
+  private Canvas chromeCanvas;
+  private final Rect chromeFrame = new Rect();
+  private Bitmap resultLayer;
+  private Canvas resultCanvas;
+  private final Rect resultLayerFrame = new Rect();
+  private boolean isResultLayerValid;
+  
+  // The part of the result layer, in screen coordinates, whose words have changed since it was
+  // last drawn
+  private final Rect resultDirty = new Rect();
+  
+  // Follows the text between results, or null until the first frame motion is reported
+  private MotionTracker motionTracker;
+  // How far the text has moved on screen since the current result's frame, and so how far the
+  // result layer is drawn from the framing rectangle's corner
+  private int motionX;
+  private int motionY;
+  private final int[] motionOffset = new int[2];
+  
+  // For the pipeline latency. Both are 0 once the current result has been drawn.
+  private long resultCaptureTime;
+  private long resultAddedTime;
+  
+  // Debug overlay of pipeline counters, or null when it's turned off
+  private PerformanceHud performanceHud;
 
   // This constructor is used when the class is built from an XML resource.
   public ViewfinderView(Context context, AttributeSet attrs) {
@@ -60,12 +96,61 @@ public final class ViewfinderView extends View {
 
   @Override
   public void onDraw(Canvas canvas) {
+    long drawStart = System.nanoTime();
     Rect frame = CameraManager.get().getFramingRect();
-    if (frame == null) {
+    Rect previewFrame = CameraManager.get().getFramingRectInPreview();
+    if (frame == null || previewFrame == null || frame.width() <= 0 || frame.height() <= 0) {
       return;
     }
-    int width = canvas.getWidth();
-    int height = canvas.getHeight();
+    updateResultLayer(frame, previewFrame);
+    updateChromeLayer(frame, canvas.getWidth(), canvas.getHeight());
+
+    // The words first, so that the border is drawn over any that reach the edge of the frame.
+    // They're moved with the text since their frame, but kept inside the framing rectangle.
+    canvas.save();
+    canvas.clipRect(frame);
+    canvas.drawBitmap(resultLayer, frame.left + motionX, frame.top + motionY, null);
+    canvas.restore();
+    canvas.drawBitmap(chromeLayer, 0, 0, null);
+    
+    if (performanceHud != null) {
+      performanceHud.draw(canvas, HUD_LEFT, HUD_TOP);
+      performanceHud.setLastDrawTime(System.nanoTime() - drawStart);
+      // Keep the counters moving even when no results arrive
+      postInvalidateDelayed(PerformanceHud.REFRESH_INTERVAL_MS, HUD_LEFT, HUD_TOP,
+          HUD_LEFT + PerformanceHud.WIDTH, HUD_TOP + PerformanceHud.HEIGHT);
+    }
+    
+    // Only the first draw of each result counts toward the overlay and end-to-end latency.
+    if (resultAddedTime != 0) {
+      PipelineLatency.record(PipelineLatency.Stage.OVERLAY_DRAW, resultAddedTime);
+      if (resultCaptureTime != 0) {
+        PipelineLatency.record(PipelineLatency.Stage.END_TO_END, resultCaptureTime);
+      }
+      resultAddedTime = 0;
+      resultCaptureTime = 0;
+    }
+  }
+
+  // Draws the mask, border and corners into the chrome layer, if the framing rectangle or the view
+  // size has changed since they were last drawn.
+  private void updateChromeLayer(Rect frame, int width, int height) {
+    if (chromeLayer != null && chromeLayer.getWidth() == width
+        && chromeLayer.getHeight() == height && frame.equals(chromeFrame)) {
+      return;
+    }
+    if (chromeLayer == null || chromeLayer.getWidth() != width
+        || chromeLayer.getHeight() != height) {
+      if (chromeLayer != null) {
+        chromeLayer.recycle();
+      }
+      chromeLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+      chromeCanvas = new Canvas(chromeLayer);
+    } else {
+      chromeLayer.eraseColor(Color.TRANSPARENT);
+    }
+    chromeFrame.set(frame);
+    Canvas canvas = chromeCanvas;
 
     // Draw the exterior (i.e. outside the framing rect) darkened
     paint.setColor(maskColor);
@@ -74,151 +159,6 @@ public final class ViewfinderView extends View {
     canvas.drawRect(frame.right + 1, frame.top, width, frame.bottom + 1, paint);
     canvas.drawRect(0, frame.bottom + 1, width, height, paint);
 
-    if (resultText != null && resultText.getMeanConfidence() > 35) {
-      wordBoundingBoxes = resultText.getWordBoundingBoxes();
-      characterBoundingBoxes = resultText.getCharacterBoundingBoxes();
-
-      Rect previewFrame = CameraManager.get().getFramingRectInPreview();
-      float scaleX = frame.width() / (float) previewFrame.width();
-      float scaleY = frame.height() / (float) previewFrame.height();
-
-      // Split the text into words
-      String[] words = resultText.getText().replace("\n"," ").split(" ");
-
-      for (int i = 0; i < wordBoundingBoxes.size(); i++) {
-        if (i < 100) {
-          // Draw a bounding box around each word
-          //        paint.setAlpha(0xA0);
-          //        paint.setColor(0xFF00CCFF);
-          //        paint.setStyle(Style.STROKE);
-          //        paint.setStrokeWidth(1);
-          Rect r = wordBoundingBoxes.get(i);
-          //        canvas.drawRect(frame.left + r.left * scaleX,
-          //            frame.top + r.top * scaleY, 
-          //            frame.left + r.right * scaleX, 
-          //            frame.top + r.bottom * scaleY, paint);
-
-          // Draw a white background around each word
-          int[] wordConfidences = resultText.getWordConfidences();
-          paint.setColor(Color.WHITE);
-          paint.setAlpha(wordConfidences[i] * 255 / 100); // Higher confidence = more opaque, less transparent background
-          paint.setStyle(Style.FILL);
-          canvas.drawRect(frame.left + r.left * scaleX,
-              frame.top + r.top * scaleY, 
-              frame.left + r.right * scaleX, 
-              frame.top + r.bottom * scaleY, paint);
-
-          if (wordConfidences[i] > 35) {
-            // Draw the word in black text
-            try {
-              paint.setColor(Color.BLACK);
-              paint.setAlpha(0xFF);
-              paint.setAntiAlias(true);
-              paint.setTextAlign(Align.LEFT);
-              // Adjust text size to fill rect
-              paint.setTextSize(100);
-              paint.setTextScaleX(1.0f);
-              // ask the paint for the bounding rect if it were to draw this text
-              Rect bounds = new Rect();
-              paint.getTextBounds(words[i], 0, words[i].length(), bounds);
-              // get the height that would have been produced
-              int h = bounds.bottom - bounds.top;
-              // figure out what textSize setting would create that height of text
-              float size  = (((float)(r.height())/h)*100f);
-              // and set it into the paint
-              paint.setTextSize(size);
-              // Now set the scale.
-              // do calculation with scale of 1.0 (no scale)
-              paint.setTextScaleX(1.0f);
-              // ask the paint for the bounding rect if it were to draw this text.
-              paint.getTextBounds(words[i], 0, words[i].length(), bounds);
-              // determine the width
-              int w = bounds.right - bounds.left;
-              // calculate the baseline to use so that the entire text is visible including the descenders
-              int text_h = bounds.bottom-bounds.top;
-              int baseline =bounds.bottom+((r.height()-text_h)/2);
-              // determine how much to scale the width to fit the view
-              float xscale = ((float) (r.width())) / w;
-              // set the scale for the text paint
-              paint.setTextScaleX(xscale);
-              canvas.drawText(new StringBuffer(words[i]).reverse().toString().trim(), frame.left + r.left * scaleX, frame.top + r.bottom * scaleY - baseline, paint);
-            } catch (ArrayIndexOutOfBoundsException e) {
-              e.printStackTrace();
-            } catch (Exception e) {
-              e.printStackTrace();
-            }
-          }
-        }
-      }    
-
-      //      // Draw bounding boxes around each character
-      //      for (int i = 0; i < characterBoundingBoxes.size(); i++) {
-      //        paint.setAlpha(0xA0);
-      //        paint.setColor(0xFF00FF00);
-      //        paint.setStyle(Style.STROKE);
-      //        paint.setStrokeWidth(1);
-      //        Rect r = characterBoundingBoxes.get(i);
-      //        canvas.drawRect(frame.left + r.left * scaleX,
-      //            frame.top + r.top * scaleY, 
-      //            frame.left + r.right * scaleX, 
-      //            frame.top + r.bottom * scaleY, paint);
-      //      }
-
-      //      // Draw letters individually
-      //      for (int i = 0; i < characterBoundingBoxes.size(); i++) {
-      //        Rect r = characterBoundingBoxes.get(i);
-
-      //        // Draw a white background for every letter
-      //        int meanConfidence = resultText.getMeanConfidence();
-      //        paint.setColor(Color.WHITE);
-      //        paint.setAlpha(meanConfidence * (255 / 100));
-      //        paint.setStyle(Style.FILL);
-      //        canvas.drawRect(frame.left + r.left * scaleX,
-      //            frame.top + r.top * scaleY, 
-      //            frame.left + r.right * scaleX, 
-      //            frame.top + r.bottom * scaleY, paint);
-
-      //        // Draw each letter, in black
-      //        paint.setColor(Color.BLACK);
-      //        paint.setAlpha(0xFF);
-      //        paint.setAntiAlias(true);
-      //        paint.setTextAlign(Align.LEFT);
-      //        String letter = "";
-      //        try {
-      //          char c = resultText.getText().replace("\n","").replace(" ", "").charAt(i);
-      //          letter = Character.toString(c);
-      //
-      //          if (!letter.equals("-") && !letter.equals("_")) {
-      //
-      //            // Adjust text size to fill rect
-      //            paint.setTextSize(100);
-      //            paint.setTextScaleX(1.0f);
-      //
-      //            // ask the paint for the bounding rect if it were to draw this text
-      //            Rect bounds = new Rect();
-      //            paint.getTextBounds(letter, 0, letter.length(), bounds);
-      //
-      //            // get the height that would have been produced
-      //            int h = bounds.bottom - bounds.top;
-      //
-      //            // figure out what textSize setting would create that height of text
-      //            float size  = (((float)(r.height())/h)*100f);
-      //
-      //            // and set it into the paint
-      //            paint.setTextSize(size);
-      //
-      //            // Draw the text as is. We don't really need to set the text scale, because the dimensions
-      //            // of the Rect should already be suited for drawing our letter. 
-      //            canvas.drawText(letter, frame.left + r.left * scaleX, frame.top + r.bottom * scaleY, paint);
-      //          }
-      //        } catch (StringIndexOutOfBoundsException e) {
-      //          e.printStackTrace();
-      //        } catch (Exception e) {
-      //          e.printStackTrace();
-      //        }
-      //      }
-    }
-
     // Draw a two pixel solid border inside the framing rect
     paint.setAlpha(0);
     paint.setStyle(Style.FILL);
@@ -237,18 +177,203 @@ public final class ViewfinderView extends View {
     canvas.drawRect(frame.left - 15, frame.bottom, frame.left + 15, frame.bottom + 15, paint);
     canvas.drawRect(frame.left - 15, frame.bottom - 15, frame.left, frame.bottom, paint);
     canvas.drawRect(frame.right - 15, frame.bottom, frame.right + 15, frame.bottom + 15, paint);
-    canvas.drawRect(frame.right, frame.bottom - 15, frame.right + 15, frame.bottom + 15, paint);    
+    canvas.drawRect(frame.right, frame.bottom - 15, frame.right + 15, frame.bottom + 15, paint);
   }
 
+  // Brings the result layer up to date with the current result: all of it if the framing
+  // rectangle has changed or nothing has been drawn yet, otherwise only the area whose words
+  // changed.
+  private void updateResultLayer(Rect frame, Rect previewFrame) {
+    if (resultLayer == null || resultLayer.getWidth() != frame.width()
+        || resultLayer.getHeight() != frame.height()) {
+      if (resultLayer != null) {
+        resultLayer.recycle();
+      }
+      resultLayer = Bitmap.createBitmap(frame.width(), frame.height(), Bitmap.Config.ARGB_8888);
+      resultCanvas = new Canvas(resultLayer);
+      isResultLayerValid = false;
+    }
+    if (!frame.equals(resultLayerFrame) || !resultLayout.isPositionedFor(frame, previewFrame)) {
+      isResultLayerValid = false;
+    }
+
+    // The words were laid out when the result arrived, so only their positions can need
+    // working out again, if the framing rectangle has changed.
+    resultLayout.position(frame, previewFrame);
+
+    // ResultLayout draws in screen coordinates, and the layer's origin is the frame's corner
+    resultCanvas.save();
+    resultCanvas.translate(-frame.left, -frame.top);
+    if (!isResultLayerValid) {
+      resultLayer.eraseColor(Color.TRANSPARENT);
+      resultLayout.draw(resultCanvas);
+      resultLayerFrame.set(frame);
+      isResultLayerValid = true;
+    } else if (!resultDirty.isEmpty()) {
+      resultCanvas.clipRect(resultDirty);
+      resultCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+      resultLayout.draw(resultCanvas, resultDirty);
+    }
+    resultCanvas.restore();
+    resultDirty.setEmpty();
+  }
+
+  /**
+   * Turns the performance HUD on or off.
+   */
+  void setPerformanceHudEnabled(boolean enabled) {
+    if (enabled && performanceHud == null) {
+      performanceHud = new PerformanceHud();
+      performanceHud.start();
+      invalidate();
+    } else if (!enabled && performanceHud != null) {
+      performanceHud.stop();
+      performanceHud = null;
+      invalidate();
+    }
+  }
+
+  /**
+   * Asks for a redraw if the framing rectangle has moved or changed size. The layers are retained,
+   * so nothing else needs one: new results invalidate only the words that changed.
+   */
   public void drawViewfinder() {
-    invalidate();
+    Rect frame = CameraManager.get().getFramingRect();
+    if (frame != null && !frame.equals(chromeFrame)) {
+      invalidate();
+    }
   }
 
-  public void addResultText(OcrResultText text) {
-    resultText = text; 
+  /**
+   * Shows a result, and records how long it takes from the capture of its frame until it is first
+   * drawn.
+   *
+   * @param text The result to show
+   * @param captureTime The System.nanoTime() at which the result's frame was captured, or 0 if
+   *                    unknown
+   */
+  void addResultText(OcrResult text, long captureTime) {
+    long addedTime = System.nanoTime();
+    if (showResultText(text)) {
+      resultAddedTime = addedTime;
+      resultCaptureTime = captureTime;
+    } else {
+      // Nothing needs drawing, so the result is already on screen
+      PipelineLatency.record(PipelineLatency.Stage.OVERLAY_DRAW, addedTime);
+      if (captureTime != 0) {
+        PipelineLatency.record(PipelineLatency.Stage.END_TO_END, captureTime);
+      }
+    }
   }
 
   public void removeResultText() {
-    resultText = null;
+    showResultText(null);
+  }
+
+  /**
+   * Shows words replaced by their translations, or as recognized.
+   *
+   * @param translations Where to look up translations, or null to stop translating
+   */
+  void setTranslations(TranslationStage translations) {
+    resultLayout.setTranslations(translations);
+    previousLayout.setTranslations(translations);
+    showTranslations();
+  }
+
+  /**
+   * Lays out the current result again, for translations that have arrived since it was shown.
+   * Only the words whose translations arrived are drawn again.
+   */
+  void showTranslations() {
+    OcrResult result = resultLayout.getResult();
+    if (result != null) {
+      showResult(result);
+    }
+  }
+
+  // Works out how far the current result's words have moved on screen. Returns true if that has
+  // changed. Without a tracker, or when the result's frame is too old to look up, they stay put.
+  private boolean updateMotionOffset(Rect frame, Rect previewFrame) {
+    int x = 0;
+    int y = 0;
+    OcrResult result = resultLayout.getResult();
+    if (motionTracker != null && result != null
+        && motionTracker.getOffset(result.getFrameSequence(), motionOffset)) {
+      x = motionOffset[0] * frame.width() / previewFrame.width();
+      y = motionOffset[1] * frame.height() / previewFrame.height();
+    }
+    boolean isChanged = x != motionX || y != motionY;
+    motionX = x;
+    motionY = y;
+    return isChanged;
+  }
+
+  private boolean showResultText(OcrResult text) {
+    return showResult(text != null && text.getMeanConfidence() > 35 ? text : null);
+  }
+
+  /**
+   * Moves the words with the text, by as far as the tracker has seen it move since the frame the
+   * current result was recognized in.
+   */
+  void followMotion(MotionTracker motionTracker) {
+    this.motionTracker = motionTracker;
+    Rect frame = CameraManager.get().getFramingRect();
+    Rect previewFrame = CameraManager.get().getFramingRectInPreview();
+    if (frame != null && previewFrame != null && updateMotionOffset(frame, previewFrame)) {
+      invalidate(frame);
+    }
+  }
+
+  @Override
+  protected void onDetachedFromWindow() {
+    super.onDetachedFromWindow();
+    if (chromeLayer != null) {
+      chromeLayer.recycle();
+      chromeLayer = null;
+    }
+    if (resultLayer != null) {
+      resultLayer.recycle();
+      resultLayer = null;
+    }
+    chromeFrame.setEmpty();
+    isResultLayerValid = false;
+  }
+
+  // Lays out a result and invalidates the words that differ from the result shown before it, or
+  // the whole frame if the two can't be compared. Returns false if nothing on screen changes.
+  private boolean showResult(OcrResult result) {
+    ResultLayout shown = resultLayout;
+    resultLayout = previousLayout;
+    previousLayout = shown;
+    resultLayout.setResult(result);
+
+    Rect frame = CameraManager.get().getFramingRect();
+    Rect previewFrame = CameraManager.get().getFramingRectInPreview();
+    if (frame == null || previewFrame == null) {
+      isResultLayerValid = false;
+      invalidate();
+      return true;
+    }
+    resultLayout.position(frame, previewFrame);
+    boolean isMoved = updateMotionOffset(frame, previewFrame);
+    if (isResultLayerValid && frame.equals(resultLayerFrame)
+        && previousLayout.isPositionedFor(frame, previewFrame)) {
+      resultLayout.addChangedWords(previousLayout, resultDirty);
+      previousLayout.addChangedWords(resultLayout, resultDirty);
+      if (isMoved) {
+        invalidate(frame);
+      } else if (resultDirty.isEmpty()) {
+        return false;
+      } else {
+        invalidate(resultDirty.left + motionX, resultDirty.top + motionY,
+            resultDirty.right + motionX, resultDirty.bottom + motionY);
+      }
+    } else {
+      isResultLayerValid = false;
+      invalidate(frame);
+    }
+    return true;
   }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+/**
+ * Reverses words for the overlay by grapheme cluster rather than by char, so that an accented
+ * letter keeps its combining marks after it, a surrogate pair stays in order, and an emoji
+ * sequence or flag stays whole.
+ *
+ * Clusters follow the extended grapheme cluster rules closely enough for recognized words: a
+ * cluster is a base code point followed by any combining marks, variation selectors, emoji
+ * modifiers, tags, zero-width joiners and the code point after each joiner, and Hangul medial
+ * and final jamo. Regional indicators are paired into flags. Words are reversed in logical
+ * order, so a reversed right-to-left word is still laid out right to left by the text renderer,
+ * and reads reversed on screen just as a left-to-right word does.
+ *
+ * Each result's words are reversed once, when its layout is built. Reversing allocates nothing
+ * once the scratch array has grown to the longest word. Not thread-safe: used on the UI thread
+ * only.
+ */
+final class WordReverser {
+
+  private static final int ZERO_WIDTH_NON_JOINER = 0x200C;
+  private static final int ZERO_WIDTH_JOINER = 0x200D;
+
+  // Holds the reversed word before it is copied back
+  private char[] scratch = new char[64];
+
+  /**
+   * Reverses a word in place, by grapheme cluster.
+   *
+   * @param chars The array holding the word
+   * @param offset Where the word starts
+   * @param length The number of chars in the word
+   */
+  void reverse(char[] chars, int offset, int length) {
+    if (length < 2) {
+      return;
+    }
+    if (scratch.length < length) {
+      scratch = new char[Math.max(length, 2 * scratch.length)];
+    }
+    reverseClusters(chars, offset, length, scratch);
+    System.arraycopy(scratch, 0, chars, offset, length);
+  }
+
+  // Writes the clusters of chars[offset, offset + length) in reverse order to the start of
+  // reversed, each cluster's own chars keeping their order.
+  private static void reverseClusters(char[] chars, int offset, int length, char[] reversed) {
+    int end = offset + length;
+    int start = offset;
+    while (start < end) {
+      int clusterEnd = nextBoundary(chars, start, end);
+      int clusterLength = clusterEnd - start;
+      System.arraycopy(chars, start, reversed, end - clusterEnd, clusterLength);
+      start = clusterEnd;
+    }
+  }
+
+  // Finds the end of the grapheme cluster that starts at start.
+  private static int nextBoundary(char[] chars, int start, int end) {
+    int previous = Character.codePointAt(chars, start, end);
+    int i = start + Character.charCount(previous);
+    boolean isFlag = false;
+    while (i < end) {
+      int codePoint = Character.codePointAt(chars, i, end);
+      boolean isJoined;
+      if (previous == ZERO_WIDTH_JOINER) {
+        isJoined = true;
+      } else if (isRegionalIndicator(codePoint)) {
+        // Regional indicators pair up into flags, so only the second of a pair joins the first
+        isJoined = isRegionalIndicator(previous) && !isFlag;
+        isFlag = isJoined;
+      } else {
+        isJoined = isExtending(codePoint);
+      }
+      if (!isJoined) {
+        break;
+      }
+      previous = codePoint;
+      i += Character.charCount(codePoint);
+    }
+    return i;
+  }
+
+  // Whether a code point always belongs to the cluster before it.
+  private static boolean isExtending(int codePoint) {
+    switch (Character.getType(codePoint)) {
+      case Character.NON_SPACING_MARK:
+      case Character.ENCLOSING_MARK:
+      case Character.COMBINING_SPACING_MARK:
+        return true;
+      default:
+        break;
+    }
+    return codePoint == ZERO_WIDTH_JOINER
+        || codePoint == ZERO_WIDTH_NON_JOINER
+        // Emoji skin tone modifiers
+        || (codePoint >= 0x1F3FB && codePoint <= 0x1F3FF)
+        // Tags, as in subdivision flags
+        || (codePoint >= 0xE0020 && codePoint <= 0xE007F)
+        // Hangul medial vowel and final consonant jamo
+        || (codePoint >= 0x1160 && codePoint <= 0x11FF);
+  }
+
+  private static boolean isRegionalIndicator(int codePoint) {
+    return codePoint >= 0x1F1E6 && codePoint <= 0x1F1FF;
+  }
+}
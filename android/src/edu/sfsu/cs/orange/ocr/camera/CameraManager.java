@@ -19,6 +19,7 @@ package edu.sfsu.cs.orange.ocr.camera;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.graphics.ImageFormat;
 import android.graphics.PixelFormat;
 import android.graphics.Point;
 import android.graphics.Rect;
@@ -46,6 +47,9 @@ public final class CameraManager {
   private static final int MIN_FRAME_HEIGHT = 20; // originally 240
   private static final int MAX_FRAME_WIDTH = 800; // originally 480
   private static final int MAX_FRAME_HEIGHT = 600; // originally 360
+  // Enough for each recognition worker to have a buffer queued in the driver, one waiting in its
+  // mailbox, and one being read
+  private static final int PREVIEW_BUFFER_POOL_SIZE = 12;
 
   private static CameraManager cameraManager;
 
@@ -71,6 +75,8 @@ public final class CameraManager {
   private boolean previewing;
   private boolean reverseImage;
   private final boolean useOneShotPreviewCallback;
+  private final boolean useBufferedPreviewCallback;
+  private final PreviewBufferPool previewBufferPool;
   /**
    * Preview frames are delivered here, which we pass on to the registered handler. Make sure to
    * clear the handler so it will only receive one message.
@@ -119,7 +125,13 @@ public final class CameraManager {
     // to run out of memory. We can't use SDK_INT because it was introduced in the Donut SDK.
     useOneShotPreviewCallback = Integer.parseInt(Build.VERSION.SDK) > 3; // 3 = Cupcake
 
-    previewCallback = new PreviewCallback(configManager, useOneShotPreviewCallback);
+    // On Froyo and later, deliver preview frames into buffers we preallocate and recycle, so that
+    // continuous recognition doesn't allocate a new frame-sized array for every preview frame.
+    useBufferedPreviewCallback = SDK_INT >= 8; // 8 = Froyo
+    previewBufferPool = new PreviewBufferPool(PREVIEW_BUFFER_POOL_SIZE);
+
+    previewCallback = new PreviewCallback(configManager, useOneShotPreviewCallback,
+        useBufferedPreviewCallback, previewBufferPool);
     autoFocusCallback = new AutoFocusCallback();
 
   }
@@ -143,6 +155,7 @@ public final class CameraManager {
       configManager.initFromCameraParameters(camera);
     }
     configManager.setDesiredCameraParameters(camera);
+    previewBufferPool.setBufferSize(getPreviewBufferSize());
     
     SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
     reverseImage = prefs.getBoolean(PreferencesActivity.KEY_REVERSE_IMAGE, false);
@@ -173,6 +186,9 @@ public final class CameraManager {
    */
   public void startPreview() {
     if (camera != null && !previewing) {
+      if (useBufferedPreviewCallback) {
+        camera.setPreviewCallbackWithBuffer(previewCallback);
+      }
       camera.startPreview();
       previewing = true;
     }
@@ -183,36 +199,84 @@ public final class CameraManager {
    */
   public void stopPreview() {
     if (camera != null && previewing) {
-      if (!useOneShotPreviewCallback) {
+      if (useBufferedPreviewCallback) {
+        // This also discards any buffers still queued in the driver, so reclaim ours
+        camera.setPreviewCallbackWithBuffer(null);
+        previewCallback.reclaimQueuedBuffers();
+      } else if (!useOneShotPreviewCallback) {
         camera.setPreviewCallback(null);
       }
 //      disableLight();
       camera.stopPreview();
-      previewCallback.setHandler(null, 0);
+      previewCallback.clearRequests();
       autoFocusCallback.setHandler(null, 0);
       previewing = false;
     }
   }
 
   /**
-   * A single preview frame will be returned to the handler supplied. The data will arrive as byte[]
-   * in the message.obj field, with width and height encoded as message.arg1 and message.arg2,
-   * respectively.
+   * A single preview frame will be returned to the handler supplied. The frame will arrive as a
+   * PreviewFrame in the message.obj field, with width and height encoded as message.arg1 and
+   * message.arg2, respectively. The receiver must call PreviewFrame.release() once it is finished
+   * with the frame. Several handlers may have requests outstanding at once; they are served in
+   * the order the requests were made.
    *
    * @param handler The handler to send the message to.
    * @param message The what field of the message to be sent.
+   * @return True if a new frame was requested, false if the handler already had a request
+   *         outstanding or the preview isn't running.
    */
-  public void requestOcrDecode(Handler handler, int message) {
+  public boolean requestOcrDecode(Handler handler, int message) {
+    return requestFrames(handler, message, false);
+  }
+
+  /**
+   * Like requestOcrDecode(), but keeps sending frames to the handler, taking turns with any other
+   * handlers that have requests outstanding, until cancelOcrDecode() or stopPreview().
+   *
+   * @param handler The handler to send the messages to.
+   * @param message The what field of the messages to be sent.
+   * @return True if a new request was added, false if the handler already had a request
+   *         outstanding or the preview isn't running.
+   */
+  public boolean requestContinuousOcrDecode(Handler handler, int message) {
+    return requestFrames(handler, message, true);
+  }
+
+  /**
+   * Stops sending frames to the handler. Frames already sent still arrive.
+   *
+   * @param handler The handler whose request to remove.
+   */
+  public void cancelOcrDecode(Handler handler) {
+    previewCallback.removeRequest(handler);
+  }
+
+  private boolean requestFrames(Handler handler, int message, boolean standing) {
     if (camera != null && previewing) {
-      previewCallback.setHandler(handler, message);
-      if (useOneShotPreviewCallback) {
+      if (!previewCallback.addRequest(handler, message, standing)) {
+        return false;
+      }
+      if (useBufferedPreviewCallback) {
+        previewCallback.queueBuffers(camera);
+      } else if (useOneShotPreviewCallback) {
         camera.setOneShotPreviewCallback(previewCallback);
       } else {
         camera.setPreviewCallback(previewCallback);
       }
+      return true;
     }
+    return false;
   }
   
+  /**
+   * @return The pool of preview frame buffers, whose hit and miss counts are logged with the
+   *         recognition throughput.
+   */
+  public PreviewBufferPool getPreviewBufferPool() {
+    return previewBufferPool;
+  }
+
   /**
    * Asks the camera hardware to perform an autofocus.
    *
@@ -295,6 +359,33 @@ public final class CameraManager {
     framingRectInPreview = null;
   }
 
+  /**
+   * Computes the size of one preview frame buffer from the preview size and pixel format.
+   *
+   * @return The number of bytes in one preview frame.
+   */
+  private int getPreviewBufferSize() {
+    Point cameraResolution = configManager.getCameraResolution();
+    int bitsPerPixel = ImageFormat.getBitsPerPixel(configManager.getPreviewFormat());
+    if (bitsPerPixel <= 0) {
+      // Unknown format, such as the Samsung Moment's yuv420p. Size for the largest YUV format
+      // we accept.
+      bitsPerPixel = 16;
+    }
+    return cameraResolution.x * cameraResolution.y * bitsPerPixel / 8;
+  }
+
+  /**
+   * A factory method to build the appropriate LuminanceSource object based on the format
+   * of the preview buffers, as described by Camera.Parameters.
+   *
+   * @param frame A preview frame.
+   * @return A PlanarYUVLuminanceSource instance.
+   */
+  public PlanarYUVLuminanceSource buildLuminanceSource(PreviewFrame frame) {
+    return buildLuminanceSource(frame.getData(), frame.getWidth(), frame.getHeight());
+  }
+
   /**
    * A factory method to build the appropriate LuminanceSource object based on the format
    * of the preview buffers, as described by Camera.Parameters.
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr.camera;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single-slot handoff of preview frames to one decoder. The camera keeps offering frames while
+ * the decoder is busy, and each one replaces the frame waiting in the slot, whose buffer goes
+ * straight back to the pool. When the decoder is free it takes whatever is in the slot, which is
+ * always the freshest frame offered so far.
+ *
+ * Frames may be offered from any number of threads. A frame older than the one in the slot, or
+ * than the last one taken, is released instead of stored, so the decoder never goes backwards in
+ * time. There must be only one thread taking frames.
+ */
+public final class FrameMailbox {
+
+  private final AtomicReference<PreviewFrame> slot = new AtomicReference<PreviewFrame>();
+
+  // Written only by the taking thread
+  private volatile long lastTakenSequence = -1;
+
+  /**
+   * Puts a frame in the slot, releasing the frame it replaces. If the slot already holds a newer
+   * frame, the offered frame is released instead.
+   *
+   * @param frame The frame to hand off
+   * @return True if a frame was released without being taken
+   */
+  public boolean offer(PreviewFrame frame) {
+    while (true) {
+      PreviewFrame current = slot.get();
+      if (frame.getSequence() <= lastTakenSequence
+          || (current != null && current.getSequence() > frame.getSequence())) {
+        frame.release();
+        return true;
+      }
+      if (slot.compareAndSet(current, frame)) {
+        if (current != null) {
+          current.release();
+          return true;
+        }
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Takes the frame from the slot. The caller must release it once finished with it.
+   *
+   * @return The freshest frame offered since the last take, or null if there is none
+   */
+  public PreviewFrame take() {
+    while (true) {
+      PreviewFrame frame = slot.getAndSet(null);
+      if (frame == null) {
+        return null;
+      }
+      // An offer racing the previous take can leave a frame older than the one that was taken
+      if (frame.getSequence() > lastTakenSequence) {
+        lastTakenSequence = frame.getSequence();
+        return frame;
+      }
+      frame.release();
+    }
+  }
+
+  /**
+   * Releases the frame in the slot, if any.
+   */
+  public void clear() {
+    PreviewFrame frame = slot.getAndSet(null);
+    if (frame != null) {
+      frame.release();
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr.camera;
+
+/**
+ * A bounded pool of preallocated preview frame buffers. Buffers are handed to the camera driver
+ * through Camera.addCallbackBuffer(), so that continuous recognition does not make the driver
+ * allocate a new byte[] for every preview frame. A buffer comes back to the pool through
+ * release() once the decoder is finished reading from it.
+ *
+ * Hit and miss counts are kept so that we can confirm that steady-state operation is served
+ * entirely from the pool.
+ */
+public final class PreviewBufferPool {
+
+  private final byte[][] freeBuffers;
+  private int freeCount;
+  private int bufferSize;
+  private long hitCount;
+  private long missCount;
+
+  PreviewBufferPool(int capacity) {
+    freeBuffers = new byte[capacity][];
+  }
+
+  /**
+   * Sets the size in bytes of a preview frame. Pooled buffers of a different size are discarded.
+   */
+  synchronized void setBufferSize(int bufferSize) {
+    if (this.bufferSize != bufferSize) {
+      for (int i = 0; i < freeCount; i++) {
+        freeBuffers[i] = null;
+      }
+      freeCount = 0;
+      this.bufferSize = bufferSize;
+    }
+  }
+
+  /**
+   * Takes a buffer from the pool, or allocates a new one if the pool is empty.
+   *
+   * @return A buffer of the current preview frame size
+   */
+  synchronized byte[] acquire() {
+    if (freeCount > 0) {
+      hitCount++;
+      byte[] buffer = freeBuffers[--freeCount];
+      freeBuffers[freeCount] = null;
+      return buffer;
+    }
+    missCount++;
+    return new byte[bufferSize];
+  }
+
+  /**
+   * Returns a buffer to the pool. Buffers of the wrong size, buffers that are already in the
+   * pool, and buffers beyond the pool's capacity are dropped.
+   *
+   * @param buffer The buffer to return
+   */
+  synchronized void release(byte[] buffer) {
+    if (buffer == null || buffer.length != bufferSize || freeCount == freeBuffers.length) {
+      return;
+    }
+    for (int i = 0; i < freeCount; i++) {
+      if (freeBuffers[i] == buffer) {
+        return;
+      }
+    }
+    freeBuffers[freeCount++] = buffer;
+  }
+
+  /**
+   * @return The number of acquire() calls that were served from the pool.
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return The number of acquire() calls that had to allocate a new buffer.
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "hits=" + hitCount + " misses=" + missCount + " free=" + freeCount;
+  }
+
+}
@@ -23,37 +23,167 @@ import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
 
+/**
+ * Delivers preview frames to the handlers that requested them. Requests are served in the order
+ * they were made, so several decoders can each have a frame request outstanding. A one-shot
+ * request is served with one frame. A standing request goes to the back of the queue each time it
+ * is served, and keeps receiving frames until it is removed. Frames are numbered in capture order.
+ */
 final class PreviewCallback implements Camera.PreviewCallback {
 
   private static final String TAG = PreviewCallback.class.getSimpleName();
 
+  private static final int MAX_PENDING_REQUESTS = 8;
+
   private final CameraConfigurationManager configManager;
   private final boolean useOneShotPreviewCallback;
-  private Handler previewHandler;
-  private int previewMessage;
+  private final boolean useBufferedPreviewCallback;
+  private final PreviewBufferPool bufferPool;
+  private final Handler[] requestHandlers = new Handler[MAX_PENDING_REQUESTS];
+  private final int[] requestMessages = new int[MAX_PENDING_REQUESTS];
+  private final boolean[] requestStanding = new boolean[MAX_PENDING_REQUESTS];
+  private int requestCount;
+  private final byte[][] queuedBuffers = new byte[MAX_PENDING_REQUESTS][];
+  private int queuedCount;
+  private long frameSequence;
 
-  PreviewCallback(CameraConfigurationManager configManager, boolean useOneShotPreviewCallback) {
+  PreviewCallback(CameraConfigurationManager configManager, boolean useOneShotPreviewCallback,
+      boolean useBufferedPreviewCallback, PreviewBufferPool bufferPool) {
     this.configManager = configManager;
     this.useOneShotPreviewCallback = useOneShotPreviewCallback;
+    this.useBufferedPreviewCallback = useBufferedPreviewCallback;
+    this.bufferPool = bufferPool;
   }
 
-  void setHandler(Handler previewHandler, int previewMessage) {
-    this.previewHandler = previewHandler;
-    this.previewMessage = previewMessage;
+  /**
+   * Adds a request for preview frames. If the handler already has a request outstanding, only
+   * its message and whether it is standing are updated.
+   *
+   * @param standing True to keep delivering frames to the handler until removeRequest(), false
+   *                 for a single frame
+   * @return True if a new request was added
+   */
+  boolean addRequest(Handler previewHandler, int previewMessage, boolean standing) {
+    for (int i = 0; i < requestCount; i++) {
+      if (requestHandlers[i] == previewHandler) {
+        requestMessages[i] = previewMessage;
+        requestStanding[i] = standing;
+        return false;
+      }
+    }
+    if (requestCount == MAX_PENDING_REQUESTS) {
+      Log.w(TAG, "Too many preview frame requests outstanding");
+      return false;
+    }
+    requestHandlers[requestCount] = previewHandler;
+    requestMessages[requestCount] = previewMessage;
+    requestStanding[requestCount] = standing;
+    requestCount++;
+    return true;
+  }
+
+  /**
+   * Removes the handler's outstanding request, if it has one.
+   */
+  void removeRequest(Handler previewHandler) {
+    for (int i = 0; i < requestCount; i++) {
+      if (requestHandlers[i] == previewHandler) {
+        removeRequest(i);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Drops all outstanding requests.
+   */
+  void clearRequests() {
+    for (int i = 0; i < requestCount; i++) {
+      requestHandlers[i] = null;
+    }
+    requestCount = 0;
+  }
+
+  /**
+   * Hands pooled buffers to the camera until there is one for every outstanding request, so that
+   * one preview frame per request will be delivered with Camera.setPreviewCallbackWithBuffer().
+   */
+  void queueBuffers(Camera camera) {
+    while (queuedCount < requestCount) {
+      byte[] buffer = bufferPool.acquire();
+      queuedBuffers[queuedCount++] = buffer;
+      camera.addCallbackBuffer(buffer);
+    }
+  }
+
+  /**
+   * Returns the queued buffers to the pool. Called after the camera has been told to drop its
+   * callback buffers.
+   */
+  void reclaimQueuedBuffers() {
+    for (int i = 0; i < queuedCount; i++) {
+      bufferPool.release(queuedBuffers[i]);
+      queuedBuffers[i] = null;
+    }
+    queuedCount = 0;
   }
 
   public void onPreviewFrame(byte[] data, Camera camera) {
+    long timestamp = System.nanoTime();
     Point cameraResolution = configManager.getCameraResolution();
-    if (!useOneShotPreviewCallback) {
-      camera.setPreviewCallback(null);
-    }
-    if (previewHandler != null) {
+    removeQueuedBuffer(data);
+    if (requestCount > 0) {
+      Handler previewHandler = requestHandlers[0];
+      int previewMessage = requestMessages[0];
+      boolean standing = requestStanding[0];
+      removeRequest(0);
+      if (standing) {
+        requestHandlers[requestCount] = previewHandler;
+        requestMessages[requestCount] = previewMessage;
+        requestStanding[requestCount] = true;
+        requestCount++;
+      }
+      PreviewFrame frame = new PreviewFrame(data, cameraResolution.x, cameraResolution.y,
+          frameSequence++, timestamp, bufferPool);
       Message message = previewHandler.obtainMessage(previewMessage, cameraResolution.x,
-          cameraResolution.y, data);
+          cameraResolution.y, frame);
       message.sendToTarget();
-      previewHandler = null;
     } else {
       Log.d(TAG, "Got preview callback, but no handler for it");
+      bufferPool.release(data);
+    }
+
+    // Keep a buffer queued for every request still outstanding. Without callback buffers, the
+    // callback must be set again instead.
+    if (useBufferedPreviewCallback) {
+      queueBuffers(camera);
+    } else {
+      if (requestCount == 0) {
+        if (!useOneShotPreviewCallback) {
+          camera.setPreviewCallback(null);
+        }
+      } else if (useOneShotPreviewCallback) {
+        camera.setOneShotPreviewCallback(this);
+      }
+    }
+  }
+
+  private void removeRequest(int index) {
+    requestCount--;
+    System.arraycopy(requestHandlers, index + 1, requestHandlers, index, requestCount - index);
+    System.arraycopy(requestMessages, index + 1, requestMessages, index, requestCount - index);
+    System.arraycopy(requestStanding, index + 1, requestStanding, index, requestCount - index);
+    requestHandlers[requestCount] = null;
+  }
+
+  private void removeQueuedBuffer(byte[] data) {
+    for (int i = 0; i < queuedCount; i++) {
+      if (queuedBuffers[i] == data) {
+        queuedCount--;
+        System.arraycopy(queuedBuffers, i + 1, queuedBuffers, i, queuedCount - i);
+        queuedBuffers[queuedCount] = null;
+        return;
+      }
     }
   }
 
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr.camera;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One preview frame delivered by the camera, numbered in the order the frames were captured. The
+ * frame's data is a pooled buffer, which must be handed back with release() once the decoder is
+ * finished reading from it, exactly once.
+ */
+public final class PreviewFrame {
+
+  private final byte[] data;
+  private final int width;
+  private final int height;
+  private final long sequence;
+  private final long timestamp;
+  private final PreviewBufferPool bufferPool;
+  private final AtomicBoolean released = new AtomicBoolean();
+
+  PreviewFrame(byte[] data, int width, int height, long sequence, long timestamp,
+      PreviewBufferPool bufferPool) {
+    this.data = data;
+    this.width = width;
+    this.height = height;
+    this.sequence = sequence;
+    this.timestamp = timestamp;
+    this.bufferPool = bufferPool;
+  }
+
+  public byte[] getData() {
+    return data;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return The capture order of this frame. Later frames have larger numbers.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * @return The System.nanoTime() at which the preview callback received this frame.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Returns the frame's buffer to the pool. The data must not be read after this call.
+   *
+   * @throws IllegalStateException if the frame was already released, since its buffer may
+   *         already be holding another frame
+   */
+  public void release() {
+    if (!released.compareAndSet(false, true)) {
+      throw new IllegalStateException("Released twice: " + this);
+    }
+    bufferPool.release(data);
+  }
+
+  @Override
+  public String toString() {
+    return "frame " + sequence + " (" + width + "x" + height + ")";
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests FrameSharpnessGate on a made-up sharp frame of text-like strokes and box-blurred and
+ * low-contrast copies of it: a blurred copy is skipped, a blank frame always is, and after a run
+ * of low-contrast frames the decaying threshold comes down to them.
+ */
+public class FrameSharpnessGateTest extends TestCase {
+
+  private static final int WIDTH = 320;
+  private static final int HEIGHT = 120;
+
+  private static final int BACKGROUND = 180;
+  private static final int INK = 50;
+
+  // Mirrors FrameSharpnessGate
+  private static final float RELATIVE_THRESHOLD = 0.5f;
+  private static final float PEAK_DECAY = 0.95f;
+
+  private SyntheticFrame sharp;
+  private FrameSharpnessGate gate;
+
+  @Override
+  protected void setUp() {
+    // Rows of letter strokes, a few pixels thick
+    sharp = new SyntheticFrame(WIDTH, HEIGHT, BACKGROUND);
+    Random random = new Random(3);
+    for (int top = 10; top + 20 < HEIGHT; top += 30) {
+      for (int left = 10; left + 12 < WIDTH; left += 16) {
+        sharp.fill(left, top, left + 3, top + 20, INK);
+        if (random.nextBoolean()) {
+          sharp.fill(left + 9, top, left + 12, top + 20, INK);
+        }
+        sharp.fill(left, top + 9 * random.nextInt(3), left + 12, top + 9 * random.nextInt(3) + 3,
+            INK);
+      }
+    }
+    gate = new FrameSharpnessGate();
+  }
+
+  public void testSharpFrameIsAccepted() {
+    assertTrue(gate.accept(sharp.toSource()));
+    assertTrue(gate.accept(sharp.toSource()));
+    assertEquals(2, gate.getFramesChecked());
+    assertEquals(0, gate.getFramesSkipped());
+  }
+
+  public void testBlurredCopyIsSkipped() {
+    SyntheticFrame blurred = sharp.copy();
+    blurred.boxBlur(2);
+    float sharpScore = gate.measure(sharp.toSource());
+    float blurredScore = gate.measure(blurred.toSource());
+    assertTrue("Blurred " + blurredScore + ", sharp " + sharpScore,
+        blurredScore < sharpScore * RELATIVE_THRESHOLD);
+
+    assertTrue(gate.accept(sharp.toSource()));
+    assertFalse(gate.accept(blurred.toSource()));
+    assertTrue(gate.accept(sharp.toSource()));
+    assertEquals(3, gate.getFramesChecked());
+    assertEquals(1, gate.getFramesSkipped());
+  }
+
+  public void testBlankFrameIsSkipped() {
+    SyntheticFrame blank = new SyntheticFrame(WIDTH, HEIGHT, BACKGROUND);
+    for (int i = 0; i < 50; i++) {
+      assertFalse(gate.accept(blank.toSource()));
+    }
+  }
+
+  public void testThresholdRecoversAfterLowContrastRun() {
+    // A third of the contrast scores a ninth as much, as sharp as it is
+    SyntheticFrame lowContrast = sharp.copy();
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        lowContrast.set(x, y, BACKGROUND + (sharp.get(x, y) - BACKGROUND) / 3);
+      }
+    }
+    float sharpScore = gate.measure(sharp.toSource());
+    float lowScore = gate.measure(lowContrast.toSource());
+
+    assertTrue(gate.accept(sharp.toSource()));
+    int accepted = -1;
+    for (int frame = 1; frame <= 200 && accepted < 0; frame++) {
+      if (gate.accept(lowContrast.toSource())) {
+        accepted = frame;
+      }
+    }
+    // The peak decays on every frame until half of it is no more than the low score
+    int expected = (int) Math.ceil(Math.log(lowScore / (sharpScore * RELATIVE_THRESHOLD))
+        / Math.log(PEAK_DECAY));
+    assertTrue("Accepted at frame " + accepted + ", expected " + expected,
+        accepted > 1 && Math.abs(accepted - expected) <= 1);
+
+    // Once it has come down, the threshold follows the low-contrast scene
+    for (int i = 0; i < 20; i++) {
+      assertTrue(gate.accept(lowContrast.toSource()));
+    }
+    SyntheticFrame blurred = lowContrast.copy();
+    blurred.boxBlur(2);
+    assertFalse(gate.accept(blurred.toSource()));
+  }
+}
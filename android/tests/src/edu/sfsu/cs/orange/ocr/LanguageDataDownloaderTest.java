@@ -0,0 +1,418 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests LanguageDataDownloader against a local HTTP server that can drop connections, send parts
+ * shorter than asked for, ignore range requests, and publish a wrong checksum.
+ */
+public class LanguageDataDownloaderTest extends TestCase {
+
+  // Large enough to be fetched in four parts
+  private static final int DATA_SIZE = 1024 * 1024;
+
+  private static final String NAME = "eng.traineddata";
+
+  private byte[] data;
+  private LocalServer server;
+  private File directory;
+  private File destinationFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    data = new byte[DATA_SIZE];
+    // Incompressible, so that the gzipped file is as large
+    new Random(1).nextBytes(data);
+    server = new LocalServer(gzip(data));
+    directory = File.createTempFile("download", "");
+    directory.delete();
+    directory.mkdirs();
+    destinationFile = new File(directory, NAME);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.close();
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  public void testDownloadsInParts() throws Exception {
+    server.digestLine = server.digestLine();
+    assertTrue(newDownloader(null).download());
+    assertInstalled();
+    assertEquals(4, server.getRangeStarts().size());
+    assertEquals(server.file.length, server.getServedBytes());
+  }
+
+  public void testResumesDroppedPartFromWhereItStopped() throws Exception {
+    server.drops = 2;
+    assertTrue(newDownloader(null).download());
+    assertInstalled();
+    // Each drop is followed by a request for the rest of its part, not the whole part again
+    assertEquals(4 + 2, server.getRangeStarts().size());
+    assertTrue(server.getServedBytes() < server.file.length * 3 / 2);
+  }
+
+  public void testResumesInterruptedDownloadOnNextRun() throws Exception {
+    ProgressListener interrupting = new ProgressListener() {
+      public void onProgress(int percentComplete) {
+        if (percentComplete >= 40) {
+          throw new IllegalStateException("Stopped at " + percentComplete + "%");
+        }
+      }
+    };
+    try {
+      newDownloader(interrupting).download();
+      fail("Download wasn't interrupted");
+    } catch (IOException e) {
+      // Expected
+    }
+    assertFalse(destinationFile.exists());
+    assertTrue(new File(directory, NAME + ".gz.part.state").exists());
+
+    // At least 40% was kept. What the server sent after that may have been lost in transit.
+    server.resetCounts();
+    assertTrue(newDownloader(null).download());
+    assertInstalled();
+    assertTrue("Fetched " + server.getServedBytes() + " bytes again",
+        server.getServedBytes() < server.file.length * 3 / 4);
+  }
+
+  public void testRetriesShortParts() throws Exception {
+    server.maxResponseLength = 100 * 1024;
+    assertTrue(newDownloader(null).download());
+    assertInstalled();
+    assertTrue(server.getRangeStarts().size() > 4);
+    assertEquals(server.file.length, server.getServedBytes());
+  }
+
+  public void testFallsBackToOneStreamWhenRangesAreIgnored() throws Exception {
+    server.isRangeIgnored = true;
+    server.digestLine = server.digestLine();
+    assertTrue(newDownloader(null).download());
+    assertInstalled();
+    assertFalse(new File(directory, NAME + ".gz.part.state").exists());
+  }
+
+  public void testFallbackIsNotStoppedByPartsStillWaiting() throws Exception {
+    server.isRangeIgnored = true;
+    // The other parts are still waiting for their responses when the first one gets the whole
+    // file, and get them while the single stream is under way
+    server.rangeDelayMs = 300;
+    server.streamBlockDelayMs = 20;
+    assertTrue(newDownloader(null).download());
+    assertInstalled();
+    assertEquals(1, server.getStreamRequests());
+  }
+
+  public void testRejectsChecksumMismatch() throws Exception {
+    char[] zeros = new char[64];
+    Arrays.fill(zeros, '0');
+    server.digestLine = new String(zeros) + "  " + NAME + ".gz\n";
+    try {
+      newDownloader(null).download();
+      fail("Checksum mismatch wasn't reported");
+    } catch (IOException e) {
+      // Expected
+    }
+    assertFalse(destinationFile.exists());
+    assertEquals("Downloaded files left behind", 0, directory.listFiles().length);
+  }
+
+  public void testReportsMissingFile() throws Exception {
+    LanguageDataDownloader downloader = new LanguageDataDownloader(server.getUrl("missing.gz"),
+        destinationFile, null);
+    assertFalse(downloader.download());
+    assertFalse(destinationFile.exists());
+  }
+
+  private LanguageDataDownloader newDownloader(ProgressListener listener) throws IOException {
+    if (listener == null) {
+      listener = new ProgressListener() {
+        public void onProgress(int percentComplete) {
+        }
+      };
+    }
+    return new LanguageDataDownloader(server.getUrl(NAME + ".gz"), destinationFile, listener);
+  }
+
+  private void assertInstalled() throws IOException {
+    assertTrue(Arrays.equals(data, read(destinationFile)));
+    assertTrue(LanguageDataManifest.verify(destinationFile, -1));
+    assertFalse(new File(directory, NAME + ".gz.part").exists());
+    assertFalse(new File(directory, NAME + ".download").exists());
+  }
+
+  private static byte[] read(File file) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    InputStream input = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[64 * 1024];
+      int length;
+      while ((length = input.read(buffer)) != -1) {
+        bytes.write(buffer, 0, length);
+      }
+    } finally {
+      input.close();
+    }
+    return bytes.toByteArray();
+  }
+
+  private static byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GZIPOutputStream output = new GZIPOutputStream(bytes);
+    output.write(data);
+    output.close();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Serves one gzipped file, with HEAD and range requests, and its SHA-256 beside it, one
+   * connection per request. Other paths are not found.
+   */
+  private static final class LocalServer implements Runnable {
+    final byte[] file;
+
+    // What the server does, set by each test before downloading
+    volatile String digestLine;
+    volatile boolean isRangeIgnored;
+    volatile int maxResponseLength = Integer.MAX_VALUE;
+    volatile int drops;
+    // Delays the response to a range request for anything after the first byte
+    volatile int rangeDelayMs;
+    // Slows a response without a range, per block sent
+    volatile int streamBlockDelayMs;
+
+    private final ServerSocket serverSocket;
+    private final Thread thread;
+    private final List<Long> rangeStarts = new ArrayList<Long>();
+    private long servedBytes;
+    private int streamRequests;
+
+    LocalServer(byte[] file) throws IOException {
+      this.file = file;
+      serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+      thread = new Thread(this, "LocalServer");
+      thread.start();
+    }
+
+    URL getUrl(String path) throws IOException {
+      return new URL("http", "127.0.0.1", serverSocket.getLocalPort(), "/" + path);
+    }
+
+    String digestLine() throws Exception {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(file);
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex + "  " + NAME + ".gz\n";
+    }
+
+    synchronized List<Long> getRangeStarts() {
+      return new ArrayList<Long>(rangeStarts);
+    }
+
+    synchronized long getServedBytes() {
+      return servedBytes;
+    }
+
+    // Requests for the whole file without a range
+    synchronized int getStreamRequests() {
+      return streamRequests;
+    }
+
+    synchronized void resetCounts() {
+      rangeStarts.clear();
+      servedBytes = 0;
+    }
+
+    void close() throws IOException {
+      serverSocket.close();
+    }
+
+    public void run() {
+      while (true) {
+        final Socket socket;
+        try {
+          socket = serverSocket.accept();
+        } catch (IOException e) {
+          // Closed
+          return;
+        }
+        new Thread(new Runnable() {
+          public void run() {
+            try {
+              serve(socket);
+            } catch (IOException e) {
+              // The client went away
+            } finally {
+              try {
+                socket.close();
+              } catch (IOException e) {
+                // Ignored
+              }
+            }
+          }
+        }).start();
+      }
+    }
+
+    private void serve(Socket socket) throws IOException {
+      InputStream input = socket.getInputStream();
+      String[] request = readLine(input).split(" ");
+      String range = null;
+      String line;
+      while ((line = readLine(input)).length() > 0) {
+        if (line.toLowerCase().startsWith("range:")) {
+          range = line.substring("range:".length()).trim();
+        }
+      }
+      String method = request[0];
+      String path = request[1];
+      OutputStream output = socket.getOutputStream();
+
+      if (path.equals("/" + NAME + ".gz.sha256")) {
+        String digest = digestLine;
+        if (digest == null) {
+          writeHeaders(output, "404 Not Found", 0, null);
+        } else {
+          byte[] body = digest.getBytes("US-ASCII");
+          writeHeaders(output, "200 OK", body.length, null);
+          output.write(body);
+        }
+        return;
+      }
+      if (!path.equals("/" + NAME + ".gz")) {
+        writeHeaders(output, "404 Not Found", 0, null);
+        return;
+      }
+      if (method.equals("HEAD")) {
+        writeHeaders(output, "200 OK", file.length, null);
+        return;
+      }
+
+      if (range == null) {
+        synchronized (this) {
+          streamRequests++;
+        }
+      } else if (rangeDelayMs > 0 && !range.startsWith("bytes=0-")) {
+        try {
+          Thread.sleep(rangeDelayMs);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+
+      int start = 0;
+      int end = file.length;
+      String status = "200 OK";
+      String contentRange = null;
+      if (range != null && !isRangeIgnored) {
+        String[] bounds = range.substring("bytes=".length()).split("-");
+        start = Integer.parseInt(bounds[0]);
+        if (bounds.length > 1) {
+          end = Math.min(end, Integer.parseInt(bounds[1]) + 1);
+        }
+        end = start + Math.min(end - start, maxResponseLength);
+        status = "206 Partial Content";
+        contentRange = "bytes " + start + "-" + (end - 1) + "/" + file.length;
+        synchronized (this) {
+          rangeStarts.add(Long.valueOf(start));
+        }
+      }
+      writeHeaders(output, status, end - start, contentRange);
+
+      boolean isDropped = false;
+      synchronized (this) {
+        if (drops > 0) {
+          drops--;
+          isDropped = true;
+        }
+      }
+      if (isDropped) {
+        // Declares the whole length, sends half, and closes the connection
+        end = start + (end - start) / 2;
+      }
+      for (int position = start; position < end; position += 16 * 1024) {
+        if (range == null && streamBlockDelayMs > 0) {
+          try {
+            Thread.sleep(streamBlockDelayMs);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        int length = Math.min(16 * 1024, end - position);
+        output.write(file, position, length);
+        synchronized (this) {
+          servedBytes += length;
+        }
+      }
+      output.flush();
+      if (isDropped) {
+        throw new SocketException("Dropped");
+      }
+    }
+
+    private static void writeHeaders(OutputStream output, String status, int length,
+        String contentRange) throws IOException {
+      StringBuilder headers = new StringBuilder();
+      headers.append("HTTP/1.1 ").append(status).append("\r\n");
+      headers.append("Content-Length: ").append(length).append("\r\n");
+      headers.append("Accept-Ranges: bytes\r\n");
+      headers.append("ETag: \"1\"\r\n");
+      if (contentRange != null) {
+        headers.append("Content-Range: ").append(contentRange).append("\r\n");
+      }
+      headers.append("Connection: close\r\n\r\n");
+      output.write(headers.toString().getBytes("US-ASCII"));
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+      StringBuilder line = new StringBuilder();
+      int c;
+      while ((c = input.read()) != -1 && c != '\n') {
+        if (c != '\r') {
+          line.append((char) c);
+        }
+      }
+      return line.toString();
+    }
+  }
+}
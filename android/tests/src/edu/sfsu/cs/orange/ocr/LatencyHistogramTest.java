@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests LatencyHistogram's percentiles against the exact values from the sorted durations.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+  private static final double[] FRACTIONS = { 0.5, 0.9, 0.99, 0.999 };
+
+  private LatencyHistogram histogram;
+
+  @Override
+  protected void setUp() {
+    histogram = new LatencyHistogram();
+  }
+
+  public void testPercentilesAreWithinThreePercentOfExact() {
+    Random random = new Random(10);
+    for (int run = 0; run < 20; run++) {
+      histogram.reset();
+      // Log-normal around 20 ms, with a long tail, as recognition times are
+      long[] durations = new long[5000];
+      for (int i = 0; i < durations.length; i++) {
+        durations[i] = (long) (20e6 * Math.exp(0.8 * random.nextGaussian()));
+        histogram.record(durations[i]);
+      }
+      Arrays.sort(durations);
+      for (double fraction : FRACTIONS) {
+        long exact = durations[(int) Math.ceil(fraction * durations.length) - 1];
+        long reported = histogram.getPercentile(fraction);
+        assertTrue("p" + fraction * 100 + ": " + reported + " for " + exact,
+            Math.abs(reported - exact) <= 0.03 * exact);
+      }
+    }
+  }
+
+  public void testEveryValueIsPlacedWithinThreePercent() {
+    for (long value = 1; value < 1L << 36; value += 1 + value / 97) {
+      long placed = LatencyHistogram.middleValueIn(LatencyHistogram.bucketOf(value));
+      assertTrue(value + " placed at " + placed, Math.abs(placed - value) <= 0.03 * value);
+    }
+  }
+
+  public void testCountMaxAndMean() {
+    histogram.record(1000);
+    histogram.record(3000);
+    histogram.record(8100);
+    assertEquals(3, histogram.getCount());
+    assertEquals(8100, histogram.getMax());
+    assertEquals(4033, histogram.getMean());
+    // The middle of its bucket is above 8100, but it's never reported above the longest duration
+    assertEquals(8100, histogram.getPercentile(1.0));
+  }
+
+  public void testSmallValuesAreExact() {
+    for (long value = 0; value < 32; value++) {
+      histogram.reset();
+      histogram.record(value);
+      assertEquals(value, histogram.getPercentile(0.5));
+    }
+  }
+
+  public void testNegativeDurationCountsAsZero() {
+    histogram.record(-5);
+    assertEquals(1, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(0.5));
+    assertEquals(0, histogram.getMean());
+  }
+
+  public void testEmptyHistogramReportsZero() {
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMean());
+    assertEquals(0, histogram.getPercentile(0.99));
+  }
+
+  public void testConcurrentRecordingLosesNothing() throws InterruptedException {
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final long base = 1000 * (t + 1);
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 10000; i++) {
+            histogram.record(base + i % 100);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(40000, histogram.getCount());
+    assertEquals(4099, histogram.getMax());
+    assertEquals(2549, histogram.getMean());
+  }
+
+  public void testResetClearsEverything() {
+    histogram.record(5000);
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getPercentile(0.5));
+    histogram.record(40);
+    assertEquals(40, histogram.getMax());
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests LexiconCorrector on the engine's usual misreads of sign words, against a small lexicon
+ * that also holds words near them.
+ */
+public class LexiconCorrectorTest extends TestCase {
+
+  private static final String[] WORDS = {
+    "closed", "closet", "coffee", "could", "daily", "dairy", "entrance", "exit", "garden",
+    "harden", "hello", "library", "market", "mode", "modem", "modern", "museum", "north",
+    "on", "open", "opens", "oven", "parking", "please", "should", "station", "street", "strict",
+    "ticket", "turn", "water", "welcome", "would",
+  };
+
+  // Each misread, and the word it was read from
+  private static final String[][] MISREADS = {
+    { "rnodern", "modern" },     // rn for m
+    { "0pen", "open" },          // 0 for o
+    { "vvould", "would" },       // vv for w
+    { "entrnace", "entrance" },  // two letters swapped
+    { "c1osed", "closed" },      // 1 for l
+    { "5treet", "street" },      // 5 for s
+    { "rnuseum", "museum" },     // rn for m
+    { "dai1y", "daily" },        // 1 for l
+    { "garclen", "garden" },     // cl for d
+    { "tickct", "ticket" },      // c for e
+    { "tum", "turn" },           // m for rn
+    { "5tati0n", "station" },    // 5 for s and 0 for o
+  };
+
+  private File file;
+  private LexiconCorrector corrector;
+
+  @Override
+  protected void setUp() throws IOException {
+    file = File.createTempFile("words", ".lexicon");
+    OutputStream out = new FileOutputStream(file);
+    try {
+      Lexicon.write(Arrays.asList(WORDS), out);
+    } finally {
+      out.close();
+    }
+    corrector = new LexiconCorrector(Lexicon.map(file));
+  }
+
+  @Override
+  protected void tearDown() {
+    file.delete();
+  }
+
+  public void testCorrectsEveryMisread() {
+    long correctedBefore = PerformanceCounters.wordsCorrected.get();
+    for (String[] misread : MISREADS) {
+      assertEquals(misread[1], corrector.correct(newResult(misread[0], 40)).getText());
+    }
+    assertEquals(MISREADS.length, PerformanceCounters.wordsCorrected.get() - correctedBefore);
+  }
+
+  public void testKeepsCaseAndPunctuation() {
+    OcrResult result = newResult("\"0PEN\" Rnuseum, dai1y.", 40);
+    assertEquals("\"OPEN\" Museum, daily.", corrector.correct(result).getText());
+  }
+
+  public void testCorrectedWordIsShownWithMoreConfidence() {
+    OcrResult corrected = corrector.correct(newResult("exit 0pen", 20));
+    assertEquals("exit open", corrected.getText());
+    assertEquals(20, corrected.getWordConfidence(0));
+    assertEquals(50, corrected.getWordConfidence(1));
+  }
+
+  public void testConfidentWordIsLeftAlone() {
+    OcrResult result = newResult("0pen", 90);
+    assertSame(result, corrector.correct(result));
+  }
+
+  public void testCleanResultIsNotCopied() {
+    OcrResult result = newResult("Open daily", 40);
+    assertSame(result, corrector.correct(result));
+  }
+
+  public void testWordFarFromEveryLexiconWordIsLeftAlone() {
+    OcrResult result = newResult("zxqvj 42 a", 40);
+    assertSame(result, corrector.correct(result));
+  }
+
+  public void testShortWordIsCorrectedByOneEditAtMost() {
+    // One edit from exit
+    assertEquals("exit", corrector.correct(newResult("exjt", 40)).getText());
+    // Two edits from exit, which would be allowed for a longer word
+    assertEquals("ejjt", corrector.correct(newResult("ejjt", 40)).getText());
+  }
+
+  public void testConfusionIsPreferredToAPlainEdit() {
+    // A confusion and a plain edit from closet, but only a confusion from closed
+    assertEquals("closed", corrector.correct(newResult("c1osed", 40)).getText());
+    // Two plain edits from both hello and would, but two confusions from would
+    assertEquals("would", corrector.correct(newResult("vvoulcl", 40)).getText());
+  }
+
+  // A result with one box per word, each read with the given confidence
+  private static OcrResult newResult(String text, int confidence) {
+    int words = text.trim().split("\\s+").length;
+    byte[] confidences = new byte[words];
+    Arrays.fill(confidences, (byte) confidence);
+    return new OcrResult(text, confidence, new int[4 * words], confidences, new int[0], 10L, 0L,
+        0L);
+  }
+}
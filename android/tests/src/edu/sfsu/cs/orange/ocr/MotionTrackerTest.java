@@ -0,0 +1,186 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Random;
+
+import android.graphics.Rect;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests MotionTracker on a 600x160 framed region cut from a larger page of text, which is moved
+ * under it as a hand-held camera would move it.
+ */
+public class MotionTrackerTest extends TestCase {
+
+  private static final int WIDTH = 600;
+  private static final int HEIGHT = 160;
+  // Room around the framed region for the page to move
+  private static final int MARGIN = 60;
+
+  private static final Rect PREVIEW_FRAME = new Rect(40, 120, 40 + WIDTH, 120 + HEIGHT);
+
+  private MotionTracker tracker;
+  private MotionTracker.Profile profile;
+  private SyntheticFrame page;
+  private Random random;
+  private final int[] offset = new int[2];
+
+  @Override
+  protected void setUp() {
+    tracker = new MotionTracker();
+    profile = new MotionTracker.Profile();
+    random = new Random(19);
+    page = drawPage(WIDTH + 2 * MARGIN, HEIGHT + 2 * MARGIN);
+  }
+
+  public void testFollowsASinusoidalPathExactly() {
+    int frames = 120;
+    for (int sequence = 0; sequence < frames; sequence++) {
+      // Up to 8 px a frame across and 7 px a frame down
+      int x = (int) Math.round(40 * Math.sin(2 * Math.PI * sequence / 30));
+      int y = (int) Math.round(22 * Math.cos(2 * Math.PI * sequence / 20)) - 22;
+      int motion = tracker.add(profileAt(x, y, 12), sequence);
+      assertTrue("Lost track at frame " + sequence, motion != MotionTracker.LOST);
+
+      // The content moves the opposite way to the framed region over the page
+      assertTrue(tracker.getOffset(0, offset));
+      assertEquals("x at frame " + sequence, -x, offset[0]);
+      assertEquals("y at frame " + sequence, -y, offset[1]);
+    }
+  }
+
+  public void testMotionSinceARecentFrame() {
+    tracker.add(profileAt(0, 0, 4), 0);
+    tracker.add(profileAt(5, -3, 4), 1);
+    tracker.add(profileAt(9, -7, 4), 2);
+    assertTrue(tracker.getOffset(1, offset));
+    assertEquals(-4, offset[0]);
+    assertEquals(4, offset[1]);
+    // A skipped frame is treated as the nearest earlier one
+    tracker.add(profileAt(12, -8, 4), 4);
+    assertTrue(tracker.getOffset(3, offset));
+    assertEquals(-3, offset[0]);
+    assertEquals(1, offset[1]);
+  }
+
+  public void testStillPageIsStillDespiteNoise() {
+    assertEquals(MotionTracker.STILL, tracker.add(profileAt(0, 0, 12), 0));
+    for (int sequence = 1; sequence <= 4; sequence++) {
+      assertEquals(MotionTracker.STILL, tracker.add(profileAt(0, 0, 12), sequence));
+    }
+    assertTrue(tracker.getOffset(0, offset));
+    assertEquals(0, offset[0]);
+    assertEquals(0, offset[1]);
+  }
+
+  public void testExposureChangeIsNotMotion() {
+    tracker.add(profileAt(0, 0, 4), 0);
+    SyntheticFrame brighter = page.copy();
+    for (int y = 0; y < brighter.height; y++) {
+      for (int x = 0; x < brighter.width; x++) {
+        brighter.add(x, y, 25);
+      }
+    }
+    page = brighter;
+    assertEquals(MotionTracker.STILL, tracker.add(profileAt(0, 0, 4), 1));
+    assertEquals(MotionTracker.MOVED, tracker.add(profileAt(0, 5, 4), 2));
+    assertTrue(tracker.getOffset(0, offset));
+    assertEquals(-5, offset[1]);
+  }
+
+  public void testMovedFrameIsReported() {
+    tracker.add(profileAt(0, 0, 4), 0);
+    assertEquals(MotionTracker.MOVED, tracker.add(profileAt(3, 0, 4), 1));
+    assertEquals(MotionTracker.MOVED, tracker.add(profileAt(3, 2, 4), 2));
+    assertEquals(MotionTracker.STILL, tracker.add(profileAt(3, 2, 4), 3));
+  }
+
+  public void testJumpPastTheSearchLosesTrack() {
+    tracker.add(profileAt(0, 0, 4), 0);
+    tracker.add(profileAt(2, 0, 4), 1);
+    assertEquals(MotionTracker.LOST, tracker.add(profileAt(-55, 0, 4), 2));
+    // Tracking starts over from the frame that lost it
+    assertFalse(tracker.getOffset(1, offset));
+    assertTrue(tracker.getOffset(2, offset));
+    assertEquals(0, offset[0]);
+  }
+
+  public void testLateFrameIsIgnored() {
+    tracker.add(profileAt(0, 0, 4), 0);
+    tracker.add(profileAt(6, 0, 4), 2);
+    assertEquals(MotionTracker.STILL, tracker.add(profileAt(3, 0, 4), 1));
+    assertEquals(MotionTracker.MOVED, tracker.add(profileAt(10, 0, 4), 3));
+    assertTrue(tracker.getOffset(0, offset));
+    assertEquals(-10, offset[0]);
+  }
+
+  public void testNewFramingRectangleStartsOver() {
+    tracker.add(profileAt(0, 0, 4), 0);
+    tracker.add(profileAt(4, 0, 4), 1);
+    Rect moved = new Rect(PREVIEW_FRAME.left + 10, PREVIEW_FRAME.top, PREVIEW_FRAME.right + 10,
+        PREVIEW_FRAME.bottom);
+    profile.compute(frameAt(4, 0, 4), moved);
+    assertEquals(MotionTracker.STILL, tracker.add(profile, 2));
+    assertFalse(tracker.getOffset(1, offset));
+  }
+
+  public void testResetForgetsEveryFrame() {
+    tracker.add(profileAt(0, 0, 4), 5);
+    tracker.add(profileAt(4, 0, 4), 6);
+    tracker.reset();
+    assertFalse(tracker.getOffset(6, offset));
+    // Sequence numbers start over with the preview
+    assertEquals(MotionTracker.STILL, tracker.add(profileAt(4, 0, 4), 0));
+    assertEquals(MotionTracker.MOVED, tracker.add(profileAt(7, 0, 4), 1));
+  }
+
+  // The profile of the framed region with its top left corner x, y from where it started on the
+  // page, with fresh sensor noise
+  private MotionTracker.Profile profileAt(int x, int y, double noise) {
+    profile.compute(frameAt(x, y, noise), PREVIEW_FRAME);
+    return profile;
+  }
+
+  private PlanarYUVLuminanceSource frameAt(int x, int y, double noise) {
+    return page.toSource(random, noise).crop(MARGIN + x, MARGIN + y, WIDTH, HEIGHT);
+  }
+
+  // Draws lines of letter-like stems and bars of varying width, with spaces between words
+  private SyntheticFrame drawPage(int width, int height) {
+    SyntheticFrame drawn = new SyntheticFrame(width, height, 190);
+    for (int top = 8; top + 24 <= height; top += 38) {
+      int x = 6 + random.nextInt(20);
+      while (x + 14 < width) {
+        int letters = 2 + random.nextInt(7);
+        for (int i = 0; i < letters && x + 14 < width; i++) {
+          int letterWidth = 7 + random.nextInt(6);
+          int stemTop = top + (random.nextBoolean() ? 0 : 8);
+          drawn.fill(x, stemTop, x + 3, top + 24, 50);
+          int barTop = top + random.nextInt(3) * 10;
+          drawn.fill(x, barTop, x + letterWidth, barTop + 3, 50);
+          x += letterWidth + 3;
+        }
+        x += 10 + random.nextInt(10);
+      }
+    }
+    drawn.blurRows();
+    drawn.blurColumns();
+    return drawn;
+  }
+}
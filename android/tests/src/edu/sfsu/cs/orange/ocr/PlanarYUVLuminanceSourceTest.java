@@ -0,0 +1,203 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests PlanarYUVLuminanceSource's views pixel for pixel against a reference that copies the
+ * pixels at every step, as the source did before its crops, rotations and mirroring became views:
+ * crop of a crop, rotation after a crop, rotation of a mirrored frame, and random chains of all
+ * of them. The frame itself must never be modified.
+ */
+public class PlanarYUVLuminanceSourceTest extends TestCase {
+
+  private static final int DATA_WIDTH = 37;
+  private static final int DATA_HEIGHT = 23;
+
+  private byte[] yuvData;
+  private byte[] original;
+
+  @Override
+  protected void setUp() {
+    // Luminance plane followed by chroma, which the views must never read as luminance
+    yuvData = new byte[DATA_WIDTH * DATA_HEIGHT * 3 / 2];
+    new Random(7).nextBytes(yuvData);
+    original = yuvData.clone();
+  }
+
+  public void testFullFrameMatrixIsTheData() {
+    PlanarYUVLuminanceSource source = newSource(0, 0, DATA_WIDTH, DATA_HEIGHT, false);
+    assertSame(yuvData, source.getMatrix());
+    assertView(Reference.of(yuvData, 0, 0, DATA_WIDTH, DATA_HEIGHT, false), source);
+  }
+
+  public void testCropMatchesReference() {
+    assertView(Reference.of(yuvData, 3, 4, 20, 11, false), newSource(3, 4, 20, 11, false));
+  }
+
+  public void testMirrorMatchesReference() {
+    assertView(Reference.of(yuvData, 3, 4, 20, 11, true), newSource(3, 4, 20, 11, true));
+    assertTrue(newSource(3, 4, 20, 11, true).isReverseHorizontal());
+  }
+
+  public void testCropOfCrop() {
+    PlanarYUVLuminanceSource source = newSource(2, 1, 30, 20, false).crop(5, 3, 17, 12)
+        .crop(4, 2, 9, 7);
+    Reference reference = Reference.of(yuvData, 2, 1, 30, 20, false).crop(5, 3, 17, 12)
+        .crop(4, 2, 9, 7);
+    assertView(reference, source);
+  }
+
+  public void testRotateAfterCrop() {
+    PlanarYUVLuminanceSource source = newSource(2, 1, 30, 20, false).crop(5, 3, 17, 12)
+        .rotateCounterClockwise();
+    Reference reference = Reference.of(yuvData, 2, 1, 30, 20, false).crop(5, 3, 17, 12)
+        .rotateCounterClockwise();
+    assertEquals(12, source.getWidth());
+    assertEquals(17, source.getHeight());
+    assertView(reference, source);
+  }
+
+  public void testRotateAfterMirror() {
+    PlanarYUVLuminanceSource source = newSource(2, 1, 30, 20, true).rotateCounterClockwise();
+    Reference reference = Reference.of(yuvData, 2, 1, 30, 20, true).rotateCounterClockwise();
+    assertView(reference, source);
+    assertView(reference.crop(3, 4, 10, 12), source.crop(3, 4, 10, 12));
+  }
+
+  public void testFourRotationsAreTheIdentity() {
+    PlanarYUVLuminanceSource source = newSource(2, 1, 30, 20, true);
+    PlanarYUVLuminanceSource rotated = source.rotateCounterClockwise().rotateCounterClockwise()
+        .rotateCounterClockwise().rotateCounterClockwise();
+    assertView(Reference.of(yuvData, 2, 1, 30, 20, true), rotated);
+  }
+
+  public void testRandomChainsOfViews() {
+    Random random = new Random(11);
+    for (int chain = 0; chain < 500; chain++) {
+      int width = 1 + random.nextInt(DATA_WIDTH);
+      int height = 1 + random.nextInt(DATA_HEIGHT);
+      int left = random.nextInt(DATA_WIDTH - width + 1);
+      int top = random.nextInt(DATA_HEIGHT - height + 1);
+      boolean isMirrored = random.nextBoolean();
+      PlanarYUVLuminanceSource source = newSource(left, top, width, height, isMirrored);
+      Reference reference = Reference.of(yuvData, left, top, width, height, isMirrored);
+      for (int step = 0; step < 4; step++) {
+        if (random.nextBoolean()) {
+          source = source.rotateCounterClockwise();
+          reference = reference.rotateCounterClockwise();
+        } else {
+          int cropWidth = 1 + random.nextInt(source.getWidth());
+          int cropHeight = 1 + random.nextInt(source.getHeight());
+          int cropLeft = random.nextInt(source.getWidth() - cropWidth + 1);
+          int cropTop = random.nextInt(source.getHeight() - cropHeight + 1);
+          source = source.crop(cropLeft, cropTop, cropWidth, cropHeight);
+          reference = reference.crop(cropLeft, cropTop, cropWidth, cropHeight);
+        }
+        assertView(reference, source);
+      }
+    }
+  }
+
+  public void testCropOutsideTheViewIsRefused() {
+    PlanarYUVLuminanceSource source = newSource(2, 1, 30, 20, false).rotateCounterClockwise();
+    try {
+      source.crop(0, 0, 21, 30);
+      fail("Cropped outside the view");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
+  private PlanarYUVLuminanceSource newSource(int left, int top, int width, int height,
+      boolean isMirrored) {
+    return new PlanarYUVLuminanceSource(yuvData, DATA_WIDTH, DATA_HEIGHT, left, top, width, height,
+        isMirrored);
+  }
+
+  // Checks every way of reading the view's pixels, and that the frame is untouched.
+  private void assertView(Reference reference, PlanarYUVLuminanceSource source) {
+    assertEquals(reference.width, source.getWidth());
+    assertEquals(reference.height, source.getHeight());
+    byte[] row = null;
+    for (int y = 0; y < reference.height; y++) {
+      row = source.getRow(y, row);
+      for (int x = 0; x < reference.width; x++) {
+        assertEquals("row " + y + ", column " + x, reference.pixels[y * reference.width + x],
+            row[x]);
+      }
+    }
+    int area = reference.width * reference.height;
+    // Rendering before and after the matrix is materialized takes different paths
+    assertTrue(Arrays.equals(reference.pixels, source.renderCroppedGreyscale(null)));
+    assertTrue(Arrays.equals(reference.pixels, Arrays.copyOf(source.getMatrix(), area)));
+    assertSame(source.getMatrix(), source.getMatrix());
+    assertTrue(Arrays.equals(reference.pixels,
+        Arrays.copyOf(source.renderCroppedGreyscale(new byte[area + 5]), area)));
+    assertTrue("The frame was modified", Arrays.equals(original, yuvData));
+  }
+
+  /**
+   * A materialized image, copied at every step.
+   */
+  private static final class Reference {
+    final byte[] pixels;
+    final int width;
+    final int height;
+
+    Reference(byte[] pixels, int width, int height) {
+      this.pixels = pixels;
+      this.width = width;
+      this.height = height;
+    }
+
+    static Reference of(byte[] yuvData, int left, int top, int width, int height,
+        boolean isMirrored) {
+      byte[] pixels = new byte[width * height];
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          int sourceX = isMirrored ? left + width - 1 - x : left + x;
+          pixels[y * width + x] = yuvData[(top + y) * DATA_WIDTH + sourceX];
+        }
+      }
+      return new Reference(pixels, width, height);
+    }
+
+    Reference crop(int left, int top, int cropWidth, int cropHeight) {
+      byte[] cropped = new byte[cropWidth * cropHeight];
+      for (int y = 0; y < cropHeight; y++) {
+        System.arraycopy(pixels, (top + y) * width + left, cropped, y * cropWidth, cropWidth);
+      }
+      return new Reference(cropped, cropWidth, cropHeight);
+    }
+
+    // The top row of the result is the rightmost column, read from top to bottom
+    Reference rotateCounterClockwise() {
+      byte[] rotated = new byte[width * height];
+      for (int y = 0; y < width; y++) {
+        for (int x = 0; x < height; x++) {
+          rotated[y * height + x] = pixels[x * width + (width - 1 - y)];
+        }
+      }
+      return new Reference(rotated, height, width);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Arrays;
+
+import android.graphics.Rect;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests ResultConsensus's voting over frames of a sign reading "EXIT HERE", with misread and
+ * empty frames mixed in.
+ */
+public class ResultConsensusTest extends TestCase {
+
+  private static final int[] EXIT_BOX = { 10, 20, 90, 50 };
+  private static final int[] HERE_BOX = { 100, 20, 180, 50 };
+
+  private ResultConsensus consensus;
+  private long frameSequence;
+
+  @Override
+  protected void setUp() {
+    consensus = new ResultConsensus();
+  }
+
+  public void testFirstFrameIsShown() {
+    assertTrue(consensus.add(sign("EXIT", 80, "HERE", 80)));
+    assertEquals("EXIT HERE", consensus.getResult().getText());
+  }
+
+  public void testMisreadFrameIsOutvoted() {
+    for (int i = 0; i < 3; i++) {
+      consensus.add(sign("EXIT", 70, "HERE", 70));
+    }
+    OcrResult shown = consensus.getResult();
+    // Read with more confidence than any one good frame, but only once
+    assertFalse(consensus.add(sign("EX1T", 95, "HERE", 70)));
+    assertSame(shown, consensus.getResult());
+    assertEquals("EXIT HERE", consensus.getResult().getText());
+  }
+
+  public void testMisreadingTakesOverOnceItIsReadMoreOften() {
+    for (int i = 0; i < 2; i++) {
+      consensus.add(sign("EXIT", 70, "HERE", 70));
+    }
+    assertFalse(consensus.add(sign("EX1T", 70, "HERE", 70)));
+    // A tie goes to the reading already in the window
+    assertFalse(consensus.add(sign("EX1T", 70, "HERE", 70)));
+    assertTrue(consensus.add(sign("EX1T", 70, "HERE", 70)));
+    assertEquals("EX1T HERE", consensus.getResult().getText());
+  }
+
+  public void testConfidenceBreaksTiesBetweenReadings() {
+    consensus.add(sign("EXIT", 90, "HERE", 70));
+    consensus.add(sign("EX1T", 40, "HERE", 70));
+    consensus.add(sign("EXIT", 90, "HERE", 70));
+    consensus.add(sign("EX1T", 40, "HERE", 70));
+    assertEquals("EXIT HERE", consensus.getResult().getText());
+    // The shown confidence is the mean over the frames that read the winning text
+    assertEquals(90, consensus.getResult().getWordConfidence(0));
+  }
+
+  public void testEmptyFrameDoesNotWipeTheConsensus() {
+    for (int i = 0; i < 3; i++) {
+      consensus.add(sign("EXIT", 80, "HERE", 80));
+    }
+    OcrResult shown = consensus.getResult();
+    assertFalse(consensus.add(new OcrResultFailure(10L, frameSequence++)));
+    assertFalse(consensus.add(new OcrResultFailure(10L, frameSequence++)));
+    assertSame(shown, consensus.getResult());
+    assertEquals("EXIT HERE", consensus.getResult().getText());
+  }
+
+  public void testWordsLeaveOnceMostFramesAreEmpty() {
+    for (int i = 0; i < 3; i++) {
+      consensus.add(sign("EXIT", 80, "HERE", 80));
+    }
+    consensus.add(new OcrResultFailure(10L, frameSequence++));
+    consensus.add(new OcrResultFailure(10L, frameSequence++));
+    // Three of the last five frames are empty
+    assertTrue(consensus.add(new OcrResultFailure(10L, frameSequence++)));
+    assertEquals(0, consensus.getResult().getWordCount());
+    assertEquals("", consensus.getResult().getText());
+  }
+
+  public void testWordMissingFromOneFrameStays() {
+    for (int i = 0; i < 3; i++) {
+      consensus.add(sign("EXIT", 80, "HERE", 80));
+    }
+    // HERE isn't read in one frame
+    assertFalse(consensus.add(newResult("EXIT", new int[][] { EXIT_BOX }, 80)));
+    assertEquals("EXIT HERE", consensus.getResult().getText());
+  }
+
+  public void testJitterIsNotAChange() {
+    consensus.add(sign("EXIT", 80, "HERE", 80));
+    int[] moved = { EXIT_BOX[0] + 1, EXIT_BOX[1] + 1, EXIT_BOX[2] + 1, EXIT_BOX[3] + 1 };
+    assertFalse(consensus.add(newResult("EXIT HERE", new int[][] { moved, HERE_BOX }, 80)));
+  }
+
+  public void testWordsAreInReadingOrder() {
+    int[] belowBox = { 10, 70, 90, 100 };
+    // Recognized right to left and bottom to top
+    consensus.add(newResult("NO WAY OUT", new int[][] { belowBox, HERE_BOX, EXIT_BOX }, 80));
+    assertEquals("OUT WAY\nNO", consensus.getResult().getText());
+    Rect box = new Rect();
+    consensus.getResult().getWordBox(2, box);
+    assertEquals(belowBox[1], box.top);
+  }
+
+  public void testStableOnTheFourthUnchangedFrame() {
+    consensus.add(sign("EXIT", 80, "HERE", 80));
+    for (int i = 1; i < 4; i++) {
+      consensus.add(sign("EXIT", 80, "HERE", 80));
+      assertFalse("Stable after " + i + " unchanged frames", consensus.isStable());
+    }
+    consensus.add(sign("EXIT", 80, "HERE", 80));
+    assertTrue(consensus.isStable());
+
+    // Once most frames read STOP, the change ends the stable spell
+    consensus.add(sign("STOP", 80, "HERE", 80));
+    consensus.add(sign("STOP", 80, "HERE", 80));
+    assertTrue(consensus.add(sign("STOP", 80, "HERE", 80)));
+    assertFalse(consensus.isStable());
+  }
+
+  public void testResetForgetsEveryFrame() {
+    for (int i = 0; i < 3; i++) {
+      consensus.add(sign("EXIT", 80, "HERE", 80));
+    }
+    consensus.reset();
+    assertNull(consensus.getResult());
+    assertTrue(consensus.add(sign("EX1T", 10, "HERE", 80)));
+    assertEquals("EX1T HERE", consensus.getResult().getText());
+  }
+
+  private OcrResult sign(String first, int firstConfidence, String second, int secondConfidence) {
+    return new OcrResult(first + " " + second, (firstConfidence + secondConfidence) / 2,
+        pack(EXIT_BOX, HERE_BOX), new byte[] { (byte) firstConfidence, (byte) secondConfidence },
+        new int[0], 10L, frameSequence++, 0L);
+  }
+
+  private OcrResult newResult(String text, int[][] boxes, int confidence) {
+    byte[] confidences = new byte[boxes.length];
+    Arrays.fill(confidences, (byte) confidence);
+    return new OcrResult(text, confidence, pack(boxes), confidences, new int[0], 10L,
+        frameSequence++, 0L);
+  }
+
+  private static int[] pack(int[]... boxes) {
+    int[] packed = new int[4 * boxes.length];
+    for (int i = 0; i < boxes.length; i++) {
+      System.arraycopy(boxes[i], 0, packed, 4 * i, 4);
+    }
+    return packed;
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import android.graphics.Rect;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests how StripRecognizer merges the text and boxes recognized in each strip into one result
+ * for the region.
+ */
+public class StripRecognizerTest extends TestCase {
+
+  private static final int SCALE = 2;
+  private static final int ORIGIN_X = 5;
+  private static final int ORIGIN_Y = 7;
+
+  // A 200-row region cut at row 100, each strip reaching 25 rows into the other
+  private static final StripSplitter.Strip[] TWO_STRIPS = {
+    new StripSplitter.Strip(0, 125, 0, 100),
+    new StripSplitter.Strip(75, 200, 100, 200),
+  };
+
+  public void testWordInTheOverlapIsKeptOnce() {
+    // bravo, centred on row 99, belongs to the first strip and delta, centred on row 110, to the
+    // second, and both strips read both
+    StripRecognizer.StripText first = newStripText("alpha\nbravo\ndelta",
+        new int[] { 10, 20, 60, 40, 10, 90, 60, 108, 10, 102, 60, 118 },
+        new byte[] { 90, 80, 30 });
+    StripRecognizer.StripText second = newStripText("bravo\ndelta\ncharlie",
+        new int[] { 10, 15, 60, 33, 10, 27, 60, 43, 10, 75, 80, 95 },
+        new byte[] { 40, 70, 60 });
+
+    OcrResult result = merge(TWO_STRIPS, first, second);
+    assertEquals("alpha\nbravo\ndelta\ncharlie", result.getText());
+    assertEquals(4, result.getWordCount());
+    // Each from the strip that owns it
+    assertEquals(80, result.getWordConfidence(1));
+    assertEquals(70, result.getWordConfidence(2));
+    assertEquals(75, result.getMeanConfidence());
+    assertWordBox(result, 1, 10, 90, 60, 108);
+    assertWordBox(result, 2, 10, 102, 60, 118);
+    assertWordBox(result, 3, 10, 150, 80, 170);
+  }
+
+  public void testCharacterInTheOverlapIsKeptOnce() {
+    StripRecognizer.StripText first = newStripText("bravo",
+        new int[] { 10, 90, 60, 108 }, new byte[] { 80 });
+    first.characterBoxes = new int[] { 10, 90, 20, 108, 20, 90, 30, 108 };
+    StripRecognizer.StripText second = newStripText("bravo",
+        new int[] { 10, 15, 60, 33 }, new byte[] { 40 });
+    second.characterBoxes = new int[] { 10, 15, 20, 33, 20, 15, 30, 33 };
+
+    OcrResult result = merge(TWO_STRIPS, first, second);
+    assertEquals("bravo", result.getText());
+    assertEquals(2, result.getCharacterCount());
+    Rect box = new Rect();
+    result.getCharacterBox(1, box);
+    assertEquals(20 * SCALE + ORIGIN_X, box.left);
+    assertEquals(90 * SCALE + ORIGIN_Y, box.top);
+  }
+
+  public void testWordsOnOneLineStayOnOneLine() {
+    // The first strip's second line is owned by the second strip, which reads it as well
+    StripRecognizer.StripText first = newStripText("one two\nthree four",
+        new int[] { 10, 20, 40, 40, 50, 20, 80, 40, 10, 104, 40, 120, 50, 104, 80, 120 },
+        new byte[] { 90, 90, 90, 90 });
+    StripRecognizer.StripText second = newStripText("three four",
+        new int[] { 10, 29, 40, 45, 50, 29, 80, 45 }, new byte[] { 90, 90 });
+
+    OcrResult result = merge(TWO_STRIPS, first, second);
+    assertEquals("one two\nthree four", result.getText());
+    assertEquals(4, result.getWordCount());
+  }
+
+  public void testSingleStripIsMovedToRegionCoordinates() {
+    // What StripSplitter gives a region too short to split
+    StripSplitter.Strip[] strips = { new StripSplitter.Strip(0, 100, 0, 100) };
+    StripRecognizer.StripText only = newStripText("exit only",
+        new int[] { 10, 20, 40, 40, 50, 20, 90, 40 }, new byte[] { 70, 90 });
+
+    OcrResult result = merge(strips, only);
+    assertEquals("exit only", result.getText());
+    assertEquals(2, result.getWordCount());
+    assertEquals(80, result.getMeanConfidence());
+    assertWordBox(result, 0, 10, 20, 40, 40);
+    assertWordBox(result, 1, 50, 20, 90, 40);
+  }
+
+  public void testStripWithoutTextIsSkipped() {
+    StripRecognizer.StripText first = newStripText(null, new int[0], new byte[0]);
+    StripRecognizer.StripText second = newStripText("charlie",
+        new int[] { 10, 75, 80, 95 }, new byte[] { 60 });
+
+    OcrResult result = merge(TWO_STRIPS, first, second);
+    assertEquals("charlie", result.getText());
+    assertWordBox(result, 0, 10, 150, 80, 170);
+  }
+
+  public void testNoTextGivesNoResult() {
+    StripRecognizer.StripText first = newStripText(null, new int[0], new byte[0]);
+    StripRecognizer.StripText second = newStripText("", new int[0], new byte[0]);
+    assertNull(merge(TWO_STRIPS, first, second));
+  }
+
+  private static OcrResult merge(StripSplitter.Strip[] strips,
+      StripRecognizer.StripText... results) {
+    return StripRecognizer.merge(strips, results, SCALE, ORIGIN_X, ORIGIN_Y, 0L, 1L, 0L);
+  }
+
+  private static StripRecognizer.StripText newStripText(String text, int[] wordBoxes,
+      byte[] wordConfidences) {
+    StripRecognizer.StripText stripText = new StripRecognizer.StripText();
+    stripText.text = text;
+    stripText.wordBoxes = wordBoxes;
+    stripText.wordConfidences = wordConfidences;
+    stripText.characterBoxes = new int[0];
+    return stripText;
+  }
+
+  // Checks a word's box against its rows and columns in the region, before scaling
+  private static void assertWordBox(OcrResult result, int word, int left, int top, int right,
+      int bottom) {
+    Rect box = new Rect();
+    result.getWordBox(word, box);
+    assertEquals(left * SCALE + ORIGIN_X, box.left);
+    assertEquals(top * SCALE + ORIGIN_Y, box.top);
+    assertEquals(right * SCALE + ORIGIN_X, box.right);
+    assertEquals(bottom * SCALE + ORIGIN_Y, box.bottom);
+  }
+}
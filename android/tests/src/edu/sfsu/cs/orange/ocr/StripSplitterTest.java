@@ -0,0 +1,160 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests StripSplitter on made-up pages of evenly spaced lines, placed so that the evenly spaced
+ * cut positions fall in the middle of a line.
+ */
+public class StripSplitterTest extends TestCase {
+
+  private static final int WIDTH = 320;
+  private static final int HEIGHT = 400;
+  private static final int FIRST_LINE_TOP = 6;
+  private static final int LINE_HEIGHT = 26;
+  private static final int LINE_PITCH = 40;
+
+  private StripSplitter splitter;
+  private Random random;
+
+  @Override
+  protected void setUp() {
+    splitter = new StripSplitter();
+    random = new Random(7);
+  }
+
+  public void testCutsFallInGapsBetweenLines() {
+    // Thirds of the page are at rows 133 and 266, inside the fourth and seventh lines
+    assertFalse(isInGap(HEIGHT / 3));
+    assertFalse(isInGap(2 * HEIGHT / 3));
+
+    StripSplitter.Strip[] strips = splitter.split(drawPage(HEIGHT), 3);
+    assertEquals(3, strips.length);
+    for (int i = 1; i < strips.length; i++) {
+      assertTrue("Cut at row " + strips[i].ownTop + " is inside a line",
+          isInGap(strips[i].ownTop));
+    }
+  }
+
+  public void testOwnBandsCoverTheRegionOnce() {
+    StripSplitter.Strip[] strips = splitter.split(drawPage(HEIGHT), 3);
+    assertEquals(0, strips[0].ownTop);
+    assertEquals(0, strips[0].top);
+    for (int i = 1; i < strips.length; i++) {
+      assertEquals(strips[i - 1].ownBottom, strips[i].ownTop);
+      // Each strip reaches into its neighbours
+      assertTrue(strips[i].top < strips[i].ownTop);
+      assertTrue(strips[i - 1].bottom > strips[i - 1].ownBottom);
+    }
+    assertEquals(HEIGHT, strips[strips.length - 1].ownBottom);
+    assertEquals(HEIGHT, strips[strips.length - 1].bottom);
+  }
+
+  public void testEveryLineIsWholeInTheStripThatOwnsIt() {
+    StripSplitter.Strip[] strips = splitter.split(drawPage(HEIGHT), 3);
+    for (int top = FIRST_LINE_TOP; top + LINE_HEIGHT <= HEIGHT; top += LINE_PITCH) {
+      StripSplitter.Strip owner = findOwner(strips, top, top + LINE_HEIGHT);
+      assertTrue("Line at " + top + " is cut in " + owner,
+          owner.top <= top && owner.bottom >= top + LINE_HEIGHT);
+    }
+  }
+
+  public void testWordInAnOverlapIsOwnedByExactlyOneStrip() {
+    StripSplitter.Strip[] strips = splitter.split(drawPage(HEIGHT), 3);
+    // A word box at every position, including across each cut and in each overlap
+    for (int top = 0; top + LINE_HEIGHT <= HEIGHT; top++) {
+      int owners = 0;
+      for (StripSplitter.Strip strip : strips) {
+        if (strip.owns(top, top + LINE_HEIGHT)) {
+          owners++;
+        }
+      }
+      assertEquals("Owners of a word at " + top, 1, owners);
+    }
+  }
+
+  public void testShortRegionIsOneStrip() {
+    int height = 2 * StripSplitter.MIN_STRIP_HEIGHT - 1;
+    StripSplitter.Strip[] strips = splitter.split(drawPage(height), 4);
+    assertEquals(1, strips.length);
+    assertWholeRegion(strips[0], height);
+    assertTrue(strips[0].owns(0, height));
+  }
+
+  public void testOneEngineGivesOneStrip() {
+    StripSplitter.Strip[] strips = splitter.split(drawPage(HEIGHT), 1);
+    assertEquals(1, strips.length);
+    assertWholeRegion(strips[0], HEIGHT);
+  }
+
+  public void testStripsAreNoShorterThanTheMinimum() {
+    // Room for two strips, though four engines are available
+    int height = 2 * StripSplitter.MIN_STRIP_HEIGHT + 20;
+    StripSplitter.Strip[] strips = splitter.split(drawPage(height), 4);
+    assertEquals(2, strips.length);
+    for (StripSplitter.Strip strip : strips) {
+      assertTrue(strip.ownBottom - strip.ownTop >= StripSplitter.MIN_STRIP_HEIGHT / 2);
+    }
+  }
+
+  private static void assertWholeRegion(StripSplitter.Strip strip, int height) {
+    assertEquals(0, strip.top);
+    assertEquals(height, strip.bottom);
+    assertEquals(0, strip.ownTop);
+    assertEquals(height, strip.ownBottom);
+  }
+
+  private static StripSplitter.Strip findOwner(StripSplitter.Strip[] strips, int top,
+      int bottom) {
+    for (StripSplitter.Strip strip : strips) {
+      if (strip.owns(top, bottom)) {
+        return strip;
+      }
+    }
+    fail("No strip owns " + top + "-" + bottom);
+    return null;
+  }
+
+  private static boolean isInGap(int y) {
+    return y < FIRST_LINE_TOP || (y - FIRST_LINE_TOP) % LINE_PITCH >= LINE_HEIGHT;
+  }
+
+  // Draws lines of letter-like stems and bars, LINE_HEIGHT tall every LINE_PITCH rows, as many as
+  // fit
+  private PlanarYUVLuminanceSource drawPage(int height) {
+    SyntheticFrame page = new SyntheticFrame(WIDTH, height, 200);
+    for (int top = FIRST_LINE_TOP; top + LINE_HEIGHT <= height; top += LINE_PITCH) {
+      for (int x = 8; x + 7 <= WIDTH - 8; x += 9) {
+        if (random.nextInt(6) == 0) {
+          // Space between words
+          continue;
+        }
+        // A stem, and a bar across the top, middle or bottom of the letter
+        int stemTop = top + (random.nextBoolean() ? 0 : LINE_HEIGHT / 3);
+        page.fill(x, stemTop, x + 3, top + LINE_HEIGHT, 40);
+        int barTop = top + random.nextInt(3) * (LINE_HEIGHT - 3) / 2;
+        page.fill(x, barTop, x + 7, barTop + 3, 40);
+      }
+    }
+    page.blurRows();
+    return page.toSource(random, 3);
+  }
+}
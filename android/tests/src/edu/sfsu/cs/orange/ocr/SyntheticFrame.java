@@ -0,0 +1,139 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A made-up framed region for the tests and the desktop tools: a plane of luminance values that
+ * is filled with rectangles, blurred as the lens does, and built, with sensor noise, into the frame
+ * the camera would deliver, luminance followed by chroma.
+ *
+ * Values are kept as ints while drawing, so that strokes and ripples can be added without
+ * wrapping, and are clamped to 0-255 only when the frame is built.
+ */
+final class SyntheticFrame {
+
+  final int width;
+  final int height;
+  private final int[] luminance;
+
+  SyntheticFrame(int width, int height, int background) {
+    this.width = width;
+    this.height = height;
+    luminance = new int[width * height];
+    Arrays.fill(luminance, background);
+  }
+
+  private SyntheticFrame(SyntheticFrame frame) {
+    width = frame.width;
+    height = frame.height;
+    luminance = frame.luminance.clone();
+  }
+
+  SyntheticFrame copy() {
+    return new SyntheticFrame(this);
+  }
+
+  int get(int x, int y) {
+    return luminance[y * width + x];
+  }
+
+  void set(int x, int y, int value) {
+    luminance[y * width + x] = value;
+  }
+
+  void add(int x, int y, int delta) {
+    luminance[y * width + x] += delta;
+  }
+
+  // Right and bottom are exclusive
+  void fill(int left, int top, int right, int bottom, int value) {
+    for (int y = top; y < bottom; y++) {
+      Arrays.fill(luminance, y * width + left, y * width + right, value);
+    }
+  }
+
+  // Softens each row with a [1 2 1] kernel. A hard edge between an odd column and the next would
+  // be missed by the row score, which only compares each even column with the one after it.
+  void blurRows() {
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      int offset = y * width;
+      System.arraycopy(luminance, offset, row, 0, width);
+      for (int x = 0; x < width; x++) {
+        luminance[offset + x] = (row[Math.max(0, x - 1)] + 2 * row[x]
+            + row[Math.min(width - 1, x + 1)]) / 4;
+      }
+    }
+  }
+
+  // Softens each column with a [1 2 1] kernel
+  void blurColumns() {
+    int[] column = new int[height];
+    for (int x = 0; x < width; x++) {
+      for (int y = 0; y < height; y++) {
+        column[y] = luminance[y * width + x];
+      }
+      for (int y = 0; y < height; y++) {
+        luminance[y * width + x] = (column[Math.max(0, y - 1)] + 2 * column[y]
+            + column[Math.min(height - 1, y + 1)]) / 4;
+      }
+    }
+  }
+
+  // Replaces each pixel with the mean of the square of side 2 * radius + 1 around it, clamped at
+  // the edges
+  void boxBlur(int radius) {
+    int[] blurred = new int[luminance.length];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int sum = 0;
+        int count = 0;
+        for (int sampleY = Math.max(0, y - radius); sampleY <= Math.min(height - 1, y + radius);
+            sampleY++) {
+          for (int sampleX = Math.max(0, x - radius); sampleX <= Math.min(width - 1, x + radius);
+              sampleX++) {
+            sum += luminance[sampleY * width + sampleX];
+            count++;
+          }
+        }
+        blurred[y * width + x] = sum / count;
+      }
+    }
+    System.arraycopy(blurred, 0, luminance, 0, luminance.length);
+  }
+
+  PlanarYUVLuminanceSource toSource() {
+    return toSource(null, 0);
+  }
+
+  // Adds Gaussian noise of the given standard deviation to the frame built, leaving the values
+  // drawn as they are. Chroma is left at zero, which nothing here reads.
+  PlanarYUVLuminanceSource toSource(Random random, double noise) {
+    byte[] yuvData = new byte[width * height * 3 / 2];
+    for (int i = 0; i < luminance.length; i++) {
+      int value = luminance[i];
+      if (noise > 0) {
+        value += (int) Math.round(random.nextGaussian() * noise);
+      }
+      yuvData[i] = (byte) Math.max(0, Math.min(255, value));
+    }
+    return new PlanarYUVLuminanceSource(yuvData, width, height, 0, 0, width, height, false);
+  }
+}
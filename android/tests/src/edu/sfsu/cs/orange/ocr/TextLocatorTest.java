@@ -0,0 +1,171 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests TextLocator on made-up framed regions with sensor noise: blank and textured walls have no
+ * text, a word is cropped to with the margin around it, and the tall edge of a door is not text.
+ */
+public class TextLocatorTest extends TestCase {
+
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 200;
+
+  private static final int BACKGROUND = 180;
+  private static final int INK = 60;
+
+  // Letters are drawn as H shapes, this size, spaced this far apart
+  private static final int LETTER_WIDTH = 14;
+  private static final int LETTER_HEIGHT = 24;
+  private static final int LETTER_SPACING = 4;
+  private static final int STROKE = 3;
+
+  private SyntheticFrame frame;
+  private Random random;
+  private TextLocator locator;
+  private int[] bounds;
+
+  @Override
+  protected void setUp() {
+    frame = new SyntheticFrame(WIDTH, HEIGHT, BACKGROUND);
+    random = new Random(5);
+    locator = new TextLocator();
+    bounds = new int[4];
+  }
+
+  public void testBlankFrameHasNoText() {
+    assertFalse(locator.locate(frame.toSource(random, 4), bounds));
+  }
+
+  public void testTexturedFrameHasNoText() {
+    // Slow ripples of low contrast, like plaster, with more noise
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        frame.add(x, y, (int) Math.round(8 * Math.sin(0.05 * x + 0.03 * y)
+            + 6 * Math.sin(0.02 * x - 0.07 * y)));
+      }
+    }
+    assertFalse(locator.locate(frame.toSource(random, 6), bounds));
+  }
+
+  public void testWordIsCroppedWithMargin() {
+    int right = drawWord(200, 90, 6);
+    assertTrue(locator.locate(frame.toSource(random, 4), bounds));
+    assertMarginBefore(200, bounds[0]);
+    assertMarginBefore(90, bounds[1]);
+    assertMarginAfter(right, bounds[2]);
+    assertMarginAfter(90 + LETTER_HEIGHT, bounds[3]);
+  }
+
+  public void testCropIsKeptInsideTheRegion() {
+    int right = drawWord(4, 2, 5);
+    assertTrue(locator.locate(frame.toSource(random, 4), bounds));
+    assertEquals(0, bounds[0]);
+    assertEquals(0, bounds[1]);
+    assertTrue(bounds[2] >= right + TextLocator.MARGIN);
+  }
+
+  public void testPageIsNotCropped() {
+    for (int top = 8; top + LETTER_HEIGHT < HEIGHT - 8; top += 30) {
+      drawWord(12, top, 34);
+    }
+    assertTrue(locator.locate(frame.toSource(random, 4), bounds));
+    assertEquals(0, bounds[0]);
+    assertEquals(0, bounds[1]);
+    assertEquals(WIDTH, bounds[2]);
+    assertEquals(HEIGHT, bounds[3]);
+  }
+
+  public void testWordStartingAndEndingWithAStemIsKept() {
+    // l7HHrl, 40 pixels tall. The 7's stem is at its right and the r's at its left, so each l is
+    // more than the bridged gap from the rest, a component of its own one cell wide.
+    int top = 80;
+    int height = 40;
+    int width = 24;
+    frame.fill(100, top, 100 + STROKE, top + height, INK);
+    frame.fill(107, top, 107 + width, top + STROKE, INK);
+    frame.fill(107 + width - STROKE, top, 107 + width, top + height, INK);
+    int right = drawWord(132, top, height, width, 2);
+    frame.fill(right + 6, top, right + 6 + STROKE, top + height, INK);
+    frame.fill(right + 6, top, right + 6 + width - 4, top + STROKE, INK);
+    int end = right + 6 + width + 4;
+    frame.fill(end - STROKE, top, end, top + height, INK);
+
+    assertTrue(locator.locate(frame.toSource(random, 4), bounds));
+    assertMarginBefore(100, bounds[0]);
+    assertMarginBefore(top, bounds[1]);
+    assertMarginAfter(end, bounds[2]);
+    assertMarginAfter(top + height, bounds[3]);
+  }
+
+  public void testTallEdgeIsRejected() {
+    drawDoorEdge(300);
+    assertFalse(locator.locate(frame.toSource(random, 4), bounds));
+  }
+
+  public void testTallEdgeIsLeftOutOfTheCrop() {
+    drawDoorEdge(500);
+    int right = drawWord(60, 90, 6);
+    assertTrue(locator.locate(frame.toSource(random, 4), bounds));
+    assertMarginBefore(60, bounds[0]);
+    assertMarginAfter(right, bounds[2]);
+  }
+
+  // The margin is kept around the cells found, so it is about MARGIN from the ink, less up to a
+  // cell where the ink only just reaches into one, and more up to two where a stroke edge is
+  // counted in the cell before the ink. At the sides of taller text it is wider, still within
+  // that.
+  private static void assertMarginBefore(int ink, int crop) {
+    assertMargin(ink - crop);
+  }
+
+  // The ink ends just before end
+  private static void assertMarginAfter(int end, int crop) {
+    assertMargin(crop - end);
+  }
+
+  private static void assertMargin(int margin) {
+    assertTrue("Margin of " + margin, margin >= TextLocator.MARGIN - TextLocator.CELL
+        && margin <= TextLocator.MARGIN + 2 * TextLocator.CELL);
+  }
+
+  // Draws a word of H shapes with its top left corner at left, top. Returns its right end.
+  private int drawWord(int left, int top, int letters) {
+    return drawWord(left, top, LETTER_HEIGHT, LETTER_WIDTH, letters);
+  }
+
+  private int drawWord(int left, int top, int letterHeight, int letterWidth, int letters) {
+    int x = left;
+    for (int i = 0; i < letters; i++) {
+      frame.fill(x, top, x + STROKE, top + letterHeight, INK);
+      frame.fill(x + letterWidth - STROKE, top, x + letterWidth, top + letterHeight, INK);
+      frame.fill(x, top + (letterHeight - STROKE) / 2, x + letterWidth,
+          top + (letterHeight + STROKE) / 2, INK);
+      x += letterWidth + LETTER_SPACING;
+    }
+    return x - LETTER_SPACING;
+  }
+
+  // A dark door from the edge to the right side of the region, from top to bottom
+  private void drawDoorEdge(int edge) {
+    frame.fill(edge, 0, WIDTH, HEIGHT, INK);
+  }
+}
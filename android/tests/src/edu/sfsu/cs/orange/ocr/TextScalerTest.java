@@ -0,0 +1,162 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests TextScaler: the line height estimated from made-up lines of text with sensor noise, the
+ * factor chosen for it, capped at 4 and kept to at least a line's worth of pixels, and the block
+ * means of the box filter.
+ */
+public class TextScalerTest extends TestCase {
+
+  private static final int BACKGROUND = 190;
+  private static final int INK = 40;
+
+  private TextScaler scaler;
+  private Random random;
+
+  @Override
+  protected void setUp() {
+    scaler = new TextScaler();
+    random = new Random(9);
+  }
+
+  public void testBlankRegionHasNoLines() {
+    SyntheticFrame region = new SyntheticFrame(400, 200, BACKGROUND);
+    assertEquals(0, scaler.estimateLineHeight(region.toSource()));
+    assertEquals(1, scaler.chooseScale(region.toSource()));
+  }
+
+  public void testLineHeightOfEvenLines() {
+    for (int lineHeight : new int[] { 12, 24, 48, 90 }) {
+      SyntheticFrame region = new SyntheticFrame(500, 3 * (lineHeight + 20), BACKGROUND);
+      for (int top = 10; top + lineHeight < region.height; top += lineHeight + 20) {
+        drawLine(region, 10, top, lineHeight);
+      }
+      assertEquals("Lines " + lineHeight + " px tall", lineHeight,
+          scaler.estimateLineHeight(toSource(region)));
+    }
+  }
+
+  public void testLineHeightIsTheMedian() {
+    SyntheticFrame region = new SyntheticFrame(500, 240, BACKGROUND);
+    drawLine(region, 10, 10, 30);
+    drawLine(region, 10, 60, 60);
+    drawLine(region, 10, 140, 64);
+    assertEquals(60, scaler.estimateLineHeight(toSource(region)));
+  }
+
+  public void testScaleBringsLinesToTheTarget() {
+    assertEquals(1, scaleForLines(12));
+    assertEquals(1, scaleForLines(TextScaler.TARGET_LINE_HEIGHT + 10));
+    assertEquals(2, scaleForLines(2 * TextScaler.TARGET_LINE_HEIGHT));
+    assertEquals(3, scaleForLines(3 * TextScaler.TARGET_LINE_HEIGHT + 10));
+    assertEquals(3, scaler.getLastScale());
+  }
+
+  public void testScaleIsCappedAtFour() {
+    assertEquals(4, scaleForLines(4 * TextScaler.TARGET_LINE_HEIGHT));
+    assertEquals(4, scaleForLines(7 * TextScaler.TARGET_LINE_HEIGHT));
+    assertEquals(7 * TextScaler.TARGET_LINE_HEIGHT, scaler.getLastLineHeight());
+  }
+
+  public void testScaleKeepsALineOfPixels() {
+    // A line tall enough for 4, in a region too narrow to be a line wide at 4
+    SyntheticFrame region = new SyntheticFrame(150, 190, BACKGROUND);
+    drawLine(region, 4, 15, 4 * TextScaler.TARGET_LINE_HEIGHT);
+    assertEquals(3, scaler.chooseScale(toSource(region)));
+    assertEquals(4 * TextScaler.TARGET_LINE_HEIGHT, scaler.getLastLineHeight());
+  }
+
+  public void testDownscaleAveragesBlocks() {
+    // 5 x 3, so the last column and row are dropped at a factor of 2
+    byte[] image = {
+      10, 20, 30, 40, 99,
+      30, 40, 50, (byte) 200, 99,
+      99, 99, 99, 99, 99,
+    };
+    byte[] scaled = scaler.downscale(image, 5, 3, 2, null);
+    assertEquals(2, scaled.length);
+    assertEquals(25, scaled[0] & 0xff);
+    // (30 + 40 + 50 + 200) / 4, rounded down
+    assertEquals(80, scaled[1] & 0xff);
+  }
+
+  public void testDownscaleMatchesBlockMeans() {
+    int width = 103;
+    int height = 61;
+    byte[] image = new byte[width * height];
+    random.nextBytes(image);
+    byte[] buffer = new byte[width * height];
+    for (int scale = 1; scale <= 4; scale++) {
+      byte[] scaled = scaler.downscale(image, width, height, scale, buffer);
+      // The buffer is reused, and longer than the image
+      assertSame(buffer, scaled);
+      int scaledWidth = width / scale;
+      for (int y = 0; y < height / scale; y++) {
+        for (int x = 0; x < scaledWidth; x++) {
+          int sum = 0;
+          for (int dy = 0; dy < scale; dy++) {
+            for (int dx = 0; dx < scale; dx++) {
+              sum += image[(y * scale + dy) * width + x * scale + dx] & 0xff;
+            }
+          }
+          assertEquals("Block " + x + ", " + y + " at " + scale, sum / (scale * scale),
+              scaled[y * scaledWidth + x] & 0xff);
+        }
+      }
+    }
+  }
+
+  // Chooses the scale for two lines of the given height in a region large enough for any factor
+  private int scaleForLines(int lineHeight) {
+    SyntheticFrame region = new SyntheticFrame(900, 2 * lineHeight + 60, BACKGROUND);
+    drawLine(region, 10, 20, lineHeight);
+    drawLine(region, 10, lineHeight + 40, lineHeight);
+    return scaler.chooseScale(toSource(region));
+  }
+
+  // Draws a line of letters from left until the region is full. Each has two stems the full
+  // height of the line, as n, h and o do, sometimes a third between them, and sometimes a bar.
+  private void drawLine(SyntheticFrame region, int left, int top, int lineHeight) {
+    int letterWidth = Math.max(6, lineHeight / 3);
+    int stroke = Math.max(2, lineHeight / 10);
+    for (int x = left; x + letterWidth < region.width;
+        x += letterWidth + stroke * 2 + random.nextInt(3)) {
+      region.fill(x, top, x + stroke, top + lineHeight, INK);
+      region.fill(x + letterWidth - stroke, top, x + letterWidth, top + lineHeight, INK);
+      if (random.nextInt(3) == 0) {
+        int middle = x + (letterWidth - stroke) / 2;
+        region.fill(middle, top, middle + stroke, top + lineHeight, INK);
+      }
+      if (random.nextBoolean()) {
+        int barTop = top + random.nextInt(lineHeight - stroke + 1);
+        region.fill(x, barTop, x + letterWidth, barTop + stroke, INK);
+      }
+    }
+  }
+
+  // Softens the edges and adds noise, as the camera does
+  private PlanarYUVLuminanceSource toSource(SyntheticFrame region) {
+    region.blurRows();
+    return region.toSource(random, 3);
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests TranslationCache's size bound and its file, and DictionaryTranslator's lookups.
+ */
+public class TranslationCacheTest extends TestCase {
+
+  private File directory;
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("translation", "");
+    directory.delete();
+    directory.mkdirs();
+    file = new File(directory, "cache.txt");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    delete(directory);
+  }
+
+  public void testHoldsAtMostMaxEntries() {
+    TranslationCache cache = new TranslationCache(file);
+    for (int i = 0; i < TranslationCache.MAX_ENTRIES; i++) {
+      cache.put("word" + i, "palabra" + i);
+    }
+    // Used recently, so it outlives the words added after it
+    assertEquals("palabra0", cache.get("word0"));
+    for (int i = TranslationCache.MAX_ENTRIES; i < TranslationCache.MAX_ENTRIES + 10; i++) {
+      cache.put("word" + i, "palabra" + i);
+    }
+
+    assertEquals(TranslationCache.MAX_ENTRIES, cache.size());
+    assertEquals("palabra0", cache.get("word0"));
+    for (int i = 1; i <= 10; i++) {
+      assertNull(cache.get("word" + i));
+    }
+    assertEquals("palabra11", cache.get("word11"));
+  }
+
+  public void testUntranslatedWordsCountTowardsTheBound() {
+    TranslationCache cache = new TranslationCache(file);
+    for (int i = 0; i < TranslationCache.MAX_ENTRIES + 10; i++) {
+      cache.putUntranslated("word" + i);
+    }
+    assertEquals(TranslationCache.MAX_ENTRIES, cache.size());
+    assertNull(cache.get("word0"));
+    assertEquals("word10", cache.get("word10"));
+  }
+
+  public void testSavesAndLoadsTranslations() {
+    TranslationCache cache = new TranslationCache(file);
+    cache.put("hello", "hola");
+    cache.put("tab", "una\tpesta\u00f1a");
+    // Translated as itself
+    cache.put("hotel", "hotel");
+    // Nothing found, so asked for again next session
+    cache.putUntranslated("xyzzy");
+    assertEquals("xyzzy", cache.get("xyzzy"));
+    cache.save();
+    assertTrue(file.exists());
+    assertFalse(new File(directory, "cache.txt.tmp").exists());
+
+    TranslationCache loaded = new TranslationCache(file);
+    loaded.load();
+    assertEquals(3, loaded.size());
+    assertEquals("hola", loaded.get("hello"));
+    assertEquals("una pesta\u00f1a", loaded.get("tab"));
+    assertEquals("hotel", loaded.get("hotel"));
+    assertNull(loaded.get("xyzzy"));
+  }
+
+  public void testLoadKeepsEntriesAlreadyAdded() {
+    TranslationCache cache = new TranslationCache(file);
+    cache.put("hello", "hola");
+    cache.put("bye", "adi\u00f3s");
+    cache.save();
+
+    TranslationCache loaded = new TranslationCache(file);
+    loaded.put("hello", "buenas");
+    loaded.load();
+    assertEquals("buenas", loaded.get("hello"));
+    assertEquals("adi\u00f3s", loaded.get("bye"));
+  }
+
+  public void testSaveReplacesThePreviousFile() {
+    TranslationCache cache = new TranslationCache(file);
+    cache.put("hello", "hola");
+    cache.save();
+    cache.put("bye", "adi\u00f3s");
+    cache.save();
+
+    TranslationCache loaded = new TranslationCache(file);
+    loaded.load();
+    assertEquals(2, loaded.size());
+    assertEquals("adi\u00f3s", loaded.get("bye"));
+  }
+
+  public void testDictionaryMatchesExactlyThenInLowerCase() throws IOException {
+    write(new File(directory, "translation/eng-es.txt"),
+        "hello\thola\nHotel\tHotel\nhotel\thotel\nbroken\n");
+    DictionaryTranslator translator = new DictionaryTranslator(directory);
+
+    Map<String, String> translations = translator.translate(
+        Arrays.asList("hello", "HELLO", "Hotel", "broken", "missing"), "eng", "es");
+    assertEquals(3, translations.size());
+    assertEquals("hola", translations.get("hello"));
+    assertEquals("hola", translations.get("HELLO"));
+    assertEquals("Hotel", translations.get("Hotel"));
+  }
+
+  public void testDictionaryMissingFileIsAnError() {
+    DictionaryTranslator translator = new DictionaryTranslator(directory);
+    try {
+      translator.translate(Arrays.asList("hello"), "eng", "fr");
+      fail("Missing dictionary wasn't reported");
+    } catch (IOException e) {
+      // Expected, so that the words are asked for again once it is installed
+    }
+  }
+
+  private static void write(File file, String text) throws IOException {
+    file.getParentFile().mkdirs();
+    OutputStream output = new FileOutputStream(file);
+    try {
+      output.write(text.getBytes("UTF-8"));
+    } finally {
+      output.close();
+    }
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests TranslationStage's batching against a translator that records each batch, and can hold
+ * a batch back or fail it.
+ */
+public class TranslationStageTest extends TestCase {
+
+  private static final long TIMEOUT_MS = 5000L;
+
+  private File directory;
+  private RecordingTranslator translator;
+  private Semaphore batchesReady;
+  private TranslationStage stage;
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("translation", "");
+    directory.delete();
+    directory.mkdirs();
+    translator = new RecordingTranslator();
+    batchesReady = new Semaphore(0);
+    TranslationCache cache = new TranslationCache(new File(directory, "cache.txt"));
+    stage = new TranslationStage(translator, cache, "eng", "es", new TranslationCallback() {
+      public void onTranslationsReady() {
+        batchesReady.release();
+      }
+    });
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    translator.release.countDown();
+    stage.shutdown();
+    // Let the save finish before the directory is removed
+    Thread.sleep(100);
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  public void testQueuedWordIsSentOnce() throws Exception {
+    translator.release.countDown();
+    assertNull(stage.lookup("hello"));
+    assertNull(stage.lookup("hello"));
+    assertNull(stage.lookup("hello"));
+    awaitBatches(1);
+    assertEquals("HELLO", stage.lookup("hello"));
+
+    // Nothing else was asked for
+    Thread.sleep(TranslationStage.BATCH_WINDOW_MS * 2);
+    assertEquals(1, translator.getBatches().size());
+    assertEquals(1, translator.getBatches().get(0).size());
+  }
+
+  public void testWordBeingTranslatedIsNotQueuedAgain() throws Exception {
+    // The batch fails, so that a copy queued meanwhile would be sent rather than found cached
+    translator.failures = 1;
+    assertNull(stage.lookup("hello"));
+    assertTrue(translator.entered.tryAcquire(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    // Recognized again while the translator has it
+    assertNull(stage.lookup("hello"));
+    assertNull(stage.lookup("hello"));
+    translator.release.countDown();
+    Thread.sleep(TranslationStage.BATCH_WINDOW_MS * 3);
+    assertEquals(1, translator.getBatches().size());
+
+    // Recognized after the failure, so asked for again
+    assertNull(stage.lookup("hello"));
+    awaitBatches(1);
+    assertEquals("HELLO", stage.lookup("hello"));
+    assertEquals(2, translator.getBatches().size());
+  }
+
+  public void testBatchesAreCappedAtMaxBatchWords() throws Exception {
+    translator.release.countDown();
+    int wordCount = TranslationStage.MAX_BATCH_WORDS * 2 + 10;
+    for (int i = 0; i < wordCount; i++) {
+      assertNull(stage.lookup("word" + i));
+    }
+    awaitBatches(3);
+
+    List<List<String>> batches = translator.getBatches();
+    assertEquals(3, batches.size());
+    Set<String> sent = new HashSet<String>();
+    for (List<String> batch : batches) {
+      assertTrue(batch.size() + " words in a batch",
+          batch.size() <= TranslationStage.MAX_BATCH_WORDS);
+      sent.addAll(batch);
+    }
+    // Each word exactly once
+    assertEquals(wordCount, sent.size());
+    for (int i = 0; i < wordCount; i++) {
+      assertEquals("WORD" + i, stage.lookup("word" + i));
+    }
+  }
+
+  public void testWordIsRetriedAfterFailedLookup() throws Exception {
+    translator.release.countDown();
+    translator.failures = 1;
+    assertNull(stage.lookup("hello"));
+
+    // Recognized again until it is asked for a second time, once the failed batch has finished
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (translator.getBatches().size() < 2) {
+      assertTrue("Word wasn't asked for again", System.currentTimeMillis() < deadline);
+      assertNull(stage.lookup("hello"));
+      Thread.sleep(10);
+    }
+    awaitBatches(1);
+    assertEquals("HELLO", stage.lookup("hello"));
+    assertEquals(2, translator.getBatches().size());
+  }
+
+  public void testWordWithoutTranslationIsShownAsItIs() throws Exception {
+    translator.release.countDown();
+    assertNull(stage.lookup("xyzzy"));
+    awaitBatches(1);
+    assertEquals("xyzzy", stage.lookup("xyzzy"));
+
+    Thread.sleep(TranslationStage.BATCH_WINDOW_MS * 2);
+    assertEquals(1, translator.getBatches().size());
+  }
+
+  private void awaitBatches(int count) throws InterruptedException {
+    assertTrue("Translations weren't ready",
+        batchesReady.tryAcquire(count, TIMEOUT_MS, TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Translates a word to upper case, or leaves it out if it starts with "xyz". Waits for release
+   * before each batch, and fails the first failures batches.
+   */
+  private static final class RecordingTranslator implements Translator {
+
+    final Semaphore entered = new Semaphore(0);
+    final CountDownLatch release = new CountDownLatch(1);
+    volatile int failures;
+    private final List<List<String>> batches = new ArrayList<List<String>>();
+
+    public String getName() {
+      return "recording";
+    }
+
+    public Map<String, String> translate(List<String> words, String sourceLanguageCode,
+        String targetLanguageCode) throws IOException {
+      synchronized (this) {
+        batches.add(new ArrayList<String>(words));
+      }
+      entered.release();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted");
+      }
+      if (failures > 0) {
+        failures--;
+        throw new IOException("Unreachable");
+      }
+      Map<String, String> translations = new HashMap<String, String>();
+      for (String word : words) {
+        if (!word.startsWith("xyz")) {
+          translations.put(word, word.toUpperCase());
+        }
+      }
+      return translations;
+    }
+
+    synchronized List<List<String>> getBatches() {
+      return new ArrayList<List<String>>(batches);
+    }
+  }
+}
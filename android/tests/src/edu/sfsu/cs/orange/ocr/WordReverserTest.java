@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests WordReverser's reversal by grapheme cluster, on combining marks, surrogate pairs, emoji
+ * sequences and flags.
+ */
+public class WordReverserTest extends TestCase {
+
+  private WordReverser reverser;
+
+  @Override
+  protected void setUp() {
+    reverser = new WordReverser();
+  }
+
+  public void testReversesPlainWords() {
+    assertEquals("olleh", reverse("hello"));
+    assertEquals("ba", reverse("ab"));
+  }
+
+  public void testLeavesShortWordsAlone() {
+    assertEquals("a", reverse("a"));
+    assertEquals("", reverse(""));
+  }
+
+  public void testCombiningMarksStayAfterTheirLetter() {
+    // e with a combining acute accent, then a combining cedilla under c
+    assertEquals("ete\u0301", reverse("e\u0301te"));
+    assertEquals("ac\u0327", reverse("c\u0327a"));
+    // Two marks on one letter keep their order
+    assertEquals("xa\u0301\u0323", reverse("a\u0301\u0323x"));
+  }
+
+  public void testSurrogatePairsStayInOrder() {
+    // MATHEMATICAL BOLD CAPITAL A is a surrogate pair
+    assertEquals("b\uD835\uDC00a", reverse("a\uD835\uDC00b"));
+    assertEquals("\uD835\uDC01\uD835\uDC00", reverse("\uD835\uDC00\uD835\uDC01"));
+  }
+
+  public void testZeroWidthJoinerSequencesStayWhole() {
+    // Woman, ZWJ, woman, ZWJ, girl: one family emoji
+    String family = "\uD83D\uDC69\u200D\uD83D\uDC69\u200D\uD83D\uDC67";
+    assertEquals("y" + family + "x", reverse("x" + family + "y"));
+    // Thumbs up with a skin tone modifier
+    String thumbsUp = "\uD83D\uDC4D\uD83C\uDFFD";
+    assertEquals("a" + thumbsUp, reverse(thumbsUp + "a"));
+  }
+
+  public void testFlagsStayPaired() {
+    String france = "\uD83C\uDDEB\uD83C\uDDF7";
+    String germany = "\uD83C\uDDE9\uD83C\uDDEA";
+    assertEquals(germany + france, reverse(france + germany));
+  }
+
+  public void testHangulJamoStayTogether() {
+    // Initial, medial and final jamo of one syllable
+    String syllable = "\u1100\u1161\u11A8";
+    assertEquals("a" + syllable, reverse(syllable + "a"));
+  }
+
+  public void testReversesOnlyTheGivenRange() {
+    char[] chars = "[abc]".toCharArray();
+    reverser.reverse(chars, 1, 3);
+    assertEquals("[cba]", new String(chars));
+  }
+
+  public void testReversesWordsLongerThanTheScratchArray() {
+    StringBuilder word = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      word.append((char) ('a' + i % 26)).append(i % 7 == 0 ? "\u0301" : "");
+    }
+    String reversed = reverse(word.toString());
+    assertEquals(word.length(), reversed.length());
+    assertEquals(word.toString(), reverse(reversed));
+    assertEquals("v", reversed.substring(0, 1));
+    // The first letter carries an accent, which stays after it
+    assertEquals("a\u0301", reversed.substring(reversed.length() - 2));
+  }
+
+  private String reverse(String word) {
+    char[] chars = word.toCharArray();
+    reverser.reverse(chars, 0, chars.length);
+    return new String(chars);
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.sfsu.cs.orange.ocr.camera;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests FrameMailbox's handoff: frames are taken freshest first and never out of order, and every
+ * frame's buffer goes back to the pool exactly once, whether the frame was taken, replaced, or
+ * refused as stale.
+ */
+public class FrameMailboxTest extends TestCase {
+
+  private static final int PRODUCERS = 4;
+  private static final int FRAMES = 200000;
+
+  private PreviewBufferPool bufferPool;
+
+  @Override
+  protected void setUp() {
+    bufferPool = new PreviewBufferPool(8);
+    bufferPool.setBufferSize(1);
+  }
+
+  public void testTakesFreshestFrame() {
+    FrameMailbox mailbox = new FrameMailbox();
+    PreviewFrame first = newFrame(1);
+    PreviewFrame second = newFrame(2);
+    assertFalse(mailbox.offer(first));
+    assertTrue(mailbox.offer(second));
+    assertReleased(first);
+    assertSame(second, mailbox.take());
+    assertNull(mailbox.take());
+    second.release();
+  }
+
+  public void testRefusesStaleFrames() {
+    FrameMailbox mailbox = new FrameMailbox();
+    PreviewFrame newer = newFrame(5);
+    PreviewFrame older = newFrame(4);
+    mailbox.offer(newer);
+    assertTrue(mailbox.offer(older));
+    assertReleased(older);
+    assertSame(newer, mailbox.take());
+    newer.release();
+
+    // Older than the last frame taken
+    PreviewFrame late = newFrame(3);
+    assertTrue(mailbox.offer(late));
+    assertReleased(late);
+    assertNull(mailbox.take());
+  }
+
+  public void testClearReleasesWaitingFrame() {
+    FrameMailbox mailbox = new FrameMailbox();
+    PreviewFrame frame = newFrame(1);
+    mailbox.offer(frame);
+    mailbox.clear();
+    assertReleased(frame);
+    assertNull(mailbox.take());
+  }
+
+  /**
+   * Offers frames from several threads, numbered in one shared sequence so that they arrive out
+   * of order, while one thread takes them.
+   */
+  public void testConcurrentProducersAndConsumer() throws InterruptedException {
+    final FrameMailbox mailbox = new FrameMailbox();
+    final PreviewFrame[] frames = new PreviewFrame[FRAMES];
+    final AtomicLong nextSequence = new AtomicLong();
+    final AtomicBoolean producing = new AtomicBoolean(true);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final long[] lastTaken = { -1 };
+    final long[] takenCount = { 0 };
+
+    Thread[] producers = new Thread[PRODUCERS];
+    for (int i = 0; i < PRODUCERS; i++) {
+      producers[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            long sequence;
+            while ((sequence = nextSequence.getAndIncrement()) < FRAMES) {
+              PreviewFrame frame = newFrame(sequence);
+              frames[(int) sequence] = frame;
+              mailbox.offer(frame);
+            }
+          } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+          }
+        }
+      };
+    }
+    Thread consumer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            // Read the flag before taking, so a frame offered before it was cleared isn't missed
+            boolean isLastPass = !producing.get();
+            PreviewFrame frame = mailbox.take();
+            if (frame == null) {
+              if (isLastPass) {
+                return;
+              }
+              Thread.yield();
+              continue;
+            }
+            if (frame.getSequence() <= lastTaken[0]) {
+              throw new AssertionError("Took " + frame + " after frame " + lastTaken[0]);
+            }
+            lastTaken[0] = frame.getSequence();
+            takenCount[0]++;
+            frame.release();
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        }
+      }
+    };
+
+    consumer.start();
+    for (Thread producer : producers) {
+      producer.start();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    producing.set(false);
+    consumer.join();
+
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+    // Nothing is newer than the last frame, so it can be neither replaced nor refused
+    assertEquals(FRAMES - 1, lastTaken[0]);
+    assertTrue(takenCount[0] > 0);
+    // Each frame was released once, by the consumer or by the mailbox, and no more
+    for (PreviewFrame frame : frames) {
+      assertReleased(frame);
+    }
+  }
+
+  private PreviewFrame newFrame(long sequence) {
+    return new PreviewFrame(bufferPool.acquire(), 1, 1, sequence, System.nanoTime(), bufferPool);
+  }
+
+  // Fails unless the frame has been released already, which a second release() reports.
+  private static void assertReleased(PreviewFrame frame) {
+    try {
+      frame.release();
+      fail(frame + " was not released");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+  }
+}
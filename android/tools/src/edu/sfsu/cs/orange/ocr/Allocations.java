@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counts the bytes the current thread has allocated, for the benchmarks, on JVMs that expose it
+ * through com.sun.management.ThreadMXBean.
+ */
+final class Allocations {
+
+  private Allocations() {
+  }
+
+  /**
+   * @return Bytes allocated by this thread so far, or -1 if the JVM does not count them
+   */
+  static long allocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) bean;
+      if (counting.isThreadAllocatedMemorySupported()
+          && counting.isThreadAllocatedMemoryEnabled()) {
+        return counting.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Formats the bytes allocated since start, per operation.
+   */
+  static String perOperation(long start, long operations) {
+    long end = allocatedBytes();
+    if (start < 0 || end < 0) {
+      return "allocation not measured";
+    }
+    return String.format("%.1f B allocated per op", (end - start) / (double) operations);
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times LexiconCorrector lookups against a lexicon built by LexiconBuilder, on the desktop:
+ *
+ *   java edu.sfsu.cs.orange.ocr.LexiconBenchmark eng.lexicon words.txt
+ *
+ * Words from the list are misread with the engine's usual confusions, rn for m, 0 for o and so
+ * on, once or twice each, and looked up alongside made-up words that no lexicon word is near.
+ * Reports the latency of each kind of lookup, and how many misreads were corrected back to the
+ * word they came from.
+ */
+final class LexiconBenchmark {
+
+  private static final int SAMPLE_SIZE = 2000;
+  private static final int WARM_UP_PASSES = 5;
+  private static final int TIMED_PASSES = 20;
+
+  // Made-up words are spelled with these, which few words have many of
+  private static final String NON_WORD_CHARACTERS = "jkqvwxz";
+
+  // What each confusable character or pair is misread as
+  private static final String[][] MISREADS = {
+    { "o", "0" }, { "l", "1" }, { "i", "l" }, { "s", "5" }, { "b", "8" }, { "z", "2" },
+    { "e", "c" }, { "u", "v" }, { "m", "rn" }, { "d", "cl" }, { "w", "vv" }, { "n", "ri" },
+  };
+
+  private LexiconBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: LexiconBenchmark <lexicon> <word list>");
+      System.exit(2);
+    }
+    Lexicon lexicon = Lexicon.map(new File(args[0]));
+    List<String> words = new ArrayList<String>(LexiconBuilder.readWords(new File(args[1])));
+    Collections.sort(words);
+    Random random = new Random(42);
+    Collections.shuffle(words, random);
+
+    List<String> originals = new ArrayList<String>();
+    List<String> misreads = new ArrayList<String>();
+    for (String word : words) {
+      if (misreads.size() == SAMPLE_SIZE) {
+        break;
+      }
+      String misread = misread(word, 1 + random.nextInt(2), random);
+      if (misread != null && !lexicon.contains(misread.toCharArray(), 0, misread.length())) {
+        originals.add(word);
+        misreads.add(misread);
+      }
+    }
+    List<String> nonWords = new ArrayList<String>();
+    while (nonWords.size() < SAMPLE_SIZE) {
+      char[] characters = new char[5 + random.nextInt(8)];
+      for (int i = 0; i < characters.length; i++) {
+        characters[i] = NON_WORD_CHARACTERS.charAt(random.nextInt(NON_WORD_CHARACTERS.length()));
+      }
+      nonWords.add(new String(characters));
+    }
+
+    LexiconCorrector corrector = new LexiconCorrector(lexicon);
+    System.out.println(lexicon.getWordCount() + " words, " + new File(args[0]).length()
+        + " bytes");
+    System.out.println("Misreads:  " + time(corrector, misreads));
+    System.out.println("Non-words: " + time(corrector, nonWords));
+
+    int corrected = 0;
+    for (int i = 0; i < misreads.size(); i++) {
+      OcrResult result = new OcrResult(misreads.get(i), 0, new int[4], new byte[1], new int[0],
+          0, -1, 0);
+      if (corrector.correct(result).getText().equals(originals.get(i))) {
+        corrected++;
+      }
+    }
+    System.out.println("Corrected " + corrected + " of " + misreads.size() + " misreads ("
+        + (100 * corrected / Math.max(1, misreads.size())) + "%)");
+  }
+
+  // Misreads up to count confusable spots in a word, or returns null if it has none
+  private static String misread(String word, int count, Random random) {
+    String misread = word;
+    for (int i = 0; i < count; i++) {
+      String[] confusion = MISREADS[random.nextInt(MISREADS.length)];
+      int at = misread.indexOf(confusion[0]);
+      for (int tries = 0; at < 0 && tries < MISREADS.length; tries++) {
+        confusion = MISREADS[random.nextInt(MISREADS.length)];
+        at = misread.indexOf(confusion[0]);
+      }
+      if (at < 0) {
+        break;
+      }
+      misread = misread.substring(0, at) + confusion[1]
+          + misread.substring(at + confusion[0].length());
+    }
+    return misread.equals(word) ? null : misread;
+  }
+
+  // Times each lookup once per pass, and summarizes the timed passes
+  private static String time(LexiconCorrector corrector, List<String> queries) {
+    for (int pass = 0; pass < WARM_UP_PASSES; pass++) {
+      for (String query : queries) {
+        corrector.find(query, 0, query.length());
+      }
+    }
+    long[] latencies = new long[TIMED_PASSES * queries.size()];
+    int count = 0;
+    long total = 0;
+    for (int pass = 0; pass < TIMED_PASSES; pass++) {
+      for (String query : queries) {
+        long start = System.nanoTime();
+        corrector.find(query, 0, query.length());
+        long latency = System.nanoTime() - start;
+        latencies[count++] = latency;
+        total += latency;
+      }
+    }
+    Arrays.sort(latencies);
+    return String.format("mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us",
+        total / 1000.0 / count, latencies[count / 2] / 1000.0,
+        latencies[count * 99 / 100] / 1000.0, latencies[count - 1] / 1000.0);
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds a lexicon for LexiconCorrector from a word list, on the desktop. Run with the app's
+ * sources and android.jar on the class path:
+ *
+ *   java edu.sfsu.cs.orange.ocr.LexiconBuilder words.txt assets/eng.lexicon.zip
+ *
+ * The list has one word per line, in UTF-8. Words are lowercased, since lookups are. An output
+ * name ending in ".zip" writes the lexicon as the archive's only entry, named without the
+ * ".zip", which is how OcrInitAsyncTask installs it from the assets into tessdata.
+ */
+final class LexiconBuilder {
+
+  private static final String ZIP_SUFFIX = ".zip";
+
+  private LexiconBuilder() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: LexiconBuilder <word list> <lexicon, or lexicon.zip>");
+      System.exit(2);
+    }
+    File output = new File(args[1]);
+    Set<String> words = readWords(new File(args[0]));
+
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+    try {
+      String name = output.getName();
+      if (name.endsWith(ZIP_SUFFIX)) {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.putNextEntry(new ZipEntry(name.substring(0, name.length() - ZIP_SUFFIX.length())));
+        Lexicon.write(words, zip);
+        zip.closeEntry();
+        zip.finish();
+      } else {
+        Lexicon.write(words, out);
+      }
+    } finally {
+      out.close();
+    }
+    System.out.println("Wrote " + words.size() + " words to " + output + ", " + output.length()
+        + " bytes");
+  }
+
+  /**
+   * Reads a word list, one word per line, lowercased and trimmed, leaving out blank lines.
+   */
+  static Set<String> readWords(File file) throws IOException {
+    Set<String> words = new HashSet<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+        "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String word = line.trim();
+        if (word.length() > 0) {
+          words.add(toLowerCase(word));
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return words;
+  }
+
+  // Lowercases a character at a time, as LexiconCorrector does to the words it looks up
+  private static String toLowerCase(String word) {
+    char[] characters = new char[word.length()];
+    for (int i = 0; i < characters.length; i++) {
+      characters[i] = Character.toLowerCase(word.charAt(i));
+    }
+    return new String(characters);
+  }
+}
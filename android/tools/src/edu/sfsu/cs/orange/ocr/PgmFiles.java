@@ -0,0 +1,115 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Reads and writes frames as binary greyscale PGM files, for the desktop tools. A recorded frame
+ * is the framed region as the camera saw it, one byte of luminance per pixel.
+ */
+final class PgmFiles {
+
+  private PgmFiles() {
+  }
+
+  /**
+   * @param directory A directory of recorded frames
+   * @return The .pgm files in it, in name order
+   */
+  static File[] list(File directory) throws IOException {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException(directory + " isn't a directory");
+    }
+    int count = 0;
+    for (File file : files) {
+      if (file.getName().endsWith(".pgm")) {
+        files[count++] = file;
+      }
+    }
+    files = Arrays.copyOf(files, count);
+    Arrays.sort(files);
+    return files;
+  }
+
+  /**
+   * Reads a frame. Chroma is left at zero.
+   *
+   * @return The frame, luminance followed by chroma, as the camera delivers it
+   */
+  static PlanarYUVLuminanceSource read(File file) throws IOException {
+    DataInputStream input = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (!"P5".equals(readToken(input))) {
+        throw new IOException(file + " isn't a binary PGM file");
+      }
+      int width = Integer.parseInt(readToken(input));
+      int height = Integer.parseInt(readToken(input));
+      if (Integer.parseInt(readToken(input)) > 255) {
+        throw new IOException(file + " has more than 8 bits per pixel");
+      }
+      byte[] yuvData = new byte[width * height * 3 / 2];
+      input.readFully(yuvData, 0, width * height);
+      return new PlanarYUVLuminanceSource(yuvData, width, height, 0, 0, width, height, false);
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Writes a greyscale image, one byte per pixel with a stride of width.
+   */
+  static void write(File file, byte[] greyscale, int width, int height) throws IOException {
+    OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      output.write(("P5\n" + width + " " + height + "\n255\n").getBytes("US-ASCII"));
+      output.write(greyscale, 0, width * height);
+    } finally {
+      output.close();
+    }
+  }
+
+  // Reads a header field, skipping whitespace and comments, and the whitespace after it
+  private static String readToken(InputStream input) throws IOException {
+    StringBuilder token = new StringBuilder();
+    int c;
+    while ((c = input.read()) != -1) {
+      if (c == '#') {
+        while ((c = input.read()) != -1 && c != '\n') {
+          // Comment
+        }
+      } else if (Character.isWhitespace(c)) {
+        if (token.length() > 0) {
+          break;
+        }
+      } else {
+        token.append((char) c);
+      }
+    }
+    return token.toString();
+  }
+}
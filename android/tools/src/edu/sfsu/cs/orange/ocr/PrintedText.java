@@ -0,0 +1,108 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Makes up framed regions of printed text for the desktop benchmarks that recognize them: lines
+ * of common sign words in a sans-serif font, softened and with sensor noise, as the camera sees
+ * them. Checks the words read against those drawn.
+ */
+final class PrintedText {
+
+  private static final String[] WORDS = {
+    "exit", "open", "daily", "north", "station", "platform", "parking", "ticket", "coffee",
+    "closed", "entrance", "library", "street", "market", "water", "garden", "museum", "hours",
+    "monday", "friday", "welcome", "office", "floor", "return", "please", "push", "pull",
+  };
+
+  private PrintedText() {
+  }
+
+  /**
+   * Draws lines of words lineHeight tall, from ascender to descender, a third of a line apart,
+   * as many as fit.
+   *
+   * @param words Receives the words drawn, in reading order
+   * @return The framed region
+   */
+  static PlanarYUVLuminanceSource draw(int width, int height, int lineHeight, Random random,
+      List<String> words) {
+    int background = 150 + random.nextInt(70);
+    int ink = 30 + random.nextInt(50);
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+        RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    graphics.setColor(new Color(background, background, background));
+    graphics.fillRect(0, 0, width, height);
+    graphics.setColor(new Color(ink, ink, ink));
+    Font probe = new Font(Font.SANS_SERIF, Font.PLAIN, 100);
+    int probeHeight = graphics.getFontMetrics(probe).getAscent()
+        + graphics.getFontMetrics(probe).getDescent();
+    graphics.setFont(probe.deriveFont(100f * lineHeight / probeHeight));
+    FontMetrics metrics = graphics.getFontMetrics();
+    int spacing = metrics.charWidth(' ');
+    for (int top = lineHeight / 3; top + lineHeight <= height; top += lineHeight * 4 / 3) {
+      int x = 10 + random.nextInt(20);
+      while (true) {
+        String word = WORDS[random.nextInt(WORDS.length)];
+        int wordWidth = metrics.stringWidth(word);
+        if (x + wordWidth > width - 10) {
+          break;
+        }
+        graphics.drawString(word, x, top + metrics.getAscent());
+        words.add(word);
+        x += wordWidth + spacing;
+      }
+    }
+    graphics.dispose();
+
+    // Softened and noisy, as the camera sees it
+    SyntheticFrame region = new SyntheticFrame(width, height, background);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        region.set(x, y, image.getRaster().getSample(x, y, 0));
+      }
+    }
+    region.blurRows();
+    region.blurColumns();
+    return region.toSource(random, 3);
+  }
+
+  // Counts the expected words found in the recognized text, each as many times as it's expected
+  static int countRight(List<String> expected, String text) {
+    List<String> recognized = new ArrayList<String>(
+        Arrays.asList(text.toLowerCase().split("[^\\p{L}\\p{N}]+")));
+    int right = 0;
+    for (String word : expected) {
+      if (recognized.remove(word.toLowerCase())) {
+        right++;
+      }
+    }
+    return right;
+  }
+}
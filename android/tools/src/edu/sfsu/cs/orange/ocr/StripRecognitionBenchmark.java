@@ -0,0 +1,193 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Times recognition of framed regions of increasing height, whole and split into strips, on the
+ * desktop:
+ *
+ *   java -Dengines=4 edu.sfsu.cs.orange.ocr.StripRecognitionBenchmark
+ *
+ * FRAMES_PER_HEIGHT framed regions WIDTH wide are made up for each of HEIGHTS, with lines of words
+ * LINE_HEIGHT tall. Each is rendered to greyscale as DecodeHandler does and split by StripSplitter
+ * into at most one strip per engine, and the split is timed. When a tesseract command is on the
+ * path, the region is then recognized whole, and as strips, each on its own tesseract process and
+ * all at the same time, as StripRecognizer runs them on separate engines. A strip's words are kept
+ * only if it owns them. Both are timed until the last word is in, and the words read are checked against
+ * those drawn: a word read twice in an overlap shows up as an extra word.
+ *
+ * The number of engines defaults to 4, the most CaptureActivity runs. The tesseract command and
+ * language are set as for TextScalerBenchmark. Recognition times include starting a process for
+ * each strip, which is reported on its own, and the strips only run at the same time on a machine
+ * with a core for each. Desktop times are not the device's, but the two modes are compared on the
+ * same machine.
+ */
+final class StripRecognitionBenchmark {
+
+  private static final int WIDTH = 640;
+  private static final int[] HEIGHTS = { 96, 128, 192, 256, 384, 512, 768 };
+  private static final int LINE_HEIGHT = 24;
+  private static final int FRAMES_PER_HEIGHT = 3;
+  private static final int SPLIT_REPEATS = 200;
+
+  private StripRecognitionBenchmark() {
+  }
+
+  public static void main(String[] args)
+      throws IOException, InterruptedException, ExecutionException {
+    int engines = Integer.getInteger("engines", 4);
+    TesseractCommand tesseract = TesseractCommand.find();
+    TesseractCommand[] stripCommands = null;
+    ExecutorService executor = null;
+    if (tesseract == null) {
+      System.out.println("No tesseract command found, so only splitting is timed");
+    } else {
+      System.out.println(String.format("tesseract start-up: %.0f ms, included in each "
+          + "recognition time", tesseract.measureStartUp()));
+      stripCommands = new TesseractCommand[engines];
+      for (int i = 0; i < engines; i++) {
+        stripCommands[i] = tesseract.copy();
+      }
+      executor = Executors.newFixedThreadPool(engines);
+    }
+    System.out.println(String.format("%d engines, on %d cores", engines,
+        Runtime.getRuntime().availableProcessors()));
+    System.out.println();
+    System.out.println("Height  strips  split (us)  recognize whole/strips (ms)  "
+        + "words right whole/strips  extra words whole/strips");
+
+    Random random = new Random(42);
+    StripSplitter splitter = new StripSplitter();
+    try {
+      for (int height : HEIGHTS) {
+        Result whole = new Result();
+        Result stripped = new Result();
+        for (int i = 0; i < FRAMES_PER_HEIGHT; i++) {
+          List<String> words = new ArrayList<String>();
+          PlanarYUVLuminanceSource source = PrintedText.draw(WIDTH, height, LINE_HEIGHT, random,
+              words);
+          // As DecodeHandler splits it, from the greyscale image the engines are given
+          byte[] greyscale = source.renderCroppedGreyscale(null);
+          PlanarYUVLuminanceSource image = new PlanarYUVLuminanceSource(greyscale, WIDTH, height,
+              0, 0, WIDTH, height, false);
+          StripSplitter.Strip[] strips = splitter.split(image, engines);
+          long start = System.nanoTime();
+          for (int repeat = 0; repeat < SPLIT_REPEATS; repeat++) {
+            strips = splitter.split(image, engines);
+          }
+          stripped.splitNanos += (System.nanoTime() - start) / SPLIT_REPEATS;
+          stripped.strips += strips.length;
+          whole.frames++;
+          stripped.frames++;
+          if (tesseract != null) {
+            start = System.nanoTime();
+            String text = tesseract.recognize(greyscale, WIDTH, height);
+            whole.recognitionNanos += System.nanoTime() - start;
+            String trimmed = text.trim();
+            whole.add(words, text, trimmed.length() == 0 ? 0 : trimmed.split("\\s+").length);
+
+            start = System.nanoTime();
+            List<String> merged = recognizeStrips(executor, stripCommands, greyscale, strips);
+            stripped.recognitionNanos += System.nanoTime() - start;
+            StringBuilder mergedText = new StringBuilder();
+            for (String word : merged) {
+              mergedText.append(word).append(' ');
+            }
+            stripped.add(words, mergedText.toString(), merged.size());
+          }
+        }
+        print(height, whole, stripped, tesseract != null);
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+      }
+    }
+  }
+
+  // Recognizes each strip on its own process, all at the same time, and keeps each word from the
+  // strip that owns it, as StripRecognizer does
+  private static List<String> recognizeStrips(ExecutorService executor,
+      TesseractCommand[] stripCommands, final byte[] greyscale, StripSplitter.Strip[] strips)
+      throws InterruptedException, ExecutionException {
+    List<Future<List<TesseractCommand.Word>>> results =
+        new ArrayList<Future<List<TesseractCommand.Word>>>();
+    for (int i = 0; i < strips.length; i++) {
+      final TesseractCommand command = stripCommands[i];
+      final StripSplitter.Strip strip = strips[i];
+      results.add(executor.submit(new Callable<List<TesseractCommand.Word>>() {
+        public List<TesseractCommand.Word> call() throws IOException, InterruptedException {
+          // The strip's rows are contiguous in the region
+          byte[] pixels = new byte[WIDTH * strip.getHeight()];
+          System.arraycopy(greyscale, strip.top * WIDTH, pixels, 0, pixels.length);
+          return command.recognizeWords(pixels, WIDTH, strip.getHeight());
+        }
+      }));
+    }
+    List<String> merged = new ArrayList<String>();
+    for (int i = 0; i < strips.length; i++) {
+      for (TesseractCommand.Word word : results.get(i).get()) {
+        if (strips[i].owns(word.top + strips[i].top, word.bottom + strips[i].top)) {
+          merged.add(word.text);
+        }
+      }
+    }
+    return merged;
+  }
+
+  private static void print(int height, Result whole, Result stripped, boolean isRecognized) {
+    StringBuilder line = new StringBuilder(String.format("%6d  %6.1f  %10.0f", height,
+        (double) stripped.strips / stripped.frames,
+        stripped.splitNanos / 1000.0 / stripped.frames));
+    if (isRecognized) {
+      line.append(String.format("  %12.0f %12.0f", whole.recognitionNanos / 1e6 / whole.frames,
+          stripped.recognitionNanos / 1e6 / stripped.frames));
+      line.append(String.format("     %9.0f%% %9.0f%%", whole.wordsRight * 100.0 / whole.words,
+          stripped.wordsRight * 100.0 / stripped.words));
+      line.append(String.format("     %10d %10d", whole.extraWords, stripped.extraWords));
+    }
+    System.out.println(line);
+  }
+
+  // Totals for the frames of one height in one mode
+  private static final class Result {
+    int frames;
+    int strips;
+    long splitNanos;
+    long recognitionNanos;
+    int words;
+    int wordsRight;
+    int extraWords;
+
+    // Checks the words read against those drawn
+    void add(List<String> expected, String text, int wordsRead) {
+      int right = PrintedText.countRight(expected, text);
+      words += expected.size();
+      wordsRight += right;
+      extraWords += Math.max(0, wordsRead - right);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the tesseract command on greyscale images written to a temporary PGM file, for the desktop
+ * benchmarks. The command and language are set with -Dtesseract=path and -Dtesseract.lang=eng.
+ *
+ * Each instance has its own image file, so separate instances can recognize at the same time.
+ */
+final class TesseractCommand {
+
+  /**
+   * A word recognized, with its box in the image.
+   */
+  static final class Word {
+    final String text;
+    final int left;
+    final int top;
+    final int right;
+    final int bottom;
+
+    Word(String text, int left, int top, int right, int bottom) {
+      this.text = text;
+      this.left = left;
+      this.top = top;
+      this.right = right;
+      this.bottom = bottom;
+    }
+  }
+
+  private final String command;
+  private final String language;
+  private final File imageFile;
+  private final File errorFile;
+
+  private TesseractCommand(String command, String language) throws IOException {
+    this.command = command;
+    this.language = language;
+    imageFile = File.createTempFile("tesseract", ".pgm");
+    imageFile.deleteOnExit();
+    errorFile = File.createTempFile("tesseract", ".log");
+    errorFile.deleteOnExit();
+  }
+
+  /**
+   * @return The command, or null if it can't be run
+   */
+  static TesseractCommand find() throws InterruptedException {
+    String command = System.getProperty("tesseract", "tesseract");
+    try {
+      Process process = new ProcessBuilder(command, "--version").redirectErrorStream(true)
+          .start();
+      readAll(process.getInputStream());
+      if (process.waitFor() != 0) {
+        return null;
+      }
+      return new TesseractCommand(command, System.getProperty("tesseract.lang", "eng"));
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return Another instance running the same command, with its own image file
+   */
+  TesseractCommand copy() throws IOException {
+    return new TesseractCommand(command, language);
+  }
+
+  /**
+   * Times recognizing an image with nothing in it.
+   *
+   * @return The mean time, in milliseconds
+   */
+  double measureStartUp() throws IOException, InterruptedException {
+    byte[] blank = new byte[64 * 64];
+    Arrays.fill(blank, (byte) 200);
+    recognize(blank, 64, 64);
+    long start = System.nanoTime();
+    for (int i = 0; i < 5; i++) {
+      recognize(blank, 64, 64);
+    }
+    return (System.nanoTime() - start) / 5 / 1e6;
+  }
+
+  /**
+   * @param image The image, one byte per pixel with a stride of width
+   * @return The text recognized
+   */
+  String recognize(byte[] image, int width, int height) throws IOException, InterruptedException {
+    return run(image, width, height);
+  }
+
+  /**
+   * @param image The image, one byte per pixel with a stride of width
+   * @return The words recognized, in reading order, with their boxes
+   */
+  List<Word> recognizeWords(byte[] image, int width, int height)
+      throws IOException, InterruptedException {
+    List<Word> words = new ArrayList<Word>();
+    // level, page, block, paragraph, line, word, left, top, width, height, confidence, text
+    for (String line : run(image, width, height, "tsv").split("\n")) {
+      String[] fields = line.split("\t");
+      if (fields.length == 12 && "5".equals(fields[0]) && fields[11].trim().length() > 0) {
+        int left = Integer.parseInt(fields[6]);
+        int top = Integer.parseInt(fields[7]);
+        words.add(new Word(fields[11].trim(), left, top, left + Integer.parseInt(fields[8]),
+            top + Integer.parseInt(fields[9])));
+      }
+    }
+    return words;
+  }
+
+  private String run(byte[] image, int width, int height, String... configs)
+      throws IOException, InterruptedException {
+    PgmFiles.write(imageFile, image, width, height);
+    // A single block of text, as the framed region is
+    List<String> arguments = new ArrayList<String>(Arrays.asList(command, imageFile.getPath(),
+        "stdout", "-l", language, "--psm", "6"));
+    arguments.addAll(Arrays.asList(configs));
+    Process process = new ProcessBuilder(arguments)
+        .redirectError(ProcessBuilder.Redirect.to(errorFile))
+        .start();
+    String text = readAll(process.getInputStream());
+    if (process.waitFor() != 0) {
+      throw new IOException(command + " failed, see " + errorFile);
+    }
+    return text;
+  }
+
+  // Reads a stream to its end as UTF-8 text, and closes it
+  static String readAll(InputStream input) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+    try {
+      StringBuilder text = new StringBuilder();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        text.append(line).append('\n');
+      }
+      return text.toString();
+    } finally {
+      reader.close();
+    }
+  }
+}
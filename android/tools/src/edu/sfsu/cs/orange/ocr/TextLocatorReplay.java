@@ -0,0 +1,330 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Replays frames through TextLocator on the desktop, and reports how many engine calls it would
+ * avoid and how much of each frame it would send:
+ *
+ *   java edu.sfsu.cs.orange.ocr.TextLocatorReplay [directory of .pgm frames]
+ *
+ * Without a directory, a corpus of 640x200 framed regions is made up, FRAMES_PER_KIND of each
+ * kind: blank walls, textured walls and door edges, which have no text, and single words, small
+ * signs, full pages and pairs of words far apart, which do. Each has its own brightness, a
+ * lighting gradient and sensor noise. Letters are drawn as strokes, not with a font, so the
+ * corpus is the same on every machine. The ink drawn is known, so a crop that cuts any off is
+ * counted.
+ *
+ * Recorded frames are binary greyscale PGM files, each the framed region as the camera saw it.
+ * For those, whether text was found and the crop are printed per frame.
+ */
+final class TextLocatorReplay {
+
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 200;
+  private static final int FRAMES_PER_KIND = 40;
+  private static final int TIMED_PASSES = 20;
+
+  private enum Kind {
+    BLANK_WALL(false),
+    TEXTURED_WALL(false),
+    DOOR_EDGE(false),
+    SINGLE_WORD(true),
+    SMALL_SIGN(true),
+    FULL_PAGE(true),
+    TWO_WORDS(true);
+
+    final boolean hasText;
+
+    Kind(boolean hasText) {
+      this.hasText = hasText;
+    }
+  }
+
+  private TextLocatorReplay() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 1) {
+      replayRecorded(new File(args[0]));
+    } else {
+      replaySynthetic();
+    }
+  }
+
+  private static void replaySynthetic() {
+    Random random = new Random(42);
+    TextLocator locator = new TextLocator();
+    int[] bounds = new int[4];
+    Frame[] frames = new Frame[Kind.values().length * FRAMES_PER_KIND];
+    int index = 0;
+    for (Kind kind : Kind.values()) {
+      for (int i = 0; i < FRAMES_PER_KIND; i++) {
+        frames[index++] = Frame.make(kind, random);
+      }
+    }
+
+    long textlessFrames = 0;
+    long callsAvoided = 0;
+    long textFrames = 0;
+    long textMissed = 0;
+    long inkCut = 0;
+    long pixelsSent = 0;
+    System.out.println("Kind            found  ink cut  pixels sent");
+    for (Kind kind : Kind.values()) {
+      int found = 0;
+      int cut = 0;
+      long kindPixelsSent = 0;
+      for (Frame frame : frames) {
+        if (frame.kind != kind) {
+          continue;
+        }
+        if (locator.locate(frame.source, bounds)) {
+          found++;
+          kindPixelsSent += (bounds[2] - bounds[0]) * (long) (bounds[3] - bounds[1]);
+          if (kind.hasText && !frame.isInkInside(bounds)) {
+            cut++;
+          }
+        }
+      }
+      System.out.println(String.format("%-15s %2d/%d  %7d  %10.0f%%", kind, found,
+          FRAMES_PER_KIND, cut, kindPixelsSent * 100.0 / FRAMES_PER_KIND / (WIDTH * HEIGHT)));
+      if (kind.hasText) {
+        textFrames += FRAMES_PER_KIND;
+        textMissed += FRAMES_PER_KIND - found;
+        inkCut += cut;
+      } else {
+        textlessFrames += FRAMES_PER_KIND;
+        callsAvoided += FRAMES_PER_KIND - found;
+      }
+      pixelsSent += kindPixelsSent;
+    }
+    System.out.println();
+    System.out.println("Engine calls avoided:  " + callsAvoided + " of " + textlessFrames
+        + " frames without text");
+    System.out.println("Text frames missed:    " + textMissed + " of " + textFrames);
+    System.out.println("Text frames cut short: " + inkCut + " with ink outside the crop");
+    System.out.println(String.format("Pixels sent:           %.0f%% of %d frames",
+        pixelsSent * 100.0 / frames.length / (WIDTH * HEIGHT), frames.length));
+    System.out.println("Time:                  " + time(locator, frames));
+  }
+
+  private static void replayRecorded(File directory) throws IOException {
+    TextLocator locator = new TextLocator();
+    int[] bounds = new int[4];
+    File[] files = PgmFiles.list(directory);
+    int found = 0;
+    for (File file : files) {
+      PlanarYUVLuminanceSource source = PgmFiles.read(file);
+      if (locator.locate(source, bounds)) {
+        found++;
+        long area = (bounds[2] - bounds[0]) * (long) (bounds[3] - bounds[1]);
+        System.out.println(String.format("%s: text at %d,%d-%d,%d, %.0f%% of the frame",
+            file.getName(), bounds[0], bounds[1], bounds[2], bounds[3],
+            area * 100.0 / (source.getWidth() * source.getHeight())));
+      } else {
+        System.out.println(file.getName() + ": no text, " + locator);
+      }
+    }
+    System.out.println("Text found in " + found + " of " + files.length + " frames");
+  }
+
+  // Locates text in every frame TIMED_PASSES times, after a pass to warm up
+  private static String time(TextLocator locator, Frame[] frames) {
+    int[] bounds = new int[4];
+    for (Frame frame : frames) {
+      locator.locate(frame.source, bounds);
+    }
+    long start = System.nanoTime();
+    for (int pass = 0; pass < TIMED_PASSES; pass++) {
+      for (Frame frame : frames) {
+        locator.locate(frame.source, bounds);
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    return String.format("%.0f us per frame", elapsed / 1000.0 / TIMED_PASSES / frames.length);
+  }
+
+  /**
+   * A made-up framed region of one kind, and the bounds of the ink drawn in it.
+   */
+  private static final class Frame {
+    final Kind kind;
+    private final SyntheticFrame region;
+    PlanarYUVLuminanceSource source;
+    private int inkLeft = Integer.MAX_VALUE;
+    private int inkTop = Integer.MAX_VALUE;
+    private int inkRight = -1;
+    private int inkBottom = -1;
+
+    private Frame(Kind kind, int background) {
+      this.kind = kind;
+      region = new SyntheticFrame(WIDTH, HEIGHT, background);
+    }
+
+    boolean isInkInside(int[] bounds) {
+      return inkLeft >= bounds[0] && inkTop >= bounds[1] && inkRight < bounds[2]
+          && inkBottom < bounds[3];
+    }
+
+    static Frame make(Kind kind, Random random) {
+      int background = 120 + random.nextInt(100);
+      int ink = background - 70 - random.nextInt(50);
+      Frame frame = new Frame(kind, background);
+      // Light falling off across the region
+      float gradient = (random.nextFloat() - 0.5f) * 50 / WIDTH;
+      for (int y = 0; y < HEIGHT; y++) {
+        for (int x = 0; x < WIDTH; x++) {
+          frame.region.add(x, y, Math.round(gradient * (x - WIDTH / 2)));
+        }
+      }
+      switch (kind) {
+        case BLANK_WALL:
+          break;
+        case TEXTURED_WALL:
+          frame.addTexture(random);
+          break;
+        case DOOR_EDGE:
+          // A door's edge and the gap beside it, from top to bottom
+          int edge = 40 + random.nextInt(WIDTH - 80);
+          frame.fill(edge, 0, WIDTH, HEIGHT, ink, false);
+          frame.fill(edge + 6, 0, edge + 10, HEIGHT, background - 20, false);
+          break;
+        case SINGLE_WORD:
+          frame.addWord(random, 16 + random.nextInt(25), ink, -1, -1);
+          break;
+        case SMALL_SIGN:
+          int signWidth = 120 + random.nextInt(60);
+          int signHeight = 50 + random.nextInt(20);
+          int signLeft = random.nextInt(WIDTH - signWidth);
+          int signTop = random.nextInt(HEIGHT - signHeight);
+          frame.fill(signLeft, signTop, signLeft + signWidth, signTop + signHeight, ink, false);
+          frame.fill(signLeft + 3, signTop + 3, signLeft + signWidth - 3,
+              signTop + signHeight - 3, Math.min(255, background + 30), false);
+          frame.addWord(random, 12 + random.nextInt(5), ink, signLeft + 12,
+              signTop + (signHeight - 16) / 2);
+          break;
+        case FULL_PAGE:
+          for (int top = 8 + random.nextInt(8); top + 24 < HEIGHT; top += 30) {
+            for (int left = 8 + random.nextInt(20); left < WIDTH - 120; left += 16) {
+              left = frame.addWord(random, 18, ink, left, top);
+            }
+          }
+          break;
+        case TWO_WORDS:
+          int textHeight = 16 + random.nextInt(12);
+          frame.addWord(random, textHeight, ink, 10 + random.nextInt(40),
+              random.nextInt(HEIGHT - textHeight));
+          frame.addWord(random, textHeight, ink, WIDTH - 200 + random.nextInt(40),
+              random.nextInt(HEIGHT - textHeight));
+          break;
+      }
+      // With sensor noise
+      frame.source = frame.region.toSource(random, kind == Kind.TEXTURED_WALL ? 6 : 4);
+      return frame;
+    }
+
+    // A few slow ripples of low contrast, like plaster or wood grain
+    private void addTexture(Random random) {
+      for (int wave = 0; wave < 4; wave++) {
+        double frequencyX = random.nextDouble() * 0.08;
+        double frequencyY = random.nextDouble() * 0.08;
+        double phase = random.nextDouble() * Math.PI * 2;
+        int amplitude = 4 + random.nextInt(5);
+        for (int y = 0; y < HEIGHT; y++) {
+          for (int x = 0; x < WIDTH; x++) {
+            region.add(x, y, (int) Math.round(
+                amplitude * Math.sin(frequencyX * x + frequencyY * y + phase)));
+          }
+        }
+      }
+    }
+
+    // Draws a word of stroke letters with its top left corner at left, top, or somewhere random
+    // if those are -1, moved left if it wouldn't fit. Returns the word's right end.
+    private int addWord(Random random, int textHeight, int ink, int left, int top) {
+      int letters = 4 + random.nextInt(6);
+      int letterWidth = textHeight * 3 / 5;
+      int spacing = Math.max(2, textHeight / 6);
+      int wordWidth = letters * (letterWidth + spacing) - spacing;
+      if (left < 0) {
+        left = random.nextInt(WIDTH - wordWidth);
+        top = random.nextInt(HEIGHT - textHeight);
+      }
+      left = Math.min(left, WIDTH - wordWidth);
+      int stroke = Math.max(2, textHeight / 8);
+      for (int i = 0; i < letters; i++) {
+        int x = left + i * (letterWidth + spacing);
+        addLetter(random, x, top, letterWidth, textHeight, stroke, ink);
+      }
+      return left + wordWidth;
+    }
+
+    // Draws a letter from its possible strokes: stems at the left, middle and right, and bars at
+    // the top, middle and bottom. Like nearly every letter, it has at least one stem, and at least
+    // two strokes.
+    private void addLetter(Random random, int left, int top, int letterWidth, int letterHeight,
+        int stroke, int ink) {
+      int right = left + letterWidth;
+      int bottom = top + letterHeight;
+      int middleX = left + (letterWidth - stroke) / 2;
+      int middleY = top + (letterHeight - stroke) / 2;
+      int stems = 0;
+      int strokes = 0;
+      while (strokes < 2) {
+        if (random.nextInt(10) < 6) {
+          fill(left, top, left + stroke, bottom, ink, true);
+          stems++;
+        }
+        if (random.nextInt(10) < 4) {
+          fill(right - stroke, top, right, bottom, ink, true);
+          stems++;
+        }
+        if (stems == 0 || random.nextInt(10) < 2) {
+          fill(middleX, top, middleX + stroke, bottom, ink, true);
+          stems++;
+        }
+        strokes = stems;
+        if (random.nextInt(10) < 4) {
+          fill(left, top, right, top + stroke, ink, true);
+          strokes++;
+        }
+        if (random.nextInt(10) < 4) {
+          fill(left, middleY, right, middleY + stroke, ink, true);
+          strokes++;
+        }
+        if (random.nextInt(10) < 4) {
+          fill(left, bottom - stroke, right, bottom, ink, true);
+          strokes++;
+        }
+      }
+    }
+
+    private void fill(int left, int top, int right, int bottom, int value, boolean isInk) {
+      region.fill(left, top, right, bottom, value);
+      if (isInk) {
+        inkLeft = Math.min(inkLeft, left);
+        inkTop = Math.min(inkTop, top);
+        inkRight = Math.max(inkRight, right - 1);
+        inkBottom = Math.max(inkBottom, bottom - 1);
+      }
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares recognition with and without TextScaler over the same frames, on the desktop:
+ *
+ *   java edu.sfsu.cs.orange.ocr.TextScalerBenchmark [directory of .pgm frames]
+ *
+ * Each frame is rendered to greyscale as DecodeHandler does, and with scaling on, downscaled by
+ * the factor TextScaler chooses. The render is timed, and the image is then recognized by the
+ * tesseract command, if there is one on the path, which is timed as well. Recognition is the part
+ * scaling saves, so the render times matter mostly as the cost of the scaling itself. The words
+ * recognized are checked against the text of the frame.
+ *
+ * Without a directory, FRAMES_PER_SIZE framed regions are made up for each of LINE_HEIGHTS, with
+ * lines of words drawn in a sans-serif font, softened and with sensor noise. Recorded frames are
+ * binary greyscale PGM files, each the framed region as the camera saw it, with its text in a .txt
+ * file of the same name when words are to be checked.
+ *
+ * The tesseract command and language are set with -Dtesseract=path and -Dtesseract.lang=eng.
+ * Its times include starting the process, which is reported on its own. Desktop times are not
+ * the device's, but the two modes are compared on the same machine.
+ */
+final class TextScalerBenchmark {
+
+  private static final int WIDTH = 720;
+  private static final int HEIGHT = 320;
+  private static final int[] LINE_HEIGHTS = { 24, 40, 60, 90, 120, 160 };
+  private static final int FRAMES_PER_SIZE = 5;
+  private static final int RENDER_REPEATS = 50;
+
+  private TextScalerBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    List<Frame> frames = args.length == 1 ? readFrames(new File(args[0])) : makeFrames();
+    TesseractCommand tesseract = TesseractCommand.find();
+    if (tesseract == null) {
+      System.out.println("No tesseract command found, so only rendering is timed");
+    } else {
+      System.out.println(String.format("tesseract start-up: %.0f ms, included in each "
+          + "recognition time", tesseract.measureStartUp()));
+    }
+    System.out.println();
+    System.out.println("Frames         measured scale  render off/on (us)  recognize off/on (ms)  "
+        + "words right off/on");
+
+    TextScaler scaler = new TextScaler();
+    // Once over everything first, so that neither mode is timed before the JIT has compiled it
+    for (Frame frame : frames) {
+      render(frame, scaler, false);
+      render(frame, scaler, true);
+    }
+
+    Result totalOff = new Result();
+    Result totalOn = new Result();
+    Result groupOff = null;
+    Result groupOn = null;
+    for (int i = 0; i < frames.size(); i++) {
+      Frame frame = frames.get(i);
+      if (i == 0 || !frame.group.equals(frames.get(i - 1).group)) {
+        groupOff = new Result();
+        groupOn = new Result();
+      }
+      run(frame, scaler, false, tesseract, groupOff);
+      run(frame, scaler, true, tesseract, groupOn);
+      if (i == frames.size() - 1 || !frame.group.equals(frames.get(i + 1).group)) {
+        print(frame.group, groupOff, groupOn, tesseract != null);
+        totalOff.add(groupOff);
+        totalOn.add(groupOn);
+      }
+    }
+    System.out.println();
+    print("All", totalOff, totalOn, tesseract != null);
+  }
+
+  // Renders the frame as DecodeHandler does, with or without scaling. Returns the image, with a
+  // stride of the frame's width divided by the scale used, which is left in the scaler.
+  private static byte[] render(Frame frame, TextScaler scaler, boolean isScaling) {
+    int scale = isScaling ? scaler.chooseScale(frame.source) : 1;
+    byte[] greyscale = frame.source.renderCroppedGreyscale(frame.greyscale);
+    frame.greyscale = greyscale;
+    if (scale > 1) {
+      frame.scaled = scaler.downscale(greyscale, frame.source.getWidth(),
+          frame.source.getHeight(), scale, frame.scaled);
+      return frame.scaled;
+    }
+    return greyscale;
+  }
+
+  // Renders the frame RENDER_REPEATS times, then recognizes it once
+  private static void run(Frame frame, TextScaler scaler, boolean isScaling,
+      TesseractCommand tesseract, Result result) throws IOException, InterruptedException {
+    byte[] image = null;
+    long start = System.nanoTime();
+    for (int i = 0; i < RENDER_REPEATS; i++) {
+      image = render(frame, scaler, isScaling);
+    }
+    result.renderNanos += (System.nanoTime() - start) / RENDER_REPEATS;
+    result.frames++;
+    int scale = isScaling ? scaler.getLastScale() : 1;
+    result.scaleSum += scale;
+    result.lineHeightSum += scaler.getLastLineHeight();
+    if (tesseract != null) {
+      long recognitionStart = System.nanoTime();
+      String text = tesseract.recognize(image, frame.source.getWidth() / scale,
+          frame.source.getHeight() / scale);
+      result.recognitionNanos += System.nanoTime() - recognitionStart;
+      if (frame.words != null) {
+        result.words += frame.words.size();
+        result.wordsRight += PrintedText.countRight(frame.words, text);
+      }
+    }
+  }
+
+  private static void print(String group, Result off, Result on, boolean isRecognized) {
+    StringBuilder line = new StringBuilder(String.format("%-16s %5.0f %5.1f  %8.0f %8.0f", group,
+        (double) on.lineHeightSum / on.frames, (double) on.scaleSum / on.frames,
+        off.renderNanos / 1000.0 / off.frames, on.renderNanos / 1000.0 / on.frames));
+    if (isRecognized) {
+      line.append(String.format("     %8.0f %8.0f", off.recognitionNanos / 1e6 / off.frames,
+          on.recognitionNanos / 1e6 / on.frames));
+      if (off.words > 0) {
+        line.append(String.format("        %4.0f%% %4.0f%%", off.wordsRight * 100.0 / off.words,
+            on.wordsRight * 100.0 / on.words));
+      }
+    }
+    System.out.println(line);
+  }
+
+  private static List<Frame> makeFrames() {
+    Random random = new Random(42);
+    List<Frame> frames = new ArrayList<Frame>();
+    for (int lineHeight : LINE_HEIGHTS) {
+      for (int i = 0; i < FRAMES_PER_SIZE; i++) {
+        frames.add(Frame.make(lineHeight, random));
+      }
+    }
+    return frames;
+  }
+
+  // Reads each frame, and its words from the .txt file of the same name if there is one
+  private static List<Frame> readFrames(File directory) throws IOException {
+    List<Frame> frames = new ArrayList<Frame>();
+    for (File file : PgmFiles.list(directory)) {
+      String name = file.getName();
+      Frame frame = new Frame(name, PgmFiles.read(file));
+      File textFile = new File(directory,
+          name.substring(0, name.length() - ".pgm".length()) + ".txt");
+      if (textFile.exists()) {
+        frame.words = new ArrayList<String>();
+        String text = TesseractCommand.readAll(new FileInputStream(textFile));
+        for (String word : text.split("\\s+")) {
+          if (word.length() > 0) {
+            frame.words.add(word);
+          }
+        }
+      }
+      frames.add(frame);
+    }
+    return frames;
+  }
+
+  // Totals for a group of frames in one mode
+  private static final class Result {
+    int frames;
+    int lineHeightSum;
+    int scaleSum;
+    long renderNanos;
+    long recognitionNanos;
+    int words;
+    int wordsRight;
+
+    void add(Result other) {
+      frames += other.frames;
+      lineHeightSum += other.lineHeightSum;
+      scaleSum += other.scaleSum;
+      renderNanos += other.renderNanos;
+      recognitionNanos += other.recognitionNanos;
+      words += other.words;
+      wordsRight += other.wordsRight;
+    }
+  }
+
+  /**
+   * A framed region, the words in it if they're known, and the buffers it's rendered into.
+   */
+  private static final class Frame {
+    final String group;
+    final PlanarYUVLuminanceSource source;
+    List<String> words;
+    byte[] greyscale;
+    byte[] scaled;
+
+    Frame(String group, PlanarYUVLuminanceSource source) {
+      this.group = group;
+      this.source = source;
+    }
+
+    static Frame make(int lineHeight, Random random) {
+      List<String> words = new ArrayList<String>();
+      Frame frame = new Frame("Lines " + lineHeight + " px",
+          PrintedText.draw(WIDTH, HEIGHT, lineHeight, random, words));
+      frame.words = words;
+      return frame;
+    }
+  }
+}
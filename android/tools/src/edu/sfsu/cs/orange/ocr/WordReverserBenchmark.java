@@ -0,0 +1,171 @@
+/*
+ * Copyright 2011 Robert Theis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.sfsu.cs.orange.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times WordReverser against the char-by-char reverse the overlay used before it, on the desktop:
+ *
+ *   java edu.sfsu.cs.orange.ocr.WordReverserBenchmark [word list]
+ *
+ * Without a word list, words are made up from Latin letters, combining accents, Devanagari vowel
+ * signs and emoji sequences. Frames repeat a page of words, as the overlay sees them while the
+ * camera rests on one page; a second run uses a new word every time. WordReverser finds each
+ * word's clusters afresh, so the two should cost about the same, and a gap between them is what a
+ * cache of reversed words could save at most. Reports the time and the bytes allocated per word.
+ */
+final class WordReverserBenchmark {
+
+  private static final int PAGE_WORDS = 120;
+  private static final int FRAMES = 20000;
+  private static final int WARM_UP_FRAMES = 2000;
+
+  private static final String[] PIECES = {
+    "a", "e", "o", "n", "r", "t", "s", "l",
+    "e\u0301", "a\u0300", "c\u0327", "u\u0308",
+    "\u0915\u093F", "\u0930\u094D",
+    "\uD83D\uDC4D\uD83C\uDFFD", "\uD83D\uDC69\u200D\uD83D\uDC67", "\uD83C\uDDEB\uD83C\uDDF7",
+  };
+
+  private WordReverserBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    Random random = new Random(42);
+    List<String> words;
+    if (args.length == 1) {
+      words = new ArrayList<String>(LexiconBuilder.readWords(new File(args[0])));
+      Collections.sort(words);
+      Collections.shuffle(words, random);
+    } else {
+      words = new ArrayList<String>();
+      for (int i = 0; i < 50000; i++) {
+        words.add(makeWord(random));
+      }
+    }
+    if (words.size() < PAGE_WORDS * 2) {
+      System.err.println("Need at least " + (PAGE_WORDS * 2) + " words");
+      System.exit(2);
+    }
+    char[][] page = new char[PAGE_WORDS][];
+    for (int i = 0; i < PAGE_WORDS; i++) {
+      page[i] = words.get(i).toCharArray();
+    }
+    char[][] all = new char[words.size()][];
+    for (int i = 0; i < all.length; i++) {
+      all[i] = words.get(i).toCharArray();
+    }
+
+    System.out.println("Page, char by char:      " + timeCharByChar(page));
+    System.out.println("Page, by cluster:        " + time(new WordReverser(), page));
+    System.out.println("New words, char by char: " + timeCharByChar(all));
+    System.out.println("New words, by cluster:   " + time(new WordReverser(), all));
+  }
+
+  private static String makeWord(Random random) {
+    StringBuilder word = new StringBuilder();
+    int pieces = 2 + random.nextInt(8);
+    for (int i = 0; i < pieces; i++) {
+      // Mostly plain letters, as in most text
+      int index = random.nextInt(4) == 0 ? random.nextInt(PIECES.length) : random.nextInt(8);
+      word.append(PIECES[index]);
+    }
+    return word.toString();
+  }
+
+  // Reverses the words one frame's worth at a time, cycling through them
+  private static String time(WordReverser reverser, char[][] words) {
+    char[] scratch = new char[longest(words)];
+    int index = 0;
+    for (int frame = 0; frame < WARM_UP_FRAMES; frame++) {
+      for (int i = 0; i < PAGE_WORDS; i++, index = (index + 1) % words.length) {
+        reverser.reverse(copy(words[index], scratch), 0, words[index].length);
+      }
+    }
+    long allocated = Allocations.allocatedBytes();
+    long start = System.nanoTime();
+    for (int frame = 0; frame < FRAMES; frame++) {
+      for (int i = 0; i < PAGE_WORDS; i++, index = (index + 1) % words.length) {
+        reverser.reverse(copy(words[index], scratch), 0, words[index].length);
+      }
+    }
+    return summarize(start, allocated);
+  }
+
+  private static String timeCharByChar(char[][] words) {
+    char[] scratch = new char[longest(words)];
+    int index = 0;
+    for (int frame = 0; frame < WARM_UP_FRAMES; frame++) {
+      for (int i = 0; i < PAGE_WORDS; i++, index = (index + 1) % words.length) {
+        reverseCharByChar(copy(words[index], scratch), 0, words[index].length);
+      }
+    }
+    long allocated = Allocations.allocatedBytes();
+    long start = System.nanoTime();
+    for (int frame = 0; frame < FRAMES; frame++) {
+      for (int i = 0; i < PAGE_WORDS; i++, index = (index + 1) % words.length) {
+        reverseCharByChar(copy(words[index], scratch), 0, words[index].length);
+      }
+    }
+    return summarize(start, allocated);
+  }
+
+  // Copies a word into the buffer the overlay lays its text out in, leaving the word as it was
+  private static char[] copy(char[] word, char[] scratch) {
+    System.arraycopy(word, 0, scratch, 0, word.length);
+    return scratch;
+  }
+
+  private static int longest(char[][] words) {
+    int longest = 0;
+    for (char[] word : words) {
+      longest = Math.max(longest, word.length);
+    }
+    return longest;
+  }
+
+  private static String summarize(long start, long allocated) {
+    long elapsed = System.nanoTime() - start;
+    long count = (long) FRAMES * PAGE_WORDS;
+    return String.format("%.1f ns per word, %.1f us per frame of %d words, ",
+        elapsed / (double) count, elapsed / 1000.0 / FRAMES, PAGE_WORDS)
+        + Allocations.perOperation(allocated, count);
+  }
+
+  // The overlay's reverse before WordReverser: like StringBuffer.reverse(), keeping surrogate
+  // pairs in order but nothing else
+  private static void reverseCharByChar(char[] chars, int offset, int length) {
+    for (int i = offset, j = offset + length - 1; i < j; i++, j--) {
+      char c = chars[i];
+      chars[i] = chars[j];
+      chars[j] = c;
+    }
+    for (int i = offset; i < offset + length - 1; i++) {
+      if (Character.isLowSurrogate(chars[i]) && Character.isHighSurrogate(chars[i + 1])) {
+        char c = chars[i];
+        chars[i] = chars[i + 1];
+        chars[i + 1] = c;
+        i++;
+      }
+    }
+  }
+}